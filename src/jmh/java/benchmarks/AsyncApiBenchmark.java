@@ -0,0 +1,150 @@
+package benchmarks;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.openapitools.client.ApiCallback;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tests.utils.AsyncApi;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a batch of pulls to a local MockWebServer at once and waits for all of them, through AsyncApi and through the
+ * generated notificationsGetAsync callbacks.
+ *
+ * <p> The callback variant runs on the OkHttp dispatcher, which allows 5 requests per host by default. Each of its calls
+ * also leaves a network interceptor behind on the shared client; they are removed after every batch here, or each batch
+ * would be slower than the one before. AsyncApi runs on AsyncApi.newDefaultExecutor() (virtual threads when the
+ * benchmark JVM is Java 21 or later, a pool of 64 platform threads otherwise) or, with executor set to platform, on
+ * the platform pool whatever the JVM. With maxInFlight at 0 all of a batch is sent at once and most of it on fresh
+ * connections, as the client keeps 5 idle ones; on virtual threads, a batch of 100 then overflows the accept backlog of
+ * 50 of MockWebServer and waits on resent SYNs. 16 is the AsyncApi default, the per-host limit of ApiClientBuilder.
+ * Run with -prof gc (the profile default) to compare gc.alloc.rate.norm per batch.
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncApiBenchmark {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime END = START.plusDays(1);
+
+    @Param({"100"})
+    public int batch;
+
+    @Param({"0", "5"})
+    public long latencyMillis;
+
+    @Param({"0", "16"})
+    public int maxInFlight;
+
+    @Param({"default", "platform"})
+    public String executor;
+
+    private MockWebServer server;
+    private ApiClient apiClient;
+    private NotificationsApi notificationsApi;
+    private AsyncApi asyncApi;
+    private ExecutorService platformExecutor;
+    private List<Interceptor> networkInterceptors;
+    private int ownNetworkInterceptors;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new NotificationStubDispatcher(NotificationStubDispatcher.generate(100, START, Duration.ofDays(1), Config.SUBSCRIPTION_NAME))
+                .latencyMillis(latencyMillis));
+        server.start();
+        apiClient = Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString());
+        notificationsApi = new NotificationsApi(apiClient);
+        asyncApi = "platform".equals(executor) ? new AsyncApi(apiClient, platformExecutor = AsyncApi.newPlatformExecutor()) : new AsyncApi(apiClient);
+        asyncApi.maxInFlight(maxInFlight);
+        networkInterceptors = apiClient.getHttpClient().networkInterceptors();
+        ownNetworkInterceptors = networkInterceptors.size();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        asyncApi.close();
+        if (platformExecutor != null) {
+            platformExecutor.shutdown();
+        }
+        server.shutdown();
+    }
+
+    @Benchmark
+    public int completableFutures() {
+        CompletableFuture<?>[] pulls = new CompletableFuture<?>[batch];
+        for (int i = 0; i < batch; i++) {
+            pulls[i] = asyncApi.notificationsGet(START, END, null, null, i, 1);
+        }
+        CompletableFuture.allOf(pulls).join();
+        return pulls.length;
+    }
+
+    @Benchmark
+    public int callbacks() throws Exception {
+        CountDownLatch done = new CountDownLatch(batch);
+        AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < batch; i++) {
+            notificationsApi.notificationsGetAsync(START, END, null, null, i, 1, new ApiCallback<NotificationsWrapper>() {
+                @Override
+                public void onFailure(ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
+                    failures.incrementAndGet();
+                    done.countDown();
+                }
+
+                @Override
+                public void onSuccess(NotificationsWrapper result, int statusCode, Map<String, List<String>> responseHeaders) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+                }
+
+                @Override
+                public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
+                }
+            });
+        }
+        done.await();
+        networkInterceptors.subList(ownNetworkInterceptors, networkInterceptors.size()).clear();
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " calls failed");
+        }
+        return batch;
+    }
+}
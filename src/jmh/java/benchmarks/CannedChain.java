@@ -0,0 +1,46 @@
+package benchmarks;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+/**
+ * An interceptor chain that answers every request with an empty 200 response, so that interceptors can be measured without any I/O.
+ * The last request seen is kept so benchmarks can hand it to a Blackhole.
+ **/
+class CannedChain implements Interceptor.Chain {
+
+    private static final ResponseBody EMPTY_BODY = ResponseBody.create(MediaType.parse("application/json"), "{}");
+
+    private final Request request;
+    Request proceeded;
+
+    CannedChain(Request request) {
+        this.request = request;
+    }
+
+    @Override
+    public Request request() {
+        return request;
+    }
+
+    @Override
+    public Response proceed(Request request) {
+        proceeded = request;
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .body(EMPTY_BODY)
+                .build();
+    }
+
+    @Override
+    public Connection connection() {
+        return null;
+    }
+}
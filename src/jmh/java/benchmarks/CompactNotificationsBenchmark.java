@@ -0,0 +1,108 @@
+package benchmarks;
+
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tests.utils.CompactNotifications;
+import tests.utils.NotificationContentTypeAdapterFactory;
+import tests.utils.NotificationExamples;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers 100,000 notifications mixed from the three GetNotificationResponse examples, decoded from JSON pages of 500 as
+ * they would be pulled, once as the generated models and once in CompactNotifications.
+ *
+ * <p> The heap each retains is measured once in setup, as the used heap after a full GC with and without it, and printed
+ * per notification. The fork runs G1, whose full GC compacts the whole heap; the parallel collector leaves dead objects
+ * in place on most full GCs, which skews the used heap by tens of megabytes either way. The benchmarks time adding to CompactNotifications and rebuilding the models from it, per
+ * notification, so with -prof gc (the profile default) gc.alloc.rate.norm reads as bytes allocated per notification.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g", "-XX:+UseG1GC"})
+@State(Scope.Benchmark)
+public class CompactNotificationsBenchmark {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int COUNT = 100_000;
+    private static final int PAGE_LIMIT = 500;
+
+    private final JSON json = new JSON();
+    private List<Notification> notifications;
+    private CompactNotifications compact;
+
+    @Setup
+    public void setUp() {
+        json.setGson(NotificationContentTypeAdapterFactory.createGson(json));
+        List<String> pages = pages();
+        long empty = usedHeap();
+        notifications = decode(pages);
+        long models = usedHeap() - empty;
+        compact = new CompactNotifications(notifications);
+        notifications = null;
+        long columns = usedHeap() - empty;
+        notifications = decode(pages);
+        System.out.printf("%nRetained heap per notification: %d B as generated models, %d B in CompactNotifications%n", models / COUNT, columns / COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public CompactNotifications add() {
+        return new CompactNotifications(notifications);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void get(Blackhole blackhole) {
+        for (Notification notification : compact.asList()) {
+            blackhole.consume(notification);
+        }
+    }
+
+    private List<String> pages() {
+        List<String> pages = new ArrayList<>();
+        List<Notification> mixed = NotificationExamples.mixed(COUNT, START, 1);
+        for (int offset = 0; offset < COUNT; offset += PAGE_LIMIT) {
+            List<Notification> page = mixed.subList(offset, offset + PAGE_LIMIT);
+            pages.add(json.serialize(new NotificationsWrapper().offset(offset).limit(PAGE_LIMIT).count(PAGE_LIMIT).total((long) COUNT).notifications(page)));
+        }
+        return pages;
+    }
+
+    private List<Notification> decode(List<String> pages) {
+        List<Notification> decoded = new ArrayList<>(COUNT);
+        for (String page : pages) {
+            decoded.addAll(json.<NotificationsWrapper>deserialize(page, NotificationsWrapper.class).getNotifications());
+        }
+        return decoded;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            memory.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
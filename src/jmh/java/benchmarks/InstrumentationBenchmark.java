@@ -0,0 +1,86 @@
+package benchmarks;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tests.utils.ApiClientBuilder;
+import tests.utils.ApiClientMetrics;
+import tests.utils.ConcurrentHistogram;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what ApiClientMetrics adds to a call: one page of 25 notifications pulled from a local MockWebServer by a
+ * client built with and without the listener, and the cost of recording one value in a ConcurrentHistogram.
+ *
+ * <p> Run with -prof gc (the profile default) to compare gc.alloc.rate.norm per page.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstrumentationBenchmark {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime END = START.plusDays(1);
+
+    private MockWebServer server;
+    private NotificationsApi plainApi;
+    private NotificationsApi instrumentedApi;
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram();
+    private long value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new NotificationStubDispatcher(NotificationStubDispatcher.generate(100, START, Duration.ofDays(1), Config.SUBSCRIPTION_NAME)));
+        server.start();
+        String basePath = server.url(NotificationStubDispatcher.BASE_PATH).toString();
+        plainApi = new NotificationsApi(new ApiClientBuilder().basePath(basePath).build());
+        instrumentedApi = new NotificationsApi(new ApiClientBuilder().basePath(basePath).listener(new ApiClientMetrics()).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public NotificationsWrapper plain() throws Exception {
+        return plainApi.notificationsGet(START, END, null, null, 0, 25);
+    }
+
+    @Benchmark
+    public NotificationsWrapper instrumented() throws Exception {
+        return instrumentedApi.notificationsGet(START, END, null, null, 0, 25);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void histogramRecord() {
+        // A value that moves across buckets, as latencies do
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        histogram.record(value >>> 40);
+    }
+}
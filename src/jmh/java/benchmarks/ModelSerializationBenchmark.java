@@ -0,0 +1,89 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.FieldContent;
+import org.openapitools.client.model.SpecificationRequest;
+import org.openapitools.client.model.Subscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tests.utils.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the request bodies of the subscription endpoints with the generated JSON class:
+ * a Subscription without specifications, one with the SubscriptionWithChildSpecification example, and a lone SpecificationRequest.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelSerializationBenchmark {
+
+    private Gson gson;
+    private Subscription subscription;
+    private Subscription subscriptionWithSpecification;
+    private SpecificationRequest specification;
+
+    @Setup
+    public void setUp() {
+        gson = new JSON().getGson();
+        subscription = new Subscription()
+                .name(Config.SUBSCRIPTION_NAME)
+                .subjectType(Subscription.SubjectTypeEnum.AUTHORIZATION)
+                .active(true)
+                .specifications(new ArrayList<>());
+        subscriptionWithSpecification = childSpecificationExample();
+        specification = specification("BOC");
+    }
+
+    /**
+     * The SubscriptionWithChildSpecification example in notification-swagger.yml.
+     */
+    static Subscription childSpecificationExample() {
+        SpecificationRequest child = specification("Travel Expense RCN").operator("AND");
+        return new Subscription()
+                .name(Config.SUBSCRIPTION_NAME)
+                .subjectType(Subscription.SubjectTypeEnum.AUTHORIZATION)
+                .active(true)
+                .specifications(Collections.singletonList(specification("BOC").children(Collections.singletonList(child))));
+    }
+
+    private static SpecificationRequest specification(String value) {
+        return new SpecificationRequest()
+                .type(Config.SPECIFICATION_TYPE)
+                .operator(Config.SPECIFICATION_OPERATOR)
+                .fieldMappingName("purchaseRequest.rcnAlias")
+                .fieldOperator(Config.FIELD_OPERATOR)
+                .expectedContent(new FieldContent().contentType(Config.CONTENT_TYPE).value(value))
+                .children(new ArrayList<>());
+    }
+
+    @Benchmark
+    public String subscription() {
+        return gson.toJson(subscription);
+    }
+
+    @Benchmark
+    public String subscriptionWithSpecification() {
+        return gson.toJson(subscriptionWithSpecification);
+    }
+
+    @Benchmark
+    public String specificationRequest() {
+        return gson.toJson(specification);
+    }
+}
@@ -0,0 +1,159 @@
+package benchmarks;
+
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tests.utils.Config;
+import tests.utils.NotificationArchive;
+import tests.utils.NotificationContentTypeAdapterFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares a NotificationArchive with keeping the raw JSON pages as pulled, one file per NotificationsWrapper, for
+ * ingesting 10,000 notifications spread over 10 days and for reading back the ones created on one of those days.
+ *
+ * <p> The JSON pages have no index, so a range read parses every page and filters. The archive is read with scan,
+ * which only touches the timestamp and content slice of each record, and with query, which decodes every match into
+ * a Notification. Ingest includes closing the archive, which forces it to disk, and writing every page file.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationArchiveBenchmark {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final Instant RANGE_START = START.plusDays(4).toInstant();
+    private static final Instant RANGE_END = START.plusDays(5).toInstant();
+    private static final int COUNT = 10_000;
+    private static final int PAGE_LIMIT = 100;
+
+    private final JSON json = new JSON();
+    private List<Notification> notifications;
+    private Path directory;
+    private Path archiveDirectory;
+    private Path pagesDirectory;
+    private NotificationArchive archive;
+    private Path ingestDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        json.setGson(NotificationContentTypeAdapterFactory.createGson(json));
+        notifications = NotificationStubDispatcher.generate(COUNT, START, Duration.ofDays(10), Config.SUBSCRIPTION_NAME);
+        directory = Files.createTempDirectory("notification-archive-benchmark");
+        archiveDirectory = directory.resolve("archive");
+        pagesDirectory = directory.resolve("pages");
+        writeArchive(archiveDirectory);
+        writePages(pagesDirectory);
+        archive = new NotificationArchive(archiveDirectory, json);
+    }
+
+    @Setup(Level.Invocation)
+    public void newIngestDirectory() throws IOException {
+        ingestDirectory = Files.createTempDirectory(directory, "ingest");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteIngestDirectory() throws IOException {
+        delete(ingestDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        archive.close();
+        delete(directory);
+    }
+
+    @Benchmark
+    public void ingestArchive() throws IOException {
+        writeArchive(ingestDirectory);
+    }
+
+    @Benchmark
+    public void ingestJsonPages() throws IOException {
+        writePages(ingestDirectory);
+    }
+
+    @Benchmark
+    public long scanArchive() {
+        long[] contentBytes = new long[1];
+        archive.scan(RANGE_START.toEpochMilli(), RANGE_END.toEpochMilli(), null, null, record -> contentBytes[0] += record.getContent().remaining());
+        return contentBytes[0];
+    }
+
+    @Benchmark
+    public List<Notification> queryArchive() {
+        return archive.query(RANGE_START, RANGE_END, null, null);
+    }
+
+    @Benchmark
+    public int scanJsonPages() throws IOException {
+        int matching = 0;
+        try (Stream<Path> pages = Files.list(pagesDirectory)) {
+            for (Path path : (Iterable<Path>) pages::iterator) {
+                NotificationsWrapper page;
+                try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    page = json.getGson().fromJson(reader, NotificationsWrapper.class);
+                }
+                for (Notification notification : page.getNotifications()) {
+                    Instant created = OffsetDateTime.parse(notification.getCreatedTimestamp()).toInstant();
+                    if (!created.isBefore(RANGE_START) && created.isBefore(RANGE_END)) {
+                        matching++;
+                    }
+                }
+            }
+        }
+        return matching;
+    }
+
+    private void writeArchive(Path target) throws IOException {
+        try (NotificationArchive ingest = new NotificationArchive(target, json)) {
+            ingest.appendAll(notifications);
+        }
+    }
+
+    private void writePages(Path target) throws IOException {
+        Files.createDirectories(target);
+        for (int offset = 0; offset < COUNT; offset += PAGE_LIMIT) {
+            List<Notification> items = notifications.subList(offset, Math.min(COUNT, offset + PAGE_LIMIT));
+            NotificationsWrapper page = new NotificationsWrapper().offset(offset).limit(PAGE_LIMIT).count(items.size()).total((long) COUNT).notifications(items);
+            Files.write(target.resolve(String.format("page-%06d.json", offset)), json.serialize(page).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path entry : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(entry);
+            }
+        }
+    }
+}
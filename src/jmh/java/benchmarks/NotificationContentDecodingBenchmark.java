@@ -0,0 +1,74 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.CommercialBpsNotificationContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tests.utils.NotificationContentTypeAdapterFactory;
+import tests.utils.NotificationExamples;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a page of the GetNotificationResponse example into typed content, once with the toJsonTree/fromJson
+ * double decode consumers used to copy from NotificationApiTest and once with NotificationContentTypeAdapterFactory.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationContentDecodingBenchmark {
+
+    @Param({"5", "50", "500"})
+    public int size;
+
+    private String body;
+    private Gson untyped;
+    private JSON typed;
+
+    @Setup
+    public void setUp() {
+        body = NotificationExamples.pageJson(size);
+        untyped = new JSON().getGson();
+        typed = new JSON();
+        typed.setGson(NotificationContentTypeAdapterFactory.createGson(typed));
+    }
+
+    @Benchmark
+    public void doubleDecode(Blackhole blackhole) {
+        NotificationsWrapper page = untyped.fromJson(body, NotificationsWrapper.class);
+        for (Notification notification : page.getNotifications()) {
+            JsonObject jsonObject = untyped.toJsonTree(notification.getContent()).getAsJsonObject();
+            if ("PAYMENT_AUTHORIZATION".equals(notification.getSubject())) {
+                blackhole.consume(untyped.fromJson(jsonObject, NotificationContent.class));
+            } else if ("PAYMENT_UPDATE".equals(notification.getSubject())) {
+                blackhole.consume(untyped.fromJson(jsonObject, CommercialBpsNotificationContent.class));
+            }
+        }
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) {
+        NotificationsWrapper page = typed.deserialize(body, NotificationsWrapper.class);
+        for (Notification notification : page.getNotifications()) {
+            blackhole.consume(notification.getContent());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import org.openapitools.client.model.FieldContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.SpecificationRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tests.utils.NotificationExamples;
+import tests.utils.NotificationSpecification;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates a three condition filter, rcnAlias EQUALS AND transactionAmount BETWEEN OR merchant.categoryCode EQUALS,
+ * over the example notifications, once compiled with NotificationSpecification and once interpreted from the
+ * SpecificationRequest tree with a reflective getter lookup per path segment, the straightforward way to do it.
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationSpecificationBenchmark {
+
+    private List<SpecificationRequest> specifications;
+    private NotificationSpecification compiled;
+    private Notification[] notifications;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        specifications = Arrays.asList(
+                field("WHERE", "purchaseRequest.rcnAlias", "EQUALS", new FieldContent().contentType("TEXT").value("Travel Expense RCN")),
+                field("AND", "transactionAmount", "BETWEEN", new FieldContent().contentType("INTEGER").value(1000.0).anotherValue(10000.0)),
+                field("OR", "merchant.categoryCode", "EQUALS", new FieldContent().contentType("TEXT").value("5999")));
+        compiled = NotificationSpecification.compile("PAYMENT_AUTHORIZATION", specifications);
+        notifications = NotificationExamples.page(300).getNotifications().toArray(new Notification[0]);
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return compiled.test(notification());
+    }
+
+    @Benchmark
+    public boolean interpreted() throws Exception {
+        Notification notification = notification();
+        if (!"PAYMENT_AUTHORIZATION".equals(notification.getSubject())) {
+            return false;
+        }
+        boolean any = false;
+        boolean all = true;
+        for (int i = 0; i < specifications.size(); i++) {
+            SpecificationRequest specification = specifications.get(i);
+            if (i > 0 && "OR".equals(specification.getOperator())) {
+                any |= all;
+                all = true;
+            }
+            all &= matches(specification, notification.getContent());
+        }
+        return any || all;
+    }
+
+    private Notification notification() {
+        Notification notification = notifications[next];
+        next = next + 1 == notifications.length ? 0 : next + 1;
+        return notification;
+    }
+
+    private static boolean matches(SpecificationRequest specification, Object content) throws Exception {
+        Object value = content;
+        for (String property : specification.getFieldMappingName().split("\\.")) {
+            Method getter = value.getClass().getMethod("get" + Character.toUpperCase(property.charAt(0)) + property.substring(1));
+            value = getter.invoke(value);
+            if (value == null) {
+                return false;
+            }
+        }
+        FieldContent expected = specification.getExpectedContent();
+        if ("INTEGER".equals(expected.getContentType())) {
+            long actual = Long.parseLong(value.toString());
+            long low = ((Number) expected.getValue()).longValue();
+            switch (specification.getFieldOperator()) {
+                case "BETWEEN":
+                    return actual >= low && actual <= ((Number) expected.getAnotherValue()).longValue();
+                default:
+                    return actual == low;
+            }
+        }
+        return expected.getValue().toString().equals(value.toString());
+    }
+
+    private static SpecificationRequest field(String operator, String fieldMappingName, String fieldOperator, FieldContent expectedContent) {
+        return new SpecificationRequest()
+                .type("FIELD")
+                .operator(operator)
+                .fieldMappingName(fieldMappingName)
+                .fieldOperator(fieldOperator)
+                .expectedContent(expectedContent);
+    }
+}
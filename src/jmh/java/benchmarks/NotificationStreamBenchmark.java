@@ -0,0 +1,95 @@
+package benchmarks;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import tests.utils.Config;
+import tests.utils.NotificationStream;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walks every page of /notifications from a local MockWebServer, once through the generated List based path
+ * and once through NotificationStream.
+ *
+ * <p> The List path keeps every NotificationsWrapper it has read, as the reconciliation jobs do while they walk offsets,
+ * so its retained heap grows with total while the streamed path stays flat. Run with -prof gc (the profile default)
+ * to compare gc.alloc.rate.norm, and with a small heap (for example -jvmArgs -Xmx32m) to see the List path run out of memory first.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationStreamBenchmark {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime END = START.plusDays(1);
+
+    @Param({"1000", "10000"})
+    public int total;
+
+    @Param({"100"})
+    public int limit;
+
+    private MockWebServer server;
+    private NotificationsApi notificationsApi;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new NotificationStubDispatcher(NotificationStubDispatcher.generate(total, START, Duration.ofDays(1), Config.SUBSCRIPTION_NAME)));
+        server.start();
+        notificationsApi = new NotificationsApi(Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public List<NotificationsWrapper> materializedPages() throws Exception {
+        List<NotificationsWrapper> pages = new ArrayList<>();
+        int offset = 0;
+        NotificationsWrapper page;
+        do {
+            page = notificationsApi.notificationsGet(START, END, null, null, offset, limit);
+            pages.add(page);
+            offset += page.getNotifications().size();
+        } while (!page.getNotifications().isEmpty() && offset < page.getTotal());
+        return pages;
+    }
+
+    @Benchmark
+    public void streamed(Blackhole blackhole) {
+        try (NotificationStream stream = new NotificationStream(notificationsApi, START, END, null, null, 0, limit)) {
+            while (stream.hasNext()) {
+                Notification notification = stream.next();
+                blackhole.consume(notification);
+            }
+        }
+    }
+}
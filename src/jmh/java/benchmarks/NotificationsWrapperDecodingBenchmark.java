@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tests.utils.NotificationExamples;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes NotificationsWrapper pages built from the GetNotificationResponse example with the generated JSON class,
+ * exactly as ApiClient.deserialize does for a notificationsGet response.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationsWrapperDecodingBenchmark {
+
+    @Param({"5", "50", "500"})
+    public int size;
+
+    private JSON json;
+    private String body;
+
+    @Setup
+    public void setUp() {
+        json = new JSON();
+        body = NotificationExamples.pageJson(size);
+    }
+
+    @Benchmark
+    public NotificationsWrapper decode() {
+        return json.deserialize(body, NotificationsWrapper.class);
+    }
+}
@@ -0,0 +1,121 @@
+package benchmarks;
+
+import com.mastercard.developer.interceptors.OkHttp2OAuth1Interceptor;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.api.NotificationsApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tests.utils.CachedOAuth1Interceptor;
+import tests.utils.Config;
+
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-request work done before anything reaches the network: building the /notifications call,
+ * rewriting its URL with Config.ForceJsonResponseInterceptor and signing it with OkHttp2OAuth1Interceptor
+ * or with CachedOAuth1Interceptor, which produces the same header.
+ *
+ * <p> A freshly generated 2048 bit RSA key stands in for the sandbox key, so no credentials are needed.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestConstructionBenchmark {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime END = START.plusDays(7);
+
+    private NotificationsApi notificationsApi;
+    private OkHttp2OAuth1Interceptor signingInterceptor;
+    private CachedOAuth1Interceptor cachedSigningInterceptor;
+    private Config.ForceJsonResponseInterceptor forceJsonInterceptor;
+    private Request getRequest;
+    private Request postRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        PrivateKey signingKey = generator.generateKeyPair().getPrivate();
+
+        ApiClient client = new ApiClient();
+        client.setBasePath(Config.BASE_PATH);
+        notificationsApi = new NotificationsApi(client);
+        signingInterceptor = new OkHttp2OAuth1Interceptor(Config.consumerKey, signingKey);
+        cachedSigningInterceptor = new CachedOAuth1Interceptor(Config.consumerKey, signingKey);
+        forceJsonInterceptor = new Config.ForceJsonResponseInterceptor();
+
+        getRequest = new Request.Builder()
+                .url(Config.BASE_PATH + "/notifications?start=2021-09-01T00%3A00Z&end=2021-09-08T00%3A00Z"
+                        + "&subscription_name=" + Config.SUBSCRIPTION_NAME + "&push_status=DELIVERED&offset=0&limit=50")
+                .get()
+                .build();
+        String subscription = client.getJSON().serialize(ModelSerializationBenchmark.childSpecificationExample());
+        postRequest = new Request.Builder()
+                .url(Config.BASE_PATH + "/subscriptions")
+                .post(RequestBody.create(MediaType.parse("application/json; charset=utf-8"), subscription))
+                .build();
+    }
+
+    @Benchmark
+    public Call buildNotificationsCall() throws Exception {
+        return notificationsApi.notificationsGetCall(START, END, Collections.singletonList(Config.SUBSCRIPTION_NAME),
+                Arrays.asList("FAILED", "PENDING"), 0, 50, null, null);
+    }
+
+    @Benchmark
+    public Request forceJsonResponse() throws Exception {
+        CannedChain chain = new CannedChain(getRequest);
+        forceJsonInterceptor.intercept(chain);
+        return chain.proceeded;
+    }
+
+    @Benchmark
+    public Request signGet() throws Exception {
+        CannedChain chain = new CannedChain(getRequest);
+        signingInterceptor.intercept(chain);
+        return chain.proceeded;
+    }
+
+    @Benchmark
+    public Request signPost() throws Exception {
+        CannedChain chain = new CannedChain(postRequest);
+        signingInterceptor.intercept(chain);
+        return chain.proceeded;
+    }
+
+    @Benchmark
+    public Request cachedSignGet() throws Exception {
+        CannedChain chain = new CannedChain(getRequest);
+        cachedSigningInterceptor.intercept(chain);
+        return chain.proceeded;
+    }
+
+    @Benchmark
+    public Request cachedSignPost() throws Exception {
+        CannedChain chain = new CannedChain(postRequest);
+        cachedSigningInterceptor.intercept(chain);
+        return chain.proceeded;
+    }
+}
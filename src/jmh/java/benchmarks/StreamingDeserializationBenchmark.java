@@ -0,0 +1,85 @@
+package benchmarks;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tests.utils.NotificationContentTypeAdapterFactory;
+import tests.utils.NotificationExamples;
+import tests.utils.StreamingApiClient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a response holding a page of 500 notifications from the GetNotificationResponse example, once through the
+ * generated ApiClient.deserialize, which reads the body into a String first, and once through StreamingApiClient.
+ *
+ * <p> Each operation is one notification, so with -prof gc (the profile default) gc.alloc.rate.norm reads as bytes
+ * allocated per notification. Both include copying the page into the response body's buffer, as it would arrive.
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamingDeserializationBenchmark {
+
+    private static final int SIZE = 500;
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private byte[] body;
+    private Request request;
+    private StreamingApiClient generated;
+    private StreamingApiClient streaming;
+
+    @Setup
+    public void setUp() {
+        body = NotificationExamples.pageJson(SIZE).getBytes(StandardCharsets.UTF_8);
+        request = new Request.Builder().url("http://localhost/commercial-event-notifications/notifications").build();
+        generated = client(false);
+        streaming = client(true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public NotificationsWrapper generated() throws Exception {
+        return generated.deserialize(response(), NotificationsWrapper.class);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public NotificationsWrapper streaming() throws Exception {
+        return streaming.deserialize(response(), NotificationsWrapper.class);
+    }
+
+    private Response response() {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .header("Content-Type", JSON.toString())
+                .body(ResponseBody.create(JSON, body))
+                .build();
+    }
+
+    private static StreamingApiClient client(boolean streaming) {
+        StreamingApiClient client = new StreamingApiClient().setStreaming(streaming);
+        client.getJSON().setGson(NotificationContentTypeAdapterFactory.createGson(client.getJSON()));
+        return client;
+    }
+}
@@ -0,0 +1,257 @@
+package tests;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import tests.utils.AdaptivePageLimit;
+import tests.utils.ApiStubDispatcher;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationPoller;
+import tests.utils.NotificationStubDispatcher;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class checks how AdaptivePageLimit moves the page limit: up while the time per notification falls, and
+ * back on failures and slow pages, staying below a limit that keeps failing without being pinned down by failures that
+ * come whatever the size of pages. It then pulls through NotificationPoller from an ApiStubDispatcher under several
+ * latency profiles, once with the fixed default limit and once with the adaptive one, checking that every notification
+ * arrives once and in order, and prints how many requests and how long each took.
+ **/
+
+public class AdaptivePageLimitTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int COUNT = 5000;
+    private static final int FIXED_LIMIT = 25;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that the limit grows while the time per notification falls, up to the maximum limit or page size
+     */
+    @Test
+    public void testGrowsWhileTimePerNotificationFalls() {
+        IntToLongFunction roundTripBound = limit -> TimeUnit.MILLISECONDS.toNanos(20) + TimeUnit.MICROSECONDS.toNanos(10) * limit;
+        AdaptivePageLimit adaptive = new AdaptivePageLimit();
+        feed(adaptive, roundTripBound, Integer.MAX_VALUE, 60);
+        assertThat(adaptive.getLimit()).isEqualTo(AdaptivePageLimit.DEFAULT_MAX_LIMIT);
+
+        AdaptivePageLimit sized = new AdaptivePageLimit().maxPageBytes(200_000);
+        feed(sized, roundTripBound, Integer.MAX_VALUE, 60);
+        assertThat(sized.getLimit()).isEqualTo(200);
+
+        // 2 ms per page, 100 us per notification and a cost that grows with the page beyond that is lowest around 63
+        AdaptivePageLimit settling = new AdaptivePageLimit();
+        feed(settling, limit -> TimeUnit.MICROSECONDS.toNanos(2000 + 100L * limit + limit * (long) limit / 2), Integer.MAX_VALUE, 60);
+        assertThat(settling.getLimit()).isBetween(50, 100);
+        assertThat(settling.getDecreaseCount()).isZero();
+    }
+
+    /**
+     * Test that failures and slow pages cut the limit, and that it then stays below the limit that failed
+     */
+    @Test
+    public void testBacksOffOnFailuresAndSlowPages() {
+        IntToLongFunction roundTripBound = limit -> TimeUnit.MILLISECONDS.toNanos(20) + TimeUnit.MICROSECONDS.toNanos(10) * limit;
+        AdaptivePageLimit adaptive = new AdaptivePageLimit();
+        int failures = feed(adaptive, roundTripBound, 300, 500);
+        assertThat(adaptive.getLimit()).isBetween(150, 300);
+        assertThat(failures).isBetween(1, 10);
+
+        // 10 ms per page and 100 us per notification, with pages over 30 ms, so over 200 notifications, counted as failed
+        AdaptivePageLimit slow = new AdaptivePageLimit().maxPageLatency(Duration.ofMillis(30));
+        feed(slow, limit -> TimeUnit.MILLISECONDS.toNanos(10) + TimeUnit.MICROSECONDS.toNanos(100) * limit, Integer.MAX_VALUE, 500);
+        assertThat(slow.getLimit()).isBetween(100, 200);
+        assertThat(slow.getDecreaseCount()).isPositive();
+
+        // A page read with a limit that has since changed is not measured
+        int limit = slow.getLimit();
+        slow.onPage(limit * 2, limit * 2, 1, -1);
+        slow.onFailure(limit - 1);
+        assertThat(slow.getLimit()).isEqualTo(limit);
+
+        // Once the failures stop, the ceiling is lifted at the next probe and the limit grows to the maximum again
+        feed(adaptive, roundTripBound, Integer.MAX_VALUE, AdaptivePageLimit.DEFAULT_PROBE_INTERVAL + 30);
+        assertThat(adaptive.getLimit()).isEqualTo(AdaptivePageLimit.DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Test that failures unrelated to the size of pages cut the limit for a while without pinning it down
+     */
+    @Test
+    public void testRandomFailuresDoNotPinTheLimit() {
+        IntToLongFunction roundTripBound = limit -> TimeUnit.MILLISECONDS.toNanos(20) + TimeUnit.MICROSECONDS.toNanos(10) * limit;
+        IntPredicate periodic = request -> request % 20 == 19;
+        int fixedRequests = read(new AdaptivePageLimit().limits(FIXED_LIMIT, FIXED_LIMIT, FIXED_LIMIT), roundTripBound, periodic, 1_000_000);
+        assertThat(fixedRequests).isEqualTo(42_105);
+
+        // Every 20th request fails, and also the first two, before any page has succeeded
+        AdaptivePageLimit adaptive = new AdaptivePageLimit();
+        assertThat(read(adaptive, roundTripBound, periodic, 1_000_000)).isLessThan(fixedRequests / 30);
+        assertThat(adaptive.getLimit()).isEqualTo(AdaptivePageLimit.DEFAULT_MAX_LIMIT);
+        adaptive = new AdaptivePageLimit();
+        assertThat(read(adaptive, roundTripBound, request -> request < 2 || periodic.test(request), 1_000_000)).isLessThan(fixedRequests / 30);
+        assertThat(adaptive.getLimit()).isEqualTo(AdaptivePageLimit.DEFAULT_MAX_LIMIT);
+
+        // 5% of requests fail, drawn from seeded sequences
+        for (int seed = 1; seed <= 10; seed++) {
+            Random random = new Random(seed);
+            AdaptivePageLimit flaky = new AdaptivePageLimit();
+            assertThat(read(flaky, roundTripBound, request -> request < 2 || random.nextDouble() < 0.05, 1_000_000)).isLessThan(fixedRequests / 30);
+            assertThat(flaky.getLimit()).isGreaterThan(10 * FIXED_LIMIT);
+        }
+    }
+
+    /**
+     * Test that pulling through NotificationPoller delivers every notification once and in order under every latency profile
+     */
+    @Test
+    public void testLatencyProfiles() throws Exception {
+        // Round trips dominate: 20 ms per request and 5 us per notification
+        Result roundTrip = compare("round trip bound", api -> api.latency(20, 40), notifications -> notifications.latencyPerNotificationMicros(5), new AdaptivePageLimit());
+        assertThat(roundTrip.adaptiveRequests).isLessThan(roundTrip.fixedRequests / 4);
+        assertThat(roundTrip.finalLimit).isGreaterThanOrEqualTo(200);
+
+        // Building pages dominates, and the gateway times out on pages of more than 300
+        Result timeouts = compare("pages over 300 time out", api -> api.latency(2, 4),
+                notifications -> notifications.latencyPerNotificationMicros(50).failAboveLimit(300, 504), new AdaptivePageLimit());
+        assertThat(timeouts.adaptiveRequests).isLessThan(timeouts.fixedRequests);
+        assertThat(timeouts.finalLimit).isLessThanOrEqualTo(300);
+        assertThat(timeouts.adaptiveFaults).isLessThan(10);
+
+        // Pages slow down with their size, and pages over 40 ms count as failed
+        Result tail = compare("slow large pages", api -> api.latency(2, 4), notifications -> notifications.latencyPerNotificationMicros(200),
+                new AdaptivePageLimit().maxPageLatency(Duration.ofMillis(40)));
+        assertThat(tail.adaptiveRequests).isLessThan(tail.fixedRequests);
+        assertThat(tail.finalLimit).isBetween(FIXED_LIMIT, 200);
+
+        // 5% of requests fail whatever their size
+        Result flaky = compare("5% of requests fail", api -> api.latency(10, 30).errorRate(0.05, 503), notifications -> notifications, new AdaptivePageLimit());
+        assertThat(flaky.adaptiveRequests).isLessThan(flaky.fixedRequests / 2);
+        assertThat(flaky.finalLimit).isGreaterThan(FIXED_LIMIT);
+    }
+
+    /**
+     * Feeds pages taking the given time to the controller, failing the ones over failAbove, and returns how many failed.
+     */
+    private static int feed(AdaptivePageLimit adaptive, IntToLongFunction latencyNanos, int failAbove, int pages) {
+        int failures = 0;
+        for (int i = 0; i < pages; i++) {
+            int limit = adaptive.getLimit();
+            if (limit > failAbove) {
+                adaptive.onFailure(limit);
+                failures++;
+            } else {
+                adaptive.onPage(limit, limit, latencyNanos.applyAsLong(limit), 1000L * limit);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Reads total notifications in full pages taking the given time, failing the requests picked by their number, and
+     * returns how many requests it took.
+     */
+    private static int read(AdaptivePageLimit adaptive, IntToLongFunction latencyNanos, IntPredicate fails, int total) {
+        int requests = 0;
+        for (int read = 0; read < total; requests++) {
+            int limit = adaptive.getLimit();
+            if (fails.test(requests)) {
+                adaptive.onFailure(limit);
+            } else {
+                adaptive.onPage(limit, limit, latencyNanos.applyAsLong(limit), 1000L * limit);
+                read += limit;
+            }
+        }
+        return requests;
+    }
+
+    private Result compare(String profile, UnaryOperator<ApiStubDispatcher> api,
+                           UnaryOperator<NotificationStubDispatcher> notifications, AdaptivePageLimit adaptive) throws Exception {
+        Result result = new Result();
+        Run fixed = pull(profile + "-fixed", api, notifications, null);
+        Run adapted = pull(profile + "-adaptive", api, notifications, adaptive);
+        result.fixedRequests = fixed.requests;
+        result.adaptiveRequests = adapted.requests;
+        result.adaptiveFaults = adapted.faults;
+        result.finalLimit = adaptive.getLimit();
+        System.out.printf("%s: limit %d took %d requests, %d faults, %d ms; adaptive took %d requests, %d faults, %d ms, ending at %s%n",
+                profile, FIXED_LIMIT, fixed.requests, fixed.faults, fixed.millis, adapted.requests, adapted.faults, adapted.millis, adaptive);
+        return result;
+    }
+
+    /**
+     * Pulls COUNT notifications through a NotificationPoller, polling again after each failure as a scheduled poller would.
+     * The stub is seeded, so that both runs of a profile see the same sequence of errors.
+     */
+    private Run pull(String name, UnaryOperator<ApiStubDispatcher> api,
+                     UnaryOperator<NotificationStubDispatcher> notifications, AdaptivePageLimit adaptive) throws Exception {
+        ApiStubDispatcher dispatcher = api.apply(new ApiStubDispatcher(notifications.apply(
+                new NotificationStubDispatcher(NotificationStubDispatcher.generate(COUNT, T0, Duration.ofHours(1), SUBSCRIPTION_NAME)))).seed(1));
+        MockWebServer server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(dispatcher);
+        server.start();
+        List<Notification> delivered = new ArrayList<>();
+        Run run = new Run();
+        long startNanos = System.nanoTime();
+        try (NotificationPoller poller = new NotificationPoller(new NotificationsApi(Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString())),
+                directory.resolve(name + ".cursor"), delivered::add)
+                .initialStart(T0)
+                .pageLimit(FIXED_LIMIT)
+                .adaptivePageLimit(adaptive)
+                .clock(Clock.fixed(T0.plusHours(1).toInstant(), ZoneOffset.UTC))) {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    poller.poll();
+                    break;
+                } catch (ApiException e) {
+                    assertThat(attempt).isLessThan(1000);
+                }
+            }
+        } finally {
+            server.shutdown();
+        }
+        run.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        run.requests = dispatcher.getRequestCount();
+        run.faults = dispatcher.getFaultCount() + dispatcher.getNotifications().getFaultCount();
+        assertThat(delivered.stream().map(notification -> ((NotificationContent) notification.getContent()).getPurchaseRequest().getPurchaseRequestId())
+                .collect(Collectors.toList())).isEqualTo(IntStream.range(0, COUNT).boxed().collect(Collectors.toList()));
+        return run;
+    }
+
+    private static class Run {
+        int requests;
+        int faults;
+        long millis;
+    }
+
+    private static class Result {
+        int fixedRequests;
+        int adaptiveRequests;
+        int adaptiveFaults;
+        int finalLimit;
+    }
+}
@@ -0,0 +1,230 @@
+package tests;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.logging.HttpLoggingInterceptor;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.NotificationsWrapper;
+import tests.utils.ApiClientBuilder;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class checks the ApiClient built by ApiClientBuilder against a local MockWebServer.
+ *
+ * <p> The load test sends the same concurrent page requests through a client configured as Config.setupApiClient used to be,
+ * with body logging, and through the built client, then prints latency percentiles and bytes allocated per request for both.
+ * The body logging output is discarded so the comparison measures the buffering, not the console.
+ * <p> The server sockets have TCP_NODELAY set, see NoDelayServerSocketFactory, so latency reflects the clients rather than delayed ACKs.
+ **/
+
+public class ApiClientBuilderTest implements Config {
+
+    private static final int DATASET_SIZE = 5_000;
+    private static final int PAGE_LIMIT = 100;
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 50;
+    private static final OffsetDateTime DATASET_START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime DATASET_END = DATASET_START.plusDays(1);
+
+    private MockWebServer server;
+    private NotificationStubDispatcher dispatcher;
+
+    @BeforeEach
+    public void before() throws Exception {
+        dispatcher = new NotificationStubDispatcher(NotificationStubDispatcher.generate(DATASET_SIZE, DATASET_START, Duration.ofDays(1), SUBSCRIPTION_NAME))
+                .gzip(true);
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(dispatcher);
+        server.start();
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that requests ask for gzip and that gzipped pages are decoded transparently
+     */
+    @Test
+    public void testGzipResponsesAreDecoded() throws Exception {
+        NotificationsApi notificationsApi = new NotificationsApi(builder().build());
+        NotificationsWrapper page = notificationsApi.notificationsGet(DATASET_START, DATASET_END, null, null, 0, PAGE_LIMIT);
+
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getHeader("Accept-Encoding")).isEqualTo("gzip");
+        assertThat(page.getNotifications()).hasSize(PAGE_LIMIT);
+        assertThat(page.getNotifications().get(0).getContent()).isInstanceOf(NotificationContent.class);
+    }
+
+    /**
+     * Test that metadata logging records each exchange without bodies or headers
+     */
+    @Test
+    public void testMetadataLoggingHasNoBodies() throws Exception {
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        NotificationsApi notificationsApi = new NotificationsApi(builder().metadataLogging(lines::add).build());
+        notificationsApi.notificationsGet(DATASET_START, DATASET_END, null, null, 0, PAGE_LIMIT);
+
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).startsWith("--> GET ").contains("/notifications?");
+        assertThat(lines.get(1)).startsWith("<-- HTTP/1.1 200 OK");
+        assertThat(lines).noneMatch(line -> line.contains(SUBSCRIPTION_NAME) || line.contains("Authorization") || line.contains("{"));
+    }
+
+    /**
+     * Test that synchronous calls respect the per host limit and reuse the pooled connections
+     */
+    @Test
+    public void testPerHostLimitAndConnectionReuse() throws Exception {
+        dispatcher.latencyMillis(20);
+        NotificationsApi notificationsApi = new NotificationsApi(builder().maxRequests(8, 2).build());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<NotificationsWrapper>> pages = new ArrayList<>();
+            for (int i = 0; i < 4 * THREADS; i++) {
+                int offset = i * PAGE_LIMIT;
+                pages.add(executor.submit(() -> notificationsApi.notificationsGet(DATASET_START, DATASET_END, null, null, offset, PAGE_LIMIT)));
+            }
+            for (Future<NotificationsWrapper> page : pages) {
+                assertThat(page.get().getNotifications()).hasSize(PAGE_LIMIT);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int connections = 0;
+        for (int i = 0; i < 4 * THREADS; i++) {
+            if (server.takeRequest().getSequenceNumber() == 0) {
+                connections++;
+            }
+        }
+        assertThat(dispatcher.getMaxConcurrentRequests()).isLessThanOrEqualTo(2);
+        assertThat(connections).isLessThanOrEqualTo(2);
+    }
+
+    /**
+     * Test that a response body left unclosed makes later requests to the host time out instead of hanging
+     */
+    @Test
+    public void testUnclosedBodyTimesOut() throws Exception {
+        ApiClient client = builder().maxRequests(8, 1).timeouts(1_000, 200, 1_000).build();
+        Response leaked = client.getHttpClient().newCall(new Request.Builder().url(server.url(NotificationStubDispatcher.BASE_PATH + "/notifications")).build()).execute();
+        NotificationsApi notificationsApi = new NotificationsApi(client);
+
+        assertThatThrownBy(() -> notificationsApi.notificationsGet(DATASET_START, DATASET_END, null, null, 0, PAGE_LIMIT))
+                .isInstanceOf(ApiException.class)
+                .hasCauseInstanceOf(InterruptedIOException.class);
+        leaked.body().close();
+        assertThat(notificationsApi.notificationsGet(DATASET_START, DATASET_END, null, null, 0, PAGE_LIMIT).getNotifications()).hasSize(PAGE_LIMIT);
+    }
+
+    /**
+     * Compare latency and allocation of the debug logging client and the built client under concurrent load
+     */
+    @Test
+    public void testLoadAgainstDebugClient() throws Exception {
+        ApiClient debugClient = Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString());
+        HttpLoggingInterceptor bodyLogging = new HttpLoggingInterceptor(message -> { });
+        bodyLogging.setLevel(HttpLoggingInterceptor.Level.BODY);
+        debugClient.getHttpClient().interceptors().add(bodyLogging);
+        ApiClient builtClient = builder().build();
+
+        // Warm both clients up before measuring
+        load(new NotificationsApi(debugClient));
+        load(new NotificationsApi(builtClient));
+        LoadResult debug = load(new NotificationsApi(debugClient));
+        LoadResult built = load(new NotificationsApi(builtClient));
+
+        System.out.printf("debug logging client: %s%nbuilt client: %s%n", debug, built);
+        assertThat(built.allocatedBytesPerRequest).isLessThan(debug.allocatedBytesPerRequest);
+    }
+
+    private ApiClientBuilder builder() {
+        return new ApiClientBuilder().basePath(server.url(NotificationStubDispatcher.BASE_PATH).toString());
+    }
+
+    private static LoadResult load(NotificationsApi notificationsApi) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int first = thread * REQUESTS_PER_THREAD;
+                results.add(executor.submit(() -> {
+                    // The last slot holds the bytes this thread allocated, the others one latency each
+                    long[] nanos = new long[REQUESTS_PER_THREAD + 1];
+                    long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        int offset = ((first + i) * PAGE_LIMIT) % DATASET_SIZE;
+                        long start = System.nanoTime();
+                        notificationsApi.notificationsGet(DATASET_START, DATASET_END, null, null, offset, PAGE_LIMIT);
+                        nanos[i] = System.nanoTime() - start;
+                    }
+                    nanos[REQUESTS_PER_THREAD] = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+                    return nanos;
+                }));
+            }
+            long[] latencies = new long[THREADS * REQUESTS_PER_THREAD];
+            long allocatedBytes = 0;
+            for (int thread = 0; thread < THREADS; thread++) {
+                long[] nanos = results.get(thread).get(1, TimeUnit.MINUTES);
+                System.arraycopy(nanos, 0, latencies, thread * REQUESTS_PER_THREAD, REQUESTS_PER_THREAD);
+                allocatedBytes += nanos[REQUESTS_PER_THREAD];
+            }
+            return new LoadResult(latencies, allocatedBytes / latencies.length);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class LoadResult {
+
+        private final long[] latencies;
+        private final long allocatedBytesPerRequest;
+
+        LoadResult(long[] latencies, long allocatedBytesPerRequest) {
+            this.latencies = latencies;
+            this.allocatedBytesPerRequest = allocatedBytesPerRequest;
+            Arrays.sort(latencies);
+        }
+
+        private double percentileMillis(double percentile) {
+            return latencies[(int) Math.ceil(percentile * latencies.length) - 1] / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, p50 %.2f ms, p99 %.2f ms, %d bytes allocated per request",
+                    latencies.length, percentileMillis(0.50), percentileMillis(0.99), allocatedBytesPerRequest);
+        }
+    }
+}
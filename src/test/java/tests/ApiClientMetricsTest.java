@@ -0,0 +1,207 @@
+package tests;
+
+import com.mastercard.developer.interceptors.OkHttp2OAuth1Interceptor;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.QueueDispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.api.SubscriptionApi;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openapitools.client.model.Subscription;
+import tests.utils.ApiClientBuilder;
+import tests.utils.ApiClientMetrics;
+import tests.utils.Config;
+import tests.utils.ConcurrentHistogram;
+import tests.utils.InstrumentedApiClient;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class pulls pages from a local MockWebServer through an ApiClient built with an ApiClientMetrics listener,
+ * and checks that signing, exchange and deserialization times are told apart, along with bytes on the wire and
+ * notifications per page.
+ *
+ * <p> A freshly generated 2048 bit RSA key stands in for the sandbox key, so no credentials are needed.
+ **/
+
+public class ApiClientMetricsTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime T1 = T0.plusDays(1);
+    private static final int PAGES = 20;
+    private static final int PAGE_LIMIT = 100;
+    private static final long LATENCY_MILLIS = 50;
+    private static final String NOTIFICATIONS = "GET /notifications";
+
+    private final NotificationStubDispatcher dispatcher = new NotificationStubDispatcher(NotificationStubDispatcher.generate(PAGES * PAGE_LIMIT, T0, Duration.ofDays(1), SUBSCRIPTION_NAME));
+    private MockWebServer server;
+    private PrivateKey signingKey;
+
+    @BeforeEach
+    public void before() throws Exception {
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(dispatcher);
+        server.start();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        signingKey = generator.generateKeyPair().getPrivate();
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that percentiles stay within the bucket precision and that concurrent recording loses nothing
+     */
+    @Test
+    public void testHistogramPrecisionAndConcurrentRecording() throws Exception {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+        assertThat(histogram.getCount()).isEqualTo(100_000);
+        assertThat(histogram.getMax()).isEqualTo(100_000);
+        assertThat(histogram.getMean()).isEqualTo(50_000.5);
+        assertThat((double) histogram.getValueAtPercentile(50)).isBetween(50_000.0, 50_000 * 1.035);
+        assertThat((double) histogram.getValueAtPercentile(99)).isBetween(99_000.0, 99_000 * 1.035);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100_000);
+
+        ConcurrentHistogram shared = new ConcurrentHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> recorders = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                recorders.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        shared.record(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+                    }
+                }));
+            }
+            for (Future<?> recorder : recorders) {
+                recorder.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(shared.getCount()).isEqualTo(400_000);
+        assertThat(shared.getValueAtPercentile(100)).isEqualTo(shared.getMax());
+    }
+
+    /**
+     * Test that signing, the exchange and deserialization are timed separately, with bytes as sent and notifications per page
+     */
+    @Test
+    public void testTimesAreTakenApart() throws Exception {
+        dispatcher.latencyMillis(LATENCY_MILLIS).gzip(true);
+        ApiClientMetrics metrics = new ApiClientMetrics();
+        ApiClient apiClient = new ApiClientBuilder()
+                .basePath(server.url(NotificationStubDispatcher.BASE_PATH).toString())
+                .networkInterceptor(new OkHttp2OAuth1Interceptor(consumerKey, signingKey))
+                .listener(metrics)
+                .build();
+        assertThat(apiClient).isInstanceOf(InstrumentedApiClient.class);
+        NotificationsApi notificationsApi = new NotificationsApi(apiClient);
+
+        long uncompressedBytes = 0;
+        for (int i = 0; i < PAGES; i++) {
+            NotificationsWrapper page = notificationsApi.notificationsGet(T0, T1, null, null, i * PAGE_LIMIT, PAGE_LIMIT);
+            uncompressedBytes += apiClient.getJSON().serialize(page).getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        System.out.print(metrics);
+        ApiClientMetrics.EndpointMetrics notifications = metrics.get(NOTIFICATIONS);
+        assertThat(metrics.getEndpoints()).containsOnlyKeys(NOTIFICATIONS);
+        assertThat(notifications.getExchange().getCount()).isEqualTo(PAGES);
+        assertThat(notifications.getSigning().getCount()).isEqualTo(PAGES);
+        assertThat(notifications.getDeserialize().getCount()).isEqualTo(PAGES);
+        assertThat(notifications.getNotificationsPerPage().getMean()).isEqualTo(PAGE_LIMIT);
+        assertThat(notifications.getErrorCount()).isZero();
+
+        // The stub's latency is on the exchange, and neither on signing nor on deserialization
+        assertThat(notifications.getExchange().getValueAtPercentile(50)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS));
+        assertThat(notifications.getSigning().getValueAtPercentile(50)).isPositive().isLessThan(TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS));
+        assertThat(notifications.getDeserialize().getValueAtPercentile(50)).isPositive().isLessThan(TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS));
+        // Bytes are counted as they came over the wire, gzipped
+        assertThat(notifications.getResponseBytes()).isPositive().isLessThan(uncompressedBytes / 2);
+    }
+
+    /**
+     * Test that a body arriving slowly is decoded as it arrives, with the wait for it left out of the deserialization time
+     */
+    @Test
+    public void testSlowBodyIsNotCountedAsDeserialization() throws Exception {
+        ApiClientMetrics metrics = new ApiClientMetrics();
+        ApiClient apiClient = new ApiClientBuilder()
+                .basePath(server.url(NotificationStubDispatcher.BASE_PATH).toString())
+                .signing(consumerKey, signingKey)
+                .listener(metrics)
+                .build();
+        NotificationsWrapper expected = new NotificationsWrapper()
+                .notifications(NotificationStubDispatcher.generate(PAGE_LIMIT, T0, Duration.ofDays(1), SUBSCRIPTION_NAME));
+        String body = apiClient.getJSON().serialize(expected);
+        // The body takes about 100 ms to arrive, in 20 chunks
+        long chunkBytes = body.length() / 20 + 1;
+        QueueDispatcher queue = new QueueDispatcher();
+        queue.enqueueResponse(new MockResponse().setHeader("Content-Type", "application/json").setBody(body).throttleBody(chunkBytes, 5, TimeUnit.MILLISECONDS));
+        server.setDispatcher(queue);
+
+        NotificationsWrapper page = new NotificationsApi(apiClient).notificationsGet(T0, T1, null, null, 0, PAGE_LIMIT);
+
+        System.out.print(metrics);
+        ApiClientMetrics.EndpointMetrics notifications = metrics.get(NOTIFICATIONS);
+        assertThat(page.getNotifications()).hasSize(PAGE_LIMIT);
+        assertThat(notifications.getExchange().getValueAtPercentile(50)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(90));
+        assertThat(notifications.getDeserialize().getValueAtPercentile(50)).isPositive().isLessThan(TimeUnit.MILLISECONDS.toNanos(45));
+    }
+
+    /**
+     * Test that failed exchanges are counted as errors, under the endpoint with its id replaced, and request bodies as bytes sent
+     */
+    @Test
+    public void testErrorsAndRequestBytes() throws Exception {
+        ApiClientMetrics metrics = new ApiClientMetrics();
+        ApiClient apiClient = new ApiClientBuilder()
+                .basePath(server.url(NotificationStubDispatcher.BASE_PATH).toString())
+                .signing(consumerKey, signingKey)
+                .listener(metrics)
+                .build();
+        SubscriptionApi subscriptionApi = new SubscriptionApi(apiClient);
+        Subscription subscription = new Subscription().name(SUBSCRIPTION_NAME).subjectType(Subscription.SubjectTypeEnum.fromValue(SUBJECT_TYPE));
+
+        assertThatThrownBy(() -> subscriptionApi.getSubscription("42")).isInstanceOf(ApiException.class);
+        assertThatThrownBy(() -> subscriptionApi.subscriptionsPost(subscription)).isInstanceOf(ApiException.class);
+
+        System.out.print(metrics);
+        assertThat(metrics.get("GET /subscriptions/{id}").getErrorCount()).isEqualTo(1);
+        assertThat(metrics.get("GET /subscriptions/{id}").getSigning().getCount()).isEqualTo(1);
+        assertThat(metrics.get("POST /subscriptions").getErrorCount()).isEqualTo(1);
+        assertThat(metrics.get("POST /subscriptions").getRequestBytes()).isEqualTo(apiClient.getJSON().serialize(subscription).getBytes(StandardCharsets.UTF_8).length);
+        // Error bodies are not deserialized
+        assertThat(metrics.get("POST /subscriptions").getDeserialize().getCount()).isZero();
+    }
+}
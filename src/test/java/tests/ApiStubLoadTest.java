@@ -0,0 +1,234 @@
+package tests;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.FieldMappingApi;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.api.SubscriptionApi;
+import org.openapitools.client.model.Error500;
+import org.openapitools.client.model.FieldContent;
+import org.openapitools.client.model.FieldMapping;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openapitools.client.model.SpecificationRequest;
+import org.openapitools.client.model.Subscription;
+import org.openapitools.client.model.SubscriptionResponse;
+import tests.utils.ApiClientBuilder;
+import tests.utils.ApiStubDispatcher;
+import tests.utils.Config;
+import tests.utils.LoadHarness;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class drives the real ApiClient against ApiStubDispatcher, a local stand-in for the whole API of
+ * notification-swagger.yml: notification paging over a synthetic dataset, subscriptions seeded from the spec's
+ * GetSubscriptionResponse example, and field mappings.
+ *
+ * <p> It checks offset, limit and total semantics, injected latency, errors and throttling, and runs a short load test
+ * with LoadHarness that prints throughput with p50, p99 and p999 latencies.
+ **/
+
+public class ApiStubLoadTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime T1 = T0.plusDays(1);
+    private static final String OTHER_SUBSCRIPTION_NAME = "OpenAPITest_SUBSC_OTHER";
+    private static final int COUNT = 1000;
+    private static final int PAGE_LIMIT = 100;
+
+    private MockWebServer server;
+    private ApiStubDispatcher dispatcher;
+    private ApiClient apiClient;
+
+    @BeforeEach
+    public void before() throws Exception {
+        List<Notification> notifications = NotificationStubDispatcher.generate(COUNT, T0, Duration.ofDays(1), SUBSCRIPTION_NAME);
+        for (int i = 1; i < notifications.size(); i += 2) {
+            notifications.get(i).subscriptionName(OTHER_SUBSCRIPTION_NAME);
+        }
+        dispatcher = new ApiStubDispatcher(new NotificationStubDispatcher(notifications));
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(dispatcher);
+        server.start();
+        apiClient = new ApiClientBuilder().basePath(server.url(NotificationStubDispatcher.BASE_PATH).toString()).build();
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that pages follow offset, limit and total, with and without a subscription filter, up to and past the end
+     */
+    @Test
+    public void testNotificationPaging() throws Exception {
+        NotificationsApi notificationsApi = new NotificationsApi(apiClient);
+
+        List<Integer> ids = new ArrayList<>();
+        for (int offset = 0; offset < COUNT; offset += PAGE_LIMIT) {
+            NotificationsWrapper page = notificationsApi.notificationsGet(T0, T1, null, null, offset, PAGE_LIMIT);
+            assertThat(page.getOffset()).isEqualTo(offset);
+            assertThat(page.getLimit()).isEqualTo(PAGE_LIMIT);
+            assertThat(page.getCount()).isEqualTo(PAGE_LIMIT);
+            assertThat(page.getTotal()).isEqualTo(COUNT);
+            page.getNotifications().forEach(notification -> ids.add(purchaseRequestId(notification)));
+        }
+        assertThat(ids).hasSize(COUNT).isSorted().doesNotHaveDuplicates();
+
+        NotificationsWrapper past = notificationsApi.notificationsGet(T0, T1, null, null, COUNT, PAGE_LIMIT);
+        assertThat(past.getCount()).isZero();
+        assertThat(past.getTotal()).isEqualTo(COUNT);
+
+        // Half of the dataset belongs to the other subscription, so its last page is partial
+        List<String> subscriptionNames = Collections.singletonList(OTHER_SUBSCRIPTION_NAME);
+        NotificationsWrapper filtered = notificationsApi.notificationsGet(T0, T1, subscriptionNames, null, 450, PAGE_LIMIT);
+        assertThat(filtered.getTotal()).isEqualTo(COUNT / 2);
+        assertThat(filtered.getCount()).isEqualTo(50);
+        assertThat(filtered.getNotifications()).extracting(Notification::getSubscriptionName).containsOnly(OTHER_SUBSCRIPTION_NAME);
+        assertThat(filtered.getNotifications().stream().map(ApiStubLoadTest::purchaseRequestId).collect(Collectors.toList()))
+                .startsWith(901).endsWith(999);
+
+        // start is inclusive and end is exclusive
+        OffsetDateTime start = OffsetDateTime.parse(notificationsApi.notificationsGet(T0, T1, null, null, 10, 1).getNotifications().get(0).getCreatedTimestamp());
+        OffsetDateTime end = OffsetDateTime.parse(notificationsApi.notificationsGet(T0, T1, null, null, 20, 1).getNotifications().get(0).getCreatedTimestamp());
+        NotificationsWrapper range = notificationsApi.notificationsGet(start, end, null, null, 0, PAGE_LIMIT);
+        assertThat(range.getTotal()).isEqualTo(10);
+        assertThat(purchaseRequestId(range.getNotifications().get(0))).isEqualTo(10);
+    }
+
+    /**
+     * Test that subscriptions start from the spec's example and can be listed, sorted, created, read, updated and deleted
+     */
+    @Test
+    public void testSubscriptionsAndFieldMappings() throws Exception {
+        SubscriptionApi subscriptionApi = new SubscriptionApi(apiClient);
+
+        List<SubscriptionResponse> examples = subscriptionApi.getAllSubscription(0, 10, null);
+        assertThat(examples).extracting(SubscriptionResponse::getName).containsExactly("Enter_unique_subscription_name_here", "SubscriptionName");
+        assertThat(examples.get(0).getSpecifications().get(0).getFieldMapping().getName()).isEqualTo("purchaseRequest.rcnAlias");
+        assertThat(examples.get(0).getSpecifications().get(0).getExpectedContent().getValue()).isEqualTo("Travel Expense RCN");
+
+        Subscription subscription = new Subscription()
+                .name(SUBSCRIPTION_NAME)
+                .subjectType(Subscription.SubjectTypeEnum.fromValue(SUBJECT_TYPE))
+                .addSpecificationsItem(new SpecificationRequest()
+                        .type(SPECIFICATION_TYPE)
+                        .operator(SPECIFICATION_OPERATOR)
+                        .fieldMappingName("purchaseRequest.rcnAlias")
+                        .fieldOperator(FIELD_OPERATOR)
+                        .expectedContent(new FieldContent().contentType(CONTENT_TYPE).value("Travel Expense RCN")));
+        SubscriptionResponse created = subscriptionApi.subscriptionsPost(subscription);
+        assertThat(created.getId()).isNotEmpty();
+        assertThat(created.getActive()).isTrue();
+        assertThat(created.getSpecifications().get(0).getFieldMapping().getDisplayName()).isEqualTo("Purchase request RCN alias");
+        assertThat(subscriptionApi.getSubscription(created.getId()).getName()).isEqualTo(SUBSCRIPTION_NAME);
+        assertThat(subscriptionApi.getAllSubscription(0, 10, "-name")).extracting(SubscriptionResponse::getName)
+                .containsExactly("SubscriptionName", SUBSCRIPTION_NAME, "Enter_unique_subscription_name_here");
+        assertThat(subscriptionApi.getAllSubscription(1, 1, "name")).extracting(SubscriptionResponse::getName).containsExactly(SUBSCRIPTION_NAME);
+        assertThatThrownBy(() -> subscriptionApi.subscriptionsPost(subscription)).isInstanceOf(ApiException.class)
+                .extracting(e -> ((ApiException) e).getCode()).isEqualTo(400);
+
+        assertThat(subscriptionApi.updateSubscription(created.getId(), subscription.active(false)).getActive()).isFalse();
+        subscriptionApi.subscriptionsIdDelete(created.getId());
+        assertThatThrownBy(() -> subscriptionApi.getSubscription(created.getId())).isInstanceOf(ApiException.class)
+                .extracting(e -> ((ApiException) e).getCode()).isEqualTo(404);
+        assertThat(dispatcher.getSubscriptions()).hasSize(2);
+
+        List<FieldMapping> fieldMappings = new FieldMappingApi(apiClient).fieldmappingsGet();
+        assertThat(fieldMappings).extracting(FieldMapping::getSubjectType).contains("PAYMENT_AUTHORIZATION", "PAYMENT_UPDATE");
+        assertThat(fieldMappings).extracting(FieldMapping::getName).contains("purchaseRequest.rcnAlias");
+    }
+
+    /**
+     * Test that injected latency, errors and throttling show in the harness report, with error bodies as in the spec
+     */
+    @Test
+    public void testInjectedLatencyErrorsAndThrottling() throws Exception {
+        NotificationsApi notificationsApi = new NotificationsApi(apiClient);
+        LoadHarness harness = new LoadHarness().threads(4).duration(Duration.ofSeconds(1));
+
+        dispatcher.latency(20, 60).errorRate(0.2, 503);
+        LoadHarness.Report slow = harness.run(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, PAGE_LIMIT));
+        System.out.print(slow);
+        assertThat(slow.getLatency().getValueAtPercentile(50)).isBetween(TimeUnit.MILLISECONDS.toNanos(15), TimeUnit.MILLISECONDS.toNanos(40));
+        assertThat(slow.getLatency().getValueAtPercentile(99)).isGreaterThan(slow.getLatency().getValueAtPercentile(50));
+        assertThat(slow.getErrors()).containsOnlyKeys("HTTP 503");
+        assertThat((double) slow.getErrorCount() / slow.getCalls()).isBetween(0.1, 0.3);
+
+        ApiException error = null;
+        while (error == null) {
+            try {
+                notificationsApi.notificationsGet(T0, T1, null, null, 0, 1);
+            } catch (ApiException e) {
+                error = e;
+            }
+        }
+        Error500 body = apiClient.getJSON().deserialize(error.getResponseBody(), Error500.class);
+        assertThat(body.getErrors().getError().get(0).getReasonCode()).isEqualTo("server.error");
+        assertThat(body.getErrors().getError().get(0).getRecoverable()).isTrue();
+
+        dispatcher.latency(0, 0).errorRate(0, 200).throttle(50);
+        LoadHarness.Report throttled = harness.run(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, 1));
+        System.out.print(throttled);
+        assertThat(throttled.getErrors()).containsOnlyKeys("HTTP 429");
+        // One second's burst and one second's rate, with a margin for the time it takes the threads to stop
+        assertThat(throttled.getCalls() - throttled.getErrorCount()).isBetween(50L, 120L);
+        // A fresh throttle of one request per second lets the first request through and refuses the next
+        dispatcher.throttle(1);
+        notificationsApi.notificationsGet(T0, T1, null, null, 0, 1);
+        assertThatThrownBy(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, 1)).isInstanceOf(ApiException.class)
+                .satisfies(e -> assertThat(((ApiException) e).getResponseHeaders().get("Retry-After")).containsExactly("1"));
+    }
+
+    /**
+     * Test a short load run over a dataset of 100,000 notifications with random pages, reporting throughput and percentiles
+     */
+    @Test
+    public void testLoad() throws Exception {
+        NotificationStubDispatcher notifications = dispatcher.getNotifications();
+        notifications.add(NotificationStubDispatcher.generate(100_000, T1, Duration.ofDays(1), SUBSCRIPTION_NAME));
+        dispatcher.latency(2, 10);
+        NotificationsApi notificationsApi = new NotificationsApi(apiClient);
+        int pages = 100_000 / PAGE_LIMIT;
+
+        LoadHarness.Report report = new LoadHarness().threads(8).warmup(Duration.ofSeconds(1)).duration(Duration.ofSeconds(3)).run(() -> {
+            int offset = ThreadLocalRandom.current().nextInt(pages) * PAGE_LIMIT;
+            NotificationsWrapper page = notificationsApi.notificationsGet(T1, T1.plusDays(1), null, null, offset, PAGE_LIMIT);
+            if (page.getCount() != PAGE_LIMIT || page.getTotal() != 100_000) {
+                throw new IllegalStateException("Unexpected page " + page.getOffset() + " of " + page.getTotal());
+            }
+        });
+
+        System.out.print(report);
+        assertThat(report.getErrorCount()).isZero();
+        assertThat(report.getCalls()).isGreaterThan(100);
+        assertThat(report.getLatency().getValueAtPercentile(50)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(2) * 95 / 100);
+        assertThat(report.getLatency().getValueAtPercentile(99)).isGreaterThanOrEqualTo(report.getLatency().getValueAtPercentile(50));
+        assertThat(report.getLatency().getValueAtPercentile(99.9)).isGreaterThanOrEqualTo(report.getLatency().getValueAtPercentile(99));
+    }
+
+    private static int purchaseRequestId(Notification notification) {
+        return ((NotificationContent) notification.getContent()).getPurchaseRequest().getPurchaseRequestId();
+    }
+}
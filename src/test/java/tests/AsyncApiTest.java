@@ -0,0 +1,231 @@
+package tests;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiCallback;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.JSON;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.FieldMapping;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openapitools.client.model.Subscription;
+import tests.utils.AsyncApi;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class calls the three APIs through the AsyncApi CompletableFuture facade against a local MockWebServer,
+ * including a thousand pulls in flight at once, and compares it with the generated callback-style *Async methods.
+ **/
+
+public class AsyncApiTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime T1 = T0.plusDays(1);
+    private static final int PULLS = 1_000;
+    private static final long LATENCY_MILLIS = 50;
+    private static final int MAX_IN_FLIGHT = 250;
+
+    private final NotificationStubDispatcher notifications = new NotificationStubDispatcher(NotificationStubDispatcher.generate(100, T0, Duration.ofDays(1), SUBSCRIPTION_NAME));
+    private MockWebServer server;
+    private ApiClient apiClient;
+
+    @BeforeEach
+    public void before() throws Exception {
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new ApiDispatcher(notifications));
+        server.start();
+        apiClient = Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString());
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that calls to the three APIs compose into one pipeline
+     */
+    @Test
+    public void testComposesCallsAcrossApis() throws Exception {
+        try (AsyncApi asyncApi = new AsyncApi(apiClient)) {
+            NotificationsWrapper page = asyncApi.fieldmappingsGet()
+                    .thenCompose(fieldMappings -> asyncApi.subscriptionsPost(new Subscription().name(SUBSCRIPTION_NAME)
+                            .subjectType(Subscription.SubjectTypeEnum.fromValue(fieldMappings.get(0).getSubjectType()))))
+                    .thenCompose(subscription -> asyncApi.notificationsGet(T0, T1, Collections.singletonList(subscription.getName()), null, 0, 25))
+                    .get(10, TimeUnit.SECONDS);
+
+            assertThat(page.getTotal()).isEqualTo(100);
+            assertThat(page.getNotifications()).hasSize(25);
+            assertThat(asyncApi.getAllSubscription(0, 25, SORT).get(10, TimeUnit.SECONDS)).hasSize(1);
+            assertThat(asyncApi.subscriptionsIdDelete("1").get(10, TimeUnit.SECONDS)).isNull();
+        }
+    }
+
+    /**
+     * Test a thousand pulls in flight at once: on virtual threads from Java 21, on a bounded platform pool before that
+     */
+    @Test
+    public void testManyPullsInFlight() throws Exception {
+        notifications.latencyMillis(LATENCY_MILLIS);
+        List<CompletableFuture<NotificationsWrapper>> pulls = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        long platformThreads;
+        try (AsyncApi asyncApi = new AsyncApi(apiClient).maxInFlight(MAX_IN_FLIGHT)) {
+            for (int i = 0; i < PULLS; i++) {
+                pulls.add(asyncApi.notificationsGet(T0, T1, null, null, i % 100, 1));
+            }
+            // Virtual threads are not listed here, and the platform threads of the fallback pool are named async-api-n
+            platformThreads = Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().startsWith("async-api-")).count();
+            CompletableFuture.allOf(pulls.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        String javaVersion = System.getProperty("java.specification.version");
+        System.out.printf("Java %s, virtual threads %s: %d pulls of %d ms in %d ms on %d platform threads%n",
+                javaVersion, AsyncApi.virtualThreadsAvailable(), PULLS, LATENCY_MILLIS, elapsedMillis, platformThreads);
+        assertThat(pulls).allMatch(pull -> pull.join().getNotifications().size() == 1);
+        assertThat(AsyncApi.virtualThreadsAvailable()).isEqualTo(!javaVersion.startsWith("1.") && Integer.parseInt(javaVersion) >= 21);
+        assertThat(platformThreads).isLessThanOrEqualTo(AsyncApi.virtualThreadsAvailable() ? 0 : AsyncApi.DEFAULT_PLATFORM_THREADS);
+    }
+
+    /**
+     * Test that the facade leaves the shared OkHttpClient as it found it, while every generated *Async call adds an interceptor to it
+     */
+    @Test
+    public void testCallbackVariantsLeakInterceptors() throws Exception {
+        int interceptors = apiClient.getHttpClient().networkInterceptors().size();
+        try (AsyncApi asyncApi = new AsyncApi(apiClient)) {
+            for (int i = 0; i < 50; i++) {
+                asyncApi.notificationsGet(T0, T1, null, null, 0, 1).get(10, TimeUnit.SECONDS);
+            }
+        }
+        assertThat(apiClient.getHttpClient().networkInterceptors()).hasSize(interceptors);
+
+        NotificationsApi notificationsApi = new NotificationsApi(apiClient);
+        CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            notificationsApi.notificationsGetAsync(T0, T1, null, null, 0, 1, new CountingCallback(done));
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(apiClient.getHttpClient().networkInterceptors()).hasSize(interceptors + 50);
+    }
+
+    /**
+     * Test that failures surface as ApiException and that cancelling a future cancels its HTTP call
+     */
+    @Test
+    public void testFailuresAndCancellation() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (AsyncApi asyncApi = new AsyncApi(apiClient, executor)) {
+            assertThatThrownBy(() -> asyncApi.getSubscription("missing").join())
+                    .isInstanceOf(CompletionException.class)
+                    .hasCauseInstanceOf(ApiException.class)
+                    .satisfies(e -> assertThat(((ApiException) e.getCause()).getCode()).isEqualTo(404));
+            assertThat(asyncApi.getSubscription(null).isCompletedExceptionally()).isTrue();
+
+            notifications.latencyMillis(3_000);
+            CompletableFuture<NotificationsWrapper> slow = asyncApi.notificationsGet(T0, T1, null, null, 0, 1);
+            TimeUnit.MILLISECONDS.sleep(200);
+            long startNanos = System.nanoTime();
+            assertThat(slow.cancel(true)).isTrue();
+            // The single executor thread is only free for the next call once the cancelled one has been aborted
+            List<FieldMapping> fieldMappings = asyncApi.fieldmappingsGet().get(10, TimeUnit.SECONDS);
+            assertThat(fieldMappings).isNotEmpty();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).isLessThan(2_000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class CountingCallback implements ApiCallback<NotificationsWrapper> {
+
+        private final CountDownLatch done;
+
+        CountingCallback(CountDownLatch done) {
+            this.done = done;
+        }
+
+        @Override
+        public void onFailure(ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
+            done.countDown();
+        }
+
+        @Override
+        public void onSuccess(NotificationsWrapper result, int statusCode, Map<String, List<String>> responseHeaders) {
+            done.countDown();
+        }
+
+        @Override
+        public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+        }
+
+        @Override
+        public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
+        }
+    }
+
+    /**
+     * Serves /notifications through NotificationStubDispatcher and answers /fieldmappings and /subscriptions with one item.
+     */
+    private static class ApiDispatcher extends Dispatcher {
+
+        private final NotificationStubDispatcher notifications;
+        private final JSON json = new JSON();
+
+        ApiDispatcher(NotificationStubDispatcher notifications) {
+            this.notifications = notifications;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            String path = request.getPath().substring(NotificationStubDispatcher.BASE_PATH.length());
+            if (path.startsWith("/notifications")) {
+                return notifications.dispatch(request);
+            }
+            if (path.equals("/fieldmappings")) {
+                return json(json.serialize(Collections.singletonList(new FieldMapping().name("purchaseRequest.rcnAlias").subjectType(SUBJECT_TYPE))));
+            }
+            String subscription = "{\"id\":\"1\",\"name\":\"" + SUBSCRIPTION_NAME + "\",\"subjectType\":\"" + SUBJECT_TYPE + "\",\"active\":true,\"specifications\":[]}";
+            if (path.startsWith("/subscriptions?") || (path.equals("/subscriptions") && request.getMethod().equals("GET"))) {
+                return json("[" + subscription + "]");
+            }
+            if (path.equals("/subscriptions") && request.getMethod().equals("POST")) {
+                return json(subscription).setResponseCode(201);
+            }
+            if (path.equals("/subscriptions/1")) {
+                return request.getMethod().equals("DELETE") ? new MockResponse().setResponseCode(204) : json(subscription);
+            }
+            return new MockResponse().setResponseCode(404);
+        }
+
+        private static MockResponse json(String body) {
+            return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package tests;
+
+import com.mastercard.developer.interceptors.OkHttp2OAuth1Interceptor;
+import com.mastercard.developer.oauth.OAuth;
+import com.mastercard.developer.oauth.Util;
+import com.mastercard.developer.utils.AuthenticationUtils;
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.JSON;
+import org.openapitools.client.api.NotificationsApi;
+import tests.utils.CachedOAuth1Interceptor;
+import tests.utils.Config;
+import tests.utils.NotificationExamples;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class signs requests with CachedOAuth1Interceptor and checks every header byte-for-byte against the stock signer.
+ *
+ * <p> The nonce and timestamp are random, so they are read back from the header and fed to the package-private steps of
+ * the stock OAuth class. RSA PKCS#1 v1.5 signatures are deterministic, so the same base string must give the same signature.
+ **/
+
+public class CachedOAuth1InterceptorTest implements Config {
+
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+    private static final Pattern HEADER_PARAMETER = Pattern.compile("(oauth_\\w+)=\"([^\"]*)\"");
+
+    private static PrivateKey signingKey;
+    private static CachedOAuth1Interceptor interceptor;
+
+    @BeforeAll
+    public static void before() throws Exception {
+        signingKey = AuthenticationUtils.loadSigningKey(signingKeyPkcs12FilePath, signingKeyAlias, signingKeyPassword);
+        interceptor = new CachedOAuth1Interceptor(consumerKey, signingKey);
+    }
+
+    /**
+     * Test a notifications GET with an encoded query, repeated parameters and a parameter sorting after the oauth ones
+     */
+    @Test
+    public void testNotificationsGet() throws Exception {
+        assertSameAsStock(new Request.Builder()
+                .url(BASE_PATH + "/notifications?start=2021-09-01T00%3A00Z&end=2021-09-08T00%3A00Z"
+                        + "&subscription_name=b%20name&subscription_name=a%20name&push_status=PENDING&push_status=FAILED&offset=0&limit=50&Format=JSON")
+                .get()
+                .build());
+    }
+
+    /**
+     * Test a query that was not encoded, with an empty value and a parameter without a value
+     */
+    @Test
+    public void testUnencodedQuery() throws Exception {
+        assertSameAsStock(new Request.Builder().url(BASE_PATH + "/subscriptions?offset=1&limit=5&sort=name&empty=&flag").get().build());
+    }
+
+    /**
+     * Test requests with and without a body
+     */
+    @Test
+    public void testBodies() throws Exception {
+        String subscription = new JSON().serialize(NotificationExamples.paymentUpdate());
+        assertSameAsStock(new Request.Builder().url(BASE_PATH + "/subscriptions").post(RequestBody.create(JSON_MEDIA_TYPE, subscription)).build());
+        assertSameAsStock(new Request.Builder().url(BASE_PATH + "/subscriptions/42").put(RequestBody.create(JSON_MEDIA_TYPE, "{\"name\":\"é\"}")).build());
+        assertSameAsStock(new Request.Builder().url(BASE_PATH + "/subscriptions/42").post(RequestBody.create(JSON_MEDIA_TYPE, "")).build());
+        assertSameAsStock(new Request.Builder().url(BASE_PATH + "/subscriptions/42").delete().build());
+        assertSameAsStock(new Request.Builder().url(BASE_PATH + "/fieldmappings").get().build());
+    }
+
+    /**
+     * Test base URI normalization: default and explicit ports, upper case host and an escaped path
+     */
+    @Test
+    public void testBaseUriNormalization() throws Exception {
+        assertSameAsStock(new Request.Builder().url("https://SANDBOX.api.mastercard.com:443/commercial-event-notifications/fieldmappings").build());
+        assertSameAsStock(new Request.Builder().url("http://localhost:8080/commercial-event-notifications/fieldmappings").build());
+        assertSameAsStock(new Request.Builder().url("http://localhost/commercial-event-notifications/subscriptions/a%20b?x=1").build());
+    }
+
+    /**
+     * Test the requests handed to the stock signer: query names needing encoding and names clashing with oauth parameters
+     */
+    @Test
+    public void testFallbackRequests() throws Exception {
+        assertSameAsStock(new Request.Builder().url(BASE_PATH + "/notifications?a%20b=1&limit=5").build());
+        assertSameAsStock(new Request.Builder().url(BASE_PATH + "/notifications?oauth_version=2.0&limit=5").build());
+    }
+
+    /**
+     * Test that requests sent through the generated client carry the same header as the stock interceptor would add
+     */
+    @Test
+    public void testGeneratedClientRequest() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(new JSON().serialize(NotificationExamples.page(1))));
+        server.start();
+        try {
+            ApiClient client = Config.setupLocalApiClient(server.url("/commercial-event-notifications").toString());
+            client.getHttpClient().networkInterceptors().add(interceptor);
+            new NotificationsApi(client).notificationsGet(startDate, endDate, Collections.singletonList(SUBSCRIPTION_NAME),
+                    Arrays.asList("FAILED", "PENDING"), 0, 25);
+
+            RecordedRequest recorded = server.takeRequest();
+            Request request = new Request.Builder().url(server.url(recorded.getPath())).get().build();
+            assertThat(recorded.getHeader(OAuth.AUTHORIZATION_HEADER_NAME)).isEqualTo(stockHeader(request, recorded.getHeader(OAuth.AUTHORIZATION_HEADER_NAME)));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Test that the interceptor adds exactly one Authorization header, as OkHttp2OAuth1Interceptor does
+     */
+    @Test
+    public void testInterceptorAddsOneHeader() throws Exception {
+        Request request = new Request.Builder().url(BASE_PATH + "/fieldmappings").build();
+        RecordingChain cached = new RecordingChain(request);
+        RecordingChain stock = new RecordingChain(request);
+        interceptor.intercept(cached);
+        new OkHttp2OAuth1Interceptor(consumerKey, signingKey).intercept(stock);
+
+        assertThat(cached.proceeded.headers(OAuth.AUTHORIZATION_HEADER_NAME)).hasSize(1);
+        assertThat(cached.proceeded.headers().names()).isEqualTo(stock.proceeded.headers().names());
+    }
+
+    /**
+     * Test that requests signed at the same time, each on a thread of its own, all get the header of the stock signer
+     */
+    @Test
+    public void testConcurrentSigningOnFreshThreads() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        Map<Integer, Throwable> failures = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 32; i++) {
+            int id = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    assertSameAsStock(new Request.Builder().url(BASE_PATH + "/subscriptions/" + id).post(RequestBody.create(JSON_MEDIA_TYPE, "{\"id\":" + id + "}")).build());
+                } catch (Throwable e) {
+                    failures.put(id, e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(failures).isEmpty();
+    }
+
+    private static void assertSameAsStock(Request request) throws Exception {
+        String header = interceptor.getAuthorizationHeader(request);
+        assertThat(header).isEqualTo(stockHeader(request, header));
+    }
+
+    /**
+     * Rebuilds the header with the stock OAuth steps, using the nonce and timestamp found in the given header.
+     */
+    private static String stockHeader(Request request, String header) throws Exception {
+        Map<String, String> parameters = headerParameters(header);
+        URI uri = request.uri();
+        String payload = null;
+        if (request.body() != null && request.body().contentLength() > 0) {
+            Buffer buffer = new Buffer();
+            request.body().writeTo(buffer);
+            payload = buffer.readUtf8();
+        }
+
+        Map<String, String> oauthParameters = new HashMap<>();
+        oauthParameters.put("oauth_consumer_key", consumerKey);
+        oauthParameters.put("oauth_nonce", parameters.get("oauth_nonce"));
+        oauthParameters.put("oauth_signature_method", "RSA-SHA256");
+        oauthParameters.put("oauth_timestamp", parameters.get("oauth_timestamp"));
+        oauthParameters.put("oauth_version", "1.0");
+        oauthParameters.put("oauth_body_hash", (String) invoke("getBodyHash", payload, StandardCharsets.UTF_8, "SHA-256"));
+
+        Object queryParameters = invoke("extractQueryParams", uri, StandardCharsets.UTF_8);
+        String parameterString = (String) invoke("toOauthParamString", queryParameters, oauthParameters);
+        String baseString = (String) invoke("getSignatureBaseString", request.method(), invoke("getBaseUriString", uri), parameterString, StandardCharsets.UTF_8);
+        String signature = (String) invoke("signSignatureBaseString", baseString, signingKey, StandardCharsets.UTF_8);
+        oauthParameters.put("oauth_signature", Util.percentEncode(signature, StandardCharsets.UTF_8));
+        return (String) invoke("getAuthorizationString", oauthParameters);
+    }
+
+    private static Map<String, String> headerParameters(String header) {
+        Map<String, String> parameters = new HashMap<>();
+        Matcher matcher = HEADER_PARAMETER.matcher(header);
+        while (matcher.find()) {
+            parameters.put(matcher.group(1), matcher.group(2));
+        }
+        return parameters;
+    }
+
+    private static Object invoke(String name, Object... arguments) throws Exception {
+        for (Method method : OAuth.class.getDeclaredMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == arguments.length) {
+                method.setAccessible(true);
+                return method.invoke(null, arguments);
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private static class RecordingChain implements Interceptor.Chain {
+
+        private final Request request;
+        private Request proceeded;
+
+        RecordingChain(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) {
+            proceeded = request;
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+    }
+}
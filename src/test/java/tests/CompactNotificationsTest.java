@@ -0,0 +1,98 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.CommercialBpsNotificationContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.NotificationsWrapper;
+import tests.utils.CompactNotifications;
+import tests.utils.CompactNotifications.Encoding;
+import tests.utils.Config;
+import tests.utils.NotificationContentTypeAdapterFactory;
+import tests.utils.NotificationExamples;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class stores notifications decoded from JSON in CompactNotifications and checks that they are rebuilt into
+ * the generated models exactly as they were, including unusual timestamps, missing content and content of an unknown
+ * subject, and that each content property is stored as its values call for.
+ **/
+
+public class CompactNotificationsTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int COUNT = 6000;
+
+    private final JSON json = new JSON();
+
+    /**
+     * Test that every notification is rebuilt equal to the one added, field by field and as JSON
+     */
+    @Test
+    public void testRoundTrip() {
+        List<Notification> notifications = decoded(NotificationExamples.mixed(COUNT, T0, 7));
+        notifications.get(1).createdTimestamp("2021-09-01T02:00:00+02:00");
+        notifications.get(2).createdTimestamp(null).content(null);
+        notifications.get(3).createdTimestamp("not a timestamp");
+        notifications.get(4).subject("UNKNOWN_SUBJECT").content(Collections.singletonMap("purchaseRequestId", "4"));
+        ((NotificationContent) notifications.get(6).getContent()).merchant(null).transactionAmount(null);
+
+        CompactNotifications compact = new CompactNotifications(notifications);
+
+        assertThat(compact.size()).isEqualTo(notifications.size());
+        assertThat(compact.asList()).isEqualTo(notifications);
+        assertThat(serialize(compact.asList())).isEqualTo(serialize(notifications));
+        assertThat(compact.getCreatedMillis(1)).isEqualTo(T0.toInstant().toEpochMilli());
+        assertThat(compact.getCreatedMillis(2)).isEqualTo(Long.MIN_VALUE);
+        assertThat(compact.getCreatedTimestamp(1)).isEqualTo("2021-09-01T02:00:00+02:00");
+        assertThat(compact.get(2).getContent()).isNull();
+        assertThat(compact.get(6).getContent()).isInstanceOf(NotificationContent.class);
+        assertThat(((NotificationContent) compact.get(6).getContent()).getMerchant()).isNull();
+    }
+
+    /**
+     * Test that repeating values are dictionary encoded and shared, distinct values are stored as bytes, and integers as ints
+     */
+    @Test
+    public void testEncodings() {
+        CompactNotifications compact = new CompactNotifications(decoded(NotificationExamples.mixed(COUNT, T0, 11)));
+
+        assertThat(compact.getEncoding(NotificationContent.class, "transactionAmount")).isEqualTo(Encoding.INT);
+        assertThat(compact.getEncoding(NotificationContent.class, "purchaseRequest.purchaseRequestId")).isEqualTo(Encoding.INT);
+        assertThat(compact.getEncoding(NotificationContent.class, "transactionCurrencyCode")).isEqualTo(Encoding.DICTIONARY);
+        assertThat(compact.getEncoding(NotificationContent.class, "merchant.name")).isEqualTo(Encoding.DICTIONARY);
+        assertThat(compact.getEncoding(NotificationContent.class, "purchaseRequest.companyGuid")).isEqualTo(Encoding.DICTIONARY);
+        assertThat(compact.getEncoding(NotificationContent.class, "systemTraceAuditNumber")).isEqualTo(Encoding.BYTES);
+        assertThat(compact.getEncoding(CommercialBpsNotificationContent.class, "bpsTransactionId")).isEqualTo(Encoding.BYTES);
+        assertThat(compact.getEncoding(CommercialBpsNotificationContent.class, "status")).isEqualTo(Encoding.DICTIONARY);
+        assertThat(compact.getEncoding(CommercialBpsNotificationContent.class, "errors.reasonCode")).isEqualTo(Encoding.DICTIONARY);
+
+        // Dictionary encoded strings come back as the same instances
+        assertThat(compact.get(0).getSubject()).isSameAs(compact.get(3).getSubject());
+        NotificationContent first = (NotificationContent) compact.get(0).getContent();
+        NotificationContent second = (NotificationContent) compact.get(3).getContent();
+        assertThat(first.getMerchant().getStateOrCountryCode()).isSameAs(second.getMerchant().getStateOrCountryCode());
+        assertThat(first.getSystemTraceAuditNumber()).isNotEqualTo(second.getSystemTraceAuditNumber());
+    }
+
+    /**
+     * Decodes notifications from JSON, as pulled, so that each holds its own String instances
+     */
+    private List<Notification> decoded(List<Notification> notifications) {
+        json.setGson(NotificationContentTypeAdapterFactory.createGson(json));
+        NotificationsWrapper page = new NotificationsWrapper().offset(0).limit(notifications.size()).count(notifications.size()).total((long) notifications.size()).notifications(notifications);
+        return json.<NotificationsWrapper>deserialize(json.serialize(page), NotificationsWrapper.class).getNotifications();
+    }
+
+    private List<String> serialize(List<Notification> notifications) {
+        return notifications.stream().map(json::serialize).collect(Collectors.toList());
+    }
+}
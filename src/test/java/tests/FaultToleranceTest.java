@@ -0,0 +1,329 @@
+package tests;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.FieldMappingApi;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.api.SubscriptionApi;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openapitools.client.model.Subscription;
+import tests.utils.AdaptiveRateLimiter;
+import tests.utils.ApiClientBuilder;
+import tests.utils.CircuitBreakerInterceptor;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+import tests.utils.RetryInterceptor;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class sends requests through RetryInterceptor, CircuitBreakerInterceptor and AdaptiveRateLimiter to a local
+ * MockWebServer that injects 5xx and 429 responses, and checks that reads recover, writes are sent once, failing
+ * endpoints fail fast on their own, and the request rate backs off and recovers.
+ **/
+
+public class FaultToleranceTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime T1 = T0.plusDays(1);
+    private static final Instant NOW = Instant.parse("2021-09-01T00:00:00Z");
+    private static final String NOTIFICATIONS = "GET /notifications";
+    private static final String FIELD_MAPPINGS = "GET /fieldmappings";
+
+    private final NotificationStubDispatcher notifications = new NotificationStubDispatcher(NotificationStubDispatcher.generate(1_000, T0, Duration.ofDays(1), SUBSCRIPTION_NAME));
+    private final FaultyApiDispatcher dispatcher = new FaultyApiDispatcher(notifications);
+    private MockWebServer server;
+
+    @BeforeEach
+    public void before() throws Exception {
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(dispatcher);
+        server.start();
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that GETs are retried through transient 5xx and 429 responses, and that retries stop after the last attempt
+     */
+    @Test
+    public void testReadsAreRetried() throws Exception {
+        RetryInterceptor retry = new RetryInterceptor().delays(5, 50);
+        NotificationsApi notificationsApi = new NotificationsApi(builder().retry(retry).build());
+
+        notifications.failNext(2, 503);
+        assertThat(notificationsApi.notificationsGet(T0, T1, null, null, 0, 25).getNotifications()).hasSize(25);
+        notifications.failNext(1, 429);
+        assertThat(notificationsApi.notificationsGet(T0, T1, null, null, 25, 25).getNotifications()).hasSize(25);
+        assertThat(notifications.getRequestCount()).isEqualTo(5);
+        assertThat(retry.getRetryCount()).isEqualTo(3);
+
+        notifications.failNext(10, 500);
+        assertThatThrownBy(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, 25))
+                .isInstanceOf(ApiException.class)
+                .satisfies(e -> assertThat(((ApiException) e).getCode()).isEqualTo(500));
+        assertThat(notifications.getRequestCount()).isEqualTo(5 + RetryInterceptor.DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Test that a retry waits at least as long as Retry-After asks, and that a response asking for longer than the maximum delay is returned
+     */
+    @Test
+    public void testRetryAfterIsHonoured() throws Exception {
+        MockWebServer throttling = new MockWebServer();
+        throttling.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        throttling.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("{\"notifications\":[],\"total\":0}"));
+        throttling.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "60"));
+        throttling.start();
+        try {
+            RetryInterceptor retry = new RetryInterceptor().delays(5, 10_000);
+            NotificationsApi notificationsApi = new NotificationsApi(new ApiClientBuilder().basePath(throttling.url(NotificationStubDispatcher.BASE_PATH).toString()).retry(retry).build());
+
+            long startNanos = System.nanoTime();
+            assertThat(notificationsApi.notificationsGet(T0, T1, null, null, 0, 25).getNotifications()).isEmpty();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).isGreaterThanOrEqualTo(1_000);
+            assertThat(retry.getRetryCount()).isEqualTo(1);
+
+            assertThatThrownBy(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, 25))
+                    .isInstanceOf(ApiException.class)
+                    .satisfies(e -> assertThat(((ApiException) e).getCode()).isEqualTo(503));
+            assertThat(throttling.getRequestCount()).isEqualTo(3);
+        } finally {
+            throttling.shutdown();
+        }
+    }
+
+    /**
+     * Test that writes are sent once, as they are not idempotent
+     */
+    @Test
+    public void testWritesAreNotRetried() throws Exception {
+        RetryInterceptor retry = new RetryInterceptor().delays(5, 50);
+        SubscriptionApi subscriptionApi = new SubscriptionApi(builder().retry(retry).build());
+
+        assertThatThrownBy(() -> subscriptionApi.subscriptionsPost(new Subscription().name(SUBSCRIPTION_NAME).subjectType(Subscription.SubjectTypeEnum.fromValue(SUBJECT_TYPE))))
+                .isInstanceOf(ApiException.class)
+                .satisfies(e -> assertThat(((ApiException) e).getCode()).isEqualTo(503));
+        assertThat(dispatcher.writes.get()).isEqualTo(1);
+        assertThat(retry.getRetryCount()).isZero();
+        assertThat(RetryInterceptor.isRetryable(new Request.Builder().url(server.url(NotificationStubDispatcher.BASE_PATH + "/subscriptions/42")).build())).isTrue();
+        assertThat(RetryInterceptor.isRetryable(new Request.Builder().url(server.url(NotificationStubDispatcher.BASE_PATH + "/subscriptions/42")).delete().build())).isFalse();
+    }
+
+    /**
+     * Test that retry delays are spread between the base delay and three times the previous one, so that clients failing together do not retry together
+     */
+    @Test
+    public void testRetryDelaysAreDecorrelated() {
+        RetryInterceptor retry = new RetryInterceptor().delays(100, 10_000);
+        List<Long> thirdRetryAt = new ArrayList<>();
+        for (int client = 0; client < 1_000; client++) {
+            long delay = 100;
+            long elapsed = 0;
+            for (int attempt = 0; attempt < 3; attempt++) {
+                long next = retry.nextDelayMillis(delay);
+                assertThat(next).isBetween(100L, Math.min(10_000, delay * 3));
+                delay = next;
+                elapsed += next;
+            }
+            thirdRetryAt.add(elapsed);
+        }
+        Set<Long> distinct = new HashSet<>(thirdRetryAt);
+        long spread = thirdRetryAt.stream().mapToLong(Long::longValue).max().getAsLong() - thirdRetryAt.stream().mapToLong(Long::longValue).min().getAsLong();
+        System.out.printf("Third retry of 1000 clients failing together: %d distinct times over %d ms%n", distinct.size(), spread);
+        assertThat(distinct.size()).isGreaterThan(500);
+        assertThat(spread).isGreaterThan(1_000);
+        assertThat(retry.nextDelayMillis(1_000_000)).isLessThanOrEqualTo(10_000);
+    }
+
+    /**
+     * Test that a failing endpoint opens its own circuit, fails fast while open, and closes after a successful trial request
+     */
+    @Test
+    public void testCircuitBreakerFailsFastPerEndpoint() throws Exception {
+        MutableClock clock = new MutableClock(NOW);
+        CircuitBreakerInterceptor circuitBreaker = new CircuitBreakerInterceptor().failureThreshold(3).openDuration(Duration.ofSeconds(30)).clock(clock);
+        ApiClientBuilder builder = builder().circuitBreaker(circuitBreaker);
+        NotificationsApi notificationsApi = new NotificationsApi(builder.build());
+        FieldMappingApi fieldMappingApi = new FieldMappingApi(builder.build());
+
+        notifications.failNext(100, 500);
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, 25)).isInstanceOf(ApiException.class);
+        }
+        assertThat(circuitBreaker.getState(NOTIFICATIONS)).isEqualTo(CircuitBreakerInterceptor.State.OPEN);
+        assertThatThrownBy(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, 25))
+                .isInstanceOf(ApiException.class)
+                .hasCauseInstanceOf(CircuitBreakerInterceptor.OpenCircuitException.class);
+        assertThat(notifications.getRequestCount()).isEqualTo(3);
+        assertThat(circuitBreaker.getRejectedCount()).isEqualTo(1);
+        assertThat(fieldMappingApi.fieldmappingsGet()).isNotEmpty();
+        assertThat(circuitBreaker.getState(FIELD_MAPPINGS)).isEqualTo(CircuitBreakerInterceptor.State.CLOSED);
+
+        // A failed trial request opens the circuit again
+        clock.set(NOW.plusSeconds(30));
+        assertThatThrownBy(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, 25)).isInstanceOf(ApiException.class);
+        assertThat(circuitBreaker.getState(NOTIFICATIONS)).isEqualTo(CircuitBreakerInterceptor.State.OPEN);
+        assertThat(notifications.getRequestCount()).isEqualTo(4);
+
+        notifications.failNext(0, 500);
+        clock.set(NOW.plusSeconds(60));
+        assertThat(notificationsApi.notificationsGet(T0, T1, null, null, 0, 25).getNotifications()).hasSize(25);
+        assertThat(circuitBreaker.getState(NOTIFICATIONS)).isEqualTo(CircuitBreakerInterceptor.State.CLOSED);
+    }
+
+    /**
+     * Test that the rate limiter paces requests, cuts its rate once per burst of throttling, and grows it back on success
+     */
+    @Test
+    public void testRateLimiterBacksOffAndRecovers() throws Exception {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter().rate(100, 1, 200).burst(1);
+        NotificationsApi notificationsApi = new NotificationsApi(builder().rateLimiter(rateLimiter).build());
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            notificationsApi.notificationsGet(T0, T1, null, null, 0, 1);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(450);
+        assertThat(rateLimiter.getWaitCount()).isPositive();
+        double rateBeforeThrottling = rateLimiter.getRate();
+
+        notifications.failNext(5, 429);
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> notificationsApi.notificationsGet(T0, T1, null, null, 0, 1)).isInstanceOf(ApiException.class);
+        }
+        assertThat(rateLimiter.getDecreaseCount()).isEqualTo(1);
+        assertThat(rateLimiter.getRate()).isEqualTo(rateBeforeThrottling / 2);
+
+        for (int i = 0; i < 20; i++) {
+            notificationsApi.notificationsGet(T0, T1, null, null, 0, 1);
+        }
+        System.out.printf("Rate %.1f/s before throttling, %.1f/s after, %.1f/s after 20 successes%n",
+                rateBeforeThrottling, rateBeforeThrottling / 2, rateLimiter.getRate());
+        assertThat(rateLimiter.getRate()).isGreaterThan(rateBeforeThrottling / 2);
+    }
+
+    /**
+     * Test that concurrent pollers get every page through a gateway failing a fifth of the requests, with all three interceptors in place
+     */
+    @Test
+    public void testPollersRideOutRandomFaults() throws Exception {
+        RetryInterceptor retry = new RetryInterceptor().maxAttempts(8).delays(5, 200);
+        CircuitBreakerInterceptor circuitBreaker = new CircuitBreakerInterceptor().failureThreshold(12);
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter().rate(400, 50, 1_000).burst(20);
+        NotificationsApi notificationsApi = new NotificationsApi(builder().retry(retry).circuitBreaker(circuitBreaker).rateLimiter(rateLimiter).build());
+        notifications.errorRate(0.2, 503);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<NotificationsWrapper>> pages = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int offset = (i % 40) * 25;
+                pages.add(executor.submit(() -> notificationsApi.notificationsGet(T0, T1, null, null, offset, 25)));
+            }
+            for (Future<NotificationsWrapper> page : pages) {
+                assertThat(page.get(30, TimeUnit.SECONDS).getNotifications()).hasSize(25);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.printf("200 pages: %d requests, %d faults, %d retries, %d rate decreases, rate now %.1f/s%n",
+                notifications.getRequestCount(), notifications.getFaultCount(), retry.getRetryCount(), rateLimiter.getDecreaseCount(), rateLimiter.getRate());
+        assertThat(retry.getRetryCount()).isEqualTo(notifications.getFaultCount());
+        assertThat(notifications.getRequestCount()).isEqualTo(200 + notifications.getFaultCount());
+        assertThat(circuitBreaker.getRejectedCount()).isZero();
+    }
+
+    private ApiClientBuilder builder() {
+        return new ApiClientBuilder().basePath(server.url(NotificationStubDispatcher.BASE_PATH).toString());
+    }
+
+    /**
+     * Serves /notifications through NotificationStubDispatcher, answers /fieldmappings, and fails every write with 503.
+     */
+    private static class FaultyApiDispatcher extends Dispatcher {
+
+        private final NotificationStubDispatcher notifications;
+        private final AtomicInteger writes = new AtomicInteger();
+
+        FaultyApiDispatcher(NotificationStubDispatcher notifications) {
+            this.notifications = notifications;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            String path = request.getPath().substring(NotificationStubDispatcher.BASE_PATH.length());
+            if (path.startsWith("/notifications")) {
+                return notifications.dispatch(request);
+            }
+            if (!request.getMethod().equals("GET")) {
+                writes.incrementAndGet();
+                return new MockResponse().setResponseCode(503);
+            }
+            if (path.equals("/fieldmappings")) {
+                return new MockResponse().setHeader("Content-Type", "application/json")
+                        .setBody("[{\"name\":\"purchaseRequest.rcnAlias\",\"subjectType\":\"" + SUBJECT_TYPE + "\"}]");
+            }
+            return new MockResponse().setResponseCode(404);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void set(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
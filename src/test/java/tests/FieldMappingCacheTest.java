@@ -0,0 +1,256 @@
+package tests;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.JSON;
+import org.openapitools.client.api.FieldMappingApi;
+import org.openapitools.client.model.FieldMapping;
+import tests.utils.Config;
+import tests.utils.FieldMappingCache;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class reads field mappings through FieldMappingCache from a local MockWebServer, which can hold its
+ * responses back or fail them, to check single-flight reads, background refreshes and the hit/miss counters.
+ **/
+
+public class FieldMappingCacheTest implements Config {
+
+    private static final int CALLERS = 32;
+    private static final Instant NOW = Instant.parse("2021-09-01T00:00:00Z");
+
+    private final FieldMappingDispatcher dispatcher = new FieldMappingDispatcher();
+    private final MutableClock clock = new MutableClock(NOW);
+    private MockWebServer server;
+    private FieldMappingCache cache;
+
+    @BeforeEach
+    public void before() throws Exception {
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(dispatcher);
+        server.start();
+        FieldMappingApi fieldMappingApi = new FieldMappingApi(Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString()));
+        cache = new FieldMappingCache(fieldMappingApi).ttl(Duration.ofMinutes(1)).clock(clock);
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        dispatcher.open();
+        cache.close();
+        server.shutdown();
+    }
+
+    /**
+     * Test that callers arriving together on a cold cache share one upstream call
+     */
+    @Test
+    public void testConcurrentCallersShareOneCall() throws Exception {
+        dispatcher.hold();
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch ready = new CountDownLatch(CALLERS);
+        List<Future<List<FieldMapping>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    return cache.getAll();
+                }));
+            }
+            ready.await();
+            await(() -> dispatcher.requests.get() == 1);
+            // Let every caller reach the cache before the call is answered
+            TimeUnit.MILLISECONDS.sleep(100);
+            dispatcher.open();
+            for (Future<List<FieldMapping>> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isSameAs(results.get(0).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.printf("%d callers, %d upstream call, %d misses, %d hits%n", CALLERS, dispatcher.requests.get(), cache.getMisses(), cache.getHits());
+        assertThat(dispatcher.requests.get()).isEqualTo(1);
+        assertThat(cache.getUpstreamCalls()).isEqualTo(1);
+        assertThat(cache.getMisses() + cache.getHits()).isEqualTo(CALLERS);
+        assertThat(results.get(0).get()).hasSize(dispatcher.fieldMappings.size());
+    }
+
+    /**
+     * Test the lookups by subject type and by name
+     */
+    @Test
+    public void testIndexes() throws Exception {
+        assertThat(cache.get(SUBJECT_TYPE, "purchaseRequest.companyId").getContentType()).isEqualTo(INTEGER);
+        assertThat(cache.get("PAYMENT_UPDATE", "purchaseRequest.companyId")).isNull();
+        assertThat(cache.get("PAYMENT_UPDATE", "statusReasonInformation.reasonCode").getDisplayName()).isEqualTo("Status reason code");
+        assertThat(cache.getBySubjectType(SUBJECT_TYPE)).extracting(FieldMapping::getName)
+                .containsExactly("messageTypeIndicator", "purchaseRequest.rcnAlias", "purchaseRequest.companyId");
+        assertThat(cache.getBySubjectType("UNKNOWN")).isEmpty();
+        assertThat(cache.getUpstreamCalls()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(4);
+    }
+
+    /**
+     * Test that once the TTL has passed, readers get the cached list at once while a single refresh runs behind them
+     */
+    @Test
+    public void testStaleReadsDoNotWaitForRefresh() throws Exception {
+        List<FieldMapping> first = cache.getAll();
+        clock.set(NOW.plus(Duration.ofMinutes(2)));
+        dispatcher.hold();
+        dispatcher.fieldMappings.add(fieldMapping("merchant.categoryCode", "Merchant category code", SUBJECT_TYPE, CONTENT_TYPE));
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(cache.getAll()).isSameAs(first);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        await(() -> dispatcher.requests.get() == 2);
+
+        dispatcher.open();
+        await(() -> cache.getUpstreamCalls() == 2 && cached().size() == first.size() + 1);
+        System.out.printf("1000 stale reads in %d ms while the refresh was held back%n", elapsedMillis);
+        assertThat(elapsedMillis).isLessThan(1_000);
+        assertThat(dispatcher.requests.get()).isEqualTo(2);
+        assertThat(cache.get(SUBJECT_TYPE, "merchant.categoryCode")).isNotNull();
+    }
+
+    /**
+     * Test that a failed refresh keeps the cached list and that a failed first read is tried again on the next read
+     */
+    @Test
+    public void testFailures() throws Exception {
+        dispatcher.failing = true;
+        assertThatThrownBy(() -> cache.getAll()).isInstanceOf(ApiException.class);
+        assertThat(cache.getRefreshFailures()).isZero();
+
+        dispatcher.failing = false;
+        List<FieldMapping> first = cache.getAll();
+        dispatcher.failing = true;
+        clock.set(NOW.plus(Duration.ofMinutes(2)));
+        assertThat(cache.getAll()).isSameAs(first);
+        await(() -> cache.getRefreshFailures() == 1);
+
+        // Still stale, so the next read starts another refresh
+        dispatcher.failing = false;
+        await(() -> cached() != first);
+        assertThat(cache.getAll()).isEqualTo(first);
+        assertThat(cache.getRefreshFailures()).isEqualTo(1);
+    }
+
+    private List<FieldMapping> cached() {
+        try {
+            return cache.getAll();
+        } catch (ApiException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 10 seconds").isLessThan(deadline);
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private static FieldMapping fieldMapping(String name, String displayName, String subjectType, String contentType) {
+        return new FieldMapping().name(name).displayName(displayName).subjectType(subjectType).contentType(contentType);
+    }
+
+    /**
+     * Serves /fieldmappings, with responses held back until {@link #open()} once {@link #hold()} is called.
+     */
+    private static class FieldMappingDispatcher extends Dispatcher {
+
+        final List<FieldMapping> fieldMappings = Collections.synchronizedList(new ArrayList<>(Arrays.asList(
+                fieldMapping("messageTypeIndicator", "Message type indicator", SUBJECT_TYPE, CONTENT_TYPE),
+                fieldMapping("purchaseRequest.rcnAlias", "Purchase request RCN alias", SUBJECT_TYPE, CONTENT_TYPE),
+                fieldMapping("purchaseRequest.companyId", "Purchase request company id", SUBJECT_TYPE, INTEGER),
+                fieldMapping("statusReasonInformation.reasonCode", "Status reason code", "PAYMENT_UPDATE", CONTENT_TYPE))));
+        final AtomicInteger requests = new AtomicInteger();
+        private final JSON json = new JSON();
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile boolean failing;
+
+        void hold() {
+            gate = new CountDownLatch(1);
+        }
+
+        void open() {
+            gate.countDown();
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if (!request.getPath().equals(NotificationStubDispatcher.BASE_PATH + "/fieldmappings")) {
+                return new MockResponse().setResponseCode(404);
+            }
+            requests.incrementAndGet();
+            gate.await(10, TimeUnit.SECONDS);
+            if (failing) {
+                return new MockResponse().setResponseCode(500);
+            }
+            synchronized (fieldMappings) {
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(json.serialize(fieldMappings));
+            }
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void set(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -1,13 +1,10 @@
 package tests;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import com.mastercard.developer.utils.AuthenticationUtils;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.openapitools.client.ApiClient;
-import org.openapitools.client.JSON;
 import org.openapitools.client.api.NotificationsApi;
 import org.openapitools.client.model.CommercialBpsNotificationContent;
 import org.openapitools.client.model.Notification;
@@ -32,13 +29,11 @@ import static org.assertj.core.api.Assertions.assertThat;
 public class NotificationApiTest implements Config {
 
     private static ApiClient client;
-    private static Gson gson;
 
     @BeforeAll
     public static void before() throws Exception {
         PrivateKey signingKey = AuthenticationUtils.loadSigningKey(signingKeyPkcs12FilePath, signingKeyAlias, signingKeyPassword);
         client = Config.setupApiClient(consumerKey, signingKey, new NotificationApiTest.ForceJsonResponseInterceptor());
-        gson = new Gson();
     }
 
     /**
@@ -60,13 +55,13 @@ public class NotificationApiTest implements Config {
             assertThat(notifications.getNotifications()).extracting(Notification::getSubject).isNotEmpty();
 
             for(Notification notification : notifications.getNotifications()){
-                JsonObject jsonObject = gson.toJsonTree(notification.getContent()).getAsJsonObject();
+                // Content is already decoded into the model matching its subject, see NotificationContentTypeAdapterFactory
                 if(notification.getSubject().equals("PAYMENT_AUTHORIZATION")){
-                    NotificationContent notificationContent = gson.fromJson(jsonObject, NotificationContent.class);
+                    NotificationContent notificationContent = (NotificationContent) notification.getContent();
                     assertThat(notificationContent.getMessageTypeIndicator()).isNotEmpty();
                 }
                 else if(notification.getSubject().equals("PAYMENT_UPDATE")){
-                    CommercialBpsNotificationContent commercialBpsNotificationContent = gson.fromJson(jsonObject, CommercialBpsNotificationContent.class);
+                    CommercialBpsNotificationContent commercialBpsNotificationContent = (CommercialBpsNotificationContent) notification.getContent();
                     assertThat(commercialBpsNotificationContent.getPurchaseRequestId()).isNotEmpty();
                     assertThat(commercialBpsNotificationContent.getStatus()).isNotEmpty();
                 }
@@ -96,13 +91,13 @@ public class NotificationApiTest implements Config {
             assertThat(notifications.getNotifications().size()).isGreaterThan(0);
             assertThat(notificationsList).extracting("subscriptionName").containsOnly(SUBSCRIPTION_NAME, SUBSCRIPTION_NAME_ANOTHER);
             for(Notification notification : notifications.getNotifications()){
-                JsonObject jsonObject = gson.toJsonTree(notification.getContent()).getAsJsonObject();
+                // Content is already decoded into the model matching its subject, see NotificationContentTypeAdapterFactory
                 if(notification.getSubject().equals("PAYMENT_AUTHORIZATION")){
-                    NotificationContent notificationContent = gson.fromJson(jsonObject, NotificationContent.class);
+                    NotificationContent notificationContent = (NotificationContent) notification.getContent();
                     assertThat(notificationContent.getMessageTypeIndicator()).isNotEmpty();
                 }
                 else if(notification.getSubject().equals("PAYMENT_UPDATE")){
-                    CommercialBpsNotificationContent commercialBpsNotificationContent = gson.fromJson(jsonObject, CommercialBpsNotificationContent.class);
+                    CommercialBpsNotificationContent commercialBpsNotificationContent = (CommercialBpsNotificationContent) notification.getContent();
                     assertThat(commercialBpsNotificationContent.getPurchaseRequestId()).isNotEmpty();
                     assertThat(commercialBpsNotificationContent.getStatus()).isNotEmpty();
                 }
@@ -132,13 +127,13 @@ public class NotificationApiTest implements Config {
             assertThat(notifications.getNotifications().size()).isGreaterThan(0);
             assertThat(notifications.getNotifications()).extracting("subscriptionName").containsOnly(SUBSCRIPTION_NAME, SUBSCRIPTION_NAME_ANOTHER);
             for(Notification notification : notifications.getNotifications()){
-                JsonObject jsonObject = gson.toJsonTree(notification.getContent()).getAsJsonObject();
+                // Content is already decoded into the model matching its subject, see NotificationContentTypeAdapterFactory
                 if(notification.getSubject().equals("PAYMENT_AUTHORIZATION")){
-                    NotificationContent notificationContent = gson.fromJson(jsonObject, NotificationContent.class);
+                    NotificationContent notificationContent = (NotificationContent) notification.getContent();
                     assertThat(notificationContent.getMessageTypeIndicator()).isNotEmpty();
                 }
                 else if(notification.getSubject().equals("PAYMENT_UPDATE")){
-                    CommercialBpsNotificationContent commercialBpsNotificationContent = gson.fromJson(jsonObject, CommercialBpsNotificationContent.class);
+                    CommercialBpsNotificationContent commercialBpsNotificationContent = (CommercialBpsNotificationContent) notification.getContent();
                     assertThat(commercialBpsNotificationContent.getPurchaseRequestId()).isNotEmpty();
                     assertThat(commercialBpsNotificationContent.getStatus()).isNotEmpty();
                 }
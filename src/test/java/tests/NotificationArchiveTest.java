@@ -0,0 +1,206 @@
+package tests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Notification;
+import tests.utils.Config;
+import tests.utils.NotificationArchive;
+import tests.utils.NotificationContentTypeAdapterFactory;
+import tests.utils.NotificationStubDispatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class writes generated notifications to a NotificationArchive in a temporary directory, with small segments
+ * so that scans cross segment boundaries, and checks range scans, the subscription and subject indexes, out of order
+ * appends and recovery from a torn last record.
+ **/
+
+public class NotificationArchiveTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int SEGMENT_BYTES = 256 * 1024;
+    private static final int COUNT = 10_000;
+    private static final String[] SUBSCRIPTIONS = {SUBSCRIPTION_NAME, "OpenAPITest_SUBSC_OTHER", "OpenAPITest_SUBSC_THIRD"};
+    private static final String[] SUBJECTS = {"PAYMENT_AUTHORIZATION", "PAYMENT_UPDATE"};
+
+    @TempDir
+    Path directory;
+
+    private final JSON json = new JSON();
+    private List<Notification> notifications;
+
+    @BeforeEach
+    public void before() {
+        json.setGson(NotificationContentTypeAdapterFactory.createGson(json));
+        notifications = new ArrayList<>();
+        List<Notification> generated = NotificationStubDispatcher.generate(COUNT, T0, Duration.ofDays(10), SUBSCRIPTION_NAME);
+        for (int i = 0; i < generated.size(); i++) {
+            Notification notification = generated.get(i);
+            notification.subscriptionName(SUBSCRIPTIONS[i % SUBSCRIPTIONS.length]);
+            if (i % 7 == 0) {
+                notification.subject(SUBJECTS[1]).content(Collections.singletonMap("purchaseRequestId", String.valueOf(i)));
+            }
+            notifications.add(notification);
+        }
+    }
+
+    /**
+     * Test that a time range scan across segments returns exactly the notifications created in it, in order, and decodes them as they were
+     */
+    @Test
+    public void testRangeScanAcrossSegments() throws Exception {
+        try (NotificationArchive archive = new NotificationArchive(directory, json, SEGMENT_BYTES)) {
+            archive.appendAll(notifications);
+            assertThat(archive.size()).isEqualTo(COUNT);
+            assertThat(archive.getSegmentCount()).isGreaterThan(3);
+
+            Instant start = T0.plusDays(2).plusHours(7).toInstant();
+            Instant end = T0.plusDays(6).toInstant();
+            List<Notification> found = archive.query(start, end, null, null);
+
+            assertThat(serialize(found)).isEqualTo(serialize(between(start, end, notifications)));
+            assertThat(found).isNotEmpty();
+            assertThat(archive.query(T0.minusDays(1).toInstant(), T0.toInstant(), null, null)).isEmpty();
+            assertThat(archive.query(T0.toInstant(), T0.plusDays(10).toInstant(), null, null)).hasSize(COUNT);
+        }
+    }
+
+    /**
+     * Test that scans by subscriptionName and subject use their indexes, alone and together, within a time range
+     */
+    @Test
+    public void testSubscriptionAndSubjectIndexes() throws Exception {
+        try (NotificationArchive archive = new NotificationArchive(directory, json, SEGMENT_BYTES)) {
+            archive.appendAll(notifications);
+            Instant start = T0.plusDays(1).toInstant();
+            Instant end = T0.plusDays(9).toInstant();
+            for (String subscription : SUBSCRIPTIONS) {
+                for (String subject : SUBJECTS) {
+                    List<Notification> expected = between(start, end, notifications).stream()
+                            .filter(notification -> notification.getSubscriptionName().equals(subscription) && notification.getSubject().equals(subject))
+                            .collect(Collectors.toList());
+                    assertThat(serialize(archive.query(start, end, subscription, subject))).isEqualTo(serialize(expected));
+                }
+                assertThat(archive.query(start, end, subscription, null)).hasSize((int) between(start, end, notifications).stream()
+                        .filter(notification -> notification.getSubscriptionName().equals(subscription)).count());
+            }
+            assertThat(archive.query(start, end, null, SUBJECTS[1])).hasSize((int) between(start, end, notifications).stream()
+                    .filter(notification -> notification.getSubject().equals(SUBJECTS[1])).count());
+            assertThat(archive.query(start, end, "unknown", null)).isEmpty();
+        }
+    }
+
+    /**
+     * Test that records are visited in place, with their content as a read-only slice of the mapping
+     */
+    @Test
+    public void testScanIsZeroCopy() throws Exception {
+        try (NotificationArchive archive = new NotificationArchive(directory, json, SEGMENT_BYTES)) {
+            archive.appendAll(notifications);
+            List<Long> createdMillis = new ArrayList<>();
+            long visited = archive.scan(T0.toInstant().toEpochMilli(), T0.plusDays(1).toInstant().toEpochMilli(), SUBSCRIPTION_NAME, null, record -> {
+                ByteBuffer content = record.getContent();
+                assertThat(content.isDirect()).isTrue();
+                assertThat(content.isReadOnly()).isTrue();
+                assertThat(record.getSubscriptionName()).isEqualTo(SUBSCRIPTION_NAME);
+                createdMillis.add(record.getCreatedMillis());
+            });
+            assertThat(visited).isEqualTo(createdMillis.size()).isPositive();
+            assertThat(createdMillis).isSorted();
+        }
+    }
+
+    /**
+     * Test that notifications appended out of order are still scanned in createdTimestamp order, and that unusual timestamps round trip
+     */
+    @Test
+    public void testOutOfOrderAppendsAndTimestamps() throws Exception {
+        List<Notification> shuffled = new ArrayList<>(notifications);
+        Collections.shuffle(shuffled, new Random(17));
+        Notification offsetTimestamp = NotificationStubDispatcher.notification(-1, T0, SUBSCRIPTION_NAME, null).createdTimestamp("2021-09-01T02:00:00+02:00");
+        Notification noTimestamp = NotificationStubDispatcher.notification(-2, T0, SUBSCRIPTION_NAME, "DELIVERED").createdTimestamp(null).content(null);
+        shuffled.add(offsetTimestamp);
+        shuffled.add(noTimestamp);
+        try (NotificationArchive archive = new NotificationArchive(directory, json, SEGMENT_BYTES)) {
+            archive.appendAll(shuffled);
+            List<Long> createdMillis = new ArrayList<>();
+            long visited = archive.scan(Long.MIN_VALUE, Long.MAX_VALUE, null, null, record -> createdMillis.add(record.getCreatedMillis()));
+            assertThat(visited).isEqualTo(COUNT + 2);
+            assertThat(createdMillis).isSorted();
+
+            List<Notification> all = archive.query(Instant.ofEpochMilli(Long.MIN_VALUE), Instant.ofEpochMilli(Long.MAX_VALUE), null, null);
+            assertThat(json.serialize(all.get(0))).isEqualTo(json.serialize(noTimestamp));
+            List<Notification> atT0 = archive.query(T0.toInstant(), T0.toInstant().plusMillis(1), null, null);
+            assertThat(serialize(atT0)).contains(json.serialize(offsetTimestamp));
+        }
+    }
+
+    /**
+     * Test that reopening indexes the existing segments, drops a torn last record, and appends after it
+     */
+    @Test
+    public void testReopenRecoversFromTornTail() throws Exception {
+        try (NotificationArchive archive = new NotificationArchive(directory, json, SEGMENT_BYTES)) {
+            archive.appendAll(notifications);
+        }
+        try (NotificationArchive archive = new NotificationArchive(directory, json, SEGMENT_BYTES)) {
+            assertThat(archive.size()).isEqualTo(COUNT);
+            assertThat(serialize(archive.query(T0.toInstant(), T0.plusDays(10).toInstant(), null, null))).isEqualTo(serialize(notifications));
+        }
+
+        // Flip a byte in the content of the last record, as a write torn by a crash would leave it
+        Path last = Files.list(directory).sorted().reduce((first, second) -> second).get();
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int position = 0;
+            int lastRecord = 0;
+            while (buffer.getInt(position) > 0) {
+                lastRecord = position;
+                position += Integer.BYTES + buffer.getInt(position);
+            }
+            int target = position - 2 * Integer.BYTES;
+            buffer.put(target, (byte) (buffer.get(target) ^ 0x5A));
+            assertThat(lastRecord).isLessThan(target);
+        }
+
+        try (NotificationArchive archive = new NotificationArchive(directory, json, SEGMENT_BYTES)) {
+            assertThat(archive.size()).isEqualTo(COUNT - 1);
+            archive.append(notifications.get(COUNT - 1));
+        }
+        try (NotificationArchive archive = new NotificationArchive(directory, json, SEGMENT_BYTES)) {
+            assertThat(archive.size()).isEqualTo(COUNT);
+            assertThat(serialize(archive.query(T0.toInstant(), T0.plusDays(10).toInstant(), null, null))).isEqualTo(serialize(notifications));
+        }
+    }
+
+    private static List<Notification> between(Instant start, Instant end, List<Notification> notifications) {
+        return notifications.stream()
+                .filter(notification -> {
+                    Instant created = OffsetDateTime.parse(notification.getCreatedTimestamp()).toInstant();
+                    return !created.isBefore(start) && created.isBefore(end);
+                })
+                .collect(Collectors.toList());
+    }
+
+    private List<String> serialize(List<Notification> notifications) {
+        return notifications.stream().map(json::serialize).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,141 @@
+package tests;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.NotificationsWrapper;
+import tests.utils.Config;
+import tests.utils.NotificationBulkFetcher;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class pulls notifications with the NotificationBulkFetcher from a local MockWebServer.
+ *
+ * <p> The stand-in server holds a known dataset, so the test can prove that the parallel windows leave no gaps and return no duplicates.
+ * <p> The same range is also drained with the sequential offset loop, and both timings are printed for comparison; the test
+ * checks that the windows were drained concurrently from the most requests the server saw at once, not from the timings.
+ **/
+
+public class NotificationBulkFetcherTest implements Config {
+
+    private static final int DATASET_SIZE = 2_000;
+    private static final int PAGE_LIMIT = 50;
+    private static final long LATENCY_MILLIS = 10;
+    private static final OffsetDateTime DATASET_START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private static MockWebServer server;
+    private static NotificationStubDispatcher dispatcher;
+    private static NotificationsApi notificationsApi;
+
+    @BeforeAll
+    public static void before() throws Exception {
+        dispatcher = new NotificationStubDispatcher(NotificationStubDispatcher.generate(DATASET_SIZE, DATASET_START, Duration.ofDays(7), SUBSCRIPTION_NAME))
+                .latencyMillis(LATENCY_MILLIS);
+        server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        ApiClient client = Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString());
+        notificationsApi = new NotificationsApi(client);
+    }
+
+    @AfterAll
+    public static void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that the parallel fetch returns the whole range exactly once and in createdTimestamp order
+     */
+    @Test
+    public void testFetchReturnsEveryNotificationOnceInOrder() throws Exception {
+        List<Notification> notifications;
+        try (NotificationBulkFetcher fetcher = new NotificationBulkFetcher(notificationsApi, 8).pageLimit(PAGE_LIMIT)) {
+            notifications = fetcher.fetch(DATASET_START, DATASET_START.plusDays(7), null, null);
+        }
+
+        assertThat(notifications).hasSize(DATASET_SIZE);
+        assertThat(purchaseRequestIds(notifications)).hasSize(DATASET_SIZE);
+        assertThat(notifications).extracting(notification -> OffsetDateTime.parse(notification.getCreatedTimestamp()))
+                .isSortedAccordingTo(OffsetDateTime::compareTo);
+    }
+
+    /**
+     * Test that a sub-range honours the inclusive start and exclusive end of the API
+     */
+    @Test
+    public void testFetchHonoursExclusiveEnd() throws Exception {
+        OffsetDateTime start = DATASET_START.plusDays(2);
+        OffsetDateTime end = DATASET_START.plusDays(3);
+        List<Notification> notifications;
+        try (NotificationBulkFetcher fetcher = new NotificationBulkFetcher(notificationsApi, 4).pageLimit(PAGE_LIMIT).pagesPerWindow(1)) {
+            notifications = fetcher.fetch(start, end, null, null);
+        }
+
+        assertThat(notifications).hasSize(sequentialDrain(start, end).size());
+        assertThat(notifications).allSatisfy(notification -> {
+            OffsetDateTime createdTimestamp = OffsetDateTime.parse(notification.getCreatedTimestamp());
+            assertThat(createdTimestamp).isAfterOrEqualTo(start).isBefore(end);
+        });
+    }
+
+    /**
+     * Compare the parallel fetch with the single threaded offset loop over the same range
+     */
+    @Test
+    public void testFetchRunsWindowsConcurrently() throws Exception {
+        OffsetDateTime end = DATASET_START.plusDays(7);
+
+        long sequentialStart = System.nanoTime();
+        List<Notification> sequential = sequentialDrain(DATASET_START, end);
+        long sequentialNanos = System.nanoTime() - sequentialStart;
+
+        dispatcher.resetMaxConcurrentRequests();
+        long parallelStart = System.nanoTime();
+        List<Notification> parallel;
+        try (NotificationBulkFetcher fetcher = new NotificationBulkFetcher(notificationsApi, 8).pageLimit(PAGE_LIMIT)) {
+            parallel = fetcher.fetch(DATASET_START, end, null, null);
+        }
+        long parallelNanos = System.nanoTime() - parallelStart;
+
+        System.out.printf("sequential: %d notifications in %d ms, parallel: %d notifications in %d ms%n",
+                sequential.size(), sequentialNanos / 1_000_000, parallel.size(), parallelNanos / 1_000_000);
+        assertThat(purchaseRequestIds(parallel)).isEqualTo(purchaseRequestIds(sequential));
+        assertThat(dispatcher.getMaxConcurrentRequests()).isGreaterThan(1).isLessThanOrEqualTo(8);
+    }
+
+    private List<Notification> sequentialDrain(OffsetDateTime start, OffsetDateTime end) throws Exception {
+        List<Notification> notifications = new ArrayList<>();
+        int offset = NotificationBulkFetcher.FIRST_OFFSET;
+        NotificationsWrapper page;
+        do {
+            page = notificationsApi.notificationsGet(start, end, null, null, offset, PAGE_LIMIT);
+            notifications.addAll(page.getNotifications());
+            offset += page.getNotifications().size();
+        } while (!page.getNotifications().isEmpty() && offset < page.getTotal());
+        return notifications;
+    }
+
+    private static Set<Integer> purchaseRequestIds(List<Notification> notifications) {
+        Set<Integer> ids = new HashSet<>();
+        for (Notification notification : notifications) {
+            NotificationContent content = (NotificationContent) notification.getContent();
+            ids.add(content.getPurchaseRequest().getPurchaseRequestId());
+        }
+        return ids;
+    }
+}
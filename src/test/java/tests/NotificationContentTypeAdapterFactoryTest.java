@@ -0,0 +1,118 @@
+package tests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.CommercialBpsNotificationContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.NotificationsWrapper;
+import tests.utils.NotificationContentTypeAdapterFactory;
+import tests.utils.NotificationExamples;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class decodes the GetNotificationResponse example with the subject discriminator registered on the generated JSON class.
+ *
+ * <p> The typed content must be identical to what the toJsonTree/fromJson double decode produced before.
+ **/
+
+public class NotificationContentTypeAdapterFactoryTest {
+
+    private static JSON json;
+
+    @BeforeAll
+    public static void before() {
+        json = new JSON();
+        json.setGson(NotificationContentTypeAdapterFactory.createGson(json));
+    }
+
+    /**
+     * Test that content is decoded into the model mapped to each subject
+     */
+    @Test
+    public void testContentIsDecodedBySubject() {
+        NotificationsWrapper page = json.deserialize(NotificationExamples.pageJson(3), NotificationsWrapper.class);
+
+        assertThat(page.getTotal()).isEqualTo(10000L);
+        assertThat(page.getNotifications()).<Object>extracting(notification -> notification.getContent().getClass())
+                .containsExactly(NotificationContent.class, CommercialBpsNotificationContent.class, CommercialBpsNotificationContent.class);
+        assertThat(page.getNotifications()).containsExactlyElementsOf(NotificationExamples.page(3).getNotifications());
+    }
+
+    /**
+     * Test that the single pass decode matches the toJsonTree/fromJson double decode
+     */
+    @Test
+    public void testContentMatchesDoubleDecode() {
+        String body = NotificationExamples.pageJson(3);
+        Gson untyped = new JSON().getGson();
+        NotificationsWrapper single = json.deserialize(body, NotificationsWrapper.class);
+        NotificationsWrapper doubled = untyped.fromJson(body, NotificationsWrapper.class);
+
+        for (int i = 0; i < doubled.getNotifications().size(); i++) {
+            Notification notification = doubled.getNotifications().get(i);
+            JsonObject jsonObject = untyped.toJsonTree(notification.getContent()).getAsJsonObject();
+            Class<?> contentType = NotificationContentTypeAdapterFactory.CONTENT_TYPES.get(notification.getSubject());
+            assertThat(single.getNotifications().get(i).getContent()).isEqualTo(untyped.fromJson(jsonObject, contentType));
+        }
+    }
+
+    /**
+     * Test that content which arrives before its subject is still typed
+     */
+    @Test
+    public void testContentBeforeSubject() {
+        String body = "{\"content\":{\"source\":\"BPS\",\"purchaseRequestId\":\"360147\",\"status\":\"APPROVED\"},\"subject\":\"PAYMENT_UPDATE\"}";
+        Notification notification = json.deserialize(body, Notification.class);
+
+        assertThat(notification.getContent()).isInstanceOf(CommercialBpsNotificationContent.class);
+        assertThat(((CommercialBpsNotificationContent) notification.getContent()).getStatus()).isEqualTo("APPROVED");
+    }
+
+    /**
+     * Test that content for an unknown subject keeps the generic Map representation
+     */
+    @Test
+    public void testUnknownSubjectKeepsUntypedContent() {
+        String body = "{\"subject\":\"PAYMENT_REFUND\",\"pushStatus\":null,\"content\":{\"refundId\":\"1\"}}";
+        Notification notification = json.deserialize(body, Notification.class);
+
+        assertThat(notification.getPushStatus()).isNull();
+        assertThat(notification.getContent()).isInstanceOf(Map.class);
+        assertThat(((Map<?, ?>) notification.getContent()).get("refundId")).isEqualTo("1");
+    }
+
+    /**
+     * Test that typed notifications serialize back to the same JSON
+     */
+    @Test
+    public void testRoundTrip() {
+        String body = NotificationExamples.pageJson(3);
+
+        assertThat(json.serialize(json.deserialize(body, NotificationsWrapper.class))).isEqualTo(body);
+    }
+
+    /**
+     * Test that date formats set on the JSON are kept by the Gson built from it, whether set before or after
+     */
+    @Test
+    public void testKeepsDateFormats() {
+        JSON custom = new JSON();
+        custom.setOffsetDateTimeFormat(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        custom.setGson(NotificationContentTypeAdapterFactory.createGson(custom));
+        OffsetDateTime timestamp = OffsetDateTime.of(2021, 9, 1, 12, 30, 0, 0, ZoneOffset.UTC);
+
+        assertThat(custom.serialize(timestamp)).isEqualTo("\"20210901123000\"");
+        custom.setOffsetDateTimeFormat(DateTimeFormatter.ISO_LOCAL_DATE);
+        assertThat(custom.serialize(timestamp)).isEqualTo("\"2021-09-01\"");
+    }
+}
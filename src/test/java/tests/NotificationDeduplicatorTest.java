@@ -0,0 +1,151 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Notification;
+import tests.utils.Config;
+import tests.utils.NotificationDeduplicator;
+import tests.utils.NotificationFingerprint;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class checks NotificationDeduplicator on generated notifications, without any HTTP calls.
+ *
+ * <p> The memory test feeds a simulated stream of one million notifications a day for ten days and prints the bytes kept per fingerprint.
+ **/
+
+public class NotificationDeduplicatorTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int NOTIFICATIONS_PER_DAY = 1_000_000;
+    private static final int DAYS = 10;
+
+    /**
+     * Test that only the first copy of each notification is reported as new
+     */
+    @Test
+    public void testDropsCopies() {
+        List<Notification> notifications = NotificationStubDispatcher.generate(1_000, T0, Duration.ofHours(3), SUBSCRIPTION_NAME);
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator().clock(clockAt(T0.plusHours(3)));
+
+        assertThat(notifications).allMatch(deduplicator::add);
+        assertThat(notifications).noneMatch(deduplicator::add);
+        // A copy decoded again, with untyped Map content, is a different object with the same fingerprint
+        JSON json = new JSON();
+        Notification copy = json.deserialize(json.serialize(notifications.get(0)), Notification.class);
+        assertThat(deduplicator.add(copy)).isFalse();
+        assertThat(deduplicator.size()).isEqualTo(1_000);
+    }
+
+    /**
+     * Test that every fingerprint, including 0, is kept apart from its neighbours
+     */
+    @Test
+    public void testDistinctFingerprints() {
+        long createdMillis = T0.toInstant().toEpochMilli();
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator().clock(clockAt(T0));
+        for (long fingerprint = -50_000; fingerprint < 50_000; fingerprint++) {
+            assertThat(deduplicator.add(fingerprint, createdMillis)).isTrue();
+        }
+        assertThat(deduplicator.contains(0, createdMillis)).isTrue();
+        assertThat(deduplicator.contains(50_000, createdMillis)).isFalse();
+        assertThat(deduplicator.add(0, createdMillis)).isFalse();
+        assertThat(deduplicator.size()).isEqualTo(100_000);
+    }
+
+    /**
+     * Test that fingerprints are dropped once their createdTimestamp leaves the retention period
+     */
+    @Test
+    public void testEntriesExpireAfterRetention() {
+        long createdMillis = T0.toInstant().toEpochMilli();
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator(Duration.ofDays(1), Duration.ofHours(1)).clock(clockAt(T0));
+        deduplicator.add(42, createdMillis);
+
+        deduplicator.clock(clockAt(T0.plusHours(24)));
+        assertThat(deduplicator.add(42, createdMillis)).isFalse();
+
+        deduplicator.clock(clockAt(T0.plusHours(25)));
+        assertThat(deduplicator.size()).isZero();
+        assertThat(deduplicator.getEvicted()).isEqualTo(1);
+        assertThat(deduplicator.contains(42, createdMillis)).isFalse();
+    }
+
+    /**
+     * Test that the entry cap drops the oldest buckets first
+     */
+    @Test
+    public void testMaxEntriesDropsOldestBuckets() {
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator().maxEntries(250).clock(clockAt(T0.plusHours(4)));
+        for (int hour = 0; hour < 4; hour++) {
+            long createdMillis = T0.plusHours(hour).toInstant().toEpochMilli();
+            for (int i = 0; i < 100; i++) {
+                deduplicator.add(hour * 1_000L + i + 1, createdMillis);
+            }
+        }
+
+        assertThat(deduplicator.size()).isEqualTo(200);
+        assertThat(deduplicator.contains(1, T0.toInstant().toEpochMilli())).isFalse();
+        assertThat(deduplicator.contains(3_001, T0.plusHours(3).toInstant().toEpochMilli())).isTrue();
+    }
+
+    /**
+     * Test that the entry cap holds for a burst of notifications created within one bucket
+     */
+    @Test
+    public void testMaxEntriesHoldsWithinOneBucket() {
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator().maxEntries(250).clock(clockAt(T0.plusHours(1)));
+        long createdMillis = T0.toInstant().toEpochMilli();
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(deduplicator.add(i + 1, createdMillis)).isTrue();
+        }
+
+        assertThat(deduplicator.size()).isEqualTo(250);
+        assertThat(deduplicator.getRefused()).isEqualTo(750);
+        assertThat(deduplicator.add(1, createdMillis)).isFalse();
+        assertThat(deduplicator.contains(1_000, createdMillis)).isFalse();
+    }
+
+    /**
+     * Test that memory follows the retention period rather than the number of notifications ever seen
+     */
+    @Test
+    public void testMemoryIsBoundedByRetention() {
+        Duration retention = Duration.ofDays(3);
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator(retention, Duration.ofHours(1));
+        long startMillis = T0.toInstant().toEpochMilli();
+        long stepMillis = Duration.ofDays(1).toMillis() / NOTIFICATIONS_PER_DAY;
+        long fingerprint = NotificationFingerprint.of(NotificationStubDispatcher.generate(1, T0, Duration.ofSeconds(1), SUBSCRIPTION_NAME).get(0));
+        long maxTableBytes = 0;
+        for (int day = 0; day < DAYS; day++) {
+            long dayMillis = startMillis + day * Duration.ofDays(1).toMillis();
+            deduplicator.clock(Clock.fixed(Instant.ofEpochMilli(dayMillis), ZoneOffset.UTC));
+            for (int i = 0; i < NOTIFICATIONS_PER_DAY; i++) {
+                fingerprint = fingerprint * 6364136223846793005L + 1442695040888963407L;
+                deduplicator.add(fingerprint, dayMillis + i * stepMillis);
+            }
+            maxTableBytes = Math.max(maxTableBytes, deduplicator.getTableBytes());
+        }
+
+        long maxEntries = (retention.toDays() + 1) * NOTIFICATIONS_PER_DAY;
+        System.out.printf("%d notifications seen, %d kept, %d evicted, at most %d bytes of tables (%.1f bytes per kept fingerprint)%n",
+                (long) DAYS * NOTIFICATIONS_PER_DAY, deduplicator.size(), deduplicator.getEvicted(), maxTableBytes,
+                (double) maxTableBytes / maxEntries);
+        assertThat(deduplicator.size()).isLessThanOrEqualTo(maxEntries);
+        assertThat(deduplicator.getEvicted()).isGreaterThanOrEqualTo((long) DAYS * NOTIFICATIONS_PER_DAY - maxEntries);
+        assertThat(maxTableBytes).isLessThanOrEqualTo(maxEntries * 2 * Long.BYTES);
+    }
+
+    private static Clock clockAt(OffsetDateTime time) {
+        return Clock.fixed(time.toInstant(), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,283 @@
+package tests;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.CommercialBpsNotificationContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationDispatcher;
+import tests.utils.NotificationExamples;
+import tests.utils.NotificationPoller;
+import tests.utils.NotificationStubDispatcher;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class dispatches notifications to handlers with NotificationDispatcher and checks that notifications with the
+ * same key are handled in the order they were dispatched while different keys run in parallel, that a full lane holds up
+ * the caller, and that handler failures do not stop a lane.
+ *
+ * <p> testPulledThroughput pulls from a NotificationStubDispatcher with NotificationPoller, dispatching to a handler that
+ * waits as a call to another service would, and prints the throughput with one lane and with several.
+ **/
+
+public class NotificationDispatcherTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int KEYS = 500;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that every key is handled in dispatch order on one lane, while the lanes run concurrently
+     */
+    @Test
+    public void testOrderWithinKey() throws Exception {
+        List<Notification> notifications = keyed(NotificationExamples.mixed(30_000, T0, 3));
+        Map<Notification, Integer> sequence = new IdentityHashMap<>();
+        for (int i = 0; i < notifications.size(); i++) {
+            sequence.put(notifications.get(i), i);
+        }
+        Map<Object, List<Integer>> handled = new ConcurrentHashMap<>();
+        Map<Object, String> threads = new ConcurrentHashMap<>();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        Consumer<Notification> handler = notification -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Object key = NotificationDispatcher.PURCHASE_REQUEST_ID.apply(notification);
+            handled.computeIfAbsent(key, k -> new ArrayList<>()).add(sequence.get(notification));
+            threads.merge(key, Thread.currentThread().getName(), (a, b) -> a.equals(b) ? a : "several");
+            if (sequence.get(notification) % 100 == 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+            }
+            active.decrementAndGet();
+        };
+
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(NotificationDispatcher.PURCHASE_REQUEST_ID, handler, 8, 64)) {
+            notifications.forEach(dispatcher);
+            dispatcher.flush();
+            assertThat(dispatcher.getHandledCount()).isEqualTo(notifications.size());
+        }
+
+        // PAYMENT_AUTHORIZATION content has an Integer id and PAYMENT_UPDATE content a String id, and they share keys
+        assertThat(handled).hasSize(KEYS);
+        assertThat(handled.values()).allSatisfy(indexes -> assertThat(indexes).isSorted().doesNotHaveDuplicates());
+        assertThat(handled.values().stream().mapToInt(List::size).sum()).isEqualTo(notifications.size());
+        assertThat(threads.values()).doesNotContain("several");
+        assertThat(threads.values().stream().distinct().count()).isEqualTo(8);
+        assertThat(maxActive.get()).isGreaterThan(1);
+    }
+
+    /**
+     * Test that dispatching waits while the lane of a key is full, and carries on once the handler catches up
+     */
+    @Test
+    public void testBackPressure() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Notification> handled = new ArrayList<>();
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(NotificationDispatcher.SUBSCRIPTION_NAME, notification -> {
+            entered.countDown();
+            awaitUninterruptibly(release);
+            handled.add(notification);
+        }, 2, 4)) {
+            List<Notification> notifications = NotificationStubDispatcher.generate(20, T0, Duration.ofHours(1), SUBSCRIPTION_NAME);
+            Thread puller = new Thread(() -> notifications.forEach(dispatcher));
+            try {
+                puller.start();
+                entered.await();
+                int lane = dispatcher.laneOf(SUBSCRIPTION_NAME);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (puller.getState() != Thread.State.WAITING || dispatcher.getQueued()[lane] < 4) {
+                    assertThat(System.nanoTime() - deadline).as("the puller to wait for a full lane").isNegative();
+                    Thread.sleep(1);
+                }
+                // The lane thread holds the batch it took before the handler blocked, and the lane is full behind it
+                assertThat(dispatcher.getQueued()[lane]).isEqualTo(4);
+                assertThat(dispatcher.getDispatchedCount()).isBetween(5L, 19L);
+                assertThat(dispatcher.getBlockedCount()).isPositive();
+                assertThat(handled).isEmpty();
+            } finally {
+                release.countDown();
+            }
+            puller.join();
+            dispatcher.flush();
+            assertThat(handled).isEqualTo(notifications);
+        }
+    }
+
+    /**
+     * Test that handler failures, Errors included, go to the error handler without stopping the lane, and that close
+     * handles what is queued
+     */
+    @Test
+    public void testFailuresAndClose() throws Exception {
+        List<Notification> notifications = NotificationStubDispatcher.generate(1000, T0, Duration.ofHours(1), SUBSCRIPTION_NAME);
+        List<Notification> handled = new ArrayList<>();
+        List<Notification> failed = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(NotificationDispatcher.SUBSCRIPTION_NAME, notification -> {
+            handled.add(notification);
+            if (handled.size() % 100 == 0) {
+                throw new NoClassDefFoundError("handler error");
+            }
+            if (handled.size() % 10 == 0) {
+                throw new IllegalArgumentException("handler failure");
+            }
+        }, 4, 16).errorHandler((notification, e) -> {
+            failed.add(notification);
+            failures.add(e);
+        });
+
+        notifications.forEach(dispatcher);
+        dispatcher.flush();
+        dispatcher.close();
+        assertThat(handled).isEqualTo(notifications);
+        assertThat(failed).hasSize(100);
+        assertThat(failures).filteredOn(e -> e instanceof NoClassDefFoundError).hasSize(10);
+        assertThat(failures).filteredOn(e -> e instanceof IllegalArgumentException).hasSize(90);
+        assertThat(dispatcher.getFailedCount()).isEqualTo(100);
+        assertThat(dispatcher.getHandledCount()).isEqualTo(1000);
+        assertThatThrownBy(() -> dispatcher.accept(notifications.get(0))).isInstanceOf(IllegalStateException.class);
+        dispatcher.close();
+    }
+
+    /**
+     * Test that without an error handler, failures are logged as warnings with the exception
+     */
+    @Test
+    public void testFailuresAreLoggedByDefault() throws Exception {
+        List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public synchronized void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(NotificationDispatcher.class.getName());
+        logger.addHandler(handler);
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(NotificationDispatcher.PURCHASE_REQUEST_ID, notification -> {
+            throw new IllegalArgumentException("handler failure");
+        }, 2, 16)) {
+            NotificationStubDispatcher.generate(3, T0, Duration.ofHours(1), SUBSCRIPTION_NAME).forEach(dispatcher);
+            dispatcher.flush();
+        } finally {
+            logger.removeHandler(handler);
+        }
+        synchronized (handler) {
+            assertThat(records).hasSize(3).allSatisfy(record -> {
+                assertThat(record.getLevel()).isEqualTo(Level.WARNING);
+                assertThat(record.getThrown()).isInstanceOf(IllegalArgumentException.class);
+                assertThat(record.getMessage()).contains("purchase request");
+            });
+        }
+    }
+
+    /**
+     * Test that pulling with NotificationPoller into the dispatcher keeps each purchase request in order, and is faster with more lanes
+     */
+    @Test
+    public void testPulledThroughput() throws Exception {
+        List<Notification> notifications = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            notifications.add(NotificationStubDispatcher.notification(i % 100, T0.plusSeconds(i), SUBSCRIPTION_NAME, "DELIVERED"));
+        }
+        MockWebServer server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new NotificationStubDispatcher(notifications));
+        server.start();
+        try {
+            NotificationsApi notificationsApi = new NotificationsApi(Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString()));
+            double oneLane = pull(notificationsApi, 1, directory.resolve("one-lane.cursor"));
+            double severalLanes = pull(notificationsApi, 16, directory.resolve("several-lanes.cursor"));
+            System.out.printf("2000 pulled notifications with 250 us handlers: %.0f/s on 1 lane, %.0f/s on 16 lanes%n", oneLane, severalLanes);
+            assertThat(severalLanes).isGreaterThan(oneLane * 3);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Pulls every notification into a dispatcher with the given number of lanes, checks their order per purchase request
+     * and returns how many were handled per second.
+     */
+    private static double pull(NotificationsApi notificationsApi, int lanes, Path cursorPath) throws Exception {
+        Map<Object, List<OffsetDateTime>> handled = new ConcurrentHashMap<>();
+        Consumer<Notification> handler = notification -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(250));
+            handled.computeIfAbsent(NotificationDispatcher.PURCHASE_REQUEST_ID.apply(notification), k -> new ArrayList<>())
+                    .add(OffsetDateTime.parse(notification.getCreatedTimestamp()));
+        };
+        long startNanos = System.nanoTime();
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(NotificationDispatcher.PURCHASE_REQUEST_ID, handler, lanes, 32);
+             NotificationPoller poller = new NotificationPoller(notificationsApi, cursorPath, dispatcher)
+                     .initialStart(T0)
+                     .pageLimit(200)
+                     .clock(Clock.fixed(T0.plusHours(1).toInstant(), ZoneOffset.UTC))) {
+            assertThat(poller.poll()).isEqualTo(2000);
+            dispatcher.flush();
+        }
+        double perSecond = 2000 * 1e9 / (System.nanoTime() - startNanos);
+        assertThat(handled).hasSize(100);
+        assertThat(handled.values()).allSatisfy(timestamps -> assertThat(timestamps).hasSize(20).isSorted());
+        return perSecond;
+    }
+
+    /**
+     * Gives purchase request i % KEYS to notification i, in both content models.
+     */
+    private static List<Notification> keyed(List<Notification> notifications) {
+        for (int i = 0; i < notifications.size(); i++) {
+            Object content = notifications.get(i).getContent();
+            if (content instanceof NotificationContent) {
+                ((NotificationContent) content).getPurchaseRequest().purchaseRequestId(i % KEYS);
+            } else {
+                ((CommercialBpsNotificationContent) content).purchaseRequestId(Integer.toString(i % KEYS));
+            }
+        }
+        return notifications;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
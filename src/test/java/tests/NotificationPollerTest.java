@@ -0,0 +1,324 @@
+package tests;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.QueueDispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import tests.utils.Config;
+import tests.utils.NotificationCursorFile;
+import tests.utils.NotificationDeduplicator;
+import tests.utils.NotificationFingerprint;
+import tests.utils.NotificationPoller;
+import tests.utils.NotificationStubDispatcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class polls a local MockWebServer with NotificationPoller while the dataset grows.
+ *
+ * <p> The clock is moved by hand, so each poll covers a known window. The tests check that every poll only asks for
+ * new data, that a restarted poller continues from its cursor file, and that the overlap never delivers a notification twice.
+ **/
+
+public class NotificationPollerTest implements Config {
+
+    private static final int PAGE_LIMIT = 50;
+    private static final Duration OVERLAP = Duration.ofMinutes(1);
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @TempDir
+    Path directory;
+
+    private Path cursorPath;
+    private MockWebServer server;
+    private NotificationStubDispatcher dispatcher;
+    private NotificationsApi notificationsApi;
+    private MutableClock clock;
+
+    @BeforeEach
+    public void before() throws Exception {
+        cursorPath = directory.resolve("notifications.cursor");
+        dispatcher = new NotificationStubDispatcher(notifications(0, 500, T0, Duration.ofHours(1)));
+        server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        notificationsApi = new NotificationsApi(Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString()));
+        clock = new MutableClock(T0.plusHours(1).toInstant());
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that a second poll only requests the window after the first one, moved back by the overlap
+     */
+    @Test
+    public void testPollsOnlyNewNotifications() throws Exception {
+        List<Notification> delivered = new ArrayList<>();
+        try (NotificationPoller poller = poller(delivered::add)) {
+            assertThat(poller.poll()).isEqualTo(500);
+            int firstPollRequests = server.getRequestCount();
+
+            dispatcher.add(notifications(500, 100, T0.plusHours(1), Duration.ofHours(1)));
+            clock.set(T0.plusHours(2).toInstant());
+            assertThat(poller.poll()).isEqualTo(100);
+            assertThat(poller.poll()).isZero();
+
+            List<HttpUrl> secondPoll = requestsAfter(firstPollRequests);
+            assertThat(secondPoll).hasSize(3);
+            assertThat(secondPoll).allSatisfy(url -> {
+                assertThat(OffsetDateTime.parse(url.queryParameter("start"))).isEqualTo(T0.plusHours(1).minus(OVERLAP));
+                assertThat(OffsetDateTime.parse(url.queryParameter("end"))).isEqualTo(T0.plusHours(2));
+            });
+        }
+        assertThat(purchaseRequestIds(delivered)).hasSize(600);
+    }
+
+    /**
+     * Test that a restarted poller continues from the cursor file instead of its initial start
+     */
+    @Test
+    public void testRestartResumesFromCursor() throws Exception {
+        List<Notification> delivered = new ArrayList<>();
+        try (NotificationPoller poller = poller(delivered::add)) {
+            poller.poll();
+        }
+        int firstRunRequests = server.getRequestCount();
+
+        dispatcher.add(notifications(500, 20, T0.plusHours(1), Duration.ofMinutes(10)));
+        clock.set(T0.plusHours(2).toInstant());
+        try (NotificationPoller restarted = new NotificationPoller(notificationsApi, cursorPath, delivered::add)
+                .pageLimit(PAGE_LIMIT).overlap(OVERLAP).clock(clock)) {
+            assertThat(restarted.poll()).isEqualTo(20);
+        }
+
+        assertThat(requestsAfter(firstRunRequests)).hasSize(1);
+        assertThat(purchaseRequestIds(delivered)).hasSize(520);
+        assertThat(delivered).hasSize(520);
+    }
+
+    /**
+     * Test that a notification that shows up late inside the overlap is delivered once, even across a restart
+     */
+    @Test
+    public void testOverlapDeliversLateArrivalsOnce() throws Exception {
+        List<Notification> delivered = new ArrayList<>();
+        try (NotificationPoller poller = poller(delivered::add)) {
+            poller.poll();
+        }
+        dispatcher.add(Collections.singletonList(NotificationStubDispatcher.notification(10_000, T0.plusHours(1).minusSeconds(30), SUBSCRIPTION_NAME, "DELIVERED")));
+        clock.set(T0.plusHours(1).plusMinutes(5).toInstant());
+
+        // The overlap returns the notifications of the last minute again, only the late one is new
+        try (NotificationPoller restarted = poller(delivered::add)) {
+            assertThat(restarted.poll()).isEqualTo(1);
+        }
+        assertThat(delivered).hasSize(501);
+        assertThat(fingerprints(delivered)).hasSize(501);
+    }
+
+    /**
+     * Test that a poller stopped in the middle of a window resumes it at the saved offset
+     */
+    @Test
+    public void testResumesInterruptedWindow() throws Exception {
+        List<Notification> delivered = new ArrayList<>();
+        try (NotificationPoller poller = poller(notification -> {
+            if (delivered.size() == 120) {
+                throw new IllegalStateException("handler stopped");
+            }
+            delivered.add(notification);
+        })) {
+            assertThatThrownBy(poller::poll).isInstanceOf(IllegalStateException.class);
+            assertThat(poller.getCheckpoint().getOffset()).isEqualTo(2 * PAGE_LIMIT);
+            assertThat(poller.getCheckpoint().isComplete()).isFalse();
+        }
+        try (NotificationPoller restarted = poller(delivered::add)) {
+            restarted.poll();
+        }
+
+        // The 20 notifications of the interrupted page that had been handled are handed over again, nothing is lost
+        assertThat(purchaseRequestIds(delivered)).hasSize(500);
+        assertThat(delivered).hasSize(520);
+    }
+
+    /**
+     * Test that a deduplicator kept across the restart drops the handled part of the interrupted page
+     */
+    @Test
+    public void testDeduplicatorDropsResumedPage() throws Exception {
+        List<Notification> delivered = new ArrayList<>();
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator().clock(clock);
+        try (NotificationPoller poller = poller(notification -> {
+            if (delivered.size() == 120) {
+                throw new IllegalStateException("handler stopped");
+            }
+            delivered.add(notification);
+        }).deduplicator(deduplicator)) {
+            assertThatThrownBy(poller::poll).isInstanceOf(IllegalStateException.class);
+        }
+        try (NotificationPoller restarted = poller(delivered::add).deduplicator(deduplicator)) {
+            assertThat(restarted.poll()).isEqualTo(380);
+        }
+
+        assertThat(delivered).hasSize(500);
+        assertThat(deduplicator.size()).isEqualTo(500);
+    }
+
+    /**
+     * Test that a torn record at the end of the cursor file is dropped and the previous checkpoint is used
+     */
+    @Test
+    public void testTornCheckpointIsIgnored() throws Exception {
+        NotificationCursorFile.Checkpoint written;
+        try (NotificationCursorFile cursorFile = new NotificationCursorFile(cursorPath)) {
+            cursorFile.append(new NotificationCursorFile.Checkpoint(1, 2, 3, true, Collections.singletonMap(4L, 5L)));
+            written = cursorFile.last();
+        }
+        Files.write(cursorPath, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (NotificationCursorFile cursorFile = new NotificationCursorFile(cursorPath)) {
+            assertThat(cursorFile.last()).isEqualToComparingFieldByField(written);
+            cursorFile.append(new NotificationCursorFile.Checkpoint(2, 3, 0, false, Collections.emptyMap()));
+        }
+        try (NotificationCursorFile cursorFile = new NotificationCursorFile(cursorPath)) {
+            assertThat(cursorFile.last().getStartMillis()).isEqualTo(2);
+            assertThat(cursorFile.last().isComplete()).isFalse();
+        }
+    }
+
+    /**
+     * Test that checkpoints only keep the fingerprints the next overlap can return, and that a page without a
+     * notifications array ends the window
+     */
+    @Test
+    public void testCheckpointKeepsOnlyTheOverlap() throws Exception {
+        try (NotificationPoller poller = poller(notification -> { })) {
+            assertThat(poller.poll()).isEqualTo(500);
+            // One notification every 7.2 s, of which the 8 in the last minute can come back
+            assertThat(poller.getCheckpoint().getDelivered()).hasSize(8);
+
+            server.setDispatcher(new QueueDispatcher());
+            server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("{\"total\":0}"));
+            clock.set(T0.plusHours(2).toInstant());
+            assertThat(poller.poll()).isZero();
+            assertThat(poller.getCheckpoint().isComplete()).isTrue();
+            assertThat(poller.getCheckpoint().getDelivered()).isEmpty();
+        }
+    }
+
+    /**
+     * Test that the cursor file stays small however many checkpoints are written
+     */
+    @Test
+    public void testCursorFileIsCompacted() throws Exception {
+        try (NotificationCursorFile cursorFile = new NotificationCursorFile(cursorPath)) {
+            for (int i = 0; i < 3 * NotificationCursorFile.MAX_RECORDS; i++) {
+                cursorFile.append(new NotificationCursorFile.Checkpoint(i, i + 1, 0, true, Collections.singletonMap((long) i, (long) i)));
+            }
+        }
+
+        assertThat(Files.size(cursorPath)).isLessThanOrEqualTo(NotificationCursorFile.MAX_RECORDS * 64L);
+        try (NotificationCursorFile cursorFile = new NotificationCursorFile(cursorPath)) {
+            assertThat(cursorFile.last().getStartMillis()).isEqualTo(3 * NotificationCursorFile.MAX_RECORDS - 1);
+        }
+    }
+
+    private NotificationPoller poller(Consumer<Notification> handler) throws Exception {
+        return new NotificationPoller(notificationsApi, cursorPath, handler)
+                .pageLimit(PAGE_LIMIT)
+                .overlap(OVERLAP)
+                .initialStart(T0)
+                .clock(clock);
+    }
+
+    private List<HttpUrl> requestsAfter(int requests) throws Exception {
+        List<HttpUrl> urls = new ArrayList<>();
+        for (int i = 0; i < server.getRequestCount(); i++) {
+            HttpUrl url = HttpUrl.parse("http://localhost" + server.takeRequest().getPath());
+            if (i >= requests) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    private static List<Notification> notifications(int firstId, int count, OffsetDateTime start, Duration span) {
+        List<Notification> notifications = new ArrayList<>(count);
+        long stepMillis = span.toMillis() / count;
+        for (int i = 0; i < count; i++) {
+            notifications.add(NotificationStubDispatcher.notification(firstId + i, start.plus(Duration.ofMillis(stepMillis * i)), SUBSCRIPTION_NAME, "DELIVERED"));
+        }
+        return notifications;
+    }
+
+    private static Set<Long> fingerprints(List<Notification> notifications) {
+        Set<Long> fingerprints = new HashSet<>();
+        for (Notification notification : notifications) {
+            fingerprints.add(NotificationFingerprint.of(notification));
+        }
+        return fingerprints;
+    }
+
+    private static Set<Integer> purchaseRequestIds(List<Notification> notifications) {
+        Set<Integer> ids = new HashSet<>();
+        for (Notification notification : notifications) {
+            ids.add(((NotificationContent) notification.getContent()).getPurchaseRequest().getPurchaseRequestId());
+        }
+        return ids;
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void set(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package tests;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import tests.utils.Config;
+import tests.utils.NotificationPushReceiver;
+import tests.utils.NotificationStubDispatcher;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class pushes notification arrays to a local NotificationPushReceiver, the way the service calls the registered callback URL.
+ *
+ * <p> The load test runs several pushing threads against one receiver while a consumer drains the queue, then prints
+ * requests per second, notifications per second and latency percentiles. The test turns Nagle's algorithm off for the
+ * JDK HttpServer, as an application embedding the receiver would, so latency is not dominated by delayed ACKs.
+ **/
+
+public class NotificationPushReceiverTest implements Config {
+
+    private static final MediaType APPLICATION_JSON = MediaType.parse("application/json");
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int BATCH_SIZE = 10;
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 2_000;
+    private static final int WARM_UP_REQUESTS_PER_THREAD = 500;
+
+    static {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final JSON json = new JSON();
+    private final OkHttpClient client = new OkHttpClient();
+    private NotificationPushReceiver receiver;
+
+    @BeforeEach
+    public void before() {
+        client.getDispatcher().setMaxRequestsPerHost(THREADS);
+        // OkHttp writes the headers and the body of a POST separately, so the load generator needs Nagle off too
+        client.setSocketFactory(new NoDelaySocketFactory());
+    }
+
+    @AfterEach
+    public void after() {
+        if (receiver != null) {
+            receiver.close();
+        }
+    }
+
+    /**
+     * Test that a pushed array is acknowledged and its notifications are queued with typed content
+     */
+    @Test
+    public void testAcceptsPushedNotifications() throws Exception {
+        receiver = start(new NotificationPushReceiver(json));
+        List<Notification> pushed = NotificationStubDispatcher.generate(BATCH_SIZE, T0, Duration.ofMinutes(1), SUBSCRIPTION_NAME);
+
+        assertThat(push(json.serialize(pushed))).isEqualTo(200);
+
+        List<Notification> received = new ArrayList<>();
+        assertThat(receiver.drainTo(received, Integer.MAX_VALUE)).isEqualTo(BATCH_SIZE);
+        assertThat(received).extracting(Notification::getContent).allMatch(content -> content instanceof NotificationContent);
+        assertThat(json.serialize(received)).isEqualTo(json.serialize(pushed));
+        assertThat(receiver.size()).isZero();
+    }
+
+    /**
+     * Test that a full queue turns deliveries away with 503 until it is drained, without accepting part of an array
+     */
+    @Test
+    public void testFullQueueRejectsDeliveries() throws Exception {
+        receiver = start(new NotificationPushReceiver(json).queueCapacity(25));
+        String batch = json.serialize(NotificationStubDispatcher.generate(BATCH_SIZE, T0, Duration.ofMinutes(1), SUBSCRIPTION_NAME));
+
+        assertThat(push(batch)).isEqualTo(200);
+        assertThat(push(batch)).isEqualTo(200);
+        assertThat(push(batch)).isEqualTo(503);
+        assertThat(receiver.size()).isEqualTo(20);
+
+        receiver.drainTo(new ArrayList<>(), 5);
+        assertThat(push(batch)).isEqualTo(200);
+        assertThat(receiver.size()).isEqualTo(25);
+        assertThat(push(batch)).isEqualTo(503);
+        assertThat(receiver.getRejectedRequests()).isEqualTo(2);
+    }
+
+    /**
+     * Test that bodies that are not a notification array, and other methods, are refused
+     */
+    @Test
+    public void testRejectsMalformedRequests() throws Exception {
+        receiver = start(new NotificationPushReceiver(json));
+        String notification = json.serialize(NotificationStubDispatcher.generate(1, T0, Duration.ofMinutes(1), SUBSCRIPTION_NAME).get(0));
+
+        assertThat(push(notification)).isEqualTo(400);
+        assertThat(push("[" + notification)).isEqualTo(400);
+        assertThat(push("[] []")).isEqualTo(400);
+        assertThat(push("[null]")).isEqualTo(400);
+        assertThat(push("[" + notification + ",null]")).isEqualTo(400);
+        Response get = client.newCall(new Request.Builder().url(url()).build()).execute();
+        assertThat(get.code()).isEqualTo(405);
+        assertThat(receiver.getMalformedRequests()).isEqualTo(5);
+        assertThat(receiver.size()).isZero();
+
+        // The rejected arrays reserved no room, so the whole queue is still free
+        String full = json.serialize(NotificationStubDispatcher.generate(NotificationPushReceiver.DEFAULT_QUEUE_CAPACITY, T0, Duration.ofMinutes(1), SUBSCRIPTION_NAME));
+        assertThat(push(full)).isEqualTo(200);
+    }
+
+    /**
+     * Test that an array longer than the queue is refused with 413 as soon as its first notification past the capacity is read
+     */
+    @Test
+    public void testRejectsOversizedArraysEarly() throws Exception {
+        receiver = start(new NotificationPushReceiver(json).queueCapacity(25));
+        String batch = json.serialize(NotificationStubDispatcher.generate(26, T0, Duration.ofMinutes(1), SUBSCRIPTION_NAME));
+
+        assertThat(push(batch)).isEqualTo(413);
+        // Decoding stops before the malformed tail, which is skipped unread
+        assertThat(push(batch.substring(0, batch.length() - 1) + ",{\"broken\"")).isEqualTo(413);
+        assertThat(receiver.getMalformedRequests()).isZero();
+        assertThat(receiver.getRejectedRequests()).isEqualTo(2);
+        assertThat(push(json.serialize(NotificationStubDispatcher.generate(25, T0, Duration.ofMinutes(1), SUBSCRIPTION_NAME)))).isEqualTo(200);
+    }
+
+    /**
+     * Measure sustained requests per second and latency percentiles with a consumer draining the queue
+     */
+    @Test
+    public void testLoad() throws Exception {
+        receiver = start(new NotificationPushReceiver(json).queueCapacity(1_000));
+        byte[] batch = json.serialize(NotificationStubDispatcher.generate(BATCH_SIZE, T0, Duration.ofMinutes(1), SUBSCRIPTION_NAME))
+                .getBytes(StandardCharsets.UTF_8);
+        AtomicBoolean consuming = new AtomicBoolean(true);
+        AtomicLong consumed = new AtomicLong();
+        Thread consumer = new Thread(() -> {
+            List<Notification> drained = new ArrayList<>(1_000);
+            while (consuming.get() || receiver.size() > 0) {
+                drained.clear();
+                if (receiver.drainTo(drained, 1_000) == 0) {
+                    Thread.yield();
+                }
+                consumed.addAndGet(drained.size());
+            }
+        });
+        consumer.start();
+
+        load(batch, WARM_UP_REQUESTS_PER_THREAD);
+        long start = System.nanoTime();
+        long[] latencies = load(batch, REQUESTS_PER_THREAD);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        consuming.set(false);
+        consumer.join();
+
+        Arrays.sort(latencies);
+        System.out.printf("%d pushes of %d notifications in %.2f s: %.0f requests/s, %.0f notifications/s, p50 %.2f ms, p99 %.2f ms, %d rejected%n",
+                latencies.length, BATCH_SIZE, seconds, latencies.length / seconds, latencies.length * BATCH_SIZE / seconds,
+                percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.99), receiver.getRejectedRequests());
+        assertThat(consumed.get()).isEqualTo(receiver.getAcceptedNotifications());
+        assertThat(receiver.getAcceptedRequests() + receiver.getRejectedRequests())
+                .isEqualTo((long) THREADS * (WARM_UP_REQUESTS_PER_THREAD + REQUESTS_PER_THREAD));
+    }
+
+    /**
+     * Pushes the batch from every thread, retrying rejected deliveries as the service does, and returns the latency of each push.
+     */
+    private long[] load(byte[] batch, int requestsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                results.add(executor.submit(() -> {
+                    long[] nanos = new long[requestsPerThread];
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        long start = System.nanoTime();
+                        int status = push(batch);
+                        nanos[i] = System.nanoTime() - start;
+                        if (status == 503) {
+                            i--;
+                        }
+                    }
+                    return nanos;
+                }));
+            }
+            long[] latencies = new long[THREADS * requestsPerThread];
+            for (int thread = 0; thread < THREADS; thread++) {
+                System.arraycopy(results.get(thread).get(1, TimeUnit.MINUTES), 0, latencies, thread * requestsPerThread, requestsPerThread);
+            }
+            return latencies;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private NotificationPushReceiver start(NotificationPushReceiver receiver) throws IOException {
+        return receiver.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    private String url() {
+        return "http://" + receiver.getAddress().getHostString() + ":" + receiver.getAddress().getPort() + NotificationPushReceiver.DEFAULT_PATH;
+    }
+
+    private int push(String body) throws IOException {
+        return push(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int push(byte[] body) throws IOException {
+        Request request = new Request.Builder().url(url()).post(RequestBody.create(APPLICATION_JSON, body)).build();
+        Response response = client.newCall(request).execute();
+        response.body().close();
+        return response.code();
+    }
+
+    private static class NoDelaySocketFactory extends SocketFactory {
+
+        private final SocketFactory delegate = SocketFactory.getDefault();
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return noDelay(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return noDelay(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return noDelay(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return noDelay(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return noDelay(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private static Socket noDelay(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        return sortedNanos[(int) Math.ceil(percentile * sortedNanos.length) - 1] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,168 @@
+package tests;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationDeduplicator;
+import tests.utils.NotificationReconciler;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Percentage.withPercentage;
+
+/**
+ * This test class reconciles three subscriptions against a local MockWebServer whose dataset is mostly DELIVERED,
+ * with a few FAILED, PENDING and NOT_APPLICABLE notifications, as a push receiver running alongside would leave it.
+ **/
+
+public class NotificationReconcilerTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime T1 = T0.plusDays(1);
+    private static final List<String> SUBSCRIPTIONS = Arrays.asList("RECONCILE_A", "RECONCILE_B", "RECONCILE_C");
+    private static final int NOTIFICATIONS_PER_SUBSCRIPTION = 2_000;
+    private static final int PARALLELISM = 3;
+
+    private MockWebServer server;
+    private NotificationsApi notificationsApi;
+    private List<Notification> dataset;
+
+    @BeforeEach
+    public void before() throws Exception {
+        dataset = new ArrayList<>();
+        long stepMillis = Duration.ofDays(1).toMillis() / NOTIFICATIONS_PER_SUBSCRIPTION;
+        int id = 0;
+        for (String subscriptionName : SUBSCRIPTIONS) {
+            for (int i = 0; i < NOTIFICATIONS_PER_SUBSCRIPTION; i++) {
+                dataset.add(NotificationStubDispatcher.notification(id++, T0.plus(Duration.ofMillis(stepMillis * i)), subscriptionName, pushStatusOf(i)));
+            }
+        }
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new NotificationStubDispatcher(dataset));
+        server.start();
+        notificationsApi = new NotificationsApi(Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString()));
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that only undelivered notifications are pulled, for every subscription, and that the savings are reported
+     */
+    @Test
+    public void testPullsOnlyUndeliveredNotifications() throws Exception {
+        List<Notification> delivered = Collections.synchronizedList(new ArrayList<>());
+        NotificationReconciler.Report report;
+        try (NotificationReconciler reconciler = new NotificationReconciler(notificationsApi, PARALLELISM).estimateFullPull(true)) {
+            report = reconciler.reconcile(T0, T1, SUBSCRIPTIONS, delivered::add);
+        }
+
+        System.out.println(report);
+        assertThat(delivered).hasSize((int) undelivered());
+        assertThat(delivered).allMatch(notification -> NotificationReconciler.UNDELIVERED_PUSH_STATUS.contains(notification.getPushStatus()));
+        assertThat(delivered).extracting(Notification::getSubscriptionName).containsAll(SUBSCRIPTIONS);
+        assertThat(report.getDelivered()).isEqualTo(delivered.size());
+        assertThat(report.getSavedCalls()).isPositive();
+        assertThat(report.getSavedBytes()).isGreaterThan(report.getBytes());
+
+        for (int i = 0; i < server.getRequestCount(); i++) {
+            HttpUrl url = HttpUrl.parse("http://localhost" + server.takeRequest().getPath());
+            assertThat(url.queryParameterValues("subscription_name")).hasSize(1);
+            if (!"1".equals(url.queryParameter("limit"))) {
+                assertThat(url.queryParameterValues("push_status")).isEqualTo(NotificationReconciler.UNDELIVERED_PUSH_STATUS);
+            }
+        }
+    }
+
+    /**
+     * Test that the estimated cost of a full pull is close to what a full pull actually reads
+     */
+    @Test
+    public void testFullPullEstimate() throws Exception {
+        try (NotificationReconciler reconciler = new NotificationReconciler(notificationsApi, PARALLELISM).estimateFullPull(true)) {
+            NotificationReconciler.Report report = reconciler.reconcile(T0, T1, SUBSCRIPTIONS, notification -> { });
+            NotificationReconciler.Report fullPull = reconciler.pushStatus(null).reconcile(T0, T1, SUBSCRIPTIONS, notification -> { });
+
+            // The full pull report also counts its probes, one per subscription
+            assertThat(fullPull.getDelivered()).isEqualTo(dataset.size());
+            assertThat(fullPull.getCalls() - SUBSCRIPTIONS.size()).isEqualTo(report.getFullPullCalls());
+            assertThat((double) report.getFullPullBytes()).isCloseTo(fullPull.getBytes(), withPercentage(10));
+        }
+    }
+
+    /**
+     * Test that notifications the push receiver already handed over are not delivered again, and that nothing is probed
+     * without the full pull estimate
+     */
+    @Test
+    public void testSkipsNotificationsAlreadyPushed() throws Exception {
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator().clock(Clock.fixed(T1.toInstant(), ZoneOffset.UTC));
+        long pending = 0;
+        for (Notification notification : dataset) {
+            if ("PENDING".equals(notification.getPushStatus())) {
+                deduplicator.add(notification);
+                pending++;
+            }
+        }
+
+        AtomicInteger concurrentCalls = new AtomicInteger();
+        AtomicInteger maxConcurrentCalls = new AtomicInteger();
+        NotificationReconciler.Report report;
+        try (NotificationReconciler reconciler = new NotificationReconciler(notificationsApi, PARALLELISM).pageLimit(10).deduplicator(deduplicator)) {
+            report = reconciler.reconcile(T0, T1, SUBSCRIPTIONS, notification -> {
+                maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+                concurrentCalls.decrementAndGet();
+            });
+        }
+
+        assertThat(report.getDuplicates()).isEqualTo(pending);
+        assertThat(report.getDelivered()).isEqualTo(undelivered() - pending);
+        assertThat(maxConcurrentCalls.get()).isEqualTo(1);
+        // Without the estimate, no subscription is probed
+        assertThat(report.getFullPullCalls()).isZero();
+        assertThat(report.getCalls()).isEqualTo(server.getRequestCount());
+        for (int i = 0; i < server.getRequestCount(); i++) {
+            assertThat(HttpUrl.parse("http://localhost" + server.takeRequest().getPath()).queryParameter("limit")).isEqualTo("10");
+        }
+    }
+
+    private long undelivered() {
+        return dataset.stream().filter(notification -> !"DELIVERED".equals(notification.getPushStatus())).count();
+    }
+
+    /**
+     * 5% FAILED, 3% PENDING and 2% NOT_APPLICABLE, the rest DELIVERED.
+     */
+    private static String pushStatusOf(int i) {
+        int percentile = i % 100;
+        if (percentile < 5) {
+            return "FAILED";
+        }
+        if (percentile < 8) {
+            return "PENDING";
+        }
+        if (percentile < 10) {
+            return "NOT_APPLICABLE";
+        }
+        return "DELIVERED";
+    }
+}
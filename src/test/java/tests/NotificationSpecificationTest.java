@@ -0,0 +1,177 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.FieldContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.SpecificationRequest;
+import org.openapitools.client.model.Subscription;
+import tests.utils.Config;
+import tests.utils.NotificationExamples;
+import tests.utils.NotificationSpecification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class compiles SpecificationRequest trees with NotificationSpecification and applies them to the example
+ * notifications of notification-swagger.yml, without any HTTP calls.
+ **/
+
+public class NotificationSpecificationTest implements Config {
+
+    private static final String PAYMENT_UPDATE = "PAYMENT_UPDATE";
+
+    private final Notification paymentAuthorization = NotificationExamples.paymentAuthorization();
+    private final Notification paymentUpdate = NotificationExamples.paymentUpdate();
+
+    /**
+     * Test a TEXT EQUALS on a nested field, the filter used by SubscriptionApiTest
+     */
+    @Test
+    public void testTextEquals() {
+        NotificationSpecification travel = compile(field("WHERE", "purchaseRequest.rcnAlias", "EQUALS", text("Travel Expense RCN")));
+        NotificationSpecification other = compile(field("WHERE", "purchaseRequest.rcnAlias", "EQUALS", text("travel expense rcn")));
+
+        assertThat(travel.test(paymentAuthorization)).isTrue();
+        assertThat(travel.test(paymentUpdate)).isFalse();
+        assertThat(other.test(paymentAuthorization)).isFalse();
+    }
+
+    /**
+     * Test the INTEGER operators, with expected values as Gson decodes them from a subscription response
+     */
+    @Test
+    public void testIntegerOperators() {
+        assertThat(compile(field("WHERE", "transactionAmount", "EQUALS", integer(7550.0))).test(paymentAuthorization)).isTrue();
+        assertThat(compile(field("WHERE", "transactionAmount", "GREATER_THAN", integer(7000))).test(paymentAuthorization)).isTrue();
+        assertThat(compile(field("WHERE", "transactionAmount", "LESS_THAN", integer("7550"))).test(paymentAuthorization)).isFalse();
+        assertThat(compile(field("WHERE", "transactionAmount", "BETWEEN", integer(7550).anotherValue(8000))).test(paymentAuthorization)).isTrue();
+        assertThat(compile(field("WHERE", "replacementAmounts.billingAmount", "BETWEEN", integer(8000).anotherValue(1201))).test(paymentAuthorization)).isFalse();
+    }
+
+    /**
+     * Test INTEGER and TEXT checks on a PAYMENT_UPDATE text field holding a number
+     */
+    @Test
+    public void testPaymentUpdateFields() {
+        NotificationSpecification integer = NotificationSpecification.compile(PAYMENT_UPDATE,
+                Collections.singletonList(field("WHERE", "purchaseRequestId", "GREATER_THAN", integer(360000))));
+        NotificationSpecification text = NotificationSpecification.compile(PAYMENT_UPDATE,
+                Collections.singletonList(field("WHERE", "statusReasonInformation.reasonCode", "EQUALS", text("ALT_MOP_NOT_BPS"))));
+
+        assertThat(integer.test(paymentUpdate)).isTrue();
+        assertThat(integer.test(paymentAuthorization)).isFalse();
+        assertThat(text.test(paymentUpdate)).isTrue();
+        assertThat(text.test(NotificationExamples.paymentUpdateWithErrors())).isFalse();
+    }
+
+    /**
+     * Test that AND binds tighter than OR in a list of specifications
+     */
+    @Test
+    public void testAndBindsTighterThanOr() {
+        SpecificationRequest matches = field("WHERE", "merchant.categoryCode", "EQUALS", text("5542"));
+        SpecificationRequest differs = field("OR", "merchant.city", "EQUALS", text("Dublin"));
+        SpecificationRequest alsoDiffers = field("AND", "merchant.stateOrCountryCode", "EQUALS", text("IE"));
+
+        // true OR (false AND false)
+        assertThat(compile(matches, differs, alsoDiffers).test(paymentAuthorization)).isTrue();
+        // (false AND true) OR false
+        assertThat(compile(field("WHERE", "merchant.city", "EQUALS", text("Dublin")),
+                field("AND", "merchant.categoryCode", "EQUALS", text("5542")),
+                field("OR", "merchant.stateOrCountryCode", "EQUALS", text("IE"))).test(paymentAuthorization)).isFalse();
+    }
+
+    /**
+     * Test the SubscriptionWithChildSpecification example: a field check whose children follow it with their own operators
+     */
+    @Test
+    public void testChildSpecifications() {
+        SpecificationRequest child = field("AND", "purchaseRequest.rcnAlias", "EQUALS", text("Travel Expense RCN"));
+        SpecificationRequest parent = field("WHERE", "purchaseRequest.rcnAlias", "EQUALS", text("BOC")).children(new ArrayList<>(Collections.singletonList(child)));
+
+        assertThat(compile(parent).test(paymentAuthorization)).isFalse();
+        child.setOperator("OR");
+        assertThat(compile(parent).test(paymentAuthorization)).isTrue();
+        // A group of children only, without a field of its own
+        SpecificationRequest group = new SpecificationRequest().type(SPECIFICATION_TYPE).operator(SPECIFICATION_OPERATOR).children(Arrays.asList(
+                field("WHERE", "transactionAmount", "EQUALS", integer(1)),
+                field("OR", "purchaseRequest.companyId", "EQUALS", integer(233191))));
+        assertThat(compile(group).test(paymentAuthorization)).isTrue();
+    }
+
+    /**
+     * Test that missing fields and untyped content do not match
+     */
+    @Test
+    public void testMissingFieldsDoNotMatch() {
+        NotificationSpecification specification = compile(field("WHERE", "purchaseRequest.companyId", "LESS_THAN", integer(Integer.MAX_VALUE)));
+        ((NotificationContent) paymentAuthorization.getContent()).setPurchaseRequest(null);
+        assertThat(specification.test(paymentAuthorization)).isFalse();
+
+        JSON json = new JSON();
+        Notification untyped = json.deserialize(json.serialize(NotificationExamples.paymentAuthorization()), Notification.class);
+        assertThat(specification.test(untyped)).isFalse();
+    }
+
+    /**
+     * Test that a subscription without specifications matches every notification of its subject type
+     */
+    @Test
+    public void testSubscriptionWithoutSpecifications() {
+        NotificationSpecification specification = NotificationSpecification.compile(new Subscription()
+                .subjectType(Subscription.SubjectTypeEnum.AUTHORIZATION)
+                .specifications(new ArrayList<>()));
+
+        assertThat(specification.test(paymentAuthorization)).isTrue();
+        assertThat(specification.test(paymentUpdate)).isFalse();
+    }
+
+    /**
+     * Test that unsupported paths, content types and operators fail when compiling rather than when evaluating
+     */
+    @Test
+    public void testInvalidSpecificationsFailToCompile() {
+        assertThatThrownBy(() -> compile(field("WHERE", "purchaseRequest.unknown", "EQUALS", text("x"))))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("purchaseRequest.unknown");
+        assertThatThrownBy(() -> compile(field("WHERE", "transactionAmount", "EQUALS", new FieldContent().contentType("DECIMAL").value(1.5))))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("DECIMAL");
+        assertThatThrownBy(() -> compile(field("WHERE", "transactionAmount", "BETWEEN", integer(1))))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("anotherValue");
+        assertThatThrownBy(() -> compile(field("WHERE", "transactionAmount", "EQUALS", integer("many"))))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("integer");
+        assertThatThrownBy(() -> compile(field("WHERE", "transactionAmount", "LIKE", integer(1))))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("LIKE");
+        assertThatThrownBy(() -> compile(field("WHERE", "transactionAmount", "EQUALS", integer(1)), field("WHERE", "billingAmount", "EQUALS", integer(1))))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("AND or OR");
+    }
+
+    private static NotificationSpecification compile(SpecificationRequest... specifications) {
+        List<SpecificationRequest> list = Arrays.asList(specifications);
+        return NotificationSpecification.compile(SUBJECT_TYPE, list);
+    }
+
+    private static SpecificationRequest field(String operator, String fieldMappingName, String fieldOperator, FieldContent expectedContent) {
+        return new SpecificationRequest()
+                .type(SPECIFICATION_TYPE)
+                .operator(operator)
+                .fieldMappingName(fieldMappingName)
+                .fieldOperator(fieldOperator)
+                .expectedContent(expectedContent);
+    }
+
+    private static FieldContent text(String value) {
+        return new FieldContent().contentType(CONTENT_TYPE).value(value);
+    }
+
+    private static FieldContent integer(Object value) {
+        return new FieldContent().contentType(INTEGER).value(value);
+    }
+}
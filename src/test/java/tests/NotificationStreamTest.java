@@ -0,0 +1,109 @@
+package tests;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import tests.utils.Config;
+import tests.utils.NotificationStream;
+import tests.utils.NotificationStubDispatcher;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class reads notifications one at a time with NotificationStream from a local MockWebServer.
+ *
+ * <p> The dataset spans several pages, so the test covers page boundaries, the prefetched request for the next offset
+ * and cancelling that request once the last page has been read.
+ **/
+
+public class NotificationStreamTest implements Config {
+
+    private static final int DATASET_SIZE = 1_050;
+    private static final int PAGE_LIMIT = 100;
+    private static final OffsetDateTime DATASET_START = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime DATASET_END = DATASET_START.plusDays(1);
+
+    private static MockWebServer server;
+    private static NotificationStubDispatcher dispatcher;
+    private static NotificationsApi notificationsApi;
+
+    @BeforeAll
+    public static void before() throws Exception {
+        dispatcher = new NotificationStubDispatcher(NotificationStubDispatcher.generate(DATASET_SIZE, DATASET_START, Duration.ofDays(1), SUBSCRIPTION_NAME));
+        server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        notificationsApi = new NotificationsApi(Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString()));
+    }
+
+    @AfterAll
+    public static void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that the stream yields every notification in the range once and in server order
+     */
+    @Test
+    public void testStreamYieldsEveryNotification() {
+        int requestsBefore = dispatcher.getRequestCount();
+        List<Notification> notifications;
+        try (Stream<Notification> stream = new NotificationStream(notificationsApi, DATASET_START, DATASET_END, null, null, 0, PAGE_LIMIT).stream()) {
+            notifications = stream.collect(Collectors.toList());
+        }
+        int pages = (DATASET_SIZE + PAGE_LIMIT - 1) / PAGE_LIMIT;
+
+        assertThat(notifications).hasSize(DATASET_SIZE);
+        assertThat(notifications).extracting(Notification::getCreatedTimestamp).doesNotHaveDuplicates().isSorted();
+        assertThat(notifications).extracting(Notification::getSubscriptionName).containsOnly(SUBSCRIPTION_NAME);
+        // Every page plus, at most, the prefetched request past the last page before it is cancelled.
+        assertThat(dispatcher.getRequestCount() - requestsBefore).isBetween(pages, pages + 1);
+    }
+
+    /**
+     * Test that a partially consumed stream can be closed early
+     */
+    @Test
+    public void testStreamCanBeClosedEarly() {
+        List<Notification> notifications;
+        try (Stream<Notification> stream = new NotificationStream(notificationsApi, DATASET_START, DATASET_END, null, null, 0, PAGE_LIMIT).stream()) {
+            notifications = stream.limit(PAGE_LIMIT + 5).collect(Collectors.toList());
+        }
+
+        assertThat(notifications).hasSize(PAGE_LIMIT + 5);
+    }
+
+    /**
+     * Test that an empty range yields no notifications
+     */
+    @Test
+    public void testStreamOverEmptyRange() {
+        try (NotificationStream stream = new NotificationStream(notificationsApi, DATASET_END, DATASET_END.plusDays(1), null, null, 0, PAGE_LIMIT)) {
+            assertThat(stream.hasNext()).isFalse();
+        }
+    }
+
+    /**
+     * Test that an unsuccessful response surfaces its ApiException
+     */
+    @Test
+    public void testStreamSurfacesApiErrors() {
+        NotificationsApi misconfigured = new NotificationsApi(Config.setupLocalApiClient(server.url("/unknown").toString()));
+        try (NotificationStream stream = new NotificationStream(misconfigured, DATASET_START, DATASET_END, null, null, 0, PAGE_LIMIT)) {
+            assertThatThrownBy(stream::hasNext)
+                    .isInstanceOf(NotificationStream.NotificationStreamException.class)
+                    .satisfies(e -> assertThat(((NotificationStream.NotificationStreamException) e).getCause().getCode()).isEqualTo(404));
+        }
+    }
+}
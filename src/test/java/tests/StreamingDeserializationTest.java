@@ -0,0 +1,138 @@
+package tests;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.JSON;
+import org.openapitools.client.api.FieldMappingApi;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.api.SubscriptionApi;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openapitools.client.model.SubscriptionResponse;
+import tests.utils.ApiClientBuilder;
+import tests.utils.ApiStubDispatcher;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationContentTypeAdapterFactory;
+import tests.utils.NotificationExamples;
+import tests.utils.NotificationStubDispatcher;
+import tests.utils.StreamingApiClient;
+
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * This test class checks that StreamingApiClient, which decodes notification pages and lists straight from the response
+ * body, gives the same results as the generated deserialize that reads the body into a String first: over HTTP with
+ * gzip, for other charsets, and for empty, malformed and trailing content.
+ **/
+
+public class StreamingDeserializationTest implements Config {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2021, 9, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final Type SUBSCRIPTIONS = new TypeToken<List<SubscriptionResponse>>() {
+    }.getType();
+
+    /**
+     * Test that pages, subscriptions and field mappings pulled over HTTP decode the same with and without streaming
+     */
+    @Test
+    public void testStreamingMatchesGeneratedPath() throws Exception {
+        NotificationStubDispatcher notifications = new NotificationStubDispatcher(NotificationStubDispatcher.generate(500, T0, Duration.ofDays(1), SUBSCRIPTION_NAME)).gzip(true);
+        MockWebServer server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new ApiStubDispatcher(notifications));
+        server.start();
+        try {
+            String basePath = server.url(NotificationStubDispatcher.BASE_PATH).toString();
+            ApiClient streaming = new ApiClientBuilder().basePath(basePath).build();
+            ApiClient generated = new ApiClientBuilder().basePath(basePath).streamingDeserialization(false).build();
+            assertThat(streaming).isInstanceOf(StreamingApiClient.class);
+            assertThat(((StreamingApiClient) streaming).isStreaming()).isTrue();
+            JSON json = streaming.getJSON();
+
+            NotificationsWrapper page = new NotificationsApi(streaming).notificationsGet(T0, T0.plusDays(1), null, null, 100, 300);
+            assertThat(page.getCount()).isEqualTo(300);
+            assertThat(json.serialize(page)).isEqualTo(json.serialize(new NotificationsApi(generated).notificationsGet(T0, T0.plusDays(1), null, null, 100, 300)));
+            assertThat(json.serialize(new SubscriptionApi(streaming).getAllSubscription(0, 10, null)))
+                    .isEqualTo(json.serialize(new SubscriptionApi(generated).getAllSubscription(0, 10, null)));
+            assertThat(json.serialize(new FieldMappingApi(streaming).fieldmappingsGet()))
+                    .isEqualTo(json.serialize(new FieldMappingApi(generated).fieldmappingsGet()));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Test that the charset of the Content-Type header is honoured, with UTF-8 as the default
+     */
+    @Test
+    public void testCharsets() throws Exception {
+        StreamingApiClient streaming = client(true);
+        StreamingApiClient generated = client(false);
+        NotificationsWrapper page = NotificationExamples.page(3);
+        page.getNotifications().get(0).subscriptionName("Abonnement été € 💳");
+        String body = streaming.getJSON().serialize(page);
+
+        for (String contentType : new String[]{"application/json", "application/json; charset=UTF-16", "application/json; charset=UTF-8"}) {
+            Charset charset = contentType.contains("UTF-16") ? StandardCharsets.UTF_16 : StandardCharsets.UTF_8;
+            NotificationsWrapper decoded = streaming.deserialize(response(contentType, body.getBytes(charset)), NotificationsWrapper.class);
+            assertThat(streaming.getJSON().serialize(decoded)).isEqualTo(body);
+            assertThat(streaming.getJSON().serialize(decoded))
+                    .isEqualTo(generated.getJSON().serialize(generated.deserialize(response(contentType, body.getBytes(charset)), NotificationsWrapper.class)));
+        }
+    }
+
+    /**
+     * Test that empty, malformed and trailing content are handled as on the generated path, and that other types are not streamed
+     */
+    @Test
+    public void testEmptyMalformedAndOtherTypes() throws Exception {
+        StreamingApiClient streaming = client(true);
+        StreamingApiClient generated = client(false);
+
+        assertThat(streaming.<Object>deserialize(response("application/json", new byte[0]), SUBSCRIPTIONS)).isNull();
+        assertThat(generated.<Object>deserialize(response("application/json", new byte[0]), SUBSCRIPTIONS)).isNull();
+        for (String malformed : new String[]{"[{\"name\":", "[{\"name\":\"a\"}] [", "{\"offset\":\"not a number\"}"}) {
+            Type type = malformed.startsWith("[") ? SUBSCRIPTIONS : NotificationsWrapper.class;
+            assertThatThrownBy(() -> streaming.deserialize(response("application/json", malformed.getBytes(StandardCharsets.UTF_8)), type)).isInstanceOf(JsonParseException.class);
+            assertThatThrownBy(() -> generated.deserialize(response("application/json", malformed.getBytes(StandardCharsets.UTF_8)), type)).isInstanceOf(JsonParseException.class);
+        }
+
+        // A String is not streamed, and a body that is not JSON still goes through the generated path
+        assertThat((String) streaming.deserialize(response("text/plain", "plain".getBytes(StandardCharsets.UTF_8)), String.class)).isEqualTo("plain");
+        SubscriptionResponse subscription = streaming.deserialize(response("application/json", "{\"name\":\"a\"}".getBytes(StandardCharsets.UTF_8)), SubscriptionResponse.class);
+        assertThat(subscription.getName()).isEqualTo("a");
+    }
+
+    private static StreamingApiClient client(boolean streaming) {
+        StreamingApiClient client = new StreamingApiClient().setStreaming(streaming);
+        client.getJSON().setGson(NotificationContentTypeAdapterFactory.createGson(client.getJSON()));
+        return client;
+    }
+
+    private static Response response(String contentType, byte[] body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://localhost" + NotificationStubDispatcher.BASE_PATH + "/notifications").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .header("Content-Type", contentType)
+                .body(ResponseBody.create(MediaType.parse(contentType), body))
+                .build();
+    }
+}
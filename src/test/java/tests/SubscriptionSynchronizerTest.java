@@ -0,0 +1,381 @@
+package tests;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.JSON;
+import org.openapitools.client.api.SubscriptionApi;
+import org.openapitools.client.model.FieldContent;
+import org.openapitools.client.model.SpecificationRequest;
+import org.openapitools.client.model.Subscription;
+import org.openapitools.client.model.SubscriptionResponse;
+import tests.utils.Config;
+import tests.utils.NoDelayServerSocketFactory;
+import tests.utils.NotificationStubDispatcher;
+import tests.utils.SubscriptionSynchronizer;
+import tests.utils.SubscriptionSynchronizer.Action;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test class syncs desired subscriptions through SubscriptionSynchronizer against a local MockWebServer that keeps
+ * subscriptions in memory, answers after a fixed latency and can reject chosen subscription names.
+ **/
+
+public class SubscriptionSynchronizerTest implements Config {
+
+    private static final int EXISTING = 1_000;
+    private static final int PARALLELISM = 8;
+    private static final long LATENCY_MILLIS = 10;
+
+    private final SubscriptionDispatcher dispatcher = new SubscriptionDispatcher();
+    private MockWebServer server;
+    private SubscriptionApi subscriptionApi;
+
+    @BeforeEach
+    public void before() throws Exception {
+        for (int i = 0; i < EXISTING; i++) {
+            dispatcher.create(subscription(i, true));
+        }
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(dispatcher);
+        server.start();
+        subscriptionApi = new SubscriptionApi(Config.setupLocalApiClient(server.url(NotificationStubDispatcher.BASE_PATH).toString()));
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Test that every subscription is listed once with parallel page reads, and compare with reading the pages one by one
+     */
+    @Test
+    public void testListsAllPagesInParallel() throws Exception {
+        try (SubscriptionSynchronizer synchronizer = new SubscriptionSynchronizer(subscriptionApi, PARALLELISM)) {
+            synchronizer.listAll();
+        }
+
+        List<SubscriptionResponse> parallel;
+        long parallelNanos = System.nanoTime();
+        try (SubscriptionSynchronizer synchronizer = new SubscriptionSynchronizer(subscriptionApi, PARALLELISM)) {
+            parallel = synchronizer.listAll();
+        }
+        parallelNanos = System.nanoTime() - parallelNanos;
+        int maxConcurrentRequests = dispatcher.maxInFlight.get();
+
+        List<SubscriptionResponse> sequential;
+        long sequentialNanos = System.nanoTime();
+        try (SubscriptionSynchronizer synchronizer = new SubscriptionSynchronizer(subscriptionApi, 1)) {
+            sequential = synchronizer.listAll();
+        }
+        sequentialNanos = System.nanoTime() - sequentialNanos;
+
+        System.out.printf("%d subscriptions listed in %d ms with %d pages at a time, %d ms one page at a time%n", parallel.size(),
+                TimeUnit.NANOSECONDS.toMillis(parallelNanos), PARALLELISM, TimeUnit.NANOSECONDS.toMillis(sequentialNanos));
+        assertThat(parallel).hasSize(EXISTING).extracting(SubscriptionResponse::getId).doesNotHaveDuplicates().isSorted();
+        assertThat(parallel).isEqualTo(sequential);
+        assertThat(maxConcurrentRequests).isGreaterThan(1).isLessThanOrEqualTo(PARALLELISM);
+    }
+
+    /**
+     * Test that a service capping the page size below the requested limit is still listed in full, and a short listing in two waves
+     */
+    @Test
+    public void testListsAllPagesWhenThePageSizeIsCapped() throws Exception {
+        dispatcher.maxPageLimit = 10;
+        List<SubscriptionResponse> capped;
+        try (SubscriptionSynchronizer synchronizer = new SubscriptionSynchronizer(subscriptionApi, PARALLELISM)) {
+            capped = synchronizer.listAll();
+        }
+        assertThat(capped).hasSize(EXISTING).extracting(SubscriptionResponse::getId).doesNotHaveDuplicates().isSorted();
+
+        dispatcher.maxPageLimit = Integer.MAX_VALUE;
+        dispatcher.keepFirst(5);
+        dispatcher.requests.set(0);
+        try (SubscriptionSynchronizer synchronizer = new SubscriptionSynchronizer(subscriptionApi, PARALLELISM)) {
+            assertThat(synchronizer.listAll()).isEqualTo(capped.subList(0, 5));
+        }
+        assertThat(dispatcher.requests.get()).isEqualTo(2 * PARALLELISM);
+    }
+
+    /**
+     * Test that a sync creates, updates and deletes what differs, concurrently but within the limit, and leaves the rest alone
+     */
+    @Test
+    public void testSyncAppliesTheDifference() throws Exception {
+        // 0-49 are dropped, 50-149 are deactivated, 150-199 get a specification, 200-999 are kept and 1000-1099 are new
+        List<Subscription> desired = new ArrayList<>();
+        for (int i = 50; i < EXISTING + 100; i++) {
+            Subscription subscription = subscription(i, i >= 150);
+            if (i >= 150 && i < 200) {
+                subscription.addSpecificationsItem(specification(i));
+            }
+            desired.add(subscription);
+        }
+
+        SubscriptionSynchronizer.Result result;
+        try (SubscriptionSynchronizer synchronizer = new SubscriptionSynchronizer(subscriptionApi, PARALLELISM)) {
+            result = synchronizer.sync(desired);
+        }
+
+        System.out.println(result);
+        assertThat(result.getFailures()).isEmpty();
+        assertThat(result.count(Action.DELETE)).isEqualTo(50);
+        assertThat(result.count(Action.UPDATE)).isEqualTo(150);
+        assertThat(result.count(Action.CREATE)).isEqualTo(100);
+        assertThat(result.count(Action.UNCHANGED)).isEqualTo(800);
+        assertThat(dispatcher.maxInFlight.get()).isLessThanOrEqualTo(PARALLELISM);
+        assertThat(dispatcher.names()).hasSize(desired.size());
+        assertThat(dispatcher.find(name(160)).getAsJsonArray("specifications")).hasSize(1);
+        assertThat(dispatcher.find(name(60)).get("active").getAsBoolean()).isFalse();
+    }
+
+    /**
+     * Test that a repeat sync diffs against the snapshot of the previous one and only calls the API for what changed
+     */
+    @Test
+    public void testRepeatSyncOnlyTouchesChanges() throws Exception {
+        List<Subscription> desired = new ArrayList<>();
+        for (int i = 0; i < EXISTING; i++) {
+            desired.add(subscription(i, true).addSpecificationsItem(specification(i)));
+        }
+
+        try (SubscriptionSynchronizer synchronizer = new SubscriptionSynchronizer(subscriptionApi, PARALLELISM)) {
+            assertThat(synchronizer.sync(desired).count(Action.UPDATE)).isEqualTo(EXISTING);
+            int requests = dispatcher.requests.get();
+
+            desired.get(3).setActive(false);
+            desired.get(4).getSpecifications().get(0).getExpectedContent().setValue(1.0);
+            desired.remove(5);
+            SubscriptionSynchronizer.Result result = synchronizer.sync(desired);
+
+            System.out.println(result);
+            assertThat(result.isListed()).isFalse();
+            assertThat(result.count(Action.UPDATE)).isEqualTo(2);
+            assertThat(result.count(Action.DELETE)).isEqualTo(1);
+            assertThat(result.count(Action.UNCHANGED)).isEqualTo(EXISTING - 3);
+            assertThat(dispatcher.requests.get() - requests).isEqualTo(3);
+
+            // Numbers read back as Double still match the Integer they were sent as
+            synchronizer.invalidate();
+            assertThat(synchronizer.sync(desired).count(Action.UNCHANGED)).isEqualTo(EXISTING - 1);
+        }
+    }
+
+    /**
+     * Test that rejected subscriptions get their own error result without stopping the others, and that the next sync lists again
+     */
+    @Test
+    public void testPerItemErrors() throws Exception {
+        dispatcher.rejectedNames.add(name(EXISTING));
+        dispatcher.rejectedNames.add(name(7));
+        List<Subscription> desired = new ArrayList<>();
+        for (int i = 0; i < EXISTING + 10; i++) {
+            desired.add(subscription(i, i % 2 == 0));
+        }
+
+        try (SubscriptionSynchronizer synchronizer = new SubscriptionSynchronizer(subscriptionApi, PARALLELISM)) {
+            SubscriptionSynchronizer.Result result = synchronizer.sync(desired);
+
+            System.out.println(result);
+            assertThat(result.getFailures()).extracting(SubscriptionSynchronizer.Item::getName).containsExactlyInAnyOrder(name(EXISTING), name(7));
+            assertThat(result.getFailures()).allMatch(item -> item.getError().getCode() == 400 && item.getSubscription() == null);
+            assertThat(result.count(Action.CREATE)).isEqualTo(9);
+            assertThat(result.count(Action.UPDATE)).isEqualTo(EXISTING / 2 - 1);
+
+            dispatcher.rejectedNames.clear();
+            result = synchronizer.sync(desired);
+            assertThat(result.isListed()).isTrue();
+            assertThat(result.count(Action.CREATE)).isEqualTo(1);
+            assertThat(result.count(Action.UPDATE)).isEqualTo(1);
+            assertThat(result.getFailures()).isEmpty();
+        }
+    }
+
+    private static String name(int i) {
+        return String.format("%s_%05d", SUBSCRIPTION_NAME, i);
+    }
+
+    private static Subscription subscription(int i, boolean active) {
+        return new Subscription()
+                .name(name(i))
+                .subjectType(Subscription.SubjectTypeEnum.AUTHORIZATION)
+                .active(active)
+                .specifications(new ArrayList<>());
+    }
+
+    private static SpecificationRequest specification(int i) {
+        return new SpecificationRequest()
+                .type(SPECIFICATION_TYPE)
+                .operator(SPECIFICATION_OPERATOR)
+                .fieldMappingName("purchaseRequest.companyId")
+                .fieldOperator(FIELD_OPERATOR)
+                .expectedContent(new FieldContent().contentType(INTEGER).value(i));
+    }
+
+    /**
+     * Serves /subscriptions from memory. Subscriptions are sorted by id, and the ids follow the order of creation.
+     */
+    private static class SubscriptionDispatcher extends Dispatcher {
+
+        private static final String PATH = NotificationStubDispatcher.BASE_PATH + "/subscriptions";
+
+        private static final Logger SERVER_LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+        static {
+            SERVER_LOGGER.setLevel(Level.WARNING);
+        }
+
+        final Set<String> rejectedNames = ConcurrentHashMap.newKeySet();
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        volatile int maxPageLimit = Integer.MAX_VALUE;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Map<String, JsonObject> subscriptions = new TreeMap<>();
+        private int nextId;
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            requests.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(LATENCY_MILLIS);
+                return respond(request);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private synchronized MockResponse respond(RecordedRequest request) {
+            HttpUrl url = HttpUrl.parse("http://localhost" + request.getPath());
+            String path = url.encodedPath();
+            String id = path.startsWith(PATH + "/") ? path.substring(PATH.length() + 1) : null;
+            if (id == null && path.equals(PATH) && request.getMethod().equals("GET")) {
+                int offset = Integer.parseInt(url.queryParameter("offset"));
+                int limit = Math.min(Integer.parseInt(url.queryParameter("limit")), maxPageLimit);
+                JsonArray page = new JsonArray();
+                subscriptions.values().stream().skip(offset).limit(limit).forEach(page::add);
+                return json(200, page);
+            }
+            if (id == null && path.equals(PATH) && request.getMethod().equals("POST")) {
+                JsonObject subscription = body(request);
+                if (rejectedNames.contains(subscription.get("name").getAsString())) {
+                    return rejected();
+                }
+                return json(201, create(subscription));
+            }
+            if (id == null || !subscriptions.containsKey(id)) {
+                return new MockResponse().setResponseCode(404);
+            }
+            if (request.getMethod().equals("PUT")) {
+                JsonObject subscription = body(request);
+                if (rejectedNames.contains(subscription.get("name").getAsString())) {
+                    return rejected();
+                }
+                subscriptions.put(id, toResponse(id, subscription));
+                return json(200, subscriptions.get(id));
+            }
+            if (request.getMethod().equals("DELETE")) {
+                subscriptions.remove(id);
+                return new MockResponse().setResponseCode(204);
+            }
+            return new MockResponse().setResponseCode(405);
+        }
+
+        synchronized JsonObject create(Subscription subscription) {
+            return create(new JsonParser().parse(new JSON().serialize(subscription)).getAsJsonObject());
+        }
+
+        private JsonObject create(JsonObject subscription) {
+            String id = String.format("%08d", nextId++);
+            subscriptions.put(id, toResponse(id, subscription));
+            return subscriptions.get(id);
+        }
+
+        synchronized void keepFirst(int count) {
+            subscriptions.keySet().removeIf(id -> Integer.parseInt(id) >= count);
+        }
+
+        synchronized List<String> names() {
+            List<String> names = new ArrayList<>();
+            for (JsonObject subscription : subscriptions.values()) {
+                names.add(subscription.get("name").getAsString());
+            }
+            Collections.sort(names);
+            return names;
+        }
+
+        synchronized JsonObject find(String name) {
+            return subscriptions.values().stream().filter(subscription -> subscription.get("name").getAsString().equals(name)).findFirst().orElse(null);
+        }
+
+        /**
+         * Turns a Subscription request into a SubscriptionResponse: adds the id, defaults active to true, and replaces
+         * each fieldMappingName with a fieldMapping object.
+         */
+        private static JsonObject toResponse(String id, JsonObject subscription) {
+            JsonObject response = subscription;
+            response.addProperty("id", id);
+            if (!response.has("active")) {
+                response.addProperty("active", true);
+            }
+            if (response.has("specifications")) {
+                toResponse(response.getAsJsonArray("specifications"));
+            }
+            return response;
+        }
+
+        private static void toResponse(JsonArray specifications) {
+            for (JsonElement element : specifications) {
+                JsonObject specification = element.getAsJsonObject();
+                JsonElement fieldMappingName = specification.remove("fieldMappingName");
+                if (fieldMappingName != null) {
+                    JsonObject fieldMapping = new JsonObject();
+                    fieldMapping.add("name", fieldMappingName);
+                    specification.add("fieldMapping", fieldMapping);
+                }
+                if (specification.has("children")) {
+                    toResponse(specification.getAsJsonArray("children"));
+                }
+            }
+        }
+
+        private static JsonObject body(RecordedRequest request) {
+            return new JsonParser().parse(request.getBody().readString(StandardCharsets.UTF_8)).getAsJsonObject();
+        }
+
+        private static MockResponse json(int code, JsonElement body) {
+            return new MockResponse().setResponseCode(code).setHeader("Content-Type", "application/json").setBody(body.toString());
+        }
+
+        private static MockResponse rejected() {
+            return new MockResponse().setResponseCode(400).setHeader("Content-Type", "application/json")
+                    .setBody("{\"Errors\":{\"Error\":[{\"Source\":\"CEN\",\"ReasonCode\":\"INVALID_REQUEST\",\"Description\":\"Subscription rejected\",\"Recoverable\":false}]}}");
+        }
+    }
+}
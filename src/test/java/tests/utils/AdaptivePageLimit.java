@@ -0,0 +1,313 @@
+package tests.utils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the limit of /notifications pages at runtime from the latency, size and failures of the pages read so far.
+ *
+ * <p> The limit grows while the time per notification keeps falling, and settles once it stops. A failed page, or two
+ * pages in a row slower than the maximum page latency, cut it. Failures that keep coming with large pages while smaller
+ * ones succeed set a ceiling it stays below until a page that large succeeds again. Every probe interval the limit is
+ * tried higher again, so that it follows the service as conditions change. Pages are also kept under the maximum page
+ * size, from the average size of a notification in the responses that report a Content-Length.
+ * <p> The limit only decides how many notifications are asked for. Callers move their offset by the number of
+ * notifications each page actually returned, as NotificationPoller does, so offsets stay right whenever it changes.
+ * Pages read with a limit that has since changed are not measured, and failures of pages smaller than the current
+ * limit are ignored, so callers sharing one AdaptivePageLimit across threads do not cut it twice for one problem.
+ **/
+public class AdaptivePageLimit {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 25;
+    public static final int DEFAULT_MIN_LIMIT = 5;
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+    public static final double DEFAULT_GROWTH = 2;
+    public static final double DEFAULT_BACKOFF = 0.5;
+    public static final double DEFAULT_MIN_IMPROVEMENT = 0.1;
+    public static final Duration DEFAULT_MAX_PAGE_LATENCY = Duration.ofSeconds(2);
+    public static final long DEFAULT_MAX_PAGE_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_PROBE_INTERVAL = 200;
+    public static final int PAGES_PER_STEP = 3;
+    public static final int SUSPECT_FAILURES = 3;
+    public static final int SUSPECT_WINDOW = 50;
+
+    private static final double BYTES_SMOOTHING = 0.2;
+    private static final int NO_CEILING = Integer.MAX_VALUE;
+
+    private int limit = DEFAULT_INITIAL_LIMIT;
+    private int minLimit = DEFAULT_MIN_LIMIT;
+    private int maxLimit = DEFAULT_MAX_LIMIT;
+    private double growth = DEFAULT_GROWTH;
+    private double backoff = DEFAULT_BACKOFF;
+    private double minImprovement = DEFAULT_MIN_IMPROVEMENT;
+    private long maxPageLatencyNanos = DEFAULT_MAX_PAGE_LATENCY.toNanos();
+    private long maxPageBytes = DEFAULT_MAX_PAGE_BYTES;
+    private int probeInterval = DEFAULT_PROBE_INTERVAL;
+
+    // The limit that kept failing while smaller pages succeeded, which growth stays below
+    private int ceiling = NO_CEILING;
+    // The largest limit read successfully, kept below the ceiling
+    private int largestGood;
+    // The smallest limit that failed since a page that large last succeeded, the failures at or above it, and the
+    // successful pages below it since
+    private int suspect = NO_CEILING;
+    private int suspectFailures;
+    private int pagesBelowSuspect;
+    private int slowPages;
+    // Time per notification measured at the previous limit, and that limit, or NaN before the first measurement
+    private double previousCost = Double.NaN;
+    private int previousLimit;
+    private int samples;
+    private long sampleNanos;
+    private long sampleNotifications;
+    private boolean settled;
+    private int successfulPages;
+    private double bytesPerNotification = Double.NaN;
+    private long increases;
+    private long decreases;
+
+    /**
+     * Sets the limit to start at and the bounds it adapts within.
+     */
+    public synchronized AdaptivePageLimit limits(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * Sets the factor the limit is multiplied by to grow, and the one it is multiplied by after a failure.
+     */
+    public synchronized AdaptivePageLimit factors(double growth, double backoff) {
+        if (growth <= 1 || backoff <= 0 || backoff >= 1) {
+            throw new IllegalArgumentException("growth must be above 1 and backoff between 0 and 1");
+        }
+        this.growth = growth;
+        this.backoff = backoff;
+        return this;
+    }
+
+    /**
+     * Sets by how much, as a fraction, the time per notification must fall for the limit to keep growing. Defaults to 0.1.
+     */
+    public synchronized AdaptivePageLimit minImprovement(double minImprovement) {
+        this.minImprovement = minImprovement;
+        return this;
+    }
+
+    /**
+     * Sets the latency above which a page counts as slow, and the second slow page in a row as failed. Defaults to 2 seconds.
+     */
+    public synchronized AdaptivePageLimit maxPageLatency(Duration maxPageLatency) {
+        this.maxPageLatencyNanos = maxPageLatency.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets the response size pages are kept under. Defaults to 4 MiB.
+     */
+    public synchronized AdaptivePageLimit maxPageBytes(long maxPageBytes) {
+        this.maxPageBytes = maxPageBytes;
+        return this;
+    }
+
+    /**
+     * Sets after how many successful pages the limit is tried higher again, and a ceiling tried. Defaults to 200.
+     */
+    public synchronized AdaptivePageLimit probeInterval(int probeInterval) {
+        this.probeInterval = probeInterval;
+        return this;
+    }
+
+    /**
+     * Returns the limit to ask the next page for.
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized long getIncreaseCount() {
+        return increases;
+    }
+
+    public synchronized long getDecreaseCount() {
+        return decreases;
+    }
+
+    /**
+     * Records a page that was read.
+     *
+     * <p> Small pages spend most of their time on the round trip, and large ones on the service building and sending
+     * them, so the time per notification falls as pages grow until the round trip no longer matters. The limit is
+     * multiplied by the growth factor after every PAGES_PER_STEP full pages at that limit, as long as the time per
+     * notification fell by at least the minimum improvement. Once it stops falling, the limit settles, going back to
+     * the previous limit if the last step made things worse. Pages shorter than the limit, such as the last page of a
+     * window, are not measured, since the round trip is spread over fewer notifications.
+     * <p> A single page slower than the maximum page latency, such as the first one on a new connection, is only left
+     * out, and the second in a row counts as a failure.
+     *
+     * @param requestedLimit the limit the page was asked for
+     * @param count how many notifications it returned
+     * @param latencyNanos how long it took
+     * @param bytes the size of the response body, or -1 when unknown
+     */
+    public synchronized void onPage(int requestedLimit, int count, long latencyNanos, long bytes) {
+        if (bytes >= 0 && count > 0) {
+            double perNotification = (double) bytes / count;
+            bytesPerNotification = Double.isNaN(bytesPerNotification) ? perNotification
+                    : bytesPerNotification + BYTES_SMOOTHING * (perNotification - bytesPerNotification);
+        }
+        if (latencyNanos > maxPageLatencyNanos) {
+            if (++slowPages >= 2) {
+                slowPages = 0;
+                onFailure(requestedLimit);
+            }
+            return;
+        }
+        slowPages = 0;
+        largestGood = Math.max(largestGood, requestedLimit);
+        if (suspect != NO_CEILING && (requestedLimit >= suspect || ++pagesBelowSuspect > SUSPECT_WINDOW)) {
+            suspect = NO_CEILING;
+        }
+        if (requestedLimit >= ceiling) {
+            // Pages as large as the ceiling succeed again
+            ceiling = NO_CEILING;
+        }
+        if (++successfulPages >= probeInterval) {
+            // Forget the measurements and try higher again, counting successful pages whatever the changes in between.
+            // A ceiling is tried with one page, which lifts it if it succeeds and only costs that page otherwise
+            previousCost = Double.NaN;
+            settled = false;
+            successfulPages = 0;
+            if (ceiling != NO_CEILING && requestedLimit == limit && ceiling <= Math.min(maxLimit, sizeLimit())) {
+                change(ceiling);
+                increases++;
+                return;
+            }
+            resetSamples();
+        }
+        if (requestedLimit != limit) {
+            return;
+        }
+        if (limit > Math.max(minLimit, sizeLimit())) {
+            change(Math.max(minLimit, sizeLimit()));
+            decreases++;
+            return;
+        }
+        if (settled || count < requestedLimit) {
+            return;
+        }
+        sampleNanos += latencyNanos;
+        sampleNotifications += count;
+        if (++samples < PAGES_PER_STEP) {
+            return;
+        }
+        double cost = (double) sampleNanos / sampleNotifications;
+        resetSamples();
+        if (Double.isNaN(previousCost) || cost < previousCost * (1 - minImprovement)) {
+            previousCost = cost;
+            previousLimit = limit;
+            int next = next();
+            if (next > limit) {
+                change(next);
+                increases++;
+            } else {
+                settled = true;
+            }
+        } else {
+            if (cost > previousCost * (1 + minImprovement)) {
+                change(previousLimit);
+                decreases++;
+            }
+            settled = true;
+        }
+    }
+
+    /**
+     * Records a page that failed, as a timeout or a 5xx response would. Failures unrelated to the size of pages, such
+     * as 4xx responses, should not be recorded.
+     *
+     * <p> The limit is cut by the backoff factor, except that a failure at a limit larger than any read successfully
+     * only sends it back to the largest one that was.
+     */
+    public synchronized void onFailure(int requestedLimit) {
+        if (requestedLimit < limit) {
+            return;
+        }
+        if (requestedLimit < ceiling) {
+            suspect(requestedLimit);
+        }
+        int backedOff = (int) (requestedLimit * backoff);
+        if (requestedLimit > largestGood) {
+            backedOff = Math.max(backedOff, largestGood);
+        }
+        change(Math.max(minLimit, backedOff));
+        previousCost = Double.NaN;
+        settled = false;
+        decreases++;
+    }
+
+    /**
+     * Counts a failure of the given limit towards the suspected one, which becomes the ceiling once pages at least that
+     * large have failed SUSPECT_FAILURES times with smaller pages succeeding in between.
+     *
+     * <p> The suspect is cleared by a page that large succeeding, or by SUSPECT_WINDOW smaller pages succeeding first,
+     * in onPage. Failures that come and go whatever the size of pages are cleared that way, so they cut the limit for a
+     * while without pinning it down, while failures that come with the size of pages end up as a ceiling.
+     */
+    private void suspect(int failedLimit) {
+        if (failedLimit < suspect) {
+            suspect = failedLimit;
+            suspectFailures = 1;
+            pagesBelowSuspect = 0;
+        } else if (pagesBelowSuspect > 0 && ++suspectFailures >= SUSPECT_FAILURES) {
+            ceiling = Math.min(ceiling, suspect);
+            largestGood = Math.min(largestGood, suspect - 1);
+            suspect = NO_CEILING;
+        }
+    }
+
+    /**
+     * Returns the next limit to grow to: the growth factor up, but no further than halfway to the ceiling, so that the
+     * ceiling is approached without being reached, and within the maximum limit and page size. Halfway steps smaller
+     * than a quarter of a growth step are not taken, since they risk a failure as much as a larger one and gain little.
+     */
+    private int next() {
+        long next = (long) Math.ceil(limit * growth);
+        if (ceiling != NO_CEILING) {
+            long halfway = (limit + (long) ceiling) / 2;
+            if (halfway < limit * (1 + (growth - 1) / 4)) {
+                return limit;
+            }
+            next = Math.min(next, halfway);
+        }
+        return (int) Math.min(next, Math.min(maxLimit, sizeLimit()));
+    }
+
+    private int sizeLimit() {
+        return Double.isNaN(bytesPerNotification) || bytesPerNotification <= 0 ? maxLimit
+                : (int) Math.min(maxLimit, maxPageBytes / bytesPerNotification);
+    }
+
+    private void change(int newLimit) {
+        limit = newLimit;
+        resetSamples();
+    }
+
+    private void resetSamples() {
+        samples = 0;
+        sampleNanos = 0;
+        sampleNotifications = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("limit %d, %d increases, %d decreases, %s ceiling, %.1f us per notification",
+                limit, increases, decreases, ceiling == NO_CEILING ? "no" : Integer.toString(ceiling),
+                Double.isNaN(previousCost) ? Double.NaN : previousCost / TimeUnit.MICROSECONDS.toNanos(1));
+    }
+}
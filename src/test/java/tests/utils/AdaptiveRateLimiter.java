@@ -0,0 +1,161 @@
+package tests.utils;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces requests with a token bucket whose rate follows the responses, additive increase and multiplicative decrease.
+ *
+ * <p> Every request takes a token. Tokens refill at the current rate up to the burst size, and a request that finds
+ * none waits for its turn rather than being rejected.
+ * <p> 429s, 5xx and I/O failures cut the rate, by half by default, at most once per decrease interval so that the
+ * requests already in flight when the gateway started to shed load only count once. Every other response adds to the
+ * rate, so that while requests keep up with it the rate grows by the additive increase each second, up to the maximum.
+ **/
+public class AdaptiveRateLimiter implements Interceptor {
+
+    public static final double DEFAULT_INITIAL_RATE = 50;
+    public static final double DEFAULT_MIN_RATE = 1;
+    public static final double DEFAULT_MAX_RATE = 200;
+    public static final int DEFAULT_BURST = 10;
+    public static final double DEFAULT_ADDITIVE_INCREASE = 2;
+    public static final double DEFAULT_MULTIPLICATIVE_DECREASE = 0.5;
+    public static final Duration DEFAULT_DECREASE_INTERVAL = Duration.ofSeconds(1);
+
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int STATUS_SERVER_ERROR = 500;
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private double rate = DEFAULT_INITIAL_RATE;
+    private double minRate = DEFAULT_MIN_RATE;
+    private double maxRate = DEFAULT_MAX_RATE;
+    private int burst = DEFAULT_BURST;
+    private double additiveIncrease = DEFAULT_ADDITIVE_INCREASE;
+    private double multiplicativeDecrease = DEFAULT_MULTIPLICATIVE_DECREASE;
+    private long decreaseIntervalNanos = DEFAULT_DECREASE_INTERVAL.toNanos();
+    private double tokens = DEFAULT_BURST;
+    private long refilledNanos = System.nanoTime();
+    private long decreasedNanos = refilledNanos - decreaseIntervalNanos;
+    private final AtomicLong decreases = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+
+    /**
+     * Sets the rate the limiter starts at and the bounds it adapts within, in requests per second.
+     */
+    public synchronized AdaptiveRateLimiter rate(double initialRate, double minRate, double maxRate) {
+        if (minRate <= 0 || minRate > initialRate || initialRate > maxRate) {
+            throw new IllegalArgumentException("Rates must satisfy 0 < minRate <= initialRate <= maxRate");
+        }
+        this.rate = initialRate;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        return this;
+    }
+
+    /**
+     * Sets how many requests may go out back to back after the limiter has been idle. Defaults to 10.
+     */
+    public synchronized AdaptiveRateLimiter burst(int burst) {
+        this.burst = burst;
+        this.tokens = Math.min(tokens, burst);
+        return this;
+    }
+
+    /**
+     * Sets how much the rate grows per second of error-free traffic at that rate, and the factor it is multiplied by on errors.
+     */
+    public synchronized AdaptiveRateLimiter aimd(double additiveIncrease, double multiplicativeDecrease) {
+        this.additiveIncrease = additiveIncrease;
+        this.multiplicativeDecrease = multiplicativeDecrease;
+        return this;
+    }
+
+    public synchronized AdaptiveRateLimiter decreaseInterval(Duration decreaseInterval) {
+        this.decreaseIntervalNanos = decreaseInterval.toNanos();
+        this.decreasedNanos = System.nanoTime() - decreaseIntervalNanos;
+        return this;
+    }
+
+    /**
+     * Returns the current rate in requests per second.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public long getDecreaseCount() {
+        return decreases.get();
+    }
+
+    /**
+     * Returns how many requests had to wait for a token.
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            waits.incrementAndGet();
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limiter");
+            }
+        }
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            decrease();
+            throw e;
+        }
+        if (response.code() == STATUS_TOO_MANY_REQUESTS || response.code() >= STATUS_SERVER_ERROR) {
+            decrease();
+        } else {
+            increase();
+        }
+        return response;
+    }
+
+    /**
+     * Takes a token and returns how long to wait before using it. Tokens may be taken ahead of time, so callers queue
+     * up one refill interval apart instead of all waking up at once when a token comes back.
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        refill(now);
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledNanos) * rate / NANOS_PER_SECOND);
+        refilledNanos = now;
+    }
+
+    private synchronized void increase() {
+        refill(System.nanoTime());
+        rate = Math.min(maxRate, rate + additiveIncrease / rate);
+    }
+
+    private synchronized void decrease() {
+        long now = System.nanoTime();
+        if (now - decreasedNanos < decreaseIntervalNanos) {
+            return;
+        }
+        refill(now);
+        decreasedNanos = now;
+        rate = Math.max(minRate, rate * multiplicativeDecrease);
+        decreases.incrementAndGet();
+    }
+}
@@ -0,0 +1,334 @@
+package tests.utils;
+
+import com.mastercard.developer.interceptors.OkHttp2OAuth1Interceptor;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.squareup.okhttp.logging.HttpLoggingInterceptor;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.openapitools.client.ApiClient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Builds an ApiClient with its OkHttp client configured for sustained polling rather than left at the library defaults.
+ *
+ * <p> The connection pool keeps enough idle connections for every request allowed in flight to the host, so parallel
+ * pollers reuse connections instead of reconnecting. OkHttp's Dispatcher only limits asynchronous calls, and the generated
+ * APIs execute synchronously, so both limits are also applied by an interceptor that holds a permit until the response body
+ * is closed. A request waits for a permit no longer than the read timeout, then fails with an InterruptedIOException, so
+ * response bodies left unclosed make later requests fail rather than hang.
+ * <p> HTTP/2 is offered first and used wherever the platform can negotiate it with ALPN, otherwise connections fall back to HTTP/1.1.
+ * <p> OkHttp sends Accept-Encoding: gzip and unzips the response itself as long as that header is not set by hand,
+ * so the builder leaves it alone.
+ * <p> Retries, the circuit breaker and the adaptive rate limiter are off unless set. They run in that order, ahead of
+ * the per host limit: every retry goes through the circuit breaker, and requests failed fast by an open circuit take
+ * no token from the rate limiter.
+ * <p> Logging is off unless requested, and then only records metadata: method, URL, status, timing and body sizes.
+ * Unlike {@code setDebugging(true)} no body is ever buffered, and no header, so the Authorization header is never written out.
+ * <p> The client is a StreamingApiClient, which decodes notification pages and lists straight from the response body,
+ * unless streaming deserialization is turned off.
+ * <p> With a listener set, the client is an InstrumentedApiClient: signing interceptors are timed, and exchange times,
+ * bytes and deserialization times are reported to the listener.
+ **/
+public class ApiClientBuilder {
+
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+    public static final int DEFAULT_WRITE_TIMEOUT_MILLIS = 30_000;
+
+    private String basePath = Config.BASE_PATH;
+    private int maxRequests = DEFAULT_MAX_REQUESTS;
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    private Integer maxIdleConnections;
+    private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+    private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private int writeTimeoutMillis = DEFAULT_WRITE_TIMEOUT_MILLIS;
+    private List<Protocol> protocols = Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+    private HttpLoggingInterceptor.Logger logger;
+    private boolean typedNotificationContent = true;
+    private boolean streamingDeserialization = true;
+    private RetryInterceptor retry;
+    private CircuitBreakerInterceptor circuitBreaker;
+    private AdaptiveRateLimiter rateLimiter;
+    private ApiClientListener listener;
+    private final List<Interceptor> networkInterceptors = new ArrayList<>();
+
+    public ApiClientBuilder basePath(String basePath) {
+        this.basePath = basePath;
+        return this;
+    }
+
+    /**
+     * Sets how many requests may be in flight in total and to a single host, counting a request until its response body
+     * is closed. Defaults to 64 and 16.
+     */
+    public ApiClientBuilder maxRequests(int maxRequests, int maxRequestsPerHost) {
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        return this;
+    }
+
+    /**
+     * Sets the connection pool size and keep-alive. The pool defaults to the per host limit, kept alive for 5 minutes.
+     */
+    public ApiClientBuilder connectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveMillis = unit.toMillis(keepAlive);
+        return this;
+    }
+
+    public ApiClientBuilder timeouts(int connectTimeoutMillis, int readTimeoutMillis, int writeTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Sets the protocols offered, in order of preference. Must include HTTP/1.1.
+     */
+    public ApiClientBuilder protocols(Protocol... protocols) {
+        this.protocols = Arrays.asList(protocols);
+        return this;
+    }
+
+    /**
+     * Logs one line per request and per response with method, URL, status, timing and body size, to the given logger.
+     */
+    public ApiClientBuilder metadataLogging(HttpLoggingInterceptor.Logger logger) {
+        this.logger = logger;
+        return this;
+    }
+
+    public ApiClientBuilder metadataLogging() {
+        return metadataLogging(HttpLoggingInterceptor.Logger.DEFAULT);
+    }
+
+    /**
+     * Whether notification content is decoded into the model matching its subject, see NotificationContentTypeAdapterFactory. Defaults to true.
+     */
+    public ApiClientBuilder typedNotificationContent(boolean typedNotificationContent) {
+        this.typedNotificationContent = typedNotificationContent;
+        return this;
+    }
+
+    /**
+     * Whether NotificationsWrapper and list responses are decoded straight from the response body, see StreamingApiClient. Defaults to true.
+     */
+    public ApiClientBuilder streamingDeserialization(boolean streamingDeserialization) {
+        this.streamingDeserialization = streamingDeserialization;
+        return this;
+    }
+
+    /**
+     * Retries idempotent GETs that failed with a transient error, see RetryInterceptor.
+     */
+    public ApiClientBuilder retry(RetryInterceptor retry) {
+        this.retry = retry;
+        return this;
+    }
+
+    /**
+     * Fails requests fast while their endpoint keeps failing, see CircuitBreakerInterceptor.
+     */
+    public ApiClientBuilder circuitBreaker(CircuitBreakerInterceptor circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    /**
+     * Paces requests at a rate that backs off on errors and throttling, see AdaptiveRateLimiter.
+     */
+    public ApiClientBuilder rateLimiter(AdaptiveRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Reports signing, exchange and deserialization times, bytes and notifications per page, see ApiClientListener.
+     */
+    public ApiClientBuilder listener(ApiClientListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public ApiClientBuilder networkInterceptor(Interceptor interceptor) {
+        networkInterceptors.add(interceptor);
+        return this;
+    }
+
+    /**
+     * Signs every request with CachedOAuth1Interceptor.
+     */
+    public ApiClientBuilder signing(String consumerKey, PrivateKey signingKey) {
+        return networkInterceptor(new CachedOAuth1Interceptor(consumerKey, signingKey));
+    }
+
+    public ApiClient build() {
+        InstrumentedApiClient instrumentedClient = listener == null ? null : new InstrumentedApiClient(listener);
+        StreamingApiClient client = instrumentedClient == null ? new StreamingApiClient() : instrumentedClient;
+        client.setStreaming(streamingDeserialization);
+        client.setBasePath(basePath);
+        client.setConnectTimeout(connectTimeoutMillis);
+        client.setReadTimeout(readTimeoutMillis);
+        client.setWriteTimeout(writeTimeoutMillis);
+        if (typedNotificationContent) {
+            client.getJSON().setGson(NotificationContentTypeAdapterFactory.createGson(client.getJSON()));
+        }
+
+        OkHttpClient httpClient = client.getHttpClient();
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        httpClient.setDispatcher(dispatcher);
+        int idleConnections = maxIdleConnections == null ? maxRequestsPerHost : maxIdleConnections;
+        httpClient.setConnectionPool(new ConnectionPool(idleConnections, keepAliveMillis, TimeUnit.MILLISECONDS));
+        httpClient.setProtocols(protocols);
+        if (retry != null) {
+            httpClient.interceptors().add(retry);
+        }
+        if (circuitBreaker != null) {
+            httpClient.interceptors().add(circuitBreaker);
+        }
+        if (rateLimiter != null) {
+            httpClient.interceptors().add(rateLimiter);
+        }
+        httpClient.interceptors().add(new ConcurrencyInterceptor(maxRequests, maxRequestsPerHost, readTimeoutMillis));
+        for (Interceptor interceptor : networkInterceptors) {
+            boolean signer = interceptor instanceof CachedOAuth1Interceptor || interceptor instanceof OkHttp2OAuth1Interceptor;
+            httpClient.networkInterceptors().add(signer && instrumentedClient != null ? instrumentedClient.signingInterceptor(interceptor) : interceptor);
+        }
+        if (logger != null) {
+            HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor(logger);
+            loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BASIC);
+            httpClient.networkInterceptors().add(loggingInterceptor);
+        }
+        if (instrumentedClient != null) {
+            httpClient.networkInterceptors().add(instrumentedClient.exchangeInterceptor());
+        }
+        return client;
+    }
+
+    /**
+     * Limits the requests in flight in total and to each host, for synchronous calls as well as asynchronous ones.
+     * The permits are held until the response body is closed, so the limits also cover the time spent reading it.
+     * A request waits for its permits up to the given timeout, or indefinitely when it is 0, as OkHttp's timeouts do.
+     */
+    static class ConcurrencyInterceptor implements Interceptor {
+
+        private final Semaphore totalPermits;
+        private final int maxRequestsPerHost;
+        private final long timeoutMillis;
+        private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+        ConcurrencyInterceptor(int maxRequests, int maxRequestsPerHost, long timeoutMillis) {
+            this.totalPermits = new Semaphore(maxRequests);
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            String host = chain.request().httpUrl().host();
+            Semaphore hostPermits = permits.computeIfAbsent(host, key -> new Semaphore(maxRequestsPerHost));
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            acquire(totalPermits, deadline, host);
+            try {
+                acquire(hostPermits, deadline, host);
+            } catch (IOException e) {
+                totalPermits.release();
+                throw e;
+            }
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (IOException | RuntimeException e) {
+                hostPermits.release();
+                totalPermits.release();
+                throw e;
+            }
+            if (response.body() == null) {
+                hostPermits.release();
+                totalPermits.release();
+                return response;
+            }
+            return response.newBuilder().body(new PermitReleasingBody(response.body(), hostPermits, totalPermits)).build();
+        }
+
+        private void acquire(Semaphore semaphore, long deadline, String host) throws IOException {
+            try {
+                if (timeoutMillis == 0) {
+                    semaphore.acquire();
+                } else if (!semaphore.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    throw new InterruptedIOException("Timed out after " + timeoutMillis + " ms waiting for a request slot to " + host
+                            + ", are response bodies being closed?");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request slot to " + host);
+            }
+        }
+    }
+
+    private static class PermitReleasingBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        PermitReleasingBody(ResponseBody delegate, Semaphore... permits) throws IOException {
+            this.delegate = delegate;
+            AtomicBoolean released = new AtomicBoolean();
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            for (Semaphore semaphore : permits) {
+                                semaphore.release();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package tests.utils;
+
+import java.lang.reflect.Type;
+
+/**
+ * Receives the measurements of an ApiClient built with {@link ApiClientBuilder#listener(ApiClientListener)}.
+ *
+ * <p> Endpoints are named as in CircuitBreakerInterceptor, for instance GET /notifications or PUT /subscriptions/{id}.
+ * Methods are called on the thread making the call, so they must be thread-safe and should return quickly; every
+ * method does nothing by default. ApiClientMetrics is an implementation that keeps histograms in memory.
+ **/
+public interface ApiClientListener {
+
+    /**
+     * Called once the signing interceptor has added its Authorization header, with the time it took.
+     */
+    default void onSigned(String endpoint, long signingNanos) {
+    }
+
+    /**
+     * Called when a response body has been read to the end or closed, with the time from sending the signed request to
+     * that point and the bytes on the wire: the request body, and the response body before it was unzipped.
+     */
+    default void onExchange(String endpoint, int status, long exchangeNanos, long requestBytes, long responseBytes) {
+    }
+
+    /**
+     * Called after ApiClient.deserialize has turned a response body into the return type, with the time it took. The body
+     * has already been read from the network at that point, so only decoding is timed.
+     */
+    default void onDeserialized(String endpoint, Type returnType, long deserializeNanos) {
+    }
+
+    /**
+     * Called after a page of notifications has been deserialized, with the number of notifications on it.
+     */
+    default void onNotificationsPage(String endpoint, int notifications) {
+    }
+}
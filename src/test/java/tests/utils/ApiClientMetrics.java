@@ -0,0 +1,141 @@
+package tests.utils;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An ApiClientListener that keeps, per endpoint, histograms of exchange, signing and deserialization times and of
+ * notifications per page, and counts of exchanges, errors and bytes.
+ *
+ * <p> Recording takes no lock, see ConcurrentHistogram, so one instance can be shared by every thread and client.
+ **/
+public class ApiClientMetrics implements ApiClientListener {
+
+    private static final int STATUS_CLIENT_ERROR = 400;
+
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the metrics of an endpoint, such as GET /notifications, recording nothing yet if it was never called.
+     */
+    public EndpointMetrics get(String endpoint) {
+        return endpoints.computeIfAbsent(endpoint, key -> new EndpointMetrics());
+    }
+
+    /**
+     * Returns the metrics of every endpoint called so far, sorted by endpoint.
+     */
+    public Map<String, EndpointMetrics> getEndpoints() {
+        return new TreeMap<>(endpoints);
+    }
+
+    @Override
+    public void onSigned(String endpoint, long signingNanos) {
+        get(endpoint).signing.record(signingNanos);
+    }
+
+    @Override
+    public void onExchange(String endpoint, int status, long exchangeNanos, long requestBytes, long responseBytes) {
+        EndpointMetrics metrics = get(endpoint);
+        metrics.exchange.record(exchangeNanos);
+        metrics.requestBytes.add(requestBytes);
+        metrics.responseBytes.add(responseBytes);
+        if (status >= STATUS_CLIENT_ERROR) {
+            metrics.errors.increment();
+        }
+    }
+
+    @Override
+    public void onDeserialized(String endpoint, Type returnType, long deserializeNanos) {
+        get(endpoint).deserialize.record(deserializeNanos);
+    }
+
+    @Override
+    public void onNotificationsPage(String endpoint, int notifications) {
+        get(endpoint).notificationsPerPage.record(notifications);
+    }
+
+    /**
+     * Returns one line per endpoint with exchange, signing and deserialization percentiles, bytes and page sizes.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, EndpointMetrics> endpoint : getEndpoints().entrySet()) {
+            report.append(endpoint.getKey()).append(": ").append(endpoint.getValue()).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    public static class EndpointMetrics {
+
+        private final ConcurrentHistogram exchange = new ConcurrentHistogram();
+        private final ConcurrentHistogram signing = new ConcurrentHistogram();
+        private final ConcurrentHistogram deserialize = new ConcurrentHistogram();
+        private final ConcurrentHistogram notificationsPerPage = new ConcurrentHistogram();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * Returns the exchange times in nanoseconds.
+         */
+        public ConcurrentHistogram getExchange() {
+            return exchange;
+        }
+
+        /**
+         * Returns the signing times in nanoseconds.
+         */
+        public ConcurrentHistogram getSigning() {
+            return signing;
+        }
+
+        /**
+         * Returns the deserialization times in nanoseconds.
+         */
+        public ConcurrentHistogram getDeserialize() {
+            return deserialize;
+        }
+
+        public ConcurrentHistogram getNotificationsPerPage() {
+            return notificationsPerPage;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.sum();
+        }
+
+        /**
+         * Returns how many exchanges ended with a 4xx or 5xx status.
+         */
+        public long getErrorCount() {
+            return errors.sum();
+        }
+
+        @Override
+        public String toString() {
+            String page = notificationsPerPage.getCount() == 0 ? ""
+                    : String.format(", %.1f notifications per page", notificationsPerPage.getMean());
+            return String.format("%d exchanges (%d errors), exchange p50 %s p99 %s p99.9 %s, signing p50 %s p99 %s, deserialize p50 %s p99 %s, %d bytes sent, %d received%s",
+                    exchange.getCount(), getErrorCount(),
+                    millis(exchange, 50), millis(exchange, 99), millis(exchange, 99.9),
+                    millis(signing, 50), millis(signing, 99),
+                    millis(deserialize, 50), millis(deserialize, 99),
+                    getRequestBytes(), getResponseBytes(), page);
+        }
+
+        private static String millis(ConcurrentHistogram histogram, double percentile) {
+            return String.format("%.3f ms", histogram.getValueAtPercentile(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+}
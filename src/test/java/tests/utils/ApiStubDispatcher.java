@@ -0,0 +1,380 @@
+package tests.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.FieldMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A MockWebServer dispatcher that stands in for the whole API of notification-swagger.yml, so that the real ApiClient
+ * can be load and soak tested without sandbox credentials.
+ *
+ * <p> /notifications is served by a NotificationStubDispatcher, with its start, end, offset, limit and total semantics,
+ * over a dataset of any size.
+ * <p> /subscriptions starts with the subscriptions of the GetSubscriptionResponse example, and supports listing with
+ * offset, limit and sort, creating, reading, updating and deleting. A created subscription gets an id, is active unless
+ * told otherwise, and has the fieldMappingName of each specification replaced by its fieldMapping.
+ * <p> /fieldmappings answers the FieldMapping example, along with a few more fields of both content models.
+ * <p> Latency, errors and throttling can be injected for every endpoint. Latency is drawn from a log-normal distribution
+ * with the given median and 99th percentile, as service times tend to be skewed. Errors are drawn at a given rate.
+ * Both draws can be seeded, so that a run issuing the same requests in the same order gets the same errors and delays.
+ * Requests beyond a given rate per second are answered 429 with a Retry-After header. Error bodies follow the Error
+ * schemas of the spec.
+ * <p> As with the spec's examples in NotificationExamples, the subscription example is not strict YAML, so it is
+ * reproduced here rather than parsed. Its children placeholder is left out.
+ **/
+public class ApiStubDispatcher extends Dispatcher {
+
+    static final String GET_SUBSCRIPTION_RESPONSE = "["
+            + "{\"id\":\"CNSa91bf379b48a593fd17f07f431bad8fb296796498f4e9982ea134394c1fa4f071556724070\","
+            + "\"name\":\"Enter_unique_subscription_name_here\",\"subjectType\":\"PAYMENT_AUTHORIZATION\","
+            + "\"subscriberId\":\"CNSa91bf379b48a593fd17f07f431bad8fb296796498f4e9982ea134394c1fa4f071556724071\",\"active\":true,"
+            + "\"specifications\":[{\"id\":\"CNSa91bf379b48a593fd17f07f431bad8fb296796498f4e9982ea134394c1fa4f071556724072\","
+            + "\"type\":\"FIELD\",\"operator\":\"WHERE\",\"fieldMapping\":{\"id\":\"CNSa91bf379b48a593fd17f07f431bad8fb296796498f4e9982ea134394c1fa4f071556724073\","
+            + "\"name\":\"purchaseRequest.rcnAlias\",\"displayName\":\"Purchase request RCN alias\",\"subjectType\":\"PAYMENT_AUTHORIZATION\",\"contentType\":\"TEXT\"},"
+            + "\"fieldOperator\":\"EQUALS\",\"expectedContent\":{\"contentType\":\"TEXT\",\"value\":\"Travel Expense RCN\",\"anotherValue\":{}}}]},"
+            + "{\"id\":\"ABSa91bf379b48a593fd17f07f431bad8fb296796498f4e9982ea134394c1fa4f071556724070\","
+            + "\"name\":\"SubscriptionName\",\"subjectType\":\"PAYMENT_UPDATE\","
+            + "\"subscriberId\":\"CNSa91bf379b48a593fd17f07f431bad8fb296796498f4e9982ea134394c1fa4f071556724071\",\"active\":true,"
+            + "\"specifications\":[]}"
+            + "]";
+
+    private static final String SUBSCRIBER_ID = "CNSa91bf379b48a593fd17f07f431bad8fb296796498f4e9982ea134394c1fa4f071556724071";
+    private static final String SUBSCRIPTIONS = NotificationStubDispatcher.BASE_PATH + "/subscriptions";
+    private static final String SOURCE = "Commercial Event Notifications";
+    private static final int DEFAULT_SUBSCRIPTION_LIMIT = 25;
+    // The 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.3263;
+
+    private final NotificationStubDispatcher notifications;
+    private final JSON json = new JSON();
+    private final List<FieldMapping> fieldMappings = Arrays.asList(
+            fieldMapping("CNSa91bf379b48a593fd17f07f431bad8fb296796498f4e9982ea134394c1fa4f071556724073", "purchaseRequest.rcnAlias", "Purchase request RCN alias", "PAYMENT_AUTHORIZATION", "TEXT"),
+            fieldMapping("CNS0000000000000000000000000000000000000000000000000000000000000000000000000001", "purchaseRequest.companyId", "Purchase request company id", "PAYMENT_AUTHORIZATION", "INTEGER"),
+            fieldMapping("CNS0000000000000000000000000000000000000000000000000000000000000000000000000002", "transactionAmount", "Transaction amount", "PAYMENT_AUTHORIZATION", "INTEGER"),
+            fieldMapping("CNS0000000000000000000000000000000000000000000000000000000000000000000000000003", "merchant.categoryCode", "Merchant category code", "PAYMENT_AUTHORIZATION", "TEXT"),
+            fieldMapping("CNS0000000000000000000000000000000000000000000000000000000000000000000000000004", "status", "Payment status", "PAYMENT_UPDATE", "TEXT"),
+            fieldMapping("CNS0000000000000000000000000000000000000000000000000000000000000000000000000005", "statusReasonInformation.reasonCode", "Status reason code", "PAYMENT_UPDATE", "TEXT"));
+    // Guarded by this
+    private final Map<String, JsonObject> subscriptions = new LinkedHashMap<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger faultCount = new AtomicInteger();
+    private final AtomicInteger throttledCount = new AtomicInteger();
+    private volatile double medianLatencyMillis;
+    private volatile double latencySigma;
+    private volatile double errorRate;
+    private volatile int errorStatus;
+    private volatile Random random = new Random();
+    // Guarded by throttleLock
+    private final Object throttleLock = new Object();
+    private double requestsPerSecond;
+    private double tokens;
+    private long refilledNanos;
+
+    public ApiStubDispatcher(NotificationStubDispatcher notifications) {
+        this.notifications = notifications;
+        for (JsonElement subscription : new JsonParser().parse(GET_SUBSCRIPTION_RESPONSE).getAsJsonArray()) {
+            subscriptions.put(subscription.getAsJsonObject().get("id").getAsString(), subscription.getAsJsonObject());
+        }
+    }
+
+    public NotificationStubDispatcher getNotifications() {
+        return notifications;
+    }
+
+    /**
+     * Delays every response by a log-normal latency with the given median and 99th percentile, in milliseconds.
+     * A 99th percentile equal to the median gives a fixed latency, and a median of 0 turns latency off.
+     */
+    public ApiStubDispatcher latency(double medianMillis, double p99Millis) {
+        if (medianMillis < 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException("Expected 0 <= median <= p99, got " + medianMillis + " and " + p99Millis);
+        }
+        this.latencySigma = medianMillis == 0 ? 0 : Math.log(p99Millis / medianMillis) / Z_99;
+        this.medianLatencyMillis = medianMillis;
+        return this;
+    }
+
+    /**
+     * Answers each request with the given status with the given probability, between 0 and 1.
+     */
+    public ApiStubDispatcher errorRate(double errorRate, int status) {
+        this.errorStatus = status;
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Seeds the draws of latency and errors.
+     */
+    public ApiStubDispatcher seed(long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Answers 429 to requests beyond the given rate, allowing a burst of one second's worth. 0 turns throttling off.
+     */
+    public ApiStubDispatcher throttle(double requestsPerSecond) {
+        synchronized (throttleLock) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.tokens = requestsPerSecond;
+            this.refilledNanos = System.nanoTime();
+        }
+        return this;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns how many requests were answered with an injected error.
+     */
+    public int getFaultCount() {
+        return faultCount.get();
+    }
+
+    /**
+     * Returns how many requests were answered 429 by the throttle.
+     */
+    public int getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * Returns the subscriptions as they would be listed, sorted by name.
+     */
+    public synchronized List<JsonObject> getSubscriptions() {
+        List<JsonObject> sorted = new ArrayList<>();
+        for (JsonObject subscription : subscriptions.values()) {
+            sorted.add(new JsonParser().parse(subscription.toString()).getAsJsonObject());
+        }
+        sorted.sort(comparator("name"));
+        return sorted;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        requestCount.incrementAndGet();
+        if (!acquire()) {
+            throttledCount.incrementAndGet();
+            return error(429, "request.throttled", "Too many requests", true).setHeader("Retry-After", "1");
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            faultCount.incrementAndGet();
+            return error(errorStatus, errorStatus >= 500 ? "server.error" : "request.rejected", "Injected error", errorStatus >= 500);
+        }
+        double median = medianLatencyMillis;
+        if (median > 0) {
+            double millis = median * Math.exp(latencySigma * random.nextGaussian());
+            TimeUnit.MICROSECONDS.sleep((long) (millis * 1000));
+        }
+        HttpUrl url = HttpUrl.parse("http://localhost" + request.getPath());
+        String path = url == null ? "" : url.encodedPath();
+        if (path.equals(NotificationStubDispatcher.BASE_PATH + "/notifications")) {
+            return notifications.dispatch(request);
+        }
+        if (path.equals(NotificationStubDispatcher.BASE_PATH + "/fieldmappings") && request.getMethod().equals("GET")) {
+            return json(200, json.serialize(fieldMappings));
+        }
+        if (path.equals(SUBSCRIPTIONS) || path.startsWith(SUBSCRIPTIONS + "/")) {
+            return subscriptions(request, url);
+        }
+        return notFound();
+    }
+
+    private boolean acquire() {
+        synchronized (throttleLock) {
+            if (requestsPerSecond <= 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(requestsPerSecond, tokens + (now - refilledNanos) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            refilledNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+
+    private synchronized MockResponse subscriptions(RecordedRequest request, HttpUrl url) {
+        String path = url.encodedPath();
+        String method = request.getMethod();
+        if (path.equals(SUBSCRIPTIONS)) {
+            if (method.equals("GET")) {
+                return list(url);
+            }
+            if (method.equals("POST")) {
+                JsonObject subscription = body(request);
+                MockResponse invalid = validate(subscription, null);
+                if (invalid != null) {
+                    return invalid;
+                }
+                String id = "CNS" + UUID.randomUUID().toString().replace("-", "");
+                subscriptions.put(id, toResponse(id, subscription));
+                return json(201, subscriptions.get(id).toString()).setHeader("Location", SUBSCRIPTIONS + "/" + id);
+            }
+            return error(405, "method.notAllowed", "Method not allowed", false);
+        }
+        String id = path.substring(SUBSCRIPTIONS.length() + 1);
+        if (!subscriptions.containsKey(id)) {
+            return notFound();
+        }
+        switch (method) {
+            case "GET":
+                return json(200, subscriptions.get(id).toString());
+            case "PUT":
+                JsonObject subscription = body(request);
+                MockResponse invalid = validate(subscription, id);
+                if (invalid != null) {
+                    return invalid;
+                }
+                subscriptions.put(id, toResponse(id, subscription));
+                return json(200, subscriptions.get(id).toString());
+            case "DELETE":
+                subscriptions.remove(id);
+                return new MockResponse().setResponseCode(204);
+            default:
+                return error(405, "method.notAllowed", "Method not allowed", false);
+        }
+    }
+
+    private MockResponse list(HttpUrl url) {
+        String sort = url.queryParameter("sort");
+        int offset = intParameter(url, "offset", 0);
+        int limit = intParameter(url, "limit", DEFAULT_SUBSCRIPTION_LIMIT);
+        Comparator<JsonObject> comparator;
+        if (sort == null || sort.equals("name") || sort.equals("-name") || sort.equals("id") || sort.equals("-id")) {
+            comparator = sort != null && sort.startsWith("-") ? comparator(sort.substring(1)).reversed() : comparator(sort == null ? "name" : sort);
+        } else {
+            return error(400, "format.invalid", "Unsupported sort " + sort, false);
+        }
+        JsonArray page = new JsonArray();
+        subscriptions.values().stream().sorted(comparator).skip(offset).limit(limit).forEach(page::add);
+        return json(200, page.toString());
+    }
+
+    private static Comparator<JsonObject> comparator(String field) {
+        return Comparator.comparing(subscription -> subscription.get(field).getAsString());
+    }
+
+    /**
+     * Checks that a Subscription request has a name, not used by another subscription, and a known subjectType.
+     */
+    private MockResponse validate(JsonObject subscription, String id) {
+        if (subscription == null || !subscription.has("name") || !subscription.has("subjectType")) {
+            return error(400, "format.invalid", "A subscription needs a name and a subjectType", false);
+        }
+        String subjectType = subscription.get("subjectType").getAsString();
+        if (!subjectType.equals("PAYMENT_AUTHORIZATION") && !subjectType.equals("PAYMENT_UPDATE")) {
+            return error(400, "format.invalid", "Unknown subjectType " + subjectType, false);
+        }
+        String name = subscription.get("name").getAsString();
+        for (Map.Entry<String, JsonObject> existing : subscriptions.entrySet()) {
+            if (!existing.getKey().equals(id) && existing.getValue().get("name").getAsString().equals(name)) {
+                return error(400, "format.invalid", "Subscription name " + name + " is already in use", false);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Turns a Subscription request into a SubscriptionResponse.
+     */
+    private JsonObject toResponse(String id, JsonObject subscription) {
+        subscription.addProperty("id", id);
+        subscription.addProperty("subscriberId", SUBSCRIBER_ID);
+        if (!subscription.has("active")) {
+            subscription.addProperty("active", true);
+        }
+        if (!subscription.has("specifications")) {
+            subscription.add("specifications", new JsonArray());
+        }
+        toResponse(subscription.getAsJsonArray("specifications"));
+        return subscription;
+    }
+
+    private void toResponse(JsonArray specifications) {
+        for (JsonElement element : specifications) {
+            JsonObject specification = element.getAsJsonObject();
+            specification.addProperty("id", "CNS" + UUID.randomUUID().toString().replace("-", ""));
+            JsonElement fieldMappingName = specification.remove("fieldMappingName");
+            if (fieldMappingName != null) {
+                FieldMapping known = fieldMappings.stream().filter(fieldMapping -> fieldMapping.getName().equals(fieldMappingName.getAsString())).findFirst().orElse(null);
+                JsonObject fieldMapping = known == null ? new JsonObject() : new JsonParser().parse(json.serialize(known)).getAsJsonObject();
+                fieldMapping.add("name", fieldMappingName);
+                specification.add("fieldMapping", fieldMapping);
+            }
+            if (specification.has("children")) {
+                toResponse(specification.getAsJsonArray("children"));
+            }
+        }
+    }
+
+    private static JsonObject body(RecordedRequest request) {
+        try {
+            JsonElement body = new JsonParser().parse(request.getBody().readString(StandardCharsets.UTF_8));
+            return body.isJsonObject() ? body.getAsJsonObject() : null;
+        } catch (JsonSyntaxException e) {
+            return null;
+        }
+    }
+
+    private static MockResponse notFound() {
+        return error(404, "resource.not.found", "The resource provided is not found", false);
+    }
+
+    /**
+     * Builds an error response with a body that follows the Error schemas of the spec.
+     */
+    private static MockResponse error(int status, String reasonCode, String description, boolean recoverable) {
+        JsonObject error = new JsonObject();
+        error.addProperty("Source", SOURCE);
+        error.addProperty("ReasonCode", reasonCode);
+        error.addProperty("Description", description);
+        error.addProperty("Recoverable", recoverable);
+        JsonArray errorList = new JsonArray();
+        errorList.add(error);
+        JsonObject errors = new JsonObject();
+        errors.add("Error", errorList);
+        JsonObject body = new JsonObject();
+        body.add("Errors", errors);
+        return json(status, body.toString());
+    }
+
+    private static MockResponse json(int status, String body) {
+        return new MockResponse().setResponseCode(status).setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    private static FieldMapping fieldMapping(String id, String name, String displayName, String subjectType, String contentType) {
+        FieldMapping fieldMapping = new JSON().deserialize("{\"id\":\"" + id + "\"}", FieldMapping.class);
+        return fieldMapping.name(name).displayName(displayName).subjectType(subjectType).contentType(contentType);
+    }
+
+    private static int intParameter(HttpUrl url, String name, int defaultValue) {
+        String value = url.queryParameter(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
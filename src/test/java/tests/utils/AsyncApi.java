@@ -0,0 +1,254 @@
+package tests.utils;
+
+import com.google.gson.reflect.TypeToken;
+import com.squareup.okhttp.Call;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.FieldMappingApi;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.api.SubscriptionApi;
+import org.openapitools.client.model.FieldMapping;
+import org.openapitools.client.model.NotificationsWrapper;
+import org.openapitools.client.model.Subscription;
+import org.openapitools.client.model.SubscriptionResponse;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Type;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A CompletableFuture facade over NotificationsApi, SubscriptionApi and FieldMappingApi.
+ *
+ * <p> Each call is built on the calling thread, so a request that cannot be serialized fails the returned future at
+ * once, and is executed on the given executor. Cancelling the future cancels the HTTP call. Futures fail with the
+ * ApiException the blocking method would have thrown.
+ * <p> The default executor runs every call on its own virtual thread on Java 21 and later, so thousands of pulls can be
+ * in flight without as many platform threads, and falls back to a fixed pool of platform threads on Java 8. Virtual
+ * threads are looked up at runtime, so this class compiles and runs on the Java 8 baseline unchanged.
+ * <p> With the default executor, at most DEFAULT_MAX_IN_FLIGHT calls execute at once, the per host limit of
+ * ApiClientBuilder. A virtual thread per call otherwise sends a whole batch at once, each call on a connection of its own
+ * since the client keeps only 5 idle, and a burst of connections larger than the server's accept backlog (50 on
+ * MockWebServer) has the connections past it wait for the SYN to be resent, about a second later. Capped, virtual
+ * threads pull as fast as the platform pool and allocate about as much per call; see AsyncApiBenchmark.
+ * <p> Signing with CachedOAuth1Interceptor keeps its cached state on virtual threads too, as it pools the state rather
+ * than keeping it per thread.
+ * <p> Unlike the generated *Async methods, calls are built without progress listeners. Each of those methods adds a
+ * network interceptor to the shared OkHttpClient that is never removed, so every later response goes through all of
+ * them.
+ **/
+public class AsyncApi implements AutoCloseable {
+
+    public static final int DEFAULT_PLATFORM_THREADS = 64;
+    public static final int DEFAULT_MAX_IN_FLIGHT = ApiClientBuilder.DEFAULT_MAX_REQUESTS_PER_HOST;
+
+    private static final Type FIELD_MAPPINGS = new TypeToken<List<FieldMapping>>() { }.getType();
+    private static final Type SUBSCRIPTIONS = new TypeToken<List<SubscriptionResponse>>() { }.getType();
+    private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private final ApiClient apiClient;
+    private final NotificationsApi notificationsApi;
+    private final SubscriptionApi subscriptionApi;
+    private final FieldMappingApi fieldMappingApi;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private Semaphore inFlight;
+
+    /**
+     * Runs calls on {@link #newDefaultExecutor()}, which is shut down by {@link #close()}, at most DEFAULT_MAX_IN_FLIGHT at a time.
+     */
+    public AsyncApi(ApiClient apiClient) {
+        this(apiClient, newDefaultExecutor(), true);
+        maxInFlight(DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Runs calls on the given executor, which is left running by {@link #close()}.
+     */
+    public AsyncApi(ApiClient apiClient, Executor executor) {
+        this(apiClient, executor, false);
+    }
+
+    private AsyncApi(ApiClient apiClient, Executor executor, boolean ownsExecutor) {
+        this.apiClient = apiClient;
+        this.notificationsApi = new NotificationsApi(apiClient);
+        this.subscriptionApi = new SubscriptionApi(apiClient);
+        this.fieldMappingApi = new FieldMappingApi(apiClient);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Caps the number of calls executing at the same time, and so the number of connections opened, or removes the cap
+     * when 0. Calls above the cap wait for a permit on their executor thread, which costs next to nothing on a virtual thread.
+     */
+    public AsyncApi maxInFlight(int maxInFlight) {
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("maxInFlight must not be negative");
+        }
+        this.inFlight = maxInFlight == 0 ? null : new Semaphore(maxInFlight);
+        return this;
+    }
+
+    /**
+     * Returns true if this JVM can run tasks on virtual threads, which is the case from Java 21.
+     */
+    public static boolean virtualThreadsAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task on Java 21 and later, or a fixed pool of
+     * DEFAULT_PLATFORM_THREADS daemon threads otherwise.
+     */
+    public static ExecutorService newDefaultExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException("Virtual threads are available but could not be started", e);
+            }
+        }
+        return newPlatformExecutor();
+    }
+
+    /**
+     * Returns a fixed pool of DEFAULT_PLATFORM_THREADS daemon threads.
+     */
+    public static ExecutorService newPlatformExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(DEFAULT_PLATFORM_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "async-api-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static MethodHandle findVirtualThreadPerTaskExecutor() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            // On Java 19 and 20 the method exists but throws unless preview features are enabled
+            ((ExecutorService) factory.invokeExact()).shutdown();
+            return factory;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    public CompletableFuture<NotificationsWrapper> notificationsGet(OffsetDateTime start, OffsetDateTime end, List<String> subscriptionNames, List<String> pushStatus, Integer offset, Integer limit) {
+        return execute(() -> notificationsApi.notificationsGetCall(start, end, subscriptionNames, pushStatus, offset, limit, null, null), NotificationsWrapper.class);
+    }
+
+    public CompletableFuture<List<FieldMapping>> fieldmappingsGet() {
+        return execute(() -> fieldMappingApi.fieldmappingsGetCall(null, null), FIELD_MAPPINGS);
+    }
+
+    public CompletableFuture<List<SubscriptionResponse>> getAllSubscription(Integer offset, Integer limit, String sort) {
+        return execute(() -> subscriptionApi.getAllSubscriptionCall(offset, limit, sort, null, null), SUBSCRIPTIONS);
+    }
+
+    public CompletableFuture<SubscriptionResponse> getSubscription(String id) {
+        return execute(() -> subscriptionApi.getSubscriptionCall(required(id, "id"), null, null), SubscriptionResponse.class);
+    }
+
+    public CompletableFuture<SubscriptionResponse> subscriptionsPost(Subscription subscription) {
+        return execute(() -> subscriptionApi.subscriptionsPostCall(required(subscription, "subscription"), null, null), SubscriptionResponse.class);
+    }
+
+    public CompletableFuture<SubscriptionResponse> updateSubscription(String id, Subscription subscription) {
+        return execute(() -> subscriptionApi.updateSubscriptionCall(required(id, "id"), required(subscription, "subscription"), null, null), SubscriptionResponse.class);
+    }
+
+    public CompletableFuture<Void> subscriptionsIdDelete(String id) {
+        return execute(() -> subscriptionApi.subscriptionsIdDeleteCall(required(id, "id"), null, null), null);
+    }
+
+    /**
+     * The generated methods check required parameters before building a call; the *Call builders used here do not.
+     */
+    private static <T> T required(T value, String name) throws ApiException {
+        if (value == null) {
+            throw new ApiException("Missing the required parameter '" + name + "'");
+        }
+        return value;
+    }
+
+    private <T> CompletableFuture<T> execute(CallFactory callFactory, Type returnType) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Call call;
+        try {
+            call = callFactory.create();
+        } catch (ApiException | RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        try {
+            executor.execute(() -> run(call, returnType, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> void run(Call call, Type returnType, CompletableFuture<T> future) {
+        Semaphore permits = inFlight;
+        try {
+            if (permits != null) {
+                permits.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new ApiException(e));
+            return;
+        }
+        try {
+            if (future.isDone()) {
+                return;
+            }
+            if (returnType == null) {
+                apiClient.execute(call);
+                future.complete(null);
+            } else {
+                future.complete(apiClient.<T>execute(call, returnType).getData());
+            }
+        } catch (ApiException | RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor && executor instanceof ExecutorService) {
+            ExecutorService executorService = (ExecutorService) executor;
+            executorService.shutdown();
+            try {
+                executorService.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private interface CallFactory {
+        Call create() throws ApiException;
+    }
+}
@@ -0,0 +1,343 @@
+package tests.utils;
+
+import com.mastercard.developer.oauth.OAuth;
+import com.mastercard.developer.oauth.Util;
+import com.mastercard.developer.signers.OkHttp2Signer;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A drop-in replacement for OkHttp2OAuth1Interceptor that produces the same Authorization header,
+ * with the per-request signing state cached instead of rebuilt.
+ *
+ * <p> A small pool keeps Signatures already initialized with the signing key, each with a SHA-256 MessageDigest
+ * and the buffers the signature base string is built in. A request takes one from the pool and gives it back once
+ * signed, so the pool holds as many as requests were ever signed at the same time. Unlike a ThreadLocal, the pool keeps
+ * working when every request runs on a fresh thread, as with AsyncApi on virtual threads. The oauth parameters that never change
+ * (consumer key, signature method, version) are percent-encoded once, in the constructor.
+ * <p> Requests whose query parameter names would need encoding or clash with an oauth parameter name are rare
+ * enough that they are handed to the stock OkHttp2Signer, which keeps its exact behaviour for them.
+ **/
+public class CachedOAuth1Interceptor implements Interceptor {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final String SIGNATURE_METHOD = "RSA-SHA256";
+    private static final String VERSION = "1.0";
+    private static final String EMPTY_BODY_HASH = Base64.getEncoder().encodeToString(sha256(new byte[0]));
+    private static final String NONCE_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int NONCE_CHARS_PER_LONG = 8;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String ENCODED_AMPERSAND = "%26";
+    private static final String ENCODED_EQUALS = "%3D";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // The oauth parameter names in the order they sort into the signature base string
+    private static final String[] OAUTH_PARAMETERS = {
+            "oauth_body_hash", "oauth_consumer_key", "oauth_nonce", "oauth_signature_method", "oauth_timestamp", "oauth_version"
+    };
+    private static final int BODY_HASH = 0;
+    private static final int CONSUMER_KEY = 1;
+    private static final int NONCE = 2;
+    private static final int SIGNATURE_METHOD_PARAMETER = 3;
+    private static final int TIMESTAMP = 4;
+    private static final int VERSION_PARAMETER = 5;
+
+    private final PrivateKey signingKey;
+    private final OkHttp2Signer fallbackSigner;
+    private final String[] encodedOauthParameters;
+    private final String headerConsumerKeyFragment;
+    private final Queue<SigningState> signingStates = new ConcurrentLinkedQueue<>();
+
+    public CachedOAuth1Interceptor(String consumerKey, PrivateKey signingKey) {
+        this.signingKey = signingKey;
+        this.fallbackSigner = new OkHttp2Signer(consumerKey, signingKey);
+        // Constant parameters are stored whole (name=value&), the others as their name= prefix only
+        this.encodedOauthParameters = new String[OAUTH_PARAMETERS.length];
+        for (int i = 0; i < OAUTH_PARAMETERS.length; i++) {
+            encodedOauthParameters[i] = OAUTH_PARAMETERS[i] + ENCODED_EQUALS;
+        }
+        encodedOauthParameters[CONSUMER_KEY] += Util.percentEncode(consumerKey, StandardCharsets.UTF_8) + ENCODED_AMPERSAND;
+        encodedOauthParameters[SIGNATURE_METHOD_PARAMETER] += SIGNATURE_METHOD + ENCODED_AMPERSAND;
+        encodedOauthParameters[VERSION_PARAMETER] += VERSION + ENCODED_AMPERSAND;
+        // The stock header lists its parameters in HashMap iteration order, reproduced here
+        this.headerConsumerKeyFragment = "\",oauth_consumer_key=\"" + consumerKey
+                + "\",oauth_signature_method=\"" + SIGNATURE_METHOD + "\",oauth_timestamp=\"";
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        return chain.proceed(request.newBuilder()
+                .addHeader(OAuth.AUTHORIZATION_HEADER_NAME, getAuthorizationHeader(request))
+                .build());
+    }
+
+    /**
+     * Returns the OAuth1 Authorization header for the given request, as OkHttp2OAuth1Interceptor would add it.
+     *
+     * @param request
+     * @return String
+     * @throws IOException if the request body cannot be read
+     */
+    public String getAuthorizationHeader(Request request) throws IOException {
+        URI uri = request.uri();
+        String[] queryParameters = queryParameters(uri);
+        if (queryParameters == null) {
+            Request.Builder builder = request.newBuilder();
+            fallbackSigner.sign(builder);
+            return builder.build().header(OAuth.AUTHORIZATION_HEADER_NAME);
+        }
+
+        SigningState state = signingStates.poll();
+        if (state == null) {
+            state = new SigningState();
+        }
+        // A state whose request failed part way is dropped, since its Signature or digest may hold part of that request
+        String header = authorizationHeader(request, uri, queryParameters, state);
+        signingStates.offer(state);
+        return header;
+    }
+
+    private String authorizationHeader(Request request, URI uri, String[] queryParameters, SigningState state) throws IOException {
+        String bodyHash = state.bodyHash(request.body());
+        String nonce = nonce();
+        String timestamp = Long.toString(System.currentTimeMillis() / 1000);
+
+        StringBuilder baseString = state.baseString;
+        baseString.setLength(0);
+        baseString.append(request.method().toUpperCase(Locale.ROOT)).append('&');
+        appendEncoded(baseString, baseUri(uri));
+        baseString.append('&');
+        int query = 0;
+        for (int oauth = 0; oauth < OAUTH_PARAMETERS.length; oauth++) {
+            for (; query < queryParameters.length && queryParameters[query].compareTo(OAUTH_PARAMETERS[oauth]) < 0; query += 2) {
+                appendEncoded(baseString, queryParameters[query]);
+                baseString.append(ENCODED_EQUALS);
+                appendEncoded(baseString, queryParameters[query + 1]);
+                baseString.append(ENCODED_AMPERSAND);
+            }
+            baseString.append(encodedOauthParameters[oauth]);
+            if (oauth == BODY_HASH) {
+                appendEncoded(baseString, bodyHash).append(ENCODED_AMPERSAND);
+            } else if (oauth == NONCE) {
+                baseString.append(nonce).append(ENCODED_AMPERSAND);
+            } else if (oauth == TIMESTAMP) {
+                baseString.append(timestamp).append(ENCODED_AMPERSAND);
+            }
+        }
+        for (; query < queryParameters.length; query += 2) {
+            appendEncoded(baseString, queryParameters[query]);
+            baseString.append(ENCODED_EQUALS);
+            appendEncoded(baseString, queryParameters[query + 1]);
+            baseString.append(ENCODED_AMPERSAND);
+        }
+        baseString.setLength(baseString.length() - ENCODED_AMPERSAND.length());
+
+        StringBuilder header = new StringBuilder(512)
+                .append("OAuth oauth_body_hash=\"").append(bodyHash)
+                .append("\",oauth_nonce=\"").append(nonce)
+                .append("\",oauth_signature=\"");
+        appendEncoded(header, state.sign(baseString));
+        return header.append(headerConsumerKeyFragment).append(timestamp)
+                .append("\",oauth_version=\"").append(VERSION).append('"')
+                .toString();
+    }
+
+    /**
+     * Returns the query as name, value pairs sorted the way the stock signer sorts them, with values percent-encoded when the query was.
+     * Returns null when the stock signer must handle the request.
+     */
+    private static String[] queryParameters(URI uri) {
+        String decodedQuery = uri.getQuery();
+        String rawQuery = uri.getRawQuery();
+        if (decodedQuery == null || decodedQuery.isEmpty() || rawQuery == null || rawQuery.isEmpty()) {
+            return new String[0];
+        }
+        boolean mustEncode = !decodedQuery.equals(rawQuery);
+        String[] pairs = decodedQuery.split("&");
+        String[] parameters = new String[pairs.length * 2];
+        for (int i = 0; i < pairs.length; i++) {
+            String pair = pairs[i];
+            int separator = pair.indexOf('=');
+            String name = separator > 0 ? pair.substring(0, separator) : pair;
+            String value = separator > 0 && pair.length() > separator + 1 ? pair.substring(separator + 1) : OAuth.EMPTY_STRING;
+            if (!isUnreserved(name, '\0') || name.startsWith("oauth_")) {
+                return null;
+            }
+            parameters[2 * i] = name;
+            parameters[2 * i + 1] = mustEncode ? Util.percentEncode(value, StandardCharsets.UTF_8) : value;
+        }
+        // Insertion sort by name then value, queries only have a handful of parameters
+        for (int i = 2; i < parameters.length; i += 2) {
+            String name = parameters[i];
+            String value = parameters[i + 1];
+            int j = i - 2;
+            while (j >= 0 && compare(parameters[j], parameters[j + 1], name, value) > 0) {
+                parameters[j + 2] = parameters[j];
+                parameters[j + 3] = parameters[j + 1];
+                j -= 2;
+            }
+            parameters[j + 2] = name;
+            parameters[j + 3] = value;
+        }
+        return parameters;
+    }
+
+    private static int compare(String name, String value, String otherName, String otherValue) {
+        int byName = name.compareTo(otherName);
+        return byName != 0 ? byName : value.compareTo(otherValue);
+    }
+
+    /**
+     * Returns the scheme, authority and path the signature covers, normalized as the stock signer does.
+     */
+    private static String baseUri(URI uri) {
+        String scheme = uri.getScheme().toLowerCase();
+        String authority = uri.getAuthority().toLowerCase();
+        if (("http".equals(scheme) && uri.getPort() == 80) || ("https".equals(scheme) && uri.getPort() == 443)) {
+            int port = authority.lastIndexOf(':');
+            if (port >= 0) {
+                authority = authority.substring(0, port);
+            }
+        }
+        String path = uri.getRawPath();
+        if (path == null || path.length() <= 0) {
+            path = "/";
+        }
+        if (isUnreserved(authority, ':') && isUnreserved(path, '/')) {
+            return scheme + "://" + authority + path;
+        }
+        try {
+            return new URI(scheme, authority, path, null, null).toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Unable to normalize provided URL due to: " + e.getMessage());
+        }
+    }
+
+    private static String nonce() {
+        char[] nonce = new char[2 * NONCE_CHARS_PER_LONG];
+        for (int i = 0; i < nonce.length; i += NONCE_CHARS_PER_LONG) {
+            long random = RANDOM.nextLong();
+            for (int j = 0; j < NONCE_CHARS_PER_LONG; j++) {
+                nonce[i + j] = NONCE_CHARS.charAt((int) Long.remainderUnsigned(random, NONCE_CHARS.length()));
+                random = Long.divideUnsigned(random, NONCE_CHARS.length());
+            }
+        }
+        return new String(nonce);
+    }
+
+    /**
+     * Appends value percent-encoded exactly as Util.percentEncode does, without the intermediate strings for ASCII input.
+     */
+    private static StringBuilder appendEncoded(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return out.append(Util.percentEncode(value, StandardCharsets.UTF_8));
+            }
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isUnreserved(c)) {
+                out.append(c);
+            } else {
+                out.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        return out;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * Returns whether value only holds unreserved characters and the given separator.
+     */
+    private static boolean isUnreserved(String value, char separator) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != separator && !isUnreserved(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to obtain SHA-256 message digest", e);
+        }
+    }
+
+    /**
+     * The signing objects and buffers used by one request at a time.
+     */
+    private class SigningState {
+
+        private final Signature signature;
+        private final MessageDigest digest;
+        private final StringBuilder baseString = new StringBuilder(1024);
+        private byte[] bytes = new byte[1024];
+
+        SigningState() {
+            try {
+                signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+                signature.initSign(signingKey);
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialize RSA-SHA256 signing with the provided key", e);
+            }
+        }
+
+        String bodyHash(RequestBody body) throws IOException {
+            if (body == null || body.contentLength() <= 0) {
+                return EMPTY_BODY_HASH;
+            }
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            int read;
+            while ((read = buffer.read(bytes, 0, bytes.length)) > 0) {
+                digest.update(bytes, 0, read);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        }
+
+        /**
+         * Signs the ASCII base string. The Signature returns to its initialized state after sign(), ready for the next request.
+         */
+        String sign(CharSequence baseString) {
+            int length = baseString.length();
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) baseString.charAt(i);
+            }
+            try {
+                signature.update(bytes, 0, length);
+                return Base64.getEncoder().encodeToString(signature.sign());
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to RSA-SHA256 sign the given string with the provided key", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package tests.utils;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops sending requests to an endpoint that keeps failing, and fails them at once instead.
+ *
+ * <p> Each endpoint, such as GET /notifications or PUT /subscriptions/{id}, has its own circuit, so a failing
+ * endpoint does not stop calls to the others. A circuit opens after a number of consecutive 5xx or I/O failures.
+ * While it is open, requests fail with {@link OpenCircuitException}, which the generated APIs report as an ApiException
+ * caused by it. Once the open duration has passed, a single trial request is let through: if it succeeds the circuit
+ * closes, otherwise it opens again for another open duration.
+ * <p> 429s do not count as failures, as the gateway is shedding load rather than failing; see AdaptiveRateLimiter.
+ **/
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    private static final int STATUS_SERVER_ERROR = 500;
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long openMillis = DEFAULT_OPEN_DURATION.toMillis();
+    private volatile Clock clock = Clock.systemUTC();
+
+    /**
+     * Sets how many consecutive failures open a circuit. Defaults to 5.
+     */
+    public CircuitBreakerInterceptor failureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    /**
+     * Sets how long a circuit stays open before a trial request is let through. Defaults to 30 seconds.
+     */
+    public CircuitBreakerInterceptor openDuration(Duration openDuration) {
+        this.openMillis = openDuration.toMillis();
+        return this;
+    }
+
+    public CircuitBreakerInterceptor clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Returns the state of the circuit for an endpoint, as named by {@link #endpoint(Request)}.
+     */
+    public State getState(String endpoint) {
+        Circuit circuit = circuits.get(endpoint);
+        return circuit == null ? State.CLOSED : circuit.state();
+    }
+
+    /**
+     * Returns how many requests failed fast on an open circuit.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Names the endpoint a request goes to, as the method and the path below the base path with ids replaced, for
+     * instance GET /subscriptions/{id}. Requests to other paths are named by their full path.
+     */
+    public static String endpoint(Request request) {
+        List<String> segments = request.httpUrl().pathSegments();
+        int last = segments.size() - 1;
+        String resource;
+        if (last >= 1 && segments.get(last - 1).equals("subscriptions")) {
+            resource = "/subscriptions/{id}";
+        } else if (last >= 0 && (segments.get(last).equals("notifications") || segments.get(last).equals("subscriptions") || segments.get(last).equals("fieldmappings"))) {
+            resource = "/" + segments.get(last);
+        } else {
+            resource = request.httpUrl().encodedPath();
+        }
+        return request.method() + " " + resource;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String endpoint = endpoint(chain.request());
+        Circuit circuit = circuits.computeIfAbsent(endpoint, key -> new Circuit());
+        long retryAtMillis = circuit.tryAcquire(clock.millis());
+        if (retryAtMillis >= 0) {
+            rejected.incrementAndGet();
+            throw new OpenCircuitException(endpoint, retryAtMillis);
+        }
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            circuit.onFailure(clock.millis());
+            throw e;
+        }
+        if (response.code() >= STATUS_SERVER_ERROR) {
+            circuit.onFailure(clock.millis());
+        } else {
+            circuit.onSuccess();
+        }
+        return response;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private class Circuit {
+
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedMillis;
+
+        synchronized State state() {
+            return state;
+        }
+
+        /**
+         * Returns -1 if the request may go ahead, or the epoch millisecond at which a trial request will be let through.
+         */
+        synchronized long tryAcquire(long nowMillis) {
+            if (state == State.CLOSED) {
+                return -1;
+            }
+            if (state == State.OPEN && nowMillis - openedMillis >= openMillis) {
+                state = State.HALF_OPEN;
+                return -1;
+            }
+            // Half open with the trial request still in flight
+            return Math.max(nowMillis, openedMillis + openMillis);
+        }
+
+        synchronized void onSuccess() {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+        }
+
+        synchronized void onFailure(long nowMillis) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openedMillis = nowMillis;
+            }
+        }
+    }
+
+    /**
+     * Thrown instead of sending a request while the circuit of its endpoint is open.
+     */
+    public static class OpenCircuitException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String endpoint;
+        private final long retryAtMillis;
+
+        OpenCircuitException(String endpoint, long retryAtMillis) {
+            super("Circuit open for " + endpoint);
+            this.endpoint = endpoint;
+            this.retryAtMillis = retryAtMillis;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * Returns the epoch millisecond from which a trial request will be let through.
+         */
+        public long getRetryAtMillis() {
+            return retryAtMillis;
+        }
+    }
+}
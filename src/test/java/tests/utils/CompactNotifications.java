@@ -0,0 +1,540 @@
+package tests.utils;
+
+import org.openapitools.client.model.Notification;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A column-oriented store that holds notifications in a fraction of the heap the generated models take, for buffering
+ * hundreds of thousands of them, such as during a batch window.
+ *
+ * <p> Each notification is taken apart into columns as it is added. createdTimestamp is parsed once into epoch millis,
+ * and a timestamp that NotificationStubDispatcher.TIMESTAMP_FORMAT would not write back as it was is also kept as text
+ * on the side. subject, subscriptionName and pushStatus are dictionary encoded.
+ * <p> Content is stored per content model of NotificationContentTypeAdapterFactory.CONTENT_TYPES, with one column per
+ * property found by walking the model's fields. Integer properties go into int arrays. String properties are dictionary
+ * encoded while their values repeat, and once a column turns out to hold mostly distinct values, such as ids and GUIDs,
+ * they go into one byte array as UTF-8. Nested objects are recorded as present or absent. Content of any other type is
+ * kept as it is.
+ * <p> get and asList rebuild Notification, NotificationContent and CommercialBpsNotificationContent straight from the
+ * columns, without going through JSON, and dictionary encoded strings come back as the same String instances every time.
+ * A view that only overrode the getters of the models would copy nothing at all, but Gson, equals and toString of the
+ * generated models read their fields, so it would serialize and compare as empty.
+ * <p> Getters, setters and constructors are bound by LambdaBinder once per content model and shared by every instance,
+ * which only allocates the columns.
+ * <p> Not thread safe: add from one thread, and publish safely before reading from others.
+ **/
+public final class CompactNotifications {
+
+    /**
+     * How a content property is stored.
+     */
+    public enum Encoding {
+        INT, DICTIONARY, BYTES, OBJECT
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+    // A String column is checked at this many rows and each time its rows double, and stored as bytes once more than half its values are distinct
+    private static final int DICTIONARY_CHECK_ROWS = 1024;
+    private static final int OTHER_CONTENT = -1;
+    private static final int NO_CONTENT = -2;
+    private static final List<Model> MODELS = new ArrayList<>();
+    private static final Map<Class<?>, Integer> MODEL_INDEXES = new HashMap<>();
+
+    static {
+        for (Class<?> contentType : NotificationContentTypeAdapterFactory.CONTENT_TYPES.values()) {
+            MODEL_INDEXES.put(contentType, MODELS.size());
+            MODELS.add(new Model(contentType));
+        }
+    }
+
+    private final StringColumn subjects = new StringColumn(false);
+    private final StringColumn subscriptionNames = new StringColumn(false);
+    private final StringColumn pushStatuses = new StringColumn(false);
+    private long[] createdMillis = new long[INITIAL_CAPACITY];
+    private final Map<Integer, String> irregularTimestamps = new HashMap<>();
+    // Index of the content model in MODELS and schemas, OTHER_CONTENT or NO_CONTENT, and the row in that model's columns
+    private byte[] contentSchemas = new byte[INITIAL_CAPACITY];
+    private int[] contentRows = new int[INITIAL_CAPACITY];
+    private final List<Schema> schemas = new ArrayList<>();
+    private final List<Object> otherContents = new ArrayList<>();
+    private int size;
+
+    public CompactNotifications() {
+        for (Model model : MODELS) {
+            schemas.add(new Schema(model));
+        }
+    }
+
+    public CompactNotifications(Collection<Notification> notifications) {
+        this();
+        addAll(notifications);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void addAll(Collection<Notification> notifications) {
+        for (Notification notification : notifications) {
+            add(notification);
+        }
+    }
+
+    public void add(Notification notification) {
+        int row = size;
+        if (row == createdMillis.length) {
+            int capacity = row * 2;
+            createdMillis = Arrays.copyOf(createdMillis, capacity);
+            contentSchemas = Arrays.copyOf(contentSchemas, capacity);
+            contentRows = Arrays.copyOf(contentRows, capacity);
+        }
+        subjects.add(notification.getSubject());
+        subscriptionNames.add(notification.getSubscriptionName());
+        pushStatuses.add(notification.getPushStatus());
+        String createdTimestamp = notification.getCreatedTimestamp();
+        createdMillis[row] = parseMillis(createdTimestamp);
+        if (createdTimestamp == null || !createdTimestamp.equals(format(createdMillis[row]))) {
+            irregularTimestamps.put(row, createdTimestamp);
+        }
+
+        Object content = notification.getContent();
+        Integer schemaIndex = content == null ? null : MODEL_INDEXES.get(content.getClass());
+        if (content == null) {
+            contentSchemas[row] = NO_CONTENT;
+        } else if (schemaIndex == null) {
+            contentSchemas[row] = OTHER_CONTENT;
+            contentRows[row] = otherContents.size();
+            otherContents.add(content);
+        } else {
+            contentSchemas[row] = schemaIndex.byteValue();
+            contentRows[row] = schemas.get(schemaIndex).add(content);
+        }
+        size++;
+    }
+
+    /**
+     * Rebuilds the notification at the given index.
+     */
+    public Notification get(int index) {
+        checkIndex(index);
+        return new Notification()
+                .subject(subjects.get(index))
+                .subscriptionName(subscriptionNames.get(index))
+                .pushStatus(pushStatuses.get(index))
+                .createdTimestamp(getCreatedTimestamp(index))
+                .content(getContent(index));
+    }
+
+    /**
+     * Returns a list that rebuilds each notification as it is read.
+     */
+    public List<Notification> asList() {
+        return new NotificationList();
+    }
+
+    public String getSubject(int index) {
+        checkIndex(index);
+        return subjects.get(index);
+    }
+
+    public String getSubscriptionName(int index) {
+        checkIndex(index);
+        return subscriptionNames.get(index);
+    }
+
+    public String getPushStatus(int index) {
+        checkIndex(index);
+        return pushStatuses.get(index);
+    }
+
+    /**
+     * Returns createdTimestamp as epoch millis, or Long.MIN_VALUE when it is missing or cannot be parsed.
+     */
+    public long getCreatedMillis(int index) {
+        checkIndex(index);
+        return createdMillis[index];
+    }
+
+    public String getCreatedTimestamp(int index) {
+        checkIndex(index);
+        return irregularTimestamps.isEmpty() || !irregularTimestamps.containsKey(index) ? format(createdMillis[index]) : irregularTimestamps.get(index);
+    }
+
+    /**
+     * Rebuilds the content of the notification at the given index into its model.
+     */
+    public Object getContent(int index) {
+        checkIndex(index);
+        int schemaIndex = contentSchemas[index];
+        if (schemaIndex == NO_CONTENT) {
+            return null;
+        }
+        if (schemaIndex == OTHER_CONTENT) {
+            return otherContents.get(contentRows[index]);
+        }
+        return schemas.get(schemaIndex).get(contentRows[index]);
+    }
+
+    /**
+     * Returns how a property of a content model is stored, by its dotted path such as purchaseRequest.rcnAlias.
+     */
+    public Encoding getEncoding(Class<?> contentType, String path) {
+        Integer schemaIndex = MODEL_INDEXES.get(contentType);
+        Integer column = schemaIndex == null ? null : MODELS.get(schemaIndex).columnIndexes.get(path);
+        if (column == null) {
+            throw new IllegalArgumentException("No property " + path + " in " + contentType.getSimpleName());
+        }
+        return schemas.get(schemaIndex).columns[column].encoding();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+    }
+
+    private static long parseMillis(String createdTimestamp) {
+        if (createdTimestamp == null) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return OffsetDateTime.parse(createdTimestamp).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static String format(long millis) {
+        return millis == Long.MIN_VALUE ? null : NotificationStubDispatcher.TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC));
+    }
+
+    private class NotificationList extends AbstractList<Notification> implements RandomAccess {
+
+        @Override
+        public Notification get(int index) {
+            return CompactNotifications.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * The bound getters, setters and constructors of one content model, with the index of the column of each property
+     * and of the present bits of each nested object.
+     */
+    private static final class Model {
+
+        final Node root;
+        // Column index by dotted path, for getEncoding
+        final Map<String, Integer> columnIndexes = new LinkedHashMap<>();
+        final List<Class<?>> columnTypes = new ArrayList<>();
+        int nestedObjects;
+
+        Model(Class<?> type) {
+            this.root = new Node(type, "", this);
+        }
+    }
+
+    /**
+     * The columns of one content model, one per property path, with a present bit per row for each nested object.
+     */
+    private static final class Schema {
+
+        final Model model;
+        final Column[] columns;
+        final BitSet[] present;
+        int size;
+
+        Schema(Model model) {
+            this.model = model;
+            this.columns = new Column[model.columnTypes.size()];
+            for (int i = 0; i < columns.length; i++) {
+                Class<?> type = model.columnTypes.get(i);
+                columns[i] = type == Integer.class ? new IntColumn() : type == String.class ? new StringColumn(true) : new ObjectColumn();
+            }
+            this.present = new BitSet[model.nestedObjects];
+            for (int i = 0; i < present.length; i++) {
+                present[i] = new BitSet();
+            }
+        }
+
+        int add(Object content) {
+            model.root.write(this, content, size);
+            return size++;
+        }
+
+        Object get(int row) {
+            return model.root.read(this, row);
+        }
+    }
+
+    private static final class Node {
+
+        final Supplier<Object> constructor;
+        final List<Property> leaves = new ArrayList<>();
+        final List<Property> children = new ArrayList<>();
+
+        Node(Class<?> type, String prefix, Model model) {
+            this.constructor = LambdaBinder.constructor(type);
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                Method getter = method(type, "get", field.getName());
+                Method setter = method(type, "set", field.getName(), field.getType());
+                if (getter == null || setter == null) {
+                    continue;
+                }
+                String path = prefix + field.getName();
+                Class<?> fieldType = field.getType();
+                if (fieldType.getPackage() == type.getPackage() && !fieldType.isEnum()) {
+                    int index = model.nestedObjects++;
+                    children.add(new Property(LambdaBinder.getter(getter), LambdaBinder.setter(setter), index, new Node(fieldType, path + ".", model)));
+                } else {
+                    int index = model.columnTypes.size();
+                    model.columnTypes.add(fieldType);
+                    model.columnIndexes.put(path, index);
+                    leaves.add(new Property(LambdaBinder.getter(getter), LambdaBinder.setter(setter), index, null));
+                }
+            }
+        }
+
+        /**
+         * Writes an object, or null for a nested object that is absent, into the row of every column under this node.
+         */
+        void write(Schema schema, Object value, int row) {
+            for (Property leaf : leaves) {
+                schema.columns[leaf.index].add(row, value == null ? null : leaf.getter.apply(value));
+            }
+            for (Property child : children) {
+                Object childValue = value == null ? null : child.getter.apply(value);
+                if (childValue != null) {
+                    schema.present[child.index].set(row);
+                }
+                child.node.write(schema, childValue, row);
+            }
+        }
+
+        Object read(Schema schema, int row) {
+            Object value = constructor.get();
+            for (Property leaf : leaves) {
+                Object leafValue = schema.columns[leaf.index].get(row);
+                if (leafValue != null) {
+                    leaf.setter.accept(value, leafValue);
+                }
+            }
+            for (Property child : children) {
+                if (schema.present[child.index].get(row)) {
+                    child.setter.accept(value, child.node.read(schema, row));
+                }
+            }
+            return value;
+        }
+    }
+
+    private static final class Property {
+
+        final Function<Object, Object> getter;
+        final BiConsumer<Object, Object> setter;
+        // The column of a leaf, or the present bits of a nested object
+        final int index;
+        final Node node;
+
+        Property(Function<Object, Object> getter, BiConsumer<Object, Object> setter, int index, Node node) {
+            this.getter = getter;
+            this.setter = setter;
+            this.index = index;
+            this.node = node;
+        }
+    }
+
+    private interface Column {
+
+        void add(int row, Object value);
+
+        Object get(int row);
+
+        Encoding encoding();
+    }
+
+    private static final class IntColumn implements Column {
+
+        private int[] values = new int[INITIAL_CAPACITY];
+        private final BitSet nulls = new BitSet();
+
+        @Override
+        public void add(int row, Object value) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            if (value == null) {
+                nulls.set(row);
+            } else {
+                values[row] = (Integer) value;
+            }
+        }
+
+        @Override
+        public Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+
+        @Override
+        public Encoding encoding() {
+            return Encoding.INT;
+        }
+    }
+
+    private static final class ObjectColumn implements Column {
+
+        private final List<Object> values = new ArrayList<>();
+
+        @Override
+        public void add(int row, Object value) {
+            values.add(value);
+        }
+
+        @Override
+        public Object get(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        public Encoding encoding() {
+            return Encoding.OBJECT;
+        }
+    }
+
+    /**
+     * Strings as codes into a dictionary of the column's distinct values, or, once the column is found to hold mostly
+     * distinct values, as UTF-8 in one byte array with an offset per row.
+     */
+    private static final class StringColumn implements Column {
+
+        private static final int NULL = -1;
+
+        private final boolean adaptive;
+        private Map<String, Integer> codes = new HashMap<>();
+        private List<String> values = new ArrayList<>();
+        private int[] rowCodes = new int[INITIAL_CAPACITY];
+        // Set once the column holds bytes: a row runs from offsets[row] to offsets[row + 1]
+        private byte[] bytes;
+        private int[] offsets;
+        private BitSet nulls;
+        private int size;
+
+        StringColumn(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        void add(String value) {
+            add(size, value);
+        }
+
+        @Override
+        public void add(int row, Object value) {
+            String string = (String) value;
+            if (bytes != null) {
+                addBytes(string);
+                return;
+            }
+            if (size == rowCodes.length) {
+                rowCodes = Arrays.copyOf(rowCodes, size * 2);
+            }
+            int code = NULL;
+            if (string != null) {
+                Integer existing = codes.get(string);
+                if (existing == null) {
+                    existing = values.size();
+                    codes.put(string, existing);
+                    values.add(string);
+                }
+                code = existing;
+            }
+            rowCodes[size++] = code;
+            if (adaptive && size >= DICTIONARY_CHECK_ROWS && Integer.bitCount(size) == 1 && values.size() * 2 > size) {
+                toBytes();
+            }
+        }
+
+        @Override
+        public String get(int row) {
+            if (bytes == null) {
+                int code = rowCodes[row];
+                return code == NULL ? null : values.get(code);
+            }
+            return nulls.get(row) ? null : new String(bytes, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Encoding encoding() {
+            return bytes == null ? Encoding.DICTIONARY : Encoding.BYTES;
+        }
+
+        private void toBytes() {
+            int count = size;
+            int[] oldCodes = rowCodes;
+            List<String> oldValues = values;
+            bytes = new byte[Math.max(INITIAL_CAPACITY, count * 16)];
+            offsets = new int[Math.max(INITIAL_CAPACITY, count * 2) + 1];
+            nulls = new BitSet();
+            codes = null;
+            values = null;
+            rowCodes = null;
+            size = 0;
+            for (int row = 0; row < count; row++) {
+                addBytes(oldCodes[row] == NULL ? null : oldValues.get(oldCodes[row]));
+            }
+        }
+
+        private void addBytes(String value) {
+            if (size + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            int start = offsets[size];
+            if (value == null) {
+                nulls.set(size);
+            } else {
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                if (start + encoded.length > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + encoded.length));
+                }
+                System.arraycopy(encoded, 0, bytes, start, encoded.length);
+                start += encoded.length;
+            }
+            offsets[++size] = start;
+        }
+    }
+
+    private static Method method(Class<?> type, String prefix, String property, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(prefix + Character.toUpperCase(property.charAt(0)) + property.substring(1), parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
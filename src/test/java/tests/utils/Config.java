@@ -1,6 +1,5 @@
 package tests.utils;
 
-import com.mastercard.developer.interceptors.OkHttp2OAuth1Interceptor;
 import com.squareup.okhttp.Interceptor;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
@@ -56,6 +55,9 @@ public interface Config {
     /**
      * Returns an ApiClient object that can be used to make API calls.
      * The consumerKey, sigingKey and interceptor arguments must be provided.
+     * Notification content is decoded into the model matching its subject, see NotificationContentTypeAdapterFactory.
+     * Requests are signed with CachedOAuth1Interceptor, which adds the same header as OkHttp2OAuth1Interceptor.
+     * The connection pool, limits and metadata only logging are set up by ApiClientBuilder.
      *
      * <p> This methods always return the ApiClient object immediately with
      * provided configurations.
@@ -66,11 +68,26 @@ public interface Config {
      * @return ApiClient
      */
     static ApiClient setupApiClient(String consumerKey, PrivateKey signingKey, Interceptor interceptor) {
+        return new ApiClientBuilder()
+                .basePath(BASE_PATH)
+                .networkInterceptor(interceptor)
+                .signing(consumerKey, signingKey)
+                .metadataLogging()
+                .build();
+    }
+
+    /**
+     * Returns an ApiClient object pointed at a local stand-in server such as MockWebServer.
+     *
+     * <p> No signing interceptor is added, and debugging is left off so large pages are not logged.
+     *
+     * @param basePath
+     * @return ApiClient
+     */
+    static ApiClient setupLocalApiClient(String basePath) {
         ApiClient client = new ApiClient();
-        client.setBasePath(BASE_PATH);
-        client.setDebugging(true);
-        client.getHttpClient().networkInterceptors().add(interceptor);
-        client.getHttpClient().networkInterceptors().add(new OkHttp2OAuth1Interceptor(consumerKey, signingKey));
+        client.setBasePath(basePath);
+        client.getJSON().setGson(NotificationContentTypeAdapterFactory.createGson(client.getJSON()));
         return client;
     }
 
@@ -0,0 +1,220 @@
+package tests.utils;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.FieldMappingApi;
+import org.openapitools.client.model.FieldMapping;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A shared cache of the /fieldmappings catalogue, for code that validates specifications before every subscription
+ * create or update.
+ *
+ * <p> The list is read once, on first use, and indexed by subjectType and name. Once it is older than the TTL, the next
+ * read starts a refresh on a background thread and carries on with the current list, so readers only wait for the
+ * network before the first list has been read.
+ * <p> Concurrent reads that need the catalogue while it is being read share that one call (single-flight). A failed
+ * refresh keeps the current list, and the next read after it tries again.
+ **/
+public class FieldMappingCache implements AutoCloseable {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(15);
+
+    private final FieldMappingApi fieldMappingApi;
+    private final ExecutorService refresher;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private volatile long ttlMillis = DEFAULT_TTL.toMillis();
+    private volatile Clock clock = Clock.systemUTC();
+
+    public FieldMappingCache(FieldMappingApi fieldMappingApi) {
+        this.fieldMappingApi = fieldMappingApi;
+        this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "field-mapping-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public FieldMappingCache ttl(Duration ttl) {
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        this.ttlMillis = ttl.toMillis();
+        return this;
+    }
+
+    public FieldMappingCache clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Returns every field mapping, in the order the API returned them.
+     *
+     * @return List of FieldMapping
+     * @throws ApiException if no list has been read yet and reading it fails
+     */
+    public List<FieldMapping> getAll() throws ApiException {
+        return snapshot().all;
+    }
+
+    /**
+     * Returns the field mappings of a subject type, such as PAYMENT_AUTHORIZATION, or an empty list.
+     */
+    public List<FieldMapping> getBySubjectType(String subjectType) throws ApiException {
+        return snapshot().bySubjectType.getOrDefault(subjectType, Collections.emptyList());
+    }
+
+    /**
+     * Returns the field mapping with the given name for a subject type, or null if there is none.
+     */
+    public FieldMapping get(String subjectType, String name) throws ApiException {
+        Map<String, FieldMapping> byName = snapshot().byName.get(subjectType);
+        return byName == null ? null : byName.get(name);
+    }
+
+    /**
+     * Starts reading the catalogue in the background unless a read is already under way, for instance to warm the
+     * cache up at startup or after the catalogue is known to have changed.
+     */
+    public void refresh() {
+        startLoad(true);
+    }
+
+    private Snapshot snapshot() throws ApiException {
+        Snapshot current = snapshot.get();
+        if (current != null) {
+            hits.incrementAndGet();
+            if (clock.millis() - current.loadedMillis >= ttlMillis) {
+                startLoad(true);
+            }
+            return current;
+        }
+        misses.incrementAndGet();
+        try {
+            return startLoad(false).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof ApiException ? (ApiException) e.getCause() : new ApiException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the read under way, or starts one: on the refresh thread in the background, or on the calling thread
+     * when that thread has to wait for it anyway.
+     */
+    private CompletableFuture<Snapshot> startLoad(boolean background) {
+        CompletableFuture<Snapshot> started = new CompletableFuture<>();
+        while (!inFlight.compareAndSet(null, started)) {
+            CompletableFuture<Snapshot> load = inFlight.get();
+            if (load != null) {
+                return load;
+            }
+        }
+        Snapshot current = snapshot.get();
+        if (!background && current != null) {
+            // The read this thread missed finished in between
+            inFlight.set(null);
+            started.complete(current);
+        } else if (background) {
+            try {
+                refresher.execute(() -> load(started));
+            } catch (RuntimeException e) {
+                inFlight.set(null);
+                started.completeExceptionally(e);
+            }
+        } else {
+            load(started);
+        }
+        return started;
+    }
+
+    private void load(CompletableFuture<Snapshot> load) {
+        try {
+            upstreamCalls.incrementAndGet();
+            Snapshot loaded = new Snapshot(fieldMappingApi.fieldmappingsGet(), clock.millis());
+            snapshot.set(loaded);
+            inFlight.set(null);
+            load.complete(loaded);
+        } catch (ApiException | RuntimeException e) {
+            if (snapshot.get() != null) {
+                refreshFailures.incrementAndGet();
+            }
+            inFlight.set(null);
+            load.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Returns the number of reads answered from the cached list, including those that started a refresh.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of reads that had to wait for the list, before the first one was read.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getUpstreamCalls() {
+        return upstreamCalls.get();
+    }
+
+    public long getRefreshFailures() {
+        return refreshFailures.get();
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdown();
+        try {
+            refresher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One read of the catalogue, never modified once built.
+     */
+    private static class Snapshot {
+        final List<FieldMapping> all;
+        final Map<String, List<FieldMapping>> bySubjectType = new HashMap<>();
+        final Map<String, Map<String, FieldMapping>> byName = new HashMap<>();
+        final long loadedMillis;
+
+        Snapshot(List<FieldMapping> fieldMappings, long loadedMillis) {
+            this.all = Collections.unmodifiableList(fieldMappings == null ? new ArrayList<>() : new ArrayList<>(fieldMappings));
+            this.loadedMillis = loadedMillis;
+            for (FieldMapping fieldMapping : all) {
+                byName.computeIfAbsent(fieldMapping.getSubjectType(), subjectType -> new HashMap<>())
+                        .putIfAbsent(fieldMapping.getName(), fieldMapping);
+                bySubjectType.computeIfAbsent(fieldMapping.getSubjectType(), subjectType -> new ArrayList<>()).add(fieldMapping);
+            }
+            bySubjectType.replaceAll((subjectType, list) -> Collections.unmodifiableList(list));
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package tests.utils;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.model.NotificationsWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A StreamingApiClient that reports signing, exchange and deserialization times, bytes and notifications per page to an
+ * ApiClientListener. ApiClientBuilder builds one when a listener is set, and wraps the signing interceptor.
+ *
+ * <p> The exchange is timed by the last network interceptor, after signing, up to the end of the response body.
+ * deserialize decodes the body as it arrives, as StreamingApiClient does, and leaves the time spent waiting for reads of
+ * the body out of the decoding time, so network time is not counted as decoding time.
+ **/
+public class InstrumentedApiClient extends StreamingApiClient {
+
+    private final ApiClientListener listener;
+
+    public InstrumentedApiClient(ApiClientListener listener) {
+        this.listener = listener;
+    }
+
+    public ApiClientListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Returns a network interceptor that times the exchange and counts its bytes. Must be the last network interceptor.
+     */
+    public Interceptor exchangeInterceptor() {
+        return new ExchangeInterceptor(listener);
+    }
+
+    /**
+     * Wraps a signing interceptor, such as OkHttp2OAuth1Interceptor or CachedOAuth1Interceptor, to time it up to the point
+     * where it hands the signed request on.
+     */
+    public Interceptor signingInterceptor(Interceptor signer) {
+        return new SigningInterceptor(signer, listener);
+    }
+
+    @Override
+    public <T> T deserialize(Response response, Type returnType) throws ApiException {
+        if (response == null || returnType == null) {
+            return super.deserialize(response, returnType);
+        }
+        TimedBody body = response.body() == null || File.class.equals(returnType) ? null : new TimedBody(response.body());
+        String endpoint = CircuitBreakerInterceptor.endpoint(response.request());
+        long startNanos = System.nanoTime();
+        T result = super.deserialize(body == null ? response : response.newBuilder().body(body).build(), returnType);
+        long decodeNanos = System.nanoTime() - startNanos - (body == null ? 0 : body.readNanos);
+        listener.onDeserialized(endpoint, returnType, Math.max(0, decodeNanos));
+        if (result instanceof NotificationsWrapper) {
+            NotificationsWrapper page = (NotificationsWrapper) result;
+            listener.onNotificationsPage(endpoint, page.getNotifications() == null ? 0 : page.getNotifications().size());
+        }
+        return result;
+    }
+
+    private static class SigningInterceptor implements Interceptor {
+
+        private final Interceptor signer;
+        private final ApiClientListener listener;
+
+        SigningInterceptor(Interceptor signer, ApiClientListener listener) {
+            this.signer = signer;
+            this.listener = listener;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            long startNanos = System.nanoTime();
+            return signer.intercept(new Chain() {
+                @Override
+                public Request request() {
+                    return chain.request();
+                }
+
+                @Override
+                public Response proceed(Request request) throws IOException {
+                    listener.onSigned(CircuitBreakerInterceptor.endpoint(request), System.nanoTime() - startNanos);
+                    return chain.proceed(request);
+                }
+
+                @Override
+                public Connection connection() {
+                    return chain.connection();
+                }
+            });
+        }
+    }
+
+    private static class ExchangeInterceptor implements Interceptor {
+
+        private final ApiClientListener listener;
+
+        ExchangeInterceptor(ApiClientListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            String endpoint = CircuitBreakerInterceptor.endpoint(request);
+            long requestBytes = request.body() == null ? 0 : Math.max(0, request.body().contentLength());
+            long startNanos = System.nanoTime();
+            Response response = chain.proceed(request);
+            Exchange exchange = new Exchange(listener, endpoint, response.code(), startNanos, requestBytes);
+            if (response.body() == null) {
+                exchange.end(0);
+                return response;
+            }
+            return response.newBuilder().body(new CountingBody(response.body(), exchange)).build();
+        }
+    }
+
+    private static class Exchange {
+
+        private final ApiClientListener listener;
+        private final String endpoint;
+        private final int status;
+        private final long startNanos;
+        private final long requestBytes;
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        Exchange(ApiClientListener listener, String endpoint, int status, long startNanos, long requestBytes) {
+            this.listener = listener;
+            this.endpoint = endpoint;
+            this.status = status;
+            this.startNanos = startNanos;
+            this.requestBytes = requestBytes;
+        }
+
+        void end(long responseBytes) {
+            if (ended.compareAndSet(false, true)) {
+                listener.onExchange(endpoint, status, System.nanoTime() - startNanos, requestBytes, responseBytes);
+            }
+        }
+    }
+
+    /**
+     * A response body that adds up the time spent in reads of the body it wraps.
+     */
+    private static class TimedBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+        private long readNanos;
+
+        TimedBody(ResponseBody delegate) throws ApiException {
+            this.delegate = delegate;
+            try {
+                this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                    @Override
+                    public long read(Buffer sink, long byteCount) throws IOException {
+                        long startNanos = System.nanoTime();
+                        try {
+                            return super.read(sink, byteCount);
+                        } finally {
+                            readNanos += System.nanoTime() - startNanos;
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                throw new ApiException(e);
+            }
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+    private static class CountingBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        CountingBody(ResponseBody delegate, Exchange exchange) throws IOException {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                private long bytes;
+
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read == -1) {
+                        exchange.end(bytes);
+                    } else {
+                        bytes += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        exchange.end(bytes);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
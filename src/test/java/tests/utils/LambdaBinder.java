@@ -0,0 +1,72 @@
+package tests.utils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Binds getters, setters and no-argument constructors of the generated models into Function, BiConsumer and Supplier
+ * instances with LambdaMetafactory, which the JIT compiles like hand-written lambdas, so the classes resolving model
+ * properties at runtime, NotificationSpecification and CompactNotifications, call them without reflection.
+ *
+ * <p> Methods that cannot be bound, such as ones not public, fail with IllegalArgumentException.
+ **/
+final class LambdaBinder {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private LambdaBinder() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static Function<Object, Object> getter(Method getter) {
+        return (Function<Object, Object>) bind(getter, Function.class, "apply", MethodType.methodType(Object.class, Object.class),
+                MethodType.methodType(boxed(getter.getReturnType()), getter.getDeclaringClass()));
+    }
+
+    @SuppressWarnings("unchecked")
+    static BiConsumer<Object, Object> setter(Method setter) {
+        return (BiConsumer<Object, Object>) bind(setter, BiConsumer.class, "accept", MethodType.methodType(void.class, Object.class, Object.class),
+                MethodType.methodType(void.class, setter.getDeclaringClass(), setter.getParameterTypes()[0]));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> constructor(Class<?> type) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(type, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class), handle, MethodType.methodType(type));
+            return (Supplier<Object>) site.getTarget().invokeExact();
+        } catch (NoSuchMethodException | LambdaConversionException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot bind the constructor of " + type, e);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot bind the constructor of " + type, e);
+        }
+    }
+
+    /**
+     * Returns the wrapper class of a primitive type, or the type itself.
+     */
+    static Class<?> boxed(Class<?> type) {
+        return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+    }
+
+    private static Object bind(Method method, Class<?> functionalInterface, String name, MethodType samType, MethodType instantiated) {
+        try {
+            MethodHandle handle = LOOKUP.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, name, MethodType.methodType(functionalInterface), samType, handle, instantiated);
+            return site.getTarget().invoke();
+        } catch (LambdaConversionException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot bind " + method, e);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot bind " + method, e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package tests.utils;
+
+import org.openapitools.client.ApiException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives an operation from a number of threads for a set time and reports throughput and latency percentiles, to load
+ * and soak test the client against ApiStubDispatcher.
+ *
+ * <p> Each thread calls the operation back to back, so the load is closed: latencies are service times as the client
+ * sees them, and throughput is what the client and server sustain together.
+ * <p> Calls made during the warmup are not reported. Calls that throw count as errors, keyed by HTTP status for an
+ * ApiException and by exception type otherwise, and their latencies are recorded like those of other calls.
+ **/
+public class LoadHarness {
+
+    /**
+     * One call to the API, such as pulling a page of notifications.
+     */
+    @FunctionalInterface
+    public interface Operation {
+        void call() throws Exception;
+    }
+
+    private int threads = 4;
+    private Duration warmup = Duration.ZERO;
+    private Duration duration = Duration.ofSeconds(10);
+
+    public LoadHarness threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public LoadHarness warmup(Duration warmup) {
+        this.warmup = warmup;
+        return this;
+    }
+
+    public LoadHarness duration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * Runs the operation for the warmup and then for the duration.
+     *
+     * @param operation
+     * @return Report of the calls made after the warmup
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public Report run(Operation operation) throws InterruptedException {
+        Report report = new Report(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        long startNanos = System.nanoTime();
+        long measureFromNanos = startNanos + warmup.toNanos();
+        long endNanos = measureFromNanos + duration.toNanos();
+        try {
+            for (int thread = 0; thread < threads; thread++) {
+                executor.execute(() -> {
+                    try {
+                        long now;
+                        while ((now = System.nanoTime()) < endNanos && !Thread.currentThread().isInterrupted()) {
+                            String error = null;
+                            try {
+                                operation.call();
+                            } catch (ApiException e) {
+                                error = "HTTP " + e.getCode();
+                            } catch (Exception e) {
+                                error = e.getClass().getSimpleName();
+                            }
+                            if (now >= measureFromNanos) {
+                                report.record(System.nanoTime() - now, error);
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        report.elapsedNanos = System.nanoTime() - measureFromNanos;
+        return report;
+    }
+
+    /**
+     * The calls made after the warmup: how many, how fast, and how many failed.
+     */
+    public static class Report {
+
+        private final int threads;
+        private final ConcurrentHistogram latency = new ConcurrentHistogram();
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        private long elapsedNanos;
+
+        Report(int threads) {
+            this.threads = threads;
+        }
+
+        void record(long nanos, String error) {
+            latency.record(nanos);
+            if (error != null) {
+                errors.computeIfAbsent(error, key -> new LongAdder()).increment();
+            }
+        }
+
+        public long getCalls() {
+            return latency.getCount();
+        }
+
+        /**
+         * Returns latencies in nanoseconds.
+         */
+        public ConcurrentHistogram getLatency() {
+            return latency;
+        }
+
+        public long getErrorCount() {
+            return errors.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        /**
+         * Returns error counts by HTTP status, such as "HTTP 429", or by exception type.
+         */
+        public Map<String, Long> getErrors() {
+            Map<String, Long> counts = new TreeMap<>();
+            errors.forEach((error, count) -> counts.put(error, count.sum()));
+            return counts;
+        }
+
+        public double getThroughput() {
+            return getCalls() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d threads, %d calls in %.1f s, %.1f calls/s, errors %s%n"
+                            + "latency ms p50 %.2f p99 %.2f p999 %.2f max %.2f%n",
+                    threads, getCalls(), elapsedNanos / 1e9, getThroughput(), getErrors(),
+                    millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getValueAtPercentile(99.9)), millis(latency.getMax()));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package tests.utils;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A ServerSocketFactory for MockWebServer whose accepted sockets have TCP_NODELAY set.
+ *
+ * <p> MockWebServer writes the response headers and body separately. With Nagle's algorithm on, the body waits for the
+ * client to acknowledge the headers, and a delayed ACK adds around 40 ms to every response, which hides the client side
+ * differences a load test is trying to measure.
+ **/
+public class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+    @Override
+    public ServerSocket createServerSocket() throws IOException {
+        return new ServerSocket() {
+            @Override
+            public Socket accept() throws IOException {
+                Socket socket = super.accept();
+                socket.setTcpNoDelay(true);
+                return socket;
+            }
+        };
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return bound(port, 50, null);
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+        return bound(port, backlog, null);
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+        return bound(port, backlog, address);
+    }
+
+    private ServerSocket bound(int port, int backlog, InetAddress address) throws IOException {
+        ServerSocket serverSocket = createServerSocket();
+        serverSocket.bind(new InetSocketAddress(address, port), backlog);
+        return serverSocket;
+    }
+}
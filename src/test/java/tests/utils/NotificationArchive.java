@@ -0,0 +1,620 @@
+package tests.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Notification;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only archive of notifications in segment files, read and written through memory-mapped FileChannels.
+ *
+ * <p> A record is [length][createdTimestamp in epoch millis][flags][subscriptionName][subject][pushStatus]
+ * [createdTimestamp text, only when it is not in the service's format][content as JSON][CRC32], with strings as an
+ * unsigned 16 bit length and UTF-8 bytes. A zero length after the last record marks the end of a segment, and a new
+ * segment is started when a record does not fit. Segments are preallocated as sparse files of the segment size.
+ * <p> Indexes by createdTimestamp, subscriptionName and subject are kept in memory and rebuilt on open from the record
+ * headers, without decoding any content. Only the last segment is checked against the CRCs on open, as only its tail
+ * can have been torn by a crash; anything from the first bad record on is dropped.
+ * <p> {@link #scan(long, long, String, String, Consumer)} visits matching records in createdTimestamp order through a
+ * single Record view over the mapped segment: content is handed out as a slice of the mapping, and only decoded into a
+ * Notification on request. Appends are not forced to disk until {@link #flush()} or {@link #close()}.
+ **/
+public class NotificationArchive implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int MAX_STRING_BYTES = 0xFFFE;
+    private static final int NULL_STRING = 0xFFFF;
+    private static final int NULL_CONTENT = -1;
+    private static final int NO_ID = -1;
+    private static final byte FLAG_TIMESTAMP_TEXT = 1;
+    private static final byte FLAG_NO_TIMESTAMP = 2;
+    // createdMillis, flags, three string lengths, content length and CRC
+    private static final int FIXED_BYTES = Long.BYTES + 1 + 3 * Short.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final JSON json;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private boolean ordered = true;
+    private long maxMillis = Long.MIN_VALUE;
+    private long count;
+
+    public NotificationArchive(Path directory, JSON json) throws IOException {
+        this(directory, json, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the archive in the directory, creating it when missing, and indexes the segments already there.
+     */
+    public NotificationArchive(Path directory, JSON json, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.json = json;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        for (int i = 0; i < paths.size(); i++) {
+            boolean last = i == paths.size() - 1;
+            Segment segment = new Segment(paths.get(i), last);
+            segment.load(last);
+            segments.add(segment);
+        }
+    }
+
+    /**
+     * Returns the number of notifications in the archive.
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized void appendAll(Collection<Notification> notifications) throws IOException {
+        for (Notification notification : notifications) {
+            append(notification);
+        }
+    }
+
+    public synchronized void append(Notification notification) throws IOException {
+        String createdTimestamp = notification.getCreatedTimestamp();
+        long createdMillis = NotificationFingerprint.createdMillis(notification, Long.MIN_VALUE);
+        byte flags = 0;
+        byte[] timestampText = null;
+        if (createdTimestamp == null) {
+            flags = FLAG_NO_TIMESTAMP;
+        } else if (createdMillis == Long.MIN_VALUE || !format(createdMillis).equals(createdTimestamp)) {
+            flags = FLAG_TIMESTAMP_TEXT;
+            timestampText = utf8(createdTimestamp);
+        }
+        byte[] subscriptionName = utf8(notification.getSubscriptionName());
+        byte[] subject = utf8(notification.getSubject());
+        byte[] pushStatus = utf8(notification.getPushStatus());
+        byte[] content = notification.getContent() == null ? null : json.getGson().toJson(notification.getContent()).getBytes(StandardCharsets.UTF_8);
+        int length = FIXED_BYTES + bytes(subscriptionName) + bytes(subject) + bytes(pushStatus) + bytes(content)
+                + (timestampText == null ? 0 : Short.BYTES + timestampText.length);
+
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || !segment.fits(length)) {
+            segment = roll();
+            if (!segment.fits(length)) {
+                throw new IllegalArgumentException("A record of " + length + " bytes does not fit in a segment of " + segmentBytes + " bytes");
+            }
+        }
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int offset = segment.end;
+        buffer.position(offset);
+        buffer.putInt(length).putLong(createdMillis).put(flags);
+        putString(buffer, subscriptionName);
+        putString(buffer, subject);
+        putString(buffer, pushStatus);
+        if (timestampText != null) {
+            putString(buffer, timestampText);
+        }
+        if (content == null) {
+            buffer.putInt(NULL_CONTENT);
+        } else {
+            buffer.putInt(content.length).put(content);
+        }
+        buffer.putInt(crc(segment.buffer, offset, length));
+        segment.end = buffer.position();
+        if (segment.end + Integer.BYTES <= segment.buffer.capacity()) {
+            buffer.putInt(0);
+        }
+        segment.index(offset, createdMillis, id(notification.getSubscriptionName()), id(notification.getSubject()));
+    }
+
+    /**
+     * Forces the appended records to disk.
+     */
+    public synchronized void flush() {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).buffer.force();
+        }
+    }
+
+    /**
+     * Visits the notifications created in [startMillis, endMillis), in createdTimestamp order, optionally restricted to
+     * a subscriptionName and a subject. The Record passed to the visitor is reused for every notification and is only
+     * valid during the call.
+     *
+     * @return the number of notifications visited
+     */
+    public synchronized long scan(long startMillis, long endMillis, String subscriptionName, String subject, Consumer<Record> visitor) {
+        int subscriptionId = subscriptionName == null ? NO_ID : ids.getOrDefault(subscriptionName, Integer.MIN_VALUE);
+        int subjectId = subject == null ? NO_ID : ids.getOrDefault(subject, Integer.MIN_VALUE);
+        if (subscriptionId == Integer.MIN_VALUE || subjectId == Integer.MIN_VALUE) {
+            return 0;
+        }
+        Record record = new Record();
+        long visited = 0;
+        if (ordered) {
+            for (Segment segment : segments) {
+                visited += segment.visit(startMillis, endMillis, subscriptionId, subjectId, record, visitor);
+            }
+            return visited;
+        }
+        // Segments overlap in time, so their matches are merged
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Comparator.comparingLong(Cursor::millis).thenComparingInt(cursor -> cursor.segmentIndex));
+        for (int i = 0; i < segments.size(); i++) {
+            int[] matches = segments.get(i).matches(startMillis, endMillis, subscriptionId, subjectId);
+            if (matches.length > 0) {
+                cursors.add(new Cursor(segments.get(i), i, matches));
+            }
+        }
+        while (!cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            cursor.segment.visit(cursor.matches[cursor.position], record, visitor);
+            visited++;
+            if (++cursor.position < cursor.matches.length) {
+                cursors.add(cursor);
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Returns the notifications created in [start, end), decoded, optionally restricted to a subscriptionName and a subject.
+     */
+    public List<Notification> query(Instant start, Instant end, String subscriptionName, String subject) {
+        List<Notification> notifications = new ArrayList<>();
+        scan(start.toEpochMilli(), end.toEpochMilli(), subscriptionName, subject, record -> notifications.add(record.toNotification()));
+        return notifications;
+    }
+
+    private Segment roll() throws IOException {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).buffer.force();
+        }
+        Path path = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segments.size(), SEGMENT_SUFFIX));
+        Segment segment = new Segment(path, true);
+        segment.buffer.putInt(0, 0);
+        segments.add(segment);
+        return segment;
+    }
+
+    private int id(String name) {
+        if (name == null) {
+            return NO_ID;
+        }
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    private static String format(long millis) {
+        return NotificationStubDispatcher.TIMESTAMP_FORMAT.format(OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Strings are limited to " + MAX_STRING_BYTES + " bytes, got " + bytes.length);
+        }
+        return bytes;
+    }
+
+    private static int bytes(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) NULL_STRING);
+        } else {
+            buffer.putShort((short) value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer, int position) {
+        int length = buffer.getShort(position) & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position + Short.BYTES);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int skipString(ByteBuffer buffer, int position) {
+        int length = buffer.getShort(position) & 0xFFFF;
+        return position + Short.BYTES + (length == NULL_STRING ? 0 : length);
+    }
+
+    /**
+     * The CRC of a record covers everything between its length and its CRC.
+     */
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer covered = buffer.duplicate();
+        covered.limit(offset + Integer.BYTES + length - Integer.BYTES).position(offset + Integer.BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(covered);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+    }
+
+    private class Segment {
+
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int end;
+        private int records;
+        private int[] offsets = new int[1024];
+        private long[] millis = new long[1024];
+        private int[] subscriptionIds = new int[1024];
+        private int[] subjectIds = new int[1024];
+        private final Map<Integer, IntList> bySubscription = new HashMap<>();
+        private final Map<Integer, IntList> bySubject = new HashMap<>();
+        private boolean timeOrdered = true;
+        private int[] byTime;
+        private long minMillis = Long.MAX_VALUE;
+        private long segmentMaxMillis = Long.MIN_VALUE;
+
+        Segment(Path path, boolean writable) throws IOException {
+            if (writable) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentBytes));
+            } else {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        /**
+         * Indexes the records up to the end marker, or up to the first torn one when verify is set.
+         */
+        void load(boolean verify) {
+            int position = 0;
+            while (position + Integer.BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length < FIXED_BYTES || position + Integer.BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                if (verify && crc(buffer, position, length) != buffer.getInt(position + Integer.BYTES + length - Integer.BYTES)) {
+                    break;
+                }
+                int field = position + Integer.BYTES + Long.BYTES + 1;
+                String subscriptionName = getString(buffer, field);
+                String subject = getString(buffer, skipString(buffer, field));
+                index(position, buffer.getLong(position + Integer.BYTES), id(subscriptionName), id(subject));
+                position += Integer.BYTES + length;
+            }
+            end = position;
+            if (verify && end + Integer.BYTES <= buffer.capacity()) {
+                buffer.putInt(end, 0);
+            }
+        }
+
+        boolean fits(int length) {
+            return end + Integer.BYTES + length <= buffer.capacity();
+        }
+
+        void index(int offset, long createdMillis, int subscriptionId, int subjectId) {
+            if (records == offsets.length) {
+                offsets = Arrays.copyOf(offsets, records * 2);
+                millis = Arrays.copyOf(millis, records * 2);
+                subscriptionIds = Arrays.copyOf(subscriptionIds, records * 2);
+                subjectIds = Arrays.copyOf(subjectIds, records * 2);
+            }
+            if (records > 0 && createdMillis < millis[records - 1]) {
+                timeOrdered = false;
+            }
+            if (createdMillis < maxMillis) {
+                ordered = false;
+            }
+            maxMillis = Math.max(maxMillis, createdMillis);
+            minMillis = Math.min(minMillis, createdMillis);
+            segmentMaxMillis = Math.max(segmentMaxMillis, createdMillis);
+            offsets[records] = offset;
+            millis[records] = createdMillis;
+            subscriptionIds[records] = subscriptionId;
+            subjectIds[records] = subjectId;
+            bySubscription.computeIfAbsent(subscriptionId, key -> new IntList()).add(records);
+            bySubject.computeIfAbsent(subjectId, key -> new IntList()).add(records);
+            byTime = null;
+            records++;
+            count++;
+        }
+
+        long visit(long startMillis, long endMillis, int subscriptionId, int subjectId, Record record, Consumer<Record> visitor) {
+            if (timeOrdered && subscriptionId == NO_ID && subjectId == NO_ID) {
+                int from = lowerBound(startMillis);
+                int to = lowerBound(endMillis);
+                for (int ordinal = from; ordinal < to; ordinal++) {
+                    visit(ordinal, record, visitor);
+                }
+                return Math.max(0, to - from);
+            }
+            int[] matches = matches(startMillis, endMillis, subscriptionId, subjectId);
+            for (int ordinal : matches) {
+                visit(ordinal, record, visitor);
+            }
+            return matches.length;
+        }
+
+        void visit(int ordinal, Record record, Consumer<Record> visitor) {
+            record.set(buffer, offsets[ordinal], millis[ordinal], subscriptionIds[ordinal], subjectIds[ordinal]);
+            visitor.accept(record);
+        }
+
+        /**
+         * Returns the ordinals of the matching records in createdTimestamp order.
+         */
+        int[] matches(long startMillis, long endMillis, int subscriptionId, int subjectId) {
+            if (records == 0 || segmentMaxMillis < startMillis || minMillis >= endMillis) {
+                return new int[0];
+            }
+            IntList candidates = null;
+            if (subscriptionId != NO_ID) {
+                candidates = bySubscription.get(subscriptionId);
+            }
+            if (subjectId != NO_ID) {
+                IntList subjectCandidates = bySubject.get(subjectId);
+                if (candidates == null || (subjectCandidates != null && subjectCandidates.size < candidates.size)) {
+                    candidates = subjectCandidates;
+                }
+            }
+            IntList matches = new IntList();
+            if (candidates == null && (subscriptionId != NO_ID || subjectId != NO_ID)) {
+                return new int[0];
+            }
+            if (candidates == null) {
+                int[] order = byTime();
+                int to = lowerBound(endMillis);
+                for (int i = lowerBound(startMillis); i < to; i++) {
+                    matches.add(order[i]);
+                }
+                return matches.toArray();
+            }
+            for (int i = 0; i < candidates.size; i++) {
+                int ordinal = candidates.values[i];
+                if (millis[ordinal] >= startMillis && millis[ordinal] < endMillis
+                        && (subscriptionId == NO_ID || subscriptionIds[ordinal] == subscriptionId)
+                        && (subjectId == NO_ID || subjectIds[ordinal] == subjectId)) {
+                    matches.add(ordinal);
+                }
+            }
+            int[] result = matches.toArray();
+            return timeOrdered ? result : sortByTime(result);
+        }
+
+        /**
+         * Returns the index of the first record, in createdTimestamp order, created at or after the given millis.
+         */
+        private int lowerBound(long createdMillis) {
+            int[] order = timeOrdered ? null : byTime();
+            int low = 0;
+            int high = records;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (millis[order == null ? middle : order[middle]] < createdMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int[] byTime() {
+            if (byTime == null) {
+                int[] ordinals = new int[records];
+                for (int i = 0; i < records; i++) {
+                    ordinals[i] = i;
+                }
+                byTime = timeOrdered ? ordinals : sortByTime(ordinals);
+            }
+            return byTime;
+        }
+
+        private int[] sortByTime(int[] ordinals) {
+            Integer[] boxed = new Integer[ordinals.length];
+            for (int i = 0; i < ordinals.length; i++) {
+                boxed[i] = ordinals[i];
+            }
+            Arrays.sort(boxed, Comparator.comparingLong((Integer ordinal) -> millis[ordinal]).thenComparingInt(ordinal -> ordinal));
+            int[] sorted = new int[boxed.length];
+            for (int i = 0; i < boxed.length; i++) {
+                sorted[i] = boxed[i];
+            }
+            return sorted;
+        }
+    }
+
+    private static class Cursor {
+
+        private final Segment segment;
+        private final int segmentIndex;
+        private final int[] matches;
+        private int position;
+
+        Cursor(Segment segment, int segmentIndex, int[] matches) {
+            this.segment = segment;
+            this.segmentIndex = segmentIndex;
+            this.matches = matches;
+        }
+
+        long millis() {
+            return segment.millis[matches[position]];
+        }
+    }
+
+    private static class IntList {
+
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * A view of one archived notification in its mapped segment. Nothing is decoded until asked for; subscriptionName
+     * and subject come from the index.
+     */
+    public class Record {
+
+        private ByteBuffer buffer;
+        private int offset;
+        private long createdMillis;
+        private int subscriptionId;
+        private int subjectId;
+
+        private void set(ByteBuffer buffer, int offset, long createdMillis, int subscriptionId, int subjectId) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.createdMillis = createdMillis;
+            this.subscriptionId = subscriptionId;
+            this.subjectId = subjectId;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        public String getCreatedTimestamp() {
+            byte flags = buffer.get(offset + Integer.BYTES + Long.BYTES);
+            if ((flags & FLAG_NO_TIMESTAMP) != 0) {
+                return null;
+            }
+            if ((flags & FLAG_TIMESTAMP_TEXT) != 0) {
+                return getString(buffer, skipString(buffer, pushStatusPosition()));
+            }
+            return format(createdMillis);
+        }
+
+        public String getSubscriptionName() {
+            return subscriptionId == NO_ID ? null : names.get(subscriptionId);
+        }
+
+        public String getSubject() {
+            return subjectId == NO_ID ? null : names.get(subjectId);
+        }
+
+        public String getPushStatus() {
+            return getString(buffer, pushStatusPosition());
+        }
+
+        /**
+         * Returns the content as UTF-8 JSON in a read-only slice of the mapped segment, or null when there is none.
+         */
+        public ByteBuffer getContent() {
+            int position = skipString(buffer, pushStatusPosition());
+            if ((buffer.get(offset + Integer.BYTES + Long.BYTES) & FLAG_TIMESTAMP_TEXT) != 0) {
+                position = skipString(buffer, position);
+            }
+            int length = buffer.getInt(position);
+            if (length == NULL_CONTENT) {
+                return null;
+            }
+            ByteBuffer content = buffer.asReadOnlyBuffer();
+            content.limit(position + Integer.BYTES + length).position(position + Integer.BYTES);
+            return content.slice();
+        }
+
+        /**
+         * Decodes the record into a Notification, with its content decoded by the archive's JSON as the API would.
+         */
+        public Notification toNotification() {
+            JsonObject notification = new JsonObject();
+            notification.addProperty("subject", getSubject());
+            notification.addProperty("subscriptionName", getSubscriptionName());
+            notification.addProperty("pushStatus", getPushStatus());
+            notification.addProperty("createdTimestamp", getCreatedTimestamp());
+            ByteBuffer content = getContent();
+            if (content != null) {
+                byte[] bytes = new byte[content.remaining()];
+                content.get(bytes);
+                JsonElement element = new JsonParser().parse(new String(bytes, StandardCharsets.UTF_8));
+                notification.add("content", element);
+            }
+            return json.getGson().fromJson(notification, Notification.class);
+        }
+
+        private int pushStatusPosition() {
+            int subscriptionName = offset + Integer.BYTES + Long.BYTES + 1;
+            return skipString(buffer, skipString(buffer, subscriptionName));
+        }
+    }
+}
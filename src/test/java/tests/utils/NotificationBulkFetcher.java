@@ -0,0 +1,224 @@
+package tests.utils;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationsWrapper;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pulls every notification in [start, end) by splitting the range into non-overlapping sub-windows
+ * and draining them concurrently on a bounded pool of worker threads.
+ *
+ * <p> The end date of /notifications is exclusive, so adjacent windows [a, b) and [b, c) never return the same notification.
+ * <p> A probe call over the whole range reads NotificationsWrapper.total and sizes the initial windows from it.
+ * Any window that still turns out to hold more than twice the target size is split in half and re-queued.
+ * <p> Each window is sorted by createdTimestamp and windows are concatenated in time order, so the merged result is ordered.
+ **/
+public class NotificationBulkFetcher implements AutoCloseable {
+
+    public static final int DEFAULT_PAGE_LIMIT = 50;
+    public static final int DEFAULT_PAGES_PER_WINDOW = 4;
+    public static final int FIRST_OFFSET = 0;
+
+    private static final Duration MINIMUM_WINDOW = Duration.ofMillis(1);
+
+    private final NotificationsApi notificationsApi;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private int pageLimit = DEFAULT_PAGE_LIMIT;
+    private int pagesPerWindow = DEFAULT_PAGES_PER_WINDOW;
+
+    public NotificationBulkFetcher(NotificationsApi notificationsApi, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.notificationsApi = notificationsApi;
+        this.parallelism = parallelism;
+        this.executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    public NotificationBulkFetcher pageLimit(int pageLimit) {
+        this.pageLimit = pageLimit;
+        return this;
+    }
+
+    public NotificationBulkFetcher pagesPerWindow(int pagesPerWindow) {
+        this.pagesPerWindow = pagesPerWindow;
+        return this;
+    }
+
+    /**
+     * Returns all notifications created in [start, end) that match the optional filters, ordered by createdTimestamp.
+     *
+     * @param start inclusive
+     * @param end exclusive
+     * @param subscriptionNames
+     * @param pushStatus
+     * @return List of Notification
+     * @throws ApiException if any page cannot be retrieved
+     */
+    public List<Notification> fetch(OffsetDateTime start, OffsetDateTime end, List<String> subscriptionNames, List<String> pushStatus) throws ApiException {
+        NotificationsWrapper probe = notificationsApi.notificationsGet(start, end, subscriptionNames, pushStatus, FIRST_OFFSET, pageLimit);
+        long total = probe.getTotal() == null ? 0 : probe.getTotal();
+        if (total <= notificationsOf(probe).size()) {
+            List<Notification> notifications = new ArrayList<>(notificationsOf(probe));
+            sortByCreatedTimestamp(notifications);
+            return notifications;
+        }
+
+        long targetPerWindow = (long) pageLimit * pagesPerWindow;
+        int windowCount = (int) Math.max(parallelism, Math.min(Integer.MAX_VALUE, (total + targetPerWindow - 1) / targetPerWindow));
+        CompletionService<WindowResult> completionService = new ExecutorCompletionService<>(executor);
+        TreeMap<OffsetDateTime, List<Notification>> windows = new TreeMap<>();
+        int pending = 0;
+        for (Window window : split(new Window(start, end), windowCount)) {
+            completionService.submit(() -> drain(window, subscriptionNames, pushStatus, targetPerWindow * 2));
+            pending++;
+        }
+
+        try {
+            while (pending > 0) {
+                WindowResult result = completionService.take().get();
+                pending--;
+                if (result.notifications == null) {
+                    for (Window half : split(result.window, 2)) {
+                        completionService.submit(() -> drain(half, subscriptionNames, pushStatus, targetPerWindow * 2));
+                        pending++;
+                    }
+                } else {
+                    windows.put(result.window.start, result.notifications);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApiException) {
+                throw (ApiException) e.getCause();
+            }
+            throw new ApiException(e.getCause());
+        }
+
+        List<Notification> merged = new ArrayList<>();
+        for (List<Notification> notifications : windows.values()) {
+            merged.addAll(notifications);
+        }
+        return merged;
+    }
+
+    /**
+     * Reads every page of a single window, or asks for a split when the window is too large to drain on one thread.
+     */
+    private WindowResult drain(Window window, List<String> subscriptionNames, List<String> pushStatus, long splitThreshold) throws ApiException {
+        NotificationsWrapper page = notificationsApi.notificationsGet(window.start, window.end, subscriptionNames, pushStatus, FIRST_OFFSET, pageLimit);
+        long total = page.getTotal() == null ? 0 : page.getTotal();
+        if (total > splitThreshold && window.duration().compareTo(MINIMUM_WINDOW.multipliedBy(2)) >= 0) {
+            return new WindowResult(window, null);
+        }
+
+        List<Notification> notifications = new ArrayList<>((int) Math.min(total, Integer.MAX_VALUE));
+        notifications.addAll(notificationsOf(page));
+        int offset = FIRST_OFFSET + notificationsOf(page).size();
+        while (offset - FIRST_OFFSET < total && !notificationsOf(page).isEmpty()) {
+            page = notificationsApi.notificationsGet(window.start, window.end, subscriptionNames, pushStatus, offset, pageLimit);
+            notifications.addAll(notificationsOf(page));
+            offset += notificationsOf(page).size();
+        }
+        sortByCreatedTimestamp(notifications);
+        return new WindowResult(window, notifications);
+    }
+
+    /**
+     * Splits a window into the given number of contiguous windows on millisecond boundaries.
+     * The last window always ends exactly at the original end, so no instant is lost or repeated.
+     */
+    static List<Window> split(Window window, int count) {
+        List<Window> windows = new ArrayList<>(count);
+        long stepMillis = Math.max(MINIMUM_WINDOW.toMillis(), window.duration().toMillis() / count);
+        OffsetDateTime cursor = window.start;
+        for (int i = 0; i < count - 1; i++) {
+            OffsetDateTime next = cursor.plus(stepMillis, ChronoUnit.MILLIS);
+            if (!next.isBefore(window.end)) {
+                break;
+            }
+            windows.add(new Window(cursor, next));
+            cursor = next;
+        }
+        windows.add(new Window(cursor, window.end));
+        return windows;
+    }
+
+    private static List<Notification> notificationsOf(NotificationsWrapper page) {
+        return page.getNotifications() == null ? new ArrayList<>() : page.getNotifications();
+    }
+
+    /**
+     * Sorts notifications by createdTimestamp, parsing each timestamp once rather than on every comparison. The sort is
+     * stable, so notifications created at the same time keep the order the API returned them in.
+     */
+    private static void sortByCreatedTimestamp(List<Notification> notifications) {
+        long[] createdMillis = new long[notifications.size()];
+        Integer[] order = new Integer[notifications.size()];
+        for (int i = 0; i < order.length; i++) {
+            createdMillis[i] = OffsetDateTime.parse(notifications.get(i).getCreatedTimestamp()).toInstant().toEpochMilli();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> createdMillis[i]));
+        Notification[] sorted = new Notification[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = notifications.get(order[i]);
+        }
+        for (int i = 0; i < sorted.length; i++) {
+            notifications.set(i, sorted[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class Window {
+        final OffsetDateTime start;
+        final OffsetDateTime end;
+
+        Window(OffsetDateTime start, OffsetDateTime end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        Duration duration() {
+            return Duration.between(start, end);
+        }
+    }
+
+    private static class WindowResult {
+        final Window window;
+        final List<Notification> notifications;
+
+        WindowResult(Window window, List<Notification> notifications) {
+            this.window = window;
+            this.notifications = notifications;
+        }
+    }
+}
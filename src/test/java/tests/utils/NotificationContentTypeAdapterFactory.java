@@ -0,0 +1,154 @@
+package tests.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.CommercialBpsNotificationContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decodes Notification.content straight into the model selected by the subject discriminator declared in notification-swagger.yml:
+ * PAYMENT_AUTHORIZATION to NotificationContent and PAYMENT_UPDATE to CommercialBpsNotificationContent.
+ *
+ * <p> When subject precedes content, as it does in API responses, the content is decoded in a single pass with no intermediate JsonElement tree.
+ * If content arrives first it is buffered as a tree and converted once subject is known.
+ * <p> Content for an unknown subject is decoded as before, into the generic Map structure Gson uses for Object.
+ **/
+public class NotificationContentTypeAdapterFactory implements TypeAdapterFactory {
+
+    public static final Map<String, Class<?>> CONTENT_TYPES;
+
+    static {
+        Map<String, Class<?>> contentTypes = new HashMap<>();
+        contentTypes.put("PAYMENT_AUTHORIZATION", NotificationContent.class);
+        contentTypes.put("PAYMENT_UPDATE", CommercialBpsNotificationContent.class);
+        CONTENT_TYPES = Collections.unmodifiableMap(contentTypes);
+    }
+
+    /**
+     * Returns a Gson equivalent to the one the generated JSON class builds, with this factory registered.
+     * Use it with {@code apiClient.getJSON().setGson(...)}.
+     *
+     * <p> The date, OffsetDateTime, LocalDate and byte[] adapters are taken from the Gson of the given JSON rather than
+     * created anew, so formats set on it with setDateFormat or setOffsetDateTimeFormat, before or after, still apply.
+     *
+     * @param json
+     * @return Gson
+     */
+    public static Gson createGson(JSON json) {
+        Gson gson = json.getGson();
+        return JSON.createGson()
+                .registerTypeAdapter(Date.class, gson.getAdapter(Date.class))
+                .registerTypeAdapter(java.sql.Date.class, gson.getAdapter(java.sql.Date.class))
+                .registerTypeAdapter(OffsetDateTime.class, gson.getAdapter(OffsetDateTime.class))
+                .registerTypeAdapter(LocalDate.class, gson.getAdapter(LocalDate.class))
+                .registerTypeAdapter(byte[].class, gson.getAdapter(byte[].class))
+                .registerTypeAdapterFactory(new NotificationContentTypeAdapterFactory())
+                .create();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != Notification.class) {
+            return null;
+        }
+        Map<String, TypeAdapter<?>> contentAdapters = new HashMap<>();
+        for (Map.Entry<String, Class<?>> contentType : CONTENT_TYPES.entrySet()) {
+            contentAdapters.put(contentType.getKey(), gson.getAdapter(contentType.getValue()));
+        }
+        TypeAdapter<Notification> delegate = gson.getDelegateAdapter(this, TypeToken.get(Notification.class));
+        return (TypeAdapter<T>) new NotificationAdapter(delegate, contentAdapters, gson.getAdapter(Object.class), gson.getAdapter(JsonElement.class));
+    }
+
+    private static class NotificationAdapter extends TypeAdapter<Notification> {
+
+        private final TypeAdapter<Notification> delegate;
+        private final Map<String, TypeAdapter<?>> contentAdapters;
+        private final TypeAdapter<Object> untypedContentAdapter;
+        private final TypeAdapter<JsonElement> treeAdapter;
+
+        NotificationAdapter(TypeAdapter<Notification> delegate, Map<String, TypeAdapter<?>> contentAdapters,
+                            TypeAdapter<Object> untypedContentAdapter, TypeAdapter<JsonElement> treeAdapter) {
+            this.delegate = delegate;
+            this.contentAdapters = contentAdapters;
+            this.untypedContentAdapter = untypedContentAdapter;
+            this.treeAdapter = treeAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, Notification notification) throws IOException {
+            delegate.write(out, notification);
+        }
+
+        @Override
+        public Notification read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Notification notification = new Notification();
+            JsonElement bufferedContent = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case Notification.SERIALIZED_NAME_SUBJECT:
+                        notification.setSubject(nextString(in));
+                        break;
+                    case Notification.SERIALIZED_NAME_SUBSCRIPTION_NAME:
+                        notification.setSubscriptionName(nextString(in));
+                        break;
+                    case Notification.SERIALIZED_NAME_PUSH_STATUS:
+                        notification.setPushStatus(nextString(in));
+                        break;
+                    case Notification.SERIALIZED_NAME_CREATED_TIMESTAMP:
+                        notification.setCreatedTimestamp(nextString(in));
+                        break;
+                    case Notification.SERIALIZED_NAME_CONTENT:
+                        if (notification.getSubject() == null) {
+                            bufferedContent = treeAdapter.read(in);
+                        } else {
+                            notification.setContent(contentAdapter(notification.getSubject()).read(in));
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (bufferedContent != null) {
+                notification.setContent(contentAdapter(notification.getSubject()).fromJsonTree(bufferedContent));
+            }
+            return notification;
+        }
+
+        private TypeAdapter<?> contentAdapter(String subject) {
+            TypeAdapter<?> adapter = subject == null ? null : contentAdapters.get(subject.toUpperCase(Locale.ROOT));
+            return adapter == null ? untypedContentAdapter : adapter;
+        }
+
+        private static String nextString(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextString();
+        }
+    }
+}
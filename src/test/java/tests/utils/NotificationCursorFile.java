@@ -0,0 +1,239 @@
+package tests.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A small append-only file holding the checkpoints of a NotificationPoller.
+ *
+ * <p> Every checkpoint is appended as one record and forced to disk before {@link #append(Checkpoint)} returns.
+ * A record is [length][payload][CRC32], so a record torn by a crash fails its check and the previous checkpoint is used.
+ * <p> Only the last checkpoint matters, so once the file holds {@link #MAX_RECORDS} records it is rewritten with just
+ * the last one, through a temporary file, an atomic rename and a force of the directory. Loading therefore reads a
+ * bounded number of records no matter how long the poller has been running.
+ **/
+public class NotificationCursorFile implements AutoCloseable {
+
+    public static final int MAX_RECORDS = 256;
+
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+    private static final int FLAG_COMPLETE = 1;
+
+    private final Path path;
+    private FileChannel channel;
+    private Checkpoint last;
+    private int records;
+
+    /**
+     * Opens the cursor file, creating it when missing, and reads the last valid checkpoint.
+     * Anything after that checkpoint, such as a torn record, is truncated.
+     */
+    public NotificationCursorFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long validEnd = 0;
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        while (true) {
+            header.clear();
+            if (!readFully(channel, header, validEnd)) {
+                break;
+            }
+            int length = header.getInt(0);
+            if (length <= 0 || length > MAX_RECORD_LENGTH || validEnd + Integer.BYTES + length + Integer.BYTES > channel.size()) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length + Integer.BYTES);
+            if (!readFully(channel, record, validEnd + Integer.BYTES)) {
+                break;
+            }
+            record.flip();
+            if (crc(record.array(), length) != record.getInt(length)) {
+                break;
+            }
+            last = Checkpoint.read(record);
+            records++;
+            validEnd += Integer.BYTES + length + Integer.BYTES;
+        }
+        if (validEnd < channel.size()) {
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+        channel.position(validEnd);
+    }
+
+    /**
+     * Returns the last checkpoint written, or null when there is none yet.
+     */
+    public Checkpoint last() {
+        return last;
+    }
+
+    /**
+     * Appends the checkpoint and forces it to disk.
+     */
+    public void append(Checkpoint checkpoint) throws IOException {
+        if (records >= MAX_RECORDS) {
+            compact(checkpoint);
+        } else {
+            write(channel, checkpoint);
+            channel.force(false);
+            records++;
+        }
+        last = checkpoint;
+    }
+
+    private void compact(Checkpoint checkpoint) throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel temporary = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(temporary, checkpoint);
+            temporary.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            records = 1;
+            forceDirectory(path.toAbsolutePath().getParent());
+        } finally {
+            // Reopened whether or not the rename happened, so that a failed compaction leaves the cursor usable
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+
+    /**
+     * Forces the directory entry of a rename to disk, without which a crash can undo the rename.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Windows cannot open a directory as a channel, and makes the rename durable by itself
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads until the buffer is full, returning false when the end of the file comes first.
+     */
+    private static boolean readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = source.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void write(FileChannel target, Checkpoint checkpoint) throws IOException {
+        int length = checkpoint.length();
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length + Integer.BYTES);
+        record.putInt(length);
+        checkpoint.write(record);
+        record.putInt(crc(record.array(), Integer.BYTES, length));
+        record.flip();
+        while (record.hasRemaining()) {
+            target.write(record);
+        }
+    }
+
+    private static int crc(byte[] bytes, int length) {
+        return crc(bytes, 0, length);
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * The progress of a poller: the window [start, end) being read, how far into it the poller got, and the fingerprints
+     * of the notifications already delivered that the next window's overlap will return again, with their createdTimestamp
+     * in epoch milliseconds.
+     */
+    public static class Checkpoint {
+
+        private final long startMillis;
+        private final long endMillis;
+        private final int offset;
+        private final boolean complete;
+        private final Map<Long, Long> delivered;
+
+        public Checkpoint(long startMillis, long endMillis, int offset, boolean complete, Map<Long, Long> delivered) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.offset = offset;
+            this.complete = complete;
+            this.delivered = Collections.unmodifiableMap(new HashMap<>(delivered));
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getEndMillis() {
+            return endMillis;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Returns the delivered fingerprints mapped to their createdTimestamp in epoch milliseconds.
+         */
+        public Map<Long, Long> getDelivered() {
+            return delivered;
+        }
+
+        private int length() {
+            return 2 * Long.BYTES + Integer.BYTES + 1 + Integer.BYTES + delivered.size() * 2 * Long.BYTES;
+        }
+
+        private void write(ByteBuffer buffer) {
+            buffer.putLong(startMillis).putLong(endMillis).putInt(offset).put((byte) (complete ? FLAG_COMPLETE : 0));
+            buffer.putInt(delivered.size());
+            for (Map.Entry<Long, Long> entry : delivered.entrySet()) {
+                buffer.putLong(entry.getKey()).putLong(entry.getValue());
+            }
+        }
+
+        private static Checkpoint read(ByteBuffer buffer) {
+            long startMillis = buffer.getLong();
+            long endMillis = buffer.getLong();
+            int offset = buffer.getInt();
+            boolean complete = (buffer.get() & FLAG_COMPLETE) != 0;
+            int size = buffer.getInt();
+            Map<Long, Long> delivered = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                delivered.put(buffer.getLong(), buffer.getLong());
+            }
+            return new Checkpoint(startMillis, endMillis, offset, complete, delivered);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package tests.utils;
+
+import org.openapitools.client.model.Notification;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers which notifications have been seen, so that notifications returned again by retried pages or overlapping
+ * windows are recognised and dropped.
+ *
+ * <p> Notifications are identified by their NotificationFingerprint and kept in primitive long open-addressing tables,
+ * one per bucket of createdTimestamp, so an entry costs 8 to 16 bytes instead of a boxed Long in a HashSet node.
+ * A fingerprint covers createdTimestamp, so every copy of a notification falls into the same bucket and one table lookup is enough.
+ * <p> Buckets older than the retention period are dropped whole, since /notifications no longer returns their notifications.
+ * Memory therefore follows the notifications created during the retention period, and {@link #maxEntries(long)} puts
+ * a hard cap on it by dropping older buckets early. Once only the bucket of a notification, or newer ones, are left,
+ * a notification past the cap is reported as new without being recorded, so a burst within one bucket cannot grow
+ * memory past the cap either.
+ **/
+public class NotificationDeduplicator {
+
+    public static final Duration DEFAULT_RETENTION = Duration.ofDays(7);
+    public static final Duration DEFAULT_BUCKET_SPAN = Duration.ofHours(1);
+
+    private final long retentionMillis;
+    private final long bucketSpanMillis;
+    private final TreeMap<Long, FingerprintTable> buckets = new TreeMap<>();
+    private long maxEntries = Long.MAX_VALUE;
+    private Clock clock = Clock.systemUTC();
+    private long size;
+    private long evicted;
+    private long refused;
+    private long lastBucket = Long.MIN_VALUE;
+    private FingerprintTable lastTable;
+
+    public NotificationDeduplicator() {
+        this(DEFAULT_RETENTION, DEFAULT_BUCKET_SPAN);
+    }
+
+    /**
+     * @param retention how long a notification is remembered after its createdTimestamp
+     * @param bucketSpan the createdTimestamp range of one bucket, the granularity at which entries expire
+     */
+    public NotificationDeduplicator(Duration retention, Duration bucketSpan) {
+        if (bucketSpan.toMillis() <= 0 || retention.compareTo(bucketSpan) < 0) {
+            throw new IllegalArgumentException("bucketSpan must be positive and no longer than retention");
+        }
+        this.retentionMillis = retention.toMillis();
+        this.bucketSpanMillis = bucketSpan.toMillis();
+    }
+
+    /**
+     * Caps the number of fingerprints kept. When the cap is reached, buckets older than that of the notification being
+     * added are dropped before they expire, so copies of their notifications are no longer recognised. When there are
+     * none, the notification is not recorded, and its copies are not recognised.
+     */
+    public NotificationDeduplicator maxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public NotificationDeduplicator clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Records the notification and returns true when it has not been seen before. Notifications without a createdTimestamp
+     * are kept in the current bucket, and notifications created before the retention period are always reported as new.
+     */
+    public boolean add(Notification notification) {
+        long nowMillis = clock.millis();
+        return add(NotificationFingerprint.of(notification), NotificationFingerprint.createdMillis(notification, nowMillis), nowMillis);
+    }
+
+    /**
+     * Records the fingerprint of a notification created at createdMillis and returns true when it has not been seen before.
+     */
+    public boolean add(long fingerprint, long createdMillis) {
+        return add(fingerprint, createdMillis, clock.millis());
+    }
+
+    /**
+     * Returns true when the notification has been seen, without recording it.
+     */
+    public boolean contains(Notification notification) {
+        long nowMillis = clock.millis();
+        return contains(NotificationFingerprint.of(notification), NotificationFingerprint.createdMillis(notification, nowMillis));
+    }
+
+    public synchronized boolean contains(long fingerprint, long createdMillis) {
+        FingerprintTable table = buckets.get(Math.floorDiv(createdMillis, bucketSpanMillis));
+        return table != null && table.contains(fingerprint);
+    }
+
+    private synchronized boolean add(long fingerprint, long createdMillis, long nowMillis) {
+        expire(nowMillis);
+        long bucket = Math.floorDiv(createdMillis, bucketSpanMillis);
+        if (bucket < firstRetainedBucket(nowMillis)) {
+            return true;
+        }
+        FingerprintTable table = bucket == lastBucket ? lastTable : buckets.get(bucket);
+        if (table != null && table.contains(fingerprint)) {
+            return false;
+        }
+        Map.Entry<Long, FingerprintTable> oldest;
+        while (size >= maxEntries && (oldest = buckets.firstEntry()) != null && oldest.getKey() < bucket) {
+            evict(oldest);
+        }
+        if (size >= maxEntries) {
+            refused++;
+            return true;
+        }
+        if (table == null) {
+            table = new FingerprintTable();
+            buckets.put(bucket, table);
+        }
+        lastBucket = bucket;
+        lastTable = table;
+        table.add(fingerprint);
+        size++;
+        return true;
+    }
+
+    /**
+     * Returns the number of fingerprints kept.
+     */
+    public synchronized long size() {
+        expire(clock.millis());
+        return size;
+    }
+
+    /**
+     * Returns the number of fingerprints dropped, by expiry or by the maxEntries cap.
+     */
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Returns the number of notifications reported as new without being recorded, because the cap was reached with no
+     * older bucket left to drop.
+     */
+    public synchronized long getRefused() {
+        return refused;
+    }
+
+    /**
+     * Returns the bytes held by the fingerprint tables.
+     */
+    public synchronized long getTableBytes() {
+        long bytes = 0;
+        for (FingerprintTable table : buckets.values()) {
+            bytes += (long) table.keys.length * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    private long firstRetainedBucket(long nowMillis) {
+        return Math.floorDiv(nowMillis - retentionMillis, bucketSpanMillis);
+    }
+
+    private void expire(long nowMillis) {
+        long firstRetained = firstRetainedBucket(nowMillis);
+        Map.Entry<Long, FingerprintTable> oldest;
+        while ((oldest = buckets.firstEntry()) != null && oldest.getKey() < firstRetained) {
+            evict(oldest);
+        }
+    }
+
+    private void evict(Map.Entry<Long, FingerprintTable> bucket) {
+        buckets.remove(bucket.getKey());
+        size -= bucket.getValue().size;
+        evicted += bucket.getValue().size;
+        if (bucket.getKey() == lastBucket) {
+            lastBucket = Long.MIN_VALUE;
+            lastTable = null;
+        }
+    }
+
+    /**
+     * A set of longs stored in one array with linear probing. 0 marks an empty slot, so the fingerprint 0 is tracked by a flag.
+     */
+    static class FingerprintTable {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int mask = INITIAL_CAPACITY - 1;
+        private boolean containsZero;
+        private int size;
+
+        boolean add(long key) {
+            if (key == 0) {
+                if (containsZero) {
+                    return false;
+                }
+                containsZero = true;
+                size++;
+                return true;
+            }
+            int slot = slot(key, mask);
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            // Grow at a load factor of 3/4 to keep probe sequences short
+            if (++size * 4L > keys.length * 3L) {
+                grow();
+            }
+            return true;
+        }
+
+        boolean contains(long key) {
+            if (key == 0) {
+                return containsZero;
+            }
+            int slot = slot(key, mask);
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private void grow() {
+            long[] previous = keys;
+            keys = new long[previous.length * 2];
+            mask = keys.length - 1;
+            for (long key : previous) {
+                if (key != 0) {
+                    int slot = slot(key, mask);
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            // Multiplying by the golden ratio and folding the high half in spreads every bit of the fingerprint over the slot index
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32)) & mask;
+        }
+    }
+}
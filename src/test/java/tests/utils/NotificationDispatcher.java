@@ -0,0 +1,284 @@
+package tests.utils;
+
+import org.openapitools.client.model.CommercialBpsNotificationContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands pulled notifications to a handler on several worker lanes, keeping notifications with the same key in the order
+ * they were dispatched and running different keys in parallel.
+ *
+ * <p> Each notification goes to the lane picked by the hash of its key, such as PURCHASE_REQUEST_ID, so all notifications
+ * of a key are handled one after the other by the same thread, while other lanes carry on. A key that is null, such as
+ * for content without a purchase request, always goes to the same lane too.
+ * <p> Each lane is a bounded ArrayBlockingQueue drained in batches of up to MAX_BATCH by its own thread, so a lane holds
+ * at most laneCapacity + MAX_BATCH notifications not yet handled. accept blocks while the lane of a notification is
+ * full, so a dispatcher used as the handler of NotificationPoller or NotificationStream holds up the puller instead of
+ * buffering without bound. A hot key fills its lane and holds up the puller even when the other lanes are idle, since
+ * skipping ahead would break its order.
+ * <p> A handler failure, an Error included, is handed to the error handler, which logs it by default, and does not stop
+ * the lane; later notifications of the same key are still handled, and accept, flush and close keep working.
+ * <p> accept hands over before the notification is handled, so a caller that checkpoints, such as NotificationPoller,
+ * should call flush before relying on the checkpoint.
+ **/
+public class NotificationDispatcher implements Consumer<Notification>, AutoCloseable {
+
+    public static final int DEFAULT_LANES = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_LANE_CAPACITY = 1024;
+    public static final int MAX_BATCH = 64;
+
+    /**
+     * The purchaseRequestId of NotificationContent and CommercialBpsNotificationContent, as a String, so that the
+     * PAYMENT_AUTHORIZATION and PAYMENT_UPDATE notifications of a purchase request share a key.
+     */
+    public static final Function<Notification, Object> PURCHASE_REQUEST_ID = NotificationDispatcher::purchaseRequestId;
+    public static final Function<Notification, Object> SUBSCRIPTION_NAME = Notification::getSubscriptionName;
+
+    private static final Notification STOP = new Notification();
+    private static final Logger LOGGER = Logger.getLogger(NotificationDispatcher.class.getName());
+
+    private final Function<Notification, Object> key;
+    private final Consumer<Notification> handler;
+    private final Lane[] lanes;
+    private final AtomicLong blockedCount = new AtomicLong();
+    private BiConsumer<Notification, Throwable> errorHandler = NotificationDispatcher::logFailure;
+    private volatile boolean closed;
+
+    public NotificationDispatcher(Function<Notification, Object> key, Consumer<Notification> handler) {
+        this(key, handler, DEFAULT_LANES, DEFAULT_LANE_CAPACITY);
+    }
+
+    public NotificationDispatcher(Function<Notification, Object> key, Consumer<Notification> handler, int lanes, int laneCapacity) {
+        if (lanes < 1 || laneCapacity < 1) {
+            throw new IllegalArgumentException("lanes and laneCapacity must be at least 1");
+        }
+        this.key = key;
+        this.handler = handler;
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(i, laneCapacity);
+        }
+        for (Lane lane : this.lanes) {
+            lane.thread.start();
+        }
+    }
+
+    /**
+     * Sets what is called with a notification the handler failed on. Defaults to logging the failure as a warning.
+     */
+    public NotificationDispatcher errorHandler(BiConsumer<Notification, Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /**
+     * Queues the notification on the lane of its key, waiting while that lane is full.
+     *
+     * @throws IllegalStateException if the dispatcher is closed, or if the calling thread is interrupted while waiting,
+     * in which case the notification is not queued and the thread's interrupt status is set
+     */
+    @Override
+    public void accept(Notification notification) {
+        if (closed) {
+            throw new IllegalStateException("The dispatcher is closed");
+        }
+        Lane lane = lanes[laneOf(key.apply(notification))];
+        try {
+            if (!lane.queue.offer(notification)) {
+                blockedCount.incrementAndGet();
+                lane.queue.put(notification);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for room in a lane", e);
+        }
+        lane.dispatched.incrementAndGet();
+    }
+
+    /**
+     * Waits until every notification dispatched before this call has been handled.
+     */
+    public void flush() throws InterruptedException {
+        for (Lane lane : lanes) {
+            lane.await(lane.dispatched.get());
+        }
+    }
+
+    /**
+     * Returns the lane the given key goes to.
+     */
+    public int laneOf(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    public int getLanes() {
+        return lanes.length;
+    }
+
+    public long getDispatchedCount() {
+        long count = 0;
+        for (Lane lane : lanes) {
+            count += lane.dispatched.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many notifications the handler has been called with, including the ones it failed on.
+     */
+    public long getHandledCount() {
+        long count = 0;
+        for (Lane lane : lanes) {
+            count += lane.handled;
+        }
+        return count;
+    }
+
+    public long getFailedCount() {
+        long count = 0;
+        for (Lane lane : lanes) {
+            count += lane.failed.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many times accept had to wait for room in a lane.
+     */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * Returns how many notifications are waiting in each lane.
+     */
+    public int[] getQueued() {
+        int[] queued = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            queued[i] = lanes[i].queue.size();
+        }
+        return queued;
+    }
+
+    private static void logFailure(Notification notification, Throwable e) {
+        LOGGER.log(Level.WARNING, "Handler failed on the " + notification.getSubject() + " notification of purchase request "
+                + purchaseRequestId(notification) + " created at " + notification.getCreatedTimestamp(), e);
+    }
+
+    private static Object purchaseRequestId(Notification notification) {
+        Object content = notification.getContent();
+        Object id = null;
+        if (content instanceof NotificationContent) {
+            NotificationContent notificationContent = (NotificationContent) content;
+            id = notificationContent.getPurchaseRequest() == null ? null : notificationContent.getPurchaseRequest().getPurchaseRequestId();
+        } else if (content instanceof CommercialBpsNotificationContent) {
+            id = ((CommercialBpsNotificationContent) content).getPurchaseRequestId();
+        } else if (content instanceof Map) {
+            id = ((Map<?, ?>) content).get("purchaseRequestId");
+        }
+        // Gson decodes numbers in content of an unknown subject as Double
+        return id instanceof Double ? Long.toString(((Double) id).longValue()) : id == null ? null : id.toString();
+    }
+
+    /**
+     * Stops accepting notifications, lets the lanes handle the ones already queued and waits for their threads to end.
+     * Must not be called while other threads are still calling accept. If the calling thread is interrupted while
+     * waiting, close returns with its interrupt status set, and the lanes still handle what was queued before stopping.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (Lane lane : lanes) {
+                lane.queue.put(STOP);
+            }
+            for (Lane lane : lanes) {
+                lane.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Lane implements Runnable {
+
+        private final BlockingQueue<Notification> queue;
+        private final Thread thread;
+        private final AtomicLong dispatched = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        // Written by the lane thread only, under the lane's monitor
+        private volatile long handled;
+
+        Lane(int index, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "notification-dispatcher-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Notification> batch = new ArrayList<>(MAX_BATCH);
+            try {
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (batch.get(i) == STOP) {
+                            completed(i);
+                            return;
+                        }
+                        handle(batch.get(i));
+                    }
+                    completed(batch.size());
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void handle(Notification notification) {
+            try {
+                handler.accept(notification);
+            } catch (Throwable e) {
+                // An Error too, since a lane thread that dies leaves accept, flush and close waiting on it forever
+                failed.incrementAndGet();
+                try {
+                    errorHandler.accept(notification, e);
+                } catch (Throwable ignored) {
+                    // A failing error handler must not stop the lane either
+                }
+            }
+        }
+
+        private synchronized void completed(int count) {
+            handled += count;
+            notifyAll();
+        }
+
+        private synchronized void await(long target) throws InterruptedException {
+            while (handled < target) {
+                wait();
+            }
+        }
+    }
+}
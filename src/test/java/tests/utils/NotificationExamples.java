@@ -0,0 +1,240 @@
+package tests.utils;
+
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.CommercialBpsNotificationContent;
+import org.openapitools.client.model.CommercialBpsNotificationContentErrors;
+import org.openapitools.client.model.CommercialBpsNotificationContentStatusReasonInformation;
+import org.openapitools.client.model.CommercialBpsNotificationContentTransactionIdentification;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.NotificationContentAdvice;
+import org.openapitools.client.model.NotificationContentInControlOnBehalfServiceResult;
+import org.openapitools.client.model.NotificationContentMerchant;
+import org.openapitools.client.model.NotificationContentOriginalMessage;
+import org.openapitools.client.model.NotificationContentPurchaseRequest;
+import org.openapitools.client.model.NotificationContentRealPaymentCard;
+import org.openapitools.client.model.NotificationContentReplacementAmounts;
+import org.openapitools.client.model.NotificationContentVirtualPaymentCard;
+import org.openapitools.client.model.NotificationsWrapper;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * The notifications of the GetNotificationResponse example in notification-swagger.yml, built as generated models.
+ *
+ * <p> The example in the spec is not strict YAML, so it is reproduced here field by field rather than parsed.
+ **/
+public final class NotificationExamples {
+
+    private NotificationExamples() {
+    }
+
+    public static Notification paymentAuthorization() {
+        NotificationContent content = new NotificationContent()
+                .messageTypeIndicator("0110")
+                .systemTraceAuditNumber("011174")
+                .financialNetworkCode("MCC")
+                .banknetReferenceNumber("Q4A91A")
+                .transactionAmount(7550)
+                .transactionCurrencyCode("USD")
+                .billingAmount(7550)
+                .billingCurrencyCode("USD")
+                .responseCode("00")
+                .authorizationCode("502359")
+                .transmissionRawDate("1103")
+                .transmissionRawTime("101611")
+                .settlementDate("0930")
+                .cardHolderTransactionTypeCode("00")
+                .posTransactionStatus("0")
+                .traceId("MCC9999991231  ")
+                .merchant(new NotificationContentMerchant()
+                        .merchantId("497520000000000")
+                        .categoryCode("5542")
+                        .name("JASPERHITECH")
+                        .city("Jasper")
+                        .stateOrCountryCode("TN"))
+                .realPaymentCard(new NotificationContentRealPaymentCard()
+                        .number("************0112")
+                        .expiryMonth("12")
+                        .expiryYear("24"))
+                .virtualPaymentCard(new NotificationContentVirtualPaymentCard()
+                        .number("************6213")
+                        .expiryMonth("09")
+                        .expiryYear("27"))
+                .inControlOnBehalfServiceResult(new NotificationContentInControlOnBehalfServiceResult()
+                        .rcnServiceResultCode("")
+                        .vcnServiceResultCode("V"))
+                .originalMessage(new NotificationContentOriginalMessage()
+                        .messageTypeIndicator("0110")
+                        .systemTraceAuditNumber("11174")
+                        .transmissionRawDateTime("1029112800"))
+                .advice(new NotificationContentAdvice()
+                        .reasonCode("650"))
+                .replacementAmounts(new NotificationContentReplacementAmounts()
+                        .transactionAmount(1200)
+                        .settlementAmount(1200)
+                        .billingAmount(1200))
+                .purchaseRequest(new NotificationContentPurchaseRequest()
+                        .purchaseRequestId(5213)
+                        .rcnAlias("Travel Expense RCN")
+                        .companyId(233191)
+                        .companyGuid("SENTTY9951972A6FC0206CB494B560E5E6DC5D02A2BD21D89612EF4A18358ECC777DCF1494921797")
+                        .issuerGuid("SENTTY5E4C4B4E0D1BF5991E64A1E0745F40A85B2510CE48EB537011DCED3C483669D61494938440"));
+        return new Notification()
+                .subject("PAYMENT_AUTHORIZATION")
+                .subscriptionName("subscription name")
+                .pushStatus("DELIVERED")
+                .createdTimestamp("2019-01-01T12:00:00.000Z")
+                .content(content);
+    }
+
+    public static Notification paymentUpdate() {
+        CommercialBpsNotificationContent content = new CommercialBpsNotificationContent()
+                .source("BPS")
+                .purchaseRequestId("360147")
+                .bpsTransactionId("65098ff7-54f9-42fe-b89c-3fff8470658c")
+                .status("APPROVED")
+                .updatedDate("2021-09-08T16:06:11.598505Z")
+                .transactionIdentification(new CommercialBpsNotificationContentTransactionIdentification()
+                        .approvalCode("SUBMITTED")
+                        .retrievalReferenceNumber("testRetrievalReferenceNumber")
+                        .transactionReference("testTransactionReference")
+                        .transactionDateTime("2021-08-17T17:37:23.230Z"))
+                .statusReasonInformation(new CommercialBpsNotificationContentStatusReasonInformation()
+                        .reasonCode("ALT_MOP_NOT_BPS")
+                        .description("Transaction 1fc96a00-7b74-4879-ab88-d70b2b03ff1f has failed, walmart@track does not accept BPS payment from this kohls.bpahkadam.pay@track."));
+        return new Notification()
+                .subject("PAYMENT_UPDATE")
+                .subscriptionName("subscription name")
+                .pushStatus("DELIVERED")
+                .createdTimestamp("2019-01-01T12:00:00.000Z")
+                .content(content);
+    }
+
+    public static Notification paymentUpdateWithErrors() {
+        CommercialBpsNotificationContent content = new CommercialBpsNotificationContent()
+                .source("BPS")
+                .purchaseRequestId("819724")
+                .errors(new CommercialBpsNotificationContentErrors()
+                        .reasonCode("INVALID_INSTRUCTED_AMT")
+                        .description("Invalid instructed amount, instructed amount reconciliation error"));
+        return new Notification()
+                .subject("PAYMENT_UPDATE")
+                .subscriptionName("Consumer_S1")
+                .pushStatus("DELIVERED")
+                .createdTimestamp("2021-09-08T20:28:20.853Z")
+                .content(content);
+    }
+
+    /**
+     * Returns count notifications made from the three examples and spread evenly over a day from start, with the
+     * fields that tell real notifications apart varied. Ids, reference numbers, amounts and card numbers are unique or
+     * random, while merchants, currencies, aliases, companies and statuses are drawn from small pools, as they repeat
+     * in practice.
+     *
+     * @param count
+     * @param start
+     * @param seed
+     * @return List of Notification
+     */
+    public static List<Notification> mixed(int count, OffsetDateTime start, long seed) {
+        Random random = new Random(seed);
+        List<Notification> notifications = new ArrayList<>(count);
+        long stepMillis = Math.max(1, 86_400_000L / Math.max(1, count));
+        for (int i = 0; i < count; i++) {
+            Notification notification;
+            switch (i % 3) {
+                case 0:
+                    notification = paymentAuthorization();
+                    vary((NotificationContent) notification.getContent(), i, random);
+                    break;
+                case 1:
+                    notification = paymentUpdate();
+                    vary((CommercialBpsNotificationContent) notification.getContent(), i, random);
+                    break;
+                default:
+                    notification = paymentUpdateWithErrors();
+                    vary((CommercialBpsNotificationContent) notification.getContent(), i, random);
+            }
+            notifications.add(notification
+                    .subscriptionName("subscription " + random.nextInt(3))
+                    .pushStatus(random.nextInt(10) == 0 ? "PENDING" : "DELIVERED")
+                    .createdTimestamp(NotificationStubDispatcher.TIMESTAMP_FORMAT.format(start.plusNanos(stepMillis * i * 1_000_000).withOffsetSameInstant(ZoneOffset.UTC))));
+        }
+        return notifications;
+    }
+
+    private static void vary(NotificationContent content, int i, Random random) {
+        int amount = 100 + random.nextInt(100_000);
+        int merchant = random.nextInt(200);
+        int company = random.nextInt(50);
+        content.systemTraceAuditNumber(String.format("%06d", random.nextInt(1_000_000)))
+                .banknetReferenceNumber(Integer.toString(0x1000000 + random.nextInt(0xF000000), 36).toUpperCase())
+                .transactionAmount(amount)
+                .transactionCurrencyCode(random.nextInt(5) == 0 ? "EUR" : "USD")
+                .billingAmount(amount)
+                .authorizationCode(String.format("%06d", random.nextInt(1_000_000)))
+                .traceId(String.format("MCC%06d  ", random.nextInt(1_000_000)))
+                .getMerchant()
+                .merchantId(String.format("4975200000%05d", merchant))
+                .name("MERCHANT " + merchant)
+                .categoryCode(Integer.toString(5000 + merchant % 10))
+                .city("City " + merchant % 20);
+        content.getRealPaymentCard().number(String.format("************%04d", random.nextInt(10_000)));
+        content.getVirtualPaymentCard().number(String.format("************%04d", random.nextInt(10_000)));
+        content.getPurchaseRequest()
+                .purchaseRequestId(i)
+                .rcnAlias("RCN alias " + random.nextInt(20))
+                .companyId(230_000 + company)
+                .companyGuid(String.format("SENTTY%078d", company));
+    }
+
+    private static void vary(CommercialBpsNotificationContent content, int i, Random random) {
+        content.purchaseRequestId(Integer.toString(i))
+                .bpsTransactionId(new UUID(random.nextLong(), random.nextLong()).toString())
+                .status(random.nextInt(4) == 0 ? "DECLINED" : "APPROVED");
+        if (content.getTransactionIdentification() != null) {
+            content.getTransactionIdentification().retrievalReferenceNumber(String.format("%012d", random.nextInt(1_000_000_000)));
+        }
+    }
+
+    /**
+     * Returns a page of the given size that cycles through the three example notifications.
+     *
+     * @param size
+     * @return NotificationsWrapper
+     */
+    public static NotificationsWrapper page(int size) {
+        List<Notification> notifications = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            switch (i % 3) {
+                case 0:
+                    notifications.add(paymentAuthorization());
+                    break;
+                case 1:
+                    notifications.add(paymentUpdate());
+                    break;
+                default:
+                    notifications.add(paymentUpdateWithErrors());
+            }
+        }
+        return new NotificationsWrapper()
+                .count(size)
+                .offset(0)
+                .limit(size)
+                .total(10000L)
+                .notifications(notifications);
+    }
+
+    /**
+     * Returns {@link #page(int)} serialized as the API would send it.
+     */
+    public static String pageJson(int size) {
+        return new JSON().serialize(page(size));
+    }
+}
@@ -0,0 +1,88 @@
+package tests.utils;
+
+import org.openapitools.client.model.CommercialBpsNotificationContent;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * A 64 bit fingerprint identifying a notification, for deduplicating notifications returned more than once.
+ *
+ * <p> It covers subscriptionName, subject, createdTimestamp and the purchaseRequestId of the content, read from
+ * NotificationContent.purchaseRequest, from CommercialBpsNotificationContent or from the untyped Map content.
+ * Content without a purchaseRequestId is identified by its hashCode instead.
+ * <p> The hash is 64 bit FNV-1a, so two different notifications share a fingerprint with a probability around n^2 / 2^65.
+ **/
+public final class NotificationFingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final String PURCHASE_REQUEST_ID = "purchaseRequestId";
+
+    private NotificationFingerprint() {
+    }
+
+    public static long of(Notification notification) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hash(hash, notification.getSubscriptionName());
+        hash = hash(hash, notification.getSubject());
+        hash = hash(hash, notification.getCreatedTimestamp());
+        return hash(hash, contentId(notification.getContent()));
+    }
+
+    /**
+     * Returns the createdTimestamp of the notification in epoch milliseconds, or defaultMillis when it is missing or malformed.
+     */
+    static long createdMillis(Notification notification, long defaultMillis) {
+        if (notification.getCreatedTimestamp() == null) {
+            return defaultMillis;
+        }
+        try {
+            return OffsetDateTime.parse(notification.getCreatedTimestamp()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return defaultMillis;
+        }
+    }
+
+    /**
+     * Returns the purchaseRequestId of the content as a String, or the content hashCode when it has none.
+     */
+    static String contentId(Object content) {
+        Object id = null;
+        if (content instanceof NotificationContent) {
+            NotificationContent notificationContent = (NotificationContent) content;
+            id = notificationContent.getPurchaseRequest() == null ? null : notificationContent.getPurchaseRequest().getPurchaseRequestId();
+        } else if (content instanceof CommercialBpsNotificationContent) {
+            id = ((CommercialBpsNotificationContent) content).getPurchaseRequestId();
+        } else if (content instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) content;
+            id = map.get(PURCHASE_REQUEST_ID);
+            if (id == null && map.get("purchaseRequest") instanceof Map) {
+                id = ((Map<?, ?>) map.get("purchaseRequest")).get(PURCHASE_REQUEST_ID);
+            }
+            if (id instanceof Double && (Double) id == Math.rint((Double) id)) {
+                // Gson reads untyped numbers as Double, so 5213 must not become "5213.0"
+                id = ((Double) id).longValue();
+            }
+        }
+        if (id == null) {
+            return content == null ? null : "#" + content.hashCode();
+        }
+        return id.toString();
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+        }
+        // The separator keeps ("ab", "c") and ("a", "bc") apart, and null apart from ""
+        return (hash ^ (value == null ? 0x100 : 0x101)) * FNV_PRIME;
+    }
+}
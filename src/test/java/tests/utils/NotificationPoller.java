@@ -0,0 +1,277 @@
+package tests.utils;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ApiResponse;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationsWrapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Polls /notifications for new notifications only, keeping its position in a NotificationCursorFile so that it resumes
+ * where it stopped after a restart.
+ *
+ * <p> end is exclusive in notification-swagger.yml, so each window starts where the previous one ended, moved back by a
+ * safety overlap to pick up notifications that became visible late. Notifications in the overlap that were already
+ * delivered are recognised by their NotificationFingerprint and skipped, and the fingerprints the next overlap can
+ * return are saved with every checkpoint, so restarts do not deliver them twice either.
+ * <p> A checkpoint is written after every page. A poller stopped in the middle of a window resumes that window at the
+ * saved offset, and the handler sees a notification again only if the poller stopped between delivering it and writing
+ * the checkpoint for its page.
+ * <p> Windows are capped at maxWindow, so catching up after a long outage is done in several checkpointed windows,
+ * and the work of a restart depends on the overlap, not on how far back notifications are retained.
+ * <p> With an AdaptivePageLimit, each page asks for the limit it currently suggests, and every page read or failed is
+ * reported back to it. The offset moves by the notifications each page returned, so changing limits never skips any.
+ **/
+public class NotificationPoller implements AutoCloseable {
+
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+    public static final Duration DEFAULT_OVERLAP = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_MAX_WINDOW = Duration.ofDays(1);
+
+    private final NotificationsApi notificationsApi;
+    private final NotificationCursorFile cursorFile;
+    private final Consumer<Notification> handler;
+    private List<String> subscriptionNames;
+    private List<String> pushStatus;
+    private int pageLimit = DEFAULT_PAGE_LIMIT;
+    private Duration overlap = DEFAULT_OVERLAP;
+    private Duration maxWindow = DEFAULT_MAX_WINDOW;
+    private OffsetDateTime initialStart;
+    private Clock clock = Clock.systemUTC();
+    private NotificationDeduplicator deduplicator;
+    private AdaptivePageLimit adaptivePageLimit;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Opens the cursor file at the given path. Without a checkpoint in it, the first window starts at initialStart,
+     * which defaults to one week ago.
+     */
+    public NotificationPoller(NotificationsApi notificationsApi, Path cursorPath, Consumer<Notification> handler) throws IOException {
+        this.notificationsApi = notificationsApi;
+        this.cursorFile = new NotificationCursorFile(cursorPath);
+        this.handler = handler;
+    }
+
+    public NotificationPoller subscriptionNames(List<String> subscriptionNames) {
+        this.subscriptionNames = subscriptionNames;
+        return this;
+    }
+
+    public NotificationPoller pushStatus(List<String> pushStatus) {
+        this.pushStatus = pushStatus;
+        return this;
+    }
+
+    public NotificationPoller pageLimit(int pageLimit) {
+        this.pageLimit = pageLimit;
+        return this;
+    }
+
+    /**
+     * Sets how far before the previous end each new window starts. Defaults to 5 minutes.
+     */
+    public NotificationPoller overlap(Duration overlap) {
+        this.overlap = overlap;
+        return this;
+    }
+
+    /**
+     * Sets the longest window requested at once. Defaults to 1 day.
+     */
+    public NotificationPoller maxWindow(Duration maxWindow) {
+        this.maxWindow = maxWindow;
+        return this;
+    }
+
+    public NotificationPoller initialStart(OffsetDateTime initialStart) {
+        this.initialStart = initialStart;
+        return this;
+    }
+
+    public NotificationPoller clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Also skips notifications recorded in the given deduplicator, and records every notification handed over in it.
+     * A deduplicator shared by pollers, or kept across windows, drops the copies a resumed page or another overlapping
+     * source returns again, without waiting for the checkpoint.
+     */
+    public NotificationPoller deduplicator(NotificationDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        return this;
+    }
+
+    /**
+     * Asks for pages of the size the given AdaptivePageLimit suggests instead of pageLimit.
+     */
+    public NotificationPoller adaptivePageLimit(AdaptivePageLimit adaptivePageLimit) {
+        this.adaptivePageLimit = adaptivePageLimit;
+        return this;
+    }
+
+    /**
+     * Returns the last checkpoint written, or null before the first page has been read.
+     */
+    public NotificationCursorFile.Checkpoint getCheckpoint() {
+        return cursorFile.last();
+    }
+
+    /**
+     * Reads every window up to now, hands each new notification to the handler and returns how many were handed over.
+     *
+     * @return int
+     * @throws ApiException if a page cannot be read, the checkpoint of the last page read is kept
+     * @throws IOException if a checkpoint cannot be written
+     */
+    public synchronized int poll() throws ApiException, IOException {
+        long nowMillis = clock.millis();
+        int count = 0;
+        while (true) {
+            NotificationCursorFile.Checkpoint checkpoint = cursorFile.last();
+            if (checkpoint != null && !checkpoint.isComplete()) {
+                count += read(checkpoint.getStartMillis(), checkpoint.getEndMillis(), checkpoint.getOffset(), checkpoint.getDelivered());
+                continue;
+            }
+            long startMillis = checkpoint == null ? firstStartMillis(nowMillis) : checkpoint.getEndMillis() - overlap.toMillis();
+            if (checkpoint != null && checkpoint.getEndMillis() >= nowMillis) {
+                return count;
+            }
+            long endMillis = Math.min(nowMillis, startMillis + Math.max(maxWindow.toMillis(), overlap.toMillis() + 1));
+            count += read(startMillis, endMillis, 0, checkpoint == null ? new HashMap<>() : checkpoint.getDelivered());
+        }
+    }
+
+    /**
+     * Polls every interval on a background thread until closed. Failures are handed to the error handler and the next poll retries.
+     */
+    public synchronized void start(Duration interval, Consumer<Exception> errorHandler) {
+        if (scheduler != null) {
+            throw new IllegalStateException("The poller is already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notification-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (ApiException | IOException | RuntimeException e) {
+                errorHandler.accept(e);
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private long firstStartMillis(long nowMillis) {
+        return initialStart == null ? nowMillis - Duration.ofDays(7).toMillis() : initialStart.toInstant().toEpochMilli();
+    }
+
+    /**
+     * Reads the window [start, end) from the given offset, writing a checkpoint after each page.
+     */
+    private int read(long startMillis, long endMillis, int offset, Map<Long, Long> alreadyDelivered) throws ApiException, IOException {
+        long overlapStartMillis = endMillis - overlap.toMillis();
+        // Only notifications inside the next window's overlap can be returned again by later windows, and only the
+        // previous page can be returned again by the next one as the listing shifts, so only those are kept
+        Map<Long, Long> tail = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : alreadyDelivered.entrySet()) {
+            if (entry.getValue() >= overlapStartMillis) {
+                tail.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Map<Long, Long> previousPage = new HashMap<>();
+        int count = 0;
+        boolean complete;
+        do {
+            NotificationsWrapper page = page(startMillis, endMillis, offset);
+            List<Notification> notifications = notificationsOf(page);
+            Map<Long, Long> delivered = new HashMap<>();
+            for (Notification notification : notifications) {
+                long fingerprint = NotificationFingerprint.of(notification);
+                long createdMillis = NotificationFingerprint.createdMillis(notification, endMillis);
+                if (alreadyDelivered.containsKey(fingerprint) || tail.containsKey(fingerprint) || previousPage.containsKey(fingerprint)
+                        || delivered.containsKey(fingerprint) || (deduplicator != null && deduplicator.contains(fingerprint, createdMillis))) {
+                    continue;
+                }
+                handler.accept(notification);
+                delivered.put(fingerprint, createdMillis);
+                if (createdMillis >= overlapStartMillis) {
+                    tail.put(fingerprint, createdMillis);
+                }
+                if (deduplicator != null) {
+                    deduplicator.add(fingerprint, createdMillis);
+                }
+                count++;
+            }
+            previousPage = delivered;
+            offset += notifications.size();
+            complete = notifications.isEmpty() || page.getTotal() == null || offset >= page.getTotal();
+            cursorFile.append(new NotificationCursorFile.Checkpoint(startMillis, endMillis, offset, complete, tail));
+        } while (!complete);
+        return count;
+    }
+
+    private NotificationsWrapper page(long startMillis, long endMillis, int offset) throws ApiException {
+        if (adaptivePageLimit == null) {
+            return notificationsApi.notificationsGet(timestamp(startMillis), timestamp(endMillis), subscriptionNames, pushStatus, offset, pageLimit);
+        }
+        int limit = adaptivePageLimit.getLimit();
+        long startNanos = System.nanoTime();
+        ApiResponse<NotificationsWrapper> response;
+        try {
+            response = notificationsApi.notificationsGetWithHttpInfo(timestamp(startMillis), timestamp(endMillis), subscriptionNames, pushStatus, offset, limit);
+        } catch (ApiException e) {
+            // 0 is a failure without a response, such as a timeout
+            if (e.getCode() == 0 || e.getCode() >= 500) {
+                adaptivePageLimit.onFailure(limit);
+            }
+            throw e;
+        }
+        NotificationsWrapper page = response.getData();
+        adaptivePageLimit.onPage(limit, notificationsOf(page).size(), System.nanoTime() - startNanos, contentLength(response.getHeaders()));
+        return page;
+    }
+
+    private static List<Notification> notificationsOf(NotificationsWrapper page) {
+        return page.getNotifications() == null ? Collections.emptyList() : page.getNotifications();
+    }
+
+    private static long contentLength(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if ("Content-Length".equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return Long.parseLong(header.getValue().get(0));
+            }
+        }
+        return -1;
+    }
+
+    private static OffsetDateTime timestamp(long epochMillis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        cursorFile.close();
+    }
+}
@@ -0,0 +1,278 @@
+package tests.utils;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Notification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embeddable endpoint for the pushNotificationsMessage callback of notification-swagger.yml: the service POSTs a JSON
+ * array of notifications to the URL registered during onboarding and retries any delivery not answered with 200.
+ *
+ * <p> Each body is decoded with the generated models, through the Gson of NotificationContentTypeAdapterFactory, and the
+ * notifications are put on a bounded queue that the application drains with {@link #poll()} or {@link #drainTo(Collection, int)}.
+ * The request is answered as soon as its notifications are queued, so downstream processing never holds up the service.
+ * <p> The queue is a ConcurrentLinkedQueue bounded by a counter of free slots. A request reserves room for its whole array
+ * with a compare-and-set before anything is queued, so a delivery is either fully accepted or not at all, and no lock is taken.
+ * When there is no room the request is answered with 503 and Retry-After, and the service's retry is the back-pressure.
+ * <p> The JDK HttpServer leaves Nagle's algorithm on unless the sun.net.httpserver.nodelay system property is true when
+ * it is first used. The property applies to every HttpServer in the JVM, so the receiver leaves it to the application to
+ * set, with -Dsun.net.httpserver.nodelay=true or before the first server is created, when small deliveries must not wait
+ * on delayed ACKs.
+ * <p> A body that is not an array of notification objects, including one holding null, is answered with 400.
+ **/
+public class NotificationPushReceiver implements AutoCloseable {
+
+    public static final String DEFAULT_PATH = "/notifications";
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final String RETRY_AFTER_SECONDS = "1";
+
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+    private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+    private static final long NO_RESPONSE_BODY = -1;
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    private final TypeAdapter<Notification> notificationAdapter;
+    private final Queue<Notification> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeSlots = new AtomicInteger();
+    private final AtomicLong acceptedRequests = new AtomicLong();
+    private final AtomicLong acceptedNotifications = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong malformedRequests = new AtomicLong();
+    private String path = DEFAULT_PATH;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int threads = DEFAULT_THREADS;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param json the generated JSON of the ApiClient, its date and byte[] adapters are reused for decoding
+     */
+    public NotificationPushReceiver(JSON json) {
+        this.notificationAdapter = NotificationContentTypeAdapterFactory.createGson(json).getAdapter(Notification.class);
+    }
+
+    /**
+     * Sets the path the callback is registered under. Defaults to /notifications.
+     */
+    public NotificationPushReceiver path(String path) {
+        this.path = path;
+        return this;
+    }
+
+    /**
+     * Sets how many notifications can wait in the queue. A delivery holding more than this is answered with 413.
+     */
+    public NotificationPushReceiver queueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads decoding requests. Defaults to the number of processors.
+     */
+    public NotificationPushReceiver threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Starts listening on the given address. Port 0 picks a free port, see {@link #getAddress()}.
+     */
+    public synchronized NotificationPushReceiver start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The receiver is already started");
+        }
+        freeSlots.set(queueCapacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "notification-push-receiver-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(address, 0);
+        server.createContext(path, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Removes and returns the oldest queued notification, or null when the queue is empty.
+     */
+    public Notification poll() {
+        Notification notification = queue.poll();
+        if (notification != null) {
+            freeSlots.incrementAndGet();
+        }
+        return notification;
+    }
+
+    /**
+     * Moves up to maxNotifications queued notifications to the collection and returns how many were moved.
+     */
+    public int drainTo(Collection<? super Notification> notifications, int maxNotifications) {
+        int drained = 0;
+        Notification notification;
+        while (drained < maxNotifications && (notification = queue.poll()) != null) {
+            notifications.add(notification);
+            drained++;
+        }
+        freeSlots.addAndGet(drained);
+        return drained;
+    }
+
+    /**
+     * Returns the number of queued notifications.
+     */
+    public int size() {
+        return queueCapacity - freeSlots.get();
+    }
+
+    public long getAcceptedRequests() {
+        return acceptedRequests.get();
+    }
+
+    public long getAcceptedNotifications() {
+        return acceptedNotifications.get();
+    }
+
+    /**
+     * Returns the number of deliveries turned away because the queue had no room for them.
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public long getMalformedRequests() {
+        return malformedRequests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(STATUS_METHOD_NOT_ALLOWED, NO_RESPONSE_BODY);
+                return;
+            }
+            // Nothing can be accepted while the queue is full, so the body is skipped rather than decoded.
+            // It still has to be read, otherwise the server closes the connection under the client.
+            if (freeSlots.get() == 0) {
+                skip(exchange.getRequestBody());
+                reject(exchange);
+                return;
+            }
+            List<Notification> notifications;
+            try {
+                notifications = decode(exchange);
+            } catch (JsonParseException | IllegalStateException | IOException e) {
+                malformedRequests.incrementAndGet();
+                skip(exchange.getRequestBody());
+                exchange.sendResponseHeaders(STATUS_BAD_REQUEST, NO_RESPONSE_BODY);
+                return;
+            }
+            if (notifications.size() > queueCapacity) {
+                // decode stopped at the first notification past the capacity, so the rest is skipped unread.
+                // Retrying cannot help, so no Retry-After is sent
+                skip(exchange.getRequestBody());
+                rejectedRequests.incrementAndGet();
+                exchange.sendResponseHeaders(STATUS_PAYLOAD_TOO_LARGE, NO_RESPONSE_BODY);
+                return;
+            }
+            if (!reserve(notifications.size())) {
+                reject(exchange);
+                return;
+            }
+            queue.addAll(notifications);
+            acceptedRequests.incrementAndGet();
+            acceptedNotifications.addAndGet(notifications.size());
+            exchange.sendResponseHeaders(STATUS_OK, NO_RESPONSE_BODY);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Decodes the notification array of the request body, stopping at the first notification past the queue capacity so
+     * that an oversized body is never held whole. The returned list is then longer than the queue capacity.
+     */
+    private List<Notification> decode(HttpExchange exchange) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        List<Notification> notifications = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Notification notification = notificationAdapter.read(reader);
+            if (notification == null) {
+                throw new JsonParseException("Null in the notifications array");
+            }
+            notifications.add(notification);
+            if (notifications.size() > queueCapacity) {
+                return notifications;
+            }
+        }
+        reader.endArray();
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonParseException("Unexpected content after the notifications array");
+        }
+        return notifications;
+    }
+
+    private static void skip(InputStream body) throws IOException {
+        byte[] buffer = new byte[SKIP_BUFFER_SIZE];
+        while (body.read(buffer) != -1) {
+            // discarded
+        }
+    }
+
+    private boolean reserve(int slots) {
+        while (true) {
+            int free = freeSlots.get();
+            if (free < slots) {
+                return false;
+            }
+            if (freeSlots.compareAndSet(free, free - slots)) {
+                return true;
+            }
+        }
+    }
+
+    private void reject(HttpExchange exchange) throws IOException {
+        rejectedRequests.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+        exchange.sendResponseHeaders(STATUS_SERVICE_UNAVAILABLE, NO_RESPONSE_BODY);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
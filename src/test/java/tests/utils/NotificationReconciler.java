@@ -0,0 +1,332 @@
+package tests.utils;
+
+import com.google.gson.JsonParseException;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationsWrapper;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Catches up on the notifications the push mechanism has not delivered, for applications that run
+ * NotificationPushReceiver and the pull API side by side.
+ *
+ * <p> Instead of pulling every notification, or those already DELIVERED, each subscription is pulled with push_status
+ * FAILED, PENDING and NOT_APPLICABLE only. Subscriptions are read in parallel on a bounded pool of worker threads.
+ * <p> Every notification read goes to the same handler the pushed notifications go to. The handler is called by one
+ * thread at a time, and with a NotificationDeduplicator shared with the push side, notifications that were pushed
+ * after all, typically PENDING ones, are skipped. A notification is recorded in the deduplicator before it is handed
+ * over, so that the push side and the reconciler never both hand it over, even when they see it at the same time.
+ * <p> Pages are decoded by the ApiClient of the NotificationsApi, so a StreamingApiClient or an InstrumentedApiClient
+ * decodes them as it does any other call, and the response body bytes are counted as they are read.
+ * <p> With {@link #estimateFullPull(boolean)}, the report also estimates what a full pull would have cost: a probe with
+ * limit 1 reads the total of a full pull of each subscription, and the calls and bytes of that pull are estimated from
+ * it and from the average size of the notifications actually read. The probes are counted in the calls and bytes of
+ * the reconciliation itself.
+ **/
+public class NotificationReconciler implements AutoCloseable {
+
+    public static final List<String> UNDELIVERED_PUSH_STATUS = Collections.unmodifiableList(Arrays.asList("FAILED", "PENDING", "NOT_APPLICABLE"));
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+
+    private static final int PROBE_LIMIT = 1;
+
+    private final NotificationsApi notificationsApi;
+    private final ExecutorService executor;
+    private final Object handlerLock = new Object();
+    private List<String> pushStatus = UNDELIVERED_PUSH_STATUS;
+    private int pageLimit = DEFAULT_PAGE_LIMIT;
+    private NotificationDeduplicator deduplicator;
+    private boolean estimateFullPull;
+
+    public NotificationReconciler(NotificationsApi notificationsApi, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.notificationsApi = notificationsApi;
+        this.executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /**
+     * Sets the push_status values to pull. Defaults to FAILED, PENDING and NOT_APPLICABLE.
+     */
+    public NotificationReconciler pushStatus(List<String> pushStatus) {
+        this.pushStatus = pushStatus;
+        return this;
+    }
+
+    public NotificationReconciler pageLimit(int pageLimit) {
+        this.pageLimit = pageLimit;
+        return this;
+    }
+
+    /**
+     * Skips notifications recorded in the given deduplicator, and records every notification handed over in it.
+     */
+    public NotificationReconciler deduplicator(NotificationDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        return this;
+    }
+
+    /**
+     * Sets whether each subscription is probed for the total of a full pull, at the cost of one more call, so that the
+     * report can tell what the reconciliation saved. Defaults to false.
+     */
+    public NotificationReconciler estimateFullPull(boolean estimateFullPull) {
+        this.estimateFullPull = estimateFullPull;
+        return this;
+    }
+
+    /**
+     * Pulls the notifications created in [start, end) that were not delivered by push, one task per subscription,
+     * and hands each of them to the handler.
+     *
+     * @param start inclusive
+     * @param end exclusive
+     * @param subscriptionNames
+     * @param handler
+     * @return Report
+     * @throws ApiException if any page cannot be retrieved, once every subscription has finished or failed
+     */
+    public Report reconcile(OffsetDateTime start, OffsetDateTime end, List<String> subscriptionNames, Consumer<Notification> handler) throws ApiException {
+        List<Future<Report>> reports = new ArrayList<>();
+        for (String subscriptionName : subscriptionNames) {
+            reports.add(executor.submit(() -> reconcile(start, end, subscriptionName, handler)));
+        }
+
+        Report report = new Report();
+        ApiException failure = null;
+        for (Future<Report> subscriptionReport : reports) {
+            try {
+                report.add(subscriptionReport.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApiException(e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof ApiException ? (ApiException) e.getCause() : new ApiException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return report;
+    }
+
+    private Report reconcile(OffsetDateTime start, OffsetDateTime end, String subscriptionName, Consumer<Notification> handler) throws ApiException {
+        List<String> subscription = Collections.singletonList(subscriptionName);
+        Report report = new Report();
+
+        int offset = NotificationBulkFetcher.FIRST_OFFSET;
+        long notificationBytes = 0;
+        long notificationsRead = 0;
+        while (true) {
+            Page page = fetch(start, end, subscription, pushStatus, offset, pageLimit);
+            report.record(page);
+            List<Notification> notifications = page.wrapper.getNotifications() == null ? Collections.emptyList() : page.wrapper.getNotifications();
+            deliver(notifications, handler, report);
+            notificationBytes += page.bytes;
+            notificationsRead += notifications.size();
+            offset += notifications.size();
+            if (notifications.isEmpty() || page.wrapper.getTotal() == null || offset >= page.wrapper.getTotal()) {
+                break;
+            }
+        }
+
+        if (!estimateFullPull) {
+            return report;
+        }
+        Page probe = fetch(start, end, subscription, null, NotificationBulkFetcher.FIRST_OFFSET, PROBE_LIMIT);
+        report.record(probe);
+        long fullTotal = probe.wrapper.getTotal() == null ? 0 : probe.wrapper.getTotal();
+        // The notifications of a subscription are about the same size whatever their push status
+        long bytesPerNotification = notificationsRead > 0 ? notificationBytes / notificationsRead : probe.bytes;
+        report.fullPullCalls += Math.max(1, (fullTotal + pageLimit - 1) / pageLimit);
+        report.fullPullBytes += Math.max(probe.bytes, fullTotal * bytesPerNotification);
+        return report;
+    }
+
+    private void deliver(List<Notification> notifications, Consumer<Notification> handler, Report report) {
+        synchronized (handlerLock) {
+            for (Notification notification : notifications) {
+                // add, not contains, so that the push side cannot record the notification between the check and the handler
+                if (deduplicator != null && !deduplicator.add(notification)) {
+                    report.duplicates++;
+                    continue;
+                }
+                handler.accept(notification);
+                report.delivered++;
+            }
+        }
+    }
+
+    /**
+     * Reads one page through the ApiClient, counting the bytes of the response body as they are decoded.
+     */
+    private Page fetch(OffsetDateTime start, OffsetDateTime end, List<String> subscriptionNames, List<String> pushStatus, int offset, int limit) throws ApiException {
+        Call call = notificationsApi.notificationsGetCall(start, end, subscriptionNames, pushStatus, offset, limit, null, null);
+        try {
+            Response response = call.execute();
+            CountingBody body = new CountingBody(response.body());
+            NotificationsWrapper wrapper = notificationsApi.getApiClient().handleResponse(response.newBuilder().body(body).build(), NotificationsWrapper.class);
+            if (wrapper == null) {
+                throw new ApiException("Empty notifications page", response.code(), response.headers().toMultimap(), null);
+            }
+            return new Page(wrapper, body.bytes);
+        } catch (IOException | JsonParseException e) {
+            throw new ApiException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class CountingBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+        private long bytes;
+
+        CountingBody(ResponseBody delegate) throws IOException {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        bytes += read;
+                    }
+                    return read;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+    private static class Page {
+        final NotificationsWrapper wrapper;
+        final long bytes;
+
+        Page(NotificationsWrapper wrapper, long bytes) {
+            this.wrapper = wrapper;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The outcome of a reconciliation: what it read and delivered, and what a full pull of the same subscriptions would have read.
+     * Bytes are response body bytes after any gzip decoding.
+     */
+    public static class Report {
+
+        private long calls;
+        private long bytes;
+        private long delivered;
+        private long duplicates;
+        private long fullPullCalls;
+        private long fullPullBytes;
+
+        private void record(Page page) {
+            calls++;
+            bytes += page.bytes;
+        }
+
+        private void add(Report other) {
+            calls += other.calls;
+            bytes += other.bytes;
+            delivered += other.delivered;
+            duplicates += other.duplicates;
+            fullPullCalls += other.fullPullCalls;
+            fullPullBytes += other.fullPullBytes;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * Returns the number of notifications skipped because the deduplicator had already seen them.
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Returns the estimated calls of a full pull, or 0 unless the reconciler estimates it.
+         */
+        public long getFullPullCalls() {
+            return fullPullCalls;
+        }
+
+        public long getFullPullBytes() {
+            return fullPullBytes;
+        }
+
+        public long getSavedCalls() {
+            return fullPullCalls - calls;
+        }
+
+        public long getSavedBytes() {
+            return fullPullBytes - bytes;
+        }
+
+        @Override
+        public String toString() {
+            if (fullPullCalls == 0) {
+                return String.format("%d notifications delivered, %d duplicates skipped, %d calls and %d bytes", delivered, duplicates, calls, bytes);
+            }
+            return String.format("%d notifications delivered, %d duplicates skipped, %d calls and %d bytes instead of about %d calls and %d bytes, %d calls and %d bytes saved",
+                    delivered, duplicates, calls, bytes, fullPullCalls, fullPullBytes, getSavedCalls(), getSavedBytes());
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package tests.utils;
+
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.SpecificationRequest;
+import org.openapitools.client.model.Subscription;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * The filter of a subscription, compiled into a predicate that is applied to notifications already pulled, so that one
+ * broad pull can be split among several consumers without further API calls.
+ *
+ * <p> The specifications follow SpecificationRequest in notification-swagger.yml. The first of a list is WHERE and each
+ * following one is AND or OR with the one before it, AND binding tighter than OR. A specification with children is a
+ * group: its own field check comes first and its children follow it with their own operators.
+ * <p> fieldMappingName is a dotted path of properties of the content model selected by the subject type, NotificationContent
+ * for PAYMENT_AUTHORIZATION and CommercialBpsNotificationContent for PAYMENT_UPDATE, such as purchaseRequest.rcnAlias.
+ * Each path is resolved when the specification is compiled, into getter calls bound by LambdaBinder,
+ * so evaluating a notification involves no reflection. Expected values are converted once as well.
+ * <p> EQUALS, GREATER_THAN, LESS_THAN and BETWEEN, inclusive at both ends, are supported for INTEGER and TEXT content.
+ * TEXT compares strings as they are, case included. A field that is missing, or that does not hold an integer for an
+ * INTEGER check, does not match.
+ **/
+public final class NotificationSpecification implements Predicate<Notification> {
+
+    // Stands for a text field that does not hold an integer, so it is refused as an expected value
+    private static final long NOT_AN_INTEGER = Long.MIN_VALUE;
+
+    private final String subjectType;
+    private final Class<?> contentClass;
+    private final Predicate<Object> contentPredicate;
+
+    private NotificationSpecification(String subjectType, Class<?> contentClass, Predicate<Object> contentPredicate) {
+        this.subjectType = subjectType;
+        this.contentClass = contentClass;
+        this.contentPredicate = contentPredicate;
+    }
+
+    /**
+     * Compiles the specifications of a subscription.
+     */
+    public static NotificationSpecification compile(Subscription subscription) {
+        return compile(subscription.getSubjectType().getValue(), subscription.getSpecifications());
+    }
+
+    /**
+     * Compiles a list of specifications for notifications of the given subject type. An empty list matches every
+     * notification of the subject type, as it does for a subscription.
+     *
+     * @param subjectType PAYMENT_AUTHORIZATION or PAYMENT_UPDATE
+     * @param specifications
+     * @return NotificationSpecification
+     * @throws IllegalArgumentException if a field path, an operator or a content type is not supported
+     */
+    public static NotificationSpecification compile(String subjectType, List<SpecificationRequest> specifications) {
+        Class<?> contentClass = NotificationContentTypeAdapterFactory.CONTENT_TYPES.get(subjectType);
+        if (contentClass == null) {
+            throw new IllegalArgumentException("Unsupported subject type " + subjectType);
+        }
+        List<Term> terms = new ArrayList<>();
+        for (SpecificationRequest specification : specifications == null ? Collections.<SpecificationRequest>emptyList() : specifications) {
+            terms.add(new Term(specification.getOperator(), compile(contentClass, specification)));
+        }
+        Predicate<Object> contentPredicate = terms.isEmpty() ? content -> true : combine(terms);
+        return new NotificationSpecification(subjectType, contentClass, contentPredicate);
+    }
+
+    /**
+     * Returns true when the notification has the subject type of the specification and its content matches.
+     * Content left untyped, as a Map, never matches; decode it with NotificationContentTypeAdapterFactory.
+     */
+    @Override
+    public boolean test(Notification notification) {
+        return subjectType.equals(notification.getSubject()) && testContent(notification.getContent());
+    }
+
+    /**
+     * Returns true when the content is of the model of the subject type and matches.
+     */
+    public boolean testContent(Object content) {
+        return contentClass.isInstance(content) && contentPredicate.test(content);
+    }
+
+    private static Predicate<Object> compile(Class<?> contentClass, SpecificationRequest specification) {
+        if (specification.getType() != null && !"FIELD".equals(specification.getType())) {
+            throw new IllegalArgumentException("Unsupported specification type " + specification.getType());
+        }
+        List<Term> terms = new ArrayList<>();
+        if (specification.getFieldMappingName() != null) {
+            terms.add(new Term(null, compileField(contentClass, specification)));
+        }
+        if (specification.getChildren() != null) {
+            for (SpecificationRequest child : specification.getChildren()) {
+                terms.add(new Term(child.getOperator(), compile(contentClass, child)));
+            }
+        }
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("A specification needs a fieldMappingName or children");
+        }
+        return combine(terms);
+    }
+
+    /**
+     * Combines terms joined by AND and OR, the first operator being ignored, with AND evaluated before OR.
+     */
+    private static Predicate<Object> combine(List<Term> terms) {
+        Predicate<Object> any = null;
+        Predicate<Object> all = terms.get(0).predicate;
+        for (Term term : terms.subList(1, terms.size())) {
+            if ("AND".equals(term.operator)) {
+                all = all.and(term.predicate);
+            } else if ("OR".equals(term.operator)) {
+                any = any == null ? all : any.or(all);
+                all = term.predicate;
+            } else {
+                throw new IllegalArgumentException("Only the first specification can use " + term.operator + ", the others need AND or OR");
+            }
+        }
+        return any == null ? all : any.or(all);
+    }
+
+    private static Predicate<Object> compileField(Class<?> contentClass, SpecificationRequest specification) {
+        String path = specification.getFieldMappingName();
+        if (specification.getExpectedContent() == null || specification.getExpectedContent().getValue() == null) {
+            throw new IllegalArgumentException("No expected content for " + path);
+        }
+        Field field = resolve(contentClass, path);
+        String contentType = specification.getExpectedContent().getContentType() == null ? "TEXT" : specification.getExpectedContent().getContentType();
+        String fieldOperator = specification.getFieldOperator() == null ? "EQUALS" : specification.getFieldOperator();
+        Object value = specification.getExpectedContent().getValue();
+        Object anotherValue = specification.getExpectedContent().getAnotherValue();
+        if ("BETWEEN".equals(fieldOperator) && anotherValue == null) {
+            throw new IllegalArgumentException("BETWEEN needs anotherValue for " + path);
+        }
+        switch (contentType) {
+            case "INTEGER":
+                return compileInteger(field, fieldOperator, toLong(value, path), anotherValue == null ? 0 : toLong(anotherValue, path));
+            case "TEXT":
+                return compileText(field, fieldOperator, value.toString(), anotherValue == null ? null : anotherValue.toString());
+            default:
+                throw new IllegalArgumentException("Unsupported content type " + contentType + " for " + path);
+        }
+    }
+
+    private static Predicate<Object> compileInteger(Field field, String fieldOperator, long expected, long anotherExpected) {
+        Function<Object, Object> getter = field.getter;
+        ToLongFunction<Object> toLong;
+        if (Number.class.isAssignableFrom(field.type)) {
+            toLong = value -> ((Number) value).longValue();
+        } else {
+            // Text fields such as CommercialBpsNotificationContent.purchaseRequestId hold integers too
+            toLong = value -> parseLong(value.toString());
+        }
+        switch (fieldOperator) {
+            case "EQUALS":
+                return content -> {
+                    Object value = getter.apply(content);
+                    return value != null && toLong.applyAsLong(value) == expected;
+                };
+            case "GREATER_THAN":
+                return content -> {
+                    Object value = getter.apply(content);
+                    long actual;
+                    return value != null && (actual = toLong.applyAsLong(value)) != NOT_AN_INTEGER && actual > expected;
+                };
+            case "LESS_THAN":
+                return content -> {
+                    Object value = getter.apply(content);
+                    long actual;
+                    return value != null && (actual = toLong.applyAsLong(value)) != NOT_AN_INTEGER && actual < expected;
+                };
+            case "BETWEEN":
+                long low = Math.min(expected, anotherExpected);
+                long high = Math.max(expected, anotherExpected);
+                return content -> {
+                    Object value = getter.apply(content);
+                    long actual;
+                    return value != null && (actual = toLong.applyAsLong(value)) != NOT_AN_INTEGER && actual >= low && actual <= high;
+                };
+            default:
+                throw new IllegalArgumentException("Unsupported field operator " + fieldOperator);
+        }
+    }
+
+    private static Predicate<Object> compileText(Field field, String fieldOperator, String expected, String anotherExpected) {
+        Function<Object, Object> getter = field.getter;
+        switch (fieldOperator) {
+            case "EQUALS":
+                return content -> {
+                    Object value = getter.apply(content);
+                    return value != null && expected.equals(value.toString());
+                };
+            case "GREATER_THAN":
+                return content -> {
+                    Object value = getter.apply(content);
+                    return value != null && value.toString().compareTo(expected) > 0;
+                };
+            case "LESS_THAN":
+                return content -> {
+                    Object value = getter.apply(content);
+                    return value != null && value.toString().compareTo(expected) < 0;
+                };
+            case "BETWEEN":
+                String low = expected.compareTo(anotherExpected) <= 0 ? expected : anotherExpected;
+                String high = expected.compareTo(anotherExpected) <= 0 ? anotherExpected : expected;
+                return content -> {
+                    Object value = getter.apply(content);
+                    if (value == null) {
+                        return false;
+                    }
+                    String actual = value.toString();
+                    return actual.compareTo(low) >= 0 && actual.compareTo(high) <= 0;
+                };
+            default:
+                throw new IllegalArgumentException("Unsupported field operator " + fieldOperator);
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return NOT_AN_INTEGER;
+        }
+    }
+
+    private static long toLong(Object value, String path) {
+        long parsed;
+        if (value instanceof Number && ((Number) value).doubleValue() == Math.rint(((Number) value).doubleValue())) {
+            // Gson reads untyped numbers as Double
+            parsed = ((Number) value).longValue();
+        } else {
+            parsed = parseLong(value.toString());
+        }
+        if (parsed == NOT_AN_INTEGER) {
+            throw new IllegalArgumentException("Expected an integer for " + path + " but got " + value);
+        }
+        return parsed;
+    }
+
+    /**
+     * Resolves a dotted path into one function calling each getter in turn, returning null as soon as a step is null.
+     */
+    private static Field resolve(Class<?> contentClass, String path) {
+        Class<?> type = contentClass;
+        List<Function<Object, Object>> steps = new ArrayList<>();
+        for (String property : path.split("\\.")) {
+            Method getter = getter(type, property);
+            if (getter == null) {
+                throw new IllegalArgumentException("No property " + property + " in " + type.getSimpleName() + " for " + path);
+            }
+            steps.add(LambdaBinder.getter(getter));
+            type = getter.getReturnType();
+        }
+        return new Field(chain(steps), type);
+    }
+
+    private static Function<Object, Object> chain(List<Function<Object, Object>> steps) {
+        Function<Object, Object> first = steps.get(0);
+        if (steps.size() == 1) {
+            return first;
+        }
+        Function<Object, Object> rest = chain(steps.subList(1, steps.size()));
+        return content -> {
+            Object value = first.apply(content);
+            return value == null ? null : rest.apply(value);
+        };
+    }
+
+    private static Method getter(Class<?> type, String property) {
+        if (property.isEmpty()) {
+            return null;
+        }
+        String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                Method method = type.getMethod(prefix + suffix);
+                if (!Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                // try the next prefix
+            }
+        }
+        return null;
+    }
+
+    private static class Field {
+        final Function<Object, Object> getter;
+        final Class<?> type;
+
+        Field(Function<Object, Object> getter, Class<?> type) {
+            this.getter = getter;
+            this.type = LambdaBinder.boxed(type);
+        }
+    }
+
+    private static class Term {
+        final String operator;
+        final Predicate<Object> predicate;
+
+        Term(String operator, Predicate<Object> predicate) {
+            this.operator = operator;
+            this.predicate = predicate;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package tests.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Response;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.NotificationsApi;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationsWrapper;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks every page of /notifications and yields one Notification at a time, without materializing a NotificationsWrapper.
+ *
+ * <p> Each response body is read incrementally with Gson's JsonReader, so only the notification being returned is held in memory.
+ * <p> While the caller works through a page, the request for the next offset is already executing on a background thread.
+ * If the current page turns out to be the last one, or shorter than expected, that prefetched request is cancelled.
+ * <p> The stream must be closed, either directly or through the Stream returned by {@link #stream()}, to release the open response.
+ **/
+public class NotificationStream implements Iterator<Notification>, AutoCloseable {
+
+    private final NotificationsApi notificationsApi;
+    private final OffsetDateTime start;
+    private final OffsetDateTime end;
+    private final List<String> subscriptionNames;
+    private final List<String> pushStatus;
+    private final int limit;
+    private final TypeAdapter<Notification> notificationAdapter;
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notification-stream-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Page current;
+    private Page prefetched;
+    private Notification next;
+    private boolean closed;
+
+    public NotificationStream(NotificationsApi notificationsApi, OffsetDateTime start, OffsetDateTime end, List<String> subscriptionNames, List<String> pushStatus, int offset, int limit) {
+        this.notificationsApi = notificationsApi;
+        this.start = start;
+        this.end = end;
+        this.subscriptionNames = subscriptionNames;
+        this.pushStatus = pushStatus;
+        this.limit = limit;
+        Gson gson = notificationsApi.getApiClient().getJSON().getGson();
+        this.notificationAdapter = gson.getAdapter(Notification.class);
+        this.prefetched = request(offset);
+    }
+
+    /**
+     * Returns a sequential Stream over the same notifications. Closing the Stream closes this iterator.
+     */
+    public Stream<Notification> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Notification next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Notification notification = next;
+        next = null;
+        return notification;
+    }
+
+    private Notification advance() {
+        try {
+            while (true) {
+                if (current == null) {
+                    if (prefetched == null) {
+                        close();
+                        return null;
+                    }
+                    current = prefetched.open();
+                    prefetched = request(current.offset + limit);
+                }
+                Notification notification = current.nextNotification();
+                if (notification != null) {
+                    return notification;
+                }
+                current.finish();
+                int nextOffset = current.offset + current.read;
+                boolean lastPage = current.read == 0 || (current.total != null && nextOffset >= current.total);
+                if (lastPage || prefetched.offset != nextOffset) {
+                    prefetched.cancel();
+                    prefetched = lastPage ? null : request(nextOffset);
+                }
+                current = null;
+            }
+        } catch (IOException e) {
+            close();
+            throw new NotificationStreamException(new ApiException(e));
+        } catch (ApiException e) {
+            close();
+            throw new NotificationStreamException(e);
+        }
+    }
+
+    private Page request(int offset) {
+        Call call;
+        try {
+            call = notificationsApi.notificationsGetCall(start, end, subscriptionNames, pushStatus, offset, limit, null, null);
+        } catch (ApiException e) {
+            throw new NotificationStreamException(e);
+        }
+        return new Page(offset, call, CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.execute();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, prefetcher));
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+        if (prefetched != null) {
+            prefetched.cancel();
+            prefetched = null;
+        }
+        prefetcher.shutdownNow();
+    }
+
+    /**
+     * One page of the response stream. The response is opened lazily and read field by field.
+     */
+    private class Page {
+        final int offset;
+        final Call call;
+        final CompletableFuture<Response> response;
+        JsonReader reader;
+        Long total;
+        int read;
+        boolean inArray;
+
+        Page(int offset, Call call, CompletableFuture<Response> response) {
+            this.offset = offset;
+            this.call = call;
+            this.response = response;
+        }
+
+        Page open() throws IOException, ApiException {
+            Response httpResponse;
+            try {
+                httpResponse = response.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            if (!httpResponse.isSuccessful()) {
+                String body = httpResponse.body() == null ? null : httpResponse.body().string();
+                throw new ApiException(httpResponse.message(), httpResponse.code(), httpResponse.headers().toMultimap(), body);
+            }
+            reader = new JsonReader(httpResponse.body().charStream());
+            reader.beginObject();
+            return this;
+        }
+
+        /**
+         * Reads envelope fields until the next array element is reached, and returns that element.
+         * Returns null once the notifications array has been consumed.
+         */
+        Notification nextNotification() throws IOException {
+            while (true) {
+                if (inArray) {
+                    if (reader.hasNext()) {
+                        read++;
+                        return notificationAdapter.read(reader);
+                    }
+                    reader.endArray();
+                    inArray = false;
+                    continue;
+                }
+                if (!reader.hasNext()) {
+                    return null;
+                }
+                String name = reader.nextName();
+                if (NotificationsWrapper.SERIALIZED_NAME_TOTAL.equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    total = reader.nextLong();
+                } else if (NotificationsWrapper.SERIALIZED_NAME_NOTIFICATIONS.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    inArray = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            reader.endObject();
+            reader.close();
+        }
+
+        void cancel() {
+            call.cancel();
+            response.whenComplete((httpResponse, throwable) -> {
+                if (httpResponse != null && httpResponse.body() != null) {
+                    try {
+                        httpResponse.body().close();
+                    } catch (IOException ignored) {
+                        // The call is being abandoned, so a failure to close it cleanly is not actionable.
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Unchecked wrapper for an ApiException raised while iterating, since Iterator cannot throw checked exceptions.
+     */
+    public static class NotificationStreamException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public NotificationStreamException(ApiException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized ApiException getCause() {
+            return (ApiException) super.getCause();
+        }
+    }
+}
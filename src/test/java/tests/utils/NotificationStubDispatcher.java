@@ -0,0 +1,358 @@
+package tests.utils;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Notification;
+import org.openapitools.client.model.NotificationContent;
+import org.openapitools.client.model.NotificationContentPurchaseRequest;
+import org.openapitools.client.model.NotificationsWrapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A MockWebServer dispatcher that serves the /notifications endpoint from an in-memory dataset.
+ *
+ * <p> start is inclusive and end is exclusive, as described in notification-swagger.yml.
+ * <p> subscription_name and push_status filter the dataset when they are provided.
+ * <p> offset and limit page through the filtered dataset, and total reports its full size.
+ * <p> Responses are gzipped for clients that send Accept-Encoding: gzip, once {@link #gzip(boolean)} is enabled.
+ * <p> Faults can be injected, as a struggling gateway would answer: the next few requests, a share of all requests, or
+ * every request for pages larger than a given limit fail with a given status before any latency is applied.
+ * <p> Latency can be fixed per response and grow with the number of notifications returned, as serializing and
+ * sending a page would.
+ * <p> The dataset is kept sorted by createdTimestamp and replaced as a whole when notifications are added, so pages are
+ * cut from it by binary search without locking, and datasets of hundreds of thousands of notifications can be served
+ * under load.
+ **/
+public class NotificationStubDispatcher extends Dispatcher {
+
+    public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+
+    public static final String BASE_PATH = "/commercial-event-notifications";
+
+    private static final int DEFAULT_LIMIT = 25;
+
+    // MockWebServer logs every request at INFO, which drowns the test output when thousands of pages are served.
+    private static final Logger SERVER_LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+    static {
+        SERVER_LOGGER.setLevel(Level.WARNING);
+    }
+
+    private volatile Dataset dataset = new Dataset(new ArrayList<>());
+    private final JSON json = new JSON();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile long latencyPerNotificationMicros;
+    private volatile boolean gzip;
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final AtomicInteger faultCount = new AtomicInteger();
+    private volatile int failureStatus;
+    private volatile double errorRate;
+    private volatile int errorStatus;
+    private volatile int failAboveLimit = Integer.MAX_VALUE;
+    private volatile int failAboveLimitStatus;
+
+    public NotificationStubDispatcher(List<Notification> notifications) {
+        add(notifications);
+    }
+
+    /**
+     * Adds notifications to the dataset, as if they had just been created or had become visible late.
+     */
+    public synchronized void add(List<Notification> added) {
+        List<Notification> notifications = new ArrayList<>(dataset.notifications);
+        notifications.addAll(added);
+        dataset = new Dataset(notifications);
+    }
+
+    /**
+     * Returns how many notifications the dataset holds.
+     */
+    public int size() {
+        return dataset.notifications.size();
+    }
+
+    /**
+     * Builds a dataset of PAYMENT_AUTHORIZATION notifications spread evenly over [start, start + span).
+     * Each notification carries a unique purchaseRequestId so that gaps and duplicates can be detected.
+     *
+     * @param count
+     * @param start
+     * @param span
+     * @param subscriptionName
+     * @return List of Notification
+     */
+    public static List<Notification> generate(int count, OffsetDateTime start, Duration span, String subscriptionName) {
+        List<Notification> notifications = new ArrayList<>(count);
+        long stepMillis = Math.max(1, span.toMillis() / Math.max(1, count));
+        for (int i = 0; i < count; i++) {
+            OffsetDateTime createdTimestamp = start.plus(Duration.ofMillis(stepMillis * i));
+            notifications.add(notification(i, createdTimestamp, subscriptionName, "DELIVERED"));
+        }
+        return notifications;
+    }
+
+    public static Notification notification(int purchaseRequestId, OffsetDateTime createdTimestamp, String subscriptionName, String pushStatus) {
+        NotificationContent content = new NotificationContent()
+                .messageTypeIndicator("0110")
+                .transactionAmount(7550)
+                .transactionCurrencyCode("USD")
+                .purchaseRequest(new NotificationContentPurchaseRequest()
+                        .purchaseRequestId(purchaseRequestId)
+                        .rcnAlias("Travel Expense RCN"));
+        return new Notification()
+                .subject("PAYMENT_AUTHORIZATION")
+                .subscriptionName(subscriptionName)
+                .pushStatus(pushStatus)
+                .createdTimestamp(TIMESTAMP_FORMAT.format(createdTimestamp.withOffsetSameInstant(ZoneOffset.UTC)))
+                .content(content);
+    }
+
+    /**
+     * Delays every response by the given number of milliseconds, to stand in for network and service time.
+     */
+    public NotificationStubDispatcher latencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * Delays every response by the given number of microseconds per notification it returns, on top of latencyMillis.
+     */
+    public NotificationStubDispatcher latencyPerNotificationMicros(long latencyPerNotificationMicros) {
+        this.latencyPerNotificationMicros = latencyPerNotificationMicros;
+        return this;
+    }
+
+    /**
+     * Gzips response bodies when the request accepts it.
+     */
+    public NotificationStubDispatcher gzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * Answers the next count requests with the given status.
+     */
+    public NotificationStubDispatcher failNext(int count, int status) {
+        this.failureStatus = status;
+        this.failuresLeft.set(count);
+        return this;
+    }
+
+    /**
+     * Answers each request with the given status with the given probability, between 0 and 1.
+     */
+    public NotificationStubDispatcher errorRate(double errorRate, int status) {
+        this.errorStatus = status;
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Answers every request for a limit larger than the given one with the given status, as a gateway timing out on
+     * pages that take too long to build would.
+     */
+    public NotificationStubDispatcher failAboveLimit(int limit, int status) {
+        this.failAboveLimitStatus = status;
+        this.failAboveLimit = limit;
+        return this;
+    }
+
+    /**
+     * Returns how many requests were answered with an injected fault.
+     */
+    public int getFaultCount() {
+        return faultCount.get();
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the largest number of requests that were being served at the same time.
+     */
+    public int getMaxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Restarts {@link #getMaxConcurrentRequests()} from the requests being served now, for a dispatcher shared by several tests.
+     */
+    public void resetMaxConcurrentRequests() {
+        maxInFlight.set(inFlight.get());
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        requestCount.incrementAndGet();
+        int concurrent = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(concurrent, Math::max);
+        try {
+            return respond(request);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private MockResponse respond(RecordedRequest request) throws InterruptedException {
+        HttpUrl url = HttpUrl.parse("http://localhost" + request.getPath());
+        if (url == null || !url.encodedPath().equals(BASE_PATH + "/notifications")) {
+            return new MockResponse().setResponseCode(404);
+        }
+        if (url.queryParameter("start") == null || url.queryParameter("end") == null) {
+            return new MockResponse().setResponseCode(400);
+        }
+        if (failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+            faultCount.incrementAndGet();
+            return new MockResponse().setResponseCode(failureStatus);
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            faultCount.incrementAndGet();
+            return new MockResponse().setResponseCode(errorStatus);
+        }
+        if (intParameter(url, "limit", DEFAULT_LIMIT) > failAboveLimit) {
+            faultCount.incrementAndGet();
+            return new MockResponse().setResponseCode(failAboveLimitStatus);
+        }
+        NotificationsWrapper page = page(url);
+        long latencyMicros = TimeUnit.MILLISECONDS.toMicros(latencyMillis) + latencyPerNotificationMicros * page.getNotifications().size();
+        if (latencyMicros > 0) {
+            TimeUnit.MICROSECONDS.sleep(latencyMicros);
+        }
+        MockResponse response = new MockResponse().setHeader("Content-Type", "application/json");
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            return response.setHeader("Content-Encoding", "gzip").setBody(gzip(json.serialize(page)));
+        }
+        return response.setBody(json.serialize(page));
+    }
+
+    private static Buffer gzip(String body) {
+        Buffer buffer = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(buffer))) {
+            sink.writeUtf8(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    private NotificationsWrapper page(HttpUrl url) {
+        Dataset dataset = this.dataset;
+        int from = dataset.lowerBound(OffsetDateTime.parse(url.queryParameter("start")).toInstant());
+        int to = dataset.lowerBound(OffsetDateTime.parse(url.queryParameter("end")).toInstant());
+        List<String> subscriptionNames = url.queryParameterValues("subscription_name");
+        List<String> pushStatus = url.queryParameterValues("push_status");
+        int offset = intParameter(url, "offset", 0);
+        int limit = intParameter(url, "limit", DEFAULT_LIMIT);
+
+        List<Notification> pageItems = new ArrayList<>();
+        long total;
+        if (subscriptionNames.isEmpty() && pushStatus.isEmpty()) {
+            total = Math.max(0, to - from);
+            if (offset < total) {
+                pageItems.addAll(dataset.notifications.subList(from + offset, (int) Math.min(to, (long) from + offset + limit)));
+            }
+        } else {
+            total = 0;
+            for (int i = from; i < to; i++) {
+                Notification notification = dataset.notifications.get(i);
+                if (!subscriptionNames.isEmpty() && !subscriptionNames.contains(notification.getSubscriptionName())) {
+                    continue;
+                }
+                if (!pushStatus.isEmpty() && !pushStatus.contains(notification.getPushStatus())) {
+                    continue;
+                }
+                if (total >= offset && total - offset < limit) {
+                    pageItems.add(notification);
+                }
+                total++;
+            }
+        }
+        return new NotificationsWrapper()
+                .count(pageItems.size())
+                .offset(offset)
+                .limit(limit)
+                .total(total)
+                .notifications(pageItems);
+    }
+
+    private static int intParameter(HttpUrl url, String name, int defaultValue) {
+        String value = url.queryParameter(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * The notifications sorted by createdTimestamp, with their timestamps as epoch milliseconds for binary search.
+     */
+    private static final class Dataset {
+
+        final List<Notification> notifications;
+        final long[] createdMillis;
+
+        Dataset(List<Notification> unsorted) {
+            // Each timestamp is parsed once, and the sort is stable, so notifications created at the same time keep their order
+            long[] unsortedMillis = new long[unsorted.size()];
+            Integer[] order = new Integer[unsorted.size()];
+            for (int i = 0; i < order.length; i++) {
+                unsortedMillis[i] = OffsetDateTime.parse(unsorted.get(i).getCreatedTimestamp()).toInstant().toEpochMilli();
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> unsortedMillis[i]));
+            this.notifications = new ArrayList<>(order.length);
+            this.createdMillis = new long[order.length];
+            for (int i = 0; i < order.length; i++) {
+                notifications.add(unsorted.get(order[i]));
+                createdMillis[i] = unsortedMillis[order[i]];
+            }
+        }
+
+        /**
+         * Returns the index of the first notification created at or after the instant. Timestamps carry milliseconds,
+         * so an instant with a finer fraction is rounded up to the next millisecond.
+         */
+        int lowerBound(Instant instant) {
+            long millis = instant.toEpochMilli() + (instant.getNano() % 1_000_000 == 0 ? 0 : 1);
+            int low = 0;
+            int high = createdMillis.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (createdMillis[middle] < millis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package tests.utils;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries GETs on /notifications, /subscriptions and /fieldmappings that failed with 429, 500, 502, 503, 504 or an I/O
+ * error. Reads are idempotent, so sending one again is safe; POST, PUT and DELETE go out once.
+ *
+ * <p> Delays follow decorrelated jitter: each is drawn at random between the base delay and three times the previous
+ * one, capped at the maximum delay. Clients that failed together therefore retry at different times instead of
+ * hitting the recovering gateway in lockstep.
+ * <p> A response with a Retry-After header, in seconds or as an HTTP date, is retried no sooner than it asks, so the
+ * delay is the larger of the drawn one and Retry-After. A response asking for longer than the maximum delay is returned
+ * to the caller as is rather than retried early.
+ * <p> A request whose circuit is open, see CircuitBreakerInterceptor, is not retried, and neither is one whose thread
+ * was interrupted. After the last attempt the last response, or failure, is returned to the caller.
+ **/
+public class RetryInterceptor implements Interceptor {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10_000;
+
+    private static final Set<Integer> RETRYABLE_STATUS = new HashSet<>(Arrays.asList(429, 500, 502, 503, 504));
+    private static final Set<String> RETRYABLE_ENDPOINTS = new HashSet<>(Arrays.asList(
+            "GET /notifications", "GET /subscriptions", "GET /subscriptions/{id}", "GET /fieldmappings"));
+
+    private final AtomicLong retries = new AtomicLong();
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    /**
+     * Sets how many times a request is sent at most, the first time included. Defaults to 4.
+     */
+    public RetryInterceptor maxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Sets the smallest and the largest delay before a retry. Default to 100 milliseconds and 10 seconds.
+     */
+    public RetryInterceptor delays(long baseDelayMillis, long maxDelayMillis) {
+        if (baseDelayMillis < 1 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Delays must satisfy 1 <= baseDelayMillis <= maxDelayMillis");
+        }
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * Returns true if the request is one this interceptor retries.
+     */
+    public static boolean isRetryable(Request request) {
+        return RETRYABLE_ENDPOINTS.contains(CircuitBreakerInterceptor.endpoint(request));
+    }
+
+    /**
+     * Draws the delay before the next retry from the delay before the previous one, or the base delay for the first.
+     */
+    public long nextDelayMillis(long previousDelayMillis) {
+        long upper = Math.max(baseDelayMillis, Math.min(maxDelayMillis, previousDelayMillis * 3));
+        return ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1);
+    }
+
+    /**
+     * Returns how long the response asks to wait before a retry, or 0 when it has no valid Retry-After header.
+     */
+    static long retryAfterMillis(Response response, long nowMillis) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            // Not delta-seconds, so an HTTP date
+        }
+        try {
+            return Math.max(0, ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - nowMillis);
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!isRetryable(request)) {
+            return chain.proceed(request);
+        }
+        long delayMillis = baseDelayMillis;
+        for (int attempt = 1; ; attempt++) {
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.proceed(request);
+            } catch (CircuitBreakerInterceptor.OpenCircuitException e) {
+                throw e;
+            } catch (IOException e) {
+                if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+                    throw e;
+                }
+                failure = e;
+            }
+            if (response != null && !RETRYABLE_STATUS.contains(response.code())) {
+                return response;
+            }
+            if (attempt >= maxAttempts) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return response;
+            }
+            long retryAfterMillis = response == null ? 0 : retryAfterMillis(response, System.currentTimeMillis());
+            if (retryAfterMillis > maxDelayMillis) {
+                return response;
+            }
+            if (response != null) {
+                response.body().close();
+            }
+            delayMillis = Math.max(nextDelayMillis(delayMillis), retryAfterMillis);
+            retries.incrementAndGet();
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry " + request.method() + " " + request.httpUrl());
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package tests.utils;
+
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.model.NotificationsWrapper;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * An ApiClient that decodes NotificationsWrapper and list responses with Gson straight from the response body, instead
+ * of reading the whole body into a String first as the generated deserialize does.
+ *
+ * <p> On the generated path a page is held three times at its peak: as bytes in OkHttp's buffer, as a String of two
+ * bytes per character, and as models. Here the bytes are decoded as Gson reads them, so the String is never made.
+ * <p> The charset is taken from the Content-Type header and defaults to UTF-8, as with ResponseBody.string(). Responses
+ * that are empty give null, and trailing content after the JSON document is refused, both as on the generated path.
+ * <p> Other return types, responses that are not JSON, byte[] and File go through the generated path, as does
+ * everything once {@link #setStreaming(boolean)} is turned off.
+ **/
+public class StreamingApiClient extends ApiClient {
+
+    private volatile boolean streaming = true;
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public StreamingApiClient setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    @Override
+    public <T> T deserialize(Response response, Type returnType) throws ApiException {
+        if (!streaming || response == null || response.body() == null || !isStreamed(returnType)) {
+            return super.deserialize(response, returnType);
+        }
+        String contentType = response.headers().get("Content-Type");
+        if (contentType != null && !isJsonMime(contentType)) {
+            return super.deserialize(response, returnType);
+        }
+        ResponseBody body = response.body();
+        try {
+            if (body.source().exhausted()) {
+                return null;
+            }
+            return getJSON().getGson().fromJson(body.charStream(), returnType);
+        } catch (IOException e) {
+            throw new ApiException(e);
+        } finally {
+            try {
+                body.close();
+            } catch (IOException ignored) {
+                // The body has been read, or reading it has already failed
+            }
+        }
+    }
+
+    /**
+     * Returns whether responses of the given type are decoded from the stream: NotificationsWrapper and lists.
+     */
+    static boolean isStreamed(Type returnType) {
+        if (returnType == NotificationsWrapper.class) {
+            return true;
+        }
+        return returnType instanceof ParameterizedType
+                && ((ParameterizedType) returnType).getRawType() instanceof Class
+                && List.class.isAssignableFrom((Class<?>) ((ParameterizedType) returnType).getRawType());
+    }
+}
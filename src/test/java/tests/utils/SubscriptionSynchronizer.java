@@ -0,0 +1,386 @@
+package tests.utils;
+
+import com.google.gson.Gson;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.SubscriptionApi;
+import org.openapitools.client.model.FieldContent;
+import org.openapitools.client.model.SpecificationRequest;
+import org.openapitools.client.model.SpecificationResponse;
+import org.openapitools.client.model.Subscription;
+import org.openapitools.client.model.SubscriptionResponse;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Brings the subscriptions of a subscriber in line with a desired set of Subscription requests, keyed by name.
+ *
+ * <p> The current subscriptions are listed in waves of pages read in parallel, sorted by id, until a page comes back
+ * short. A service that caps the page size below {@link #pageLimit(int)} is read with the size it returned instead, so
+ * the cap neither leaves gaps nor ends the listing early. Subscriptions missing from the service are created, those that differ in subject type, active flag or
+ * specifications are updated, and, unless {@link #prune(boolean)} is turned off, those that are not desired are deleted.
+ * <p> Creates, updates and deletes run on the same bounded pool as the page reads. Each of them has its own result, so
+ * one rejected subscription does not stop the others.
+ * <p> The subscriptions as the last sync left them are kept as a snapshot, and the next sync diffs against it without
+ * listing again, so a repeat sync only calls the API for what changed. A failed change, or {@link #invalidate()}, drops
+ * the snapshot and the next sync lists again.
+ **/
+public class SubscriptionSynchronizer implements AutoCloseable {
+
+    public static final int DEFAULT_PAGE_LIMIT = 25;
+    public static final int FIRST_OFFSET = 0;
+    public static final String SORT = "id";
+
+    private final SubscriptionApi subscriptionApi;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private int pageLimit = DEFAULT_PAGE_LIMIT;
+    private boolean prune = true;
+    private Map<String, SubscriptionResponse> snapshot;
+
+    public SubscriptionSynchronizer(SubscriptionApi subscriptionApi, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.subscriptionApi = subscriptionApi;
+        this.parallelism = parallelism;
+        this.executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    public SubscriptionSynchronizer pageLimit(int pageLimit) {
+        this.pageLimit = pageLimit;
+        return this;
+    }
+
+    /**
+     * Sets whether subscriptions that are not in the desired set are deleted. Defaults to true.
+     */
+    public SubscriptionSynchronizer prune(boolean prune) {
+        this.prune = prune;
+        return this;
+    }
+
+    /**
+     * Drops the snapshot, for instance after subscriptions were changed by other means, so that the next sync lists again.
+     */
+    public synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Lists every subscription, reading up to parallelism pages at a time.
+     *
+     * @return List of SubscriptionResponse, sorted by id
+     * @throws ApiException if any page cannot be retrieved
+     */
+    public List<SubscriptionResponse> listAll() throws ApiException {
+        resolveTypeAdapters();
+        Map<String, SubscriptionResponse> byId = new LinkedHashMap<>();
+        int offset = FIRST_OFFSET;
+        int limit = pageLimit;
+        // Set once a page came back with limit items, or limit was taken from a page, so that the service is known to
+        // return limit items whenever it has them, and a shorter page is the last one
+        boolean limitHonoured = false;
+        boolean lastPage = false;
+        while (!lastPage) {
+            int waveOffset = offset;
+            int waveLimit = limit;
+            List<Future<List<SubscriptionResponse>>> wave = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                int pageOffset = waveOffset + i * waveLimit;
+                wave.add(executor.submit(() -> subscriptionApi.getAllSubscription(pageOffset, waveLimit, SORT)));
+            }
+            boolean skipRest = false;
+            for (Future<List<SubscriptionResponse>> page : wave) {
+                List<SubscriptionResponse> subscriptions = await(page);
+                if (lastPage || skipRest) {
+                    continue;
+                }
+                List<SubscriptionResponse> items = subscriptions == null ? Collections.emptyList() : subscriptions;
+                // A subscription created or deleted while listing shifts the pages after it, so one may be read twice
+                for (SubscriptionResponse subscription : items) {
+                    byId.putIfAbsent(subscription.getId(), subscription);
+                }
+                if (items.size() >= waveLimit) {
+                    limitHonoured = true;
+                    offset += waveLimit;
+                } else if (limitHonoured || items.isEmpty()) {
+                    lastPage = true;
+                } else {
+                    // Either the last page, or the service caps the page size: carry on with the size it returned, and
+                    // drop the rest of the wave, whose offsets assumed the larger size
+                    limit = items.size();
+                    limitHonoured = true;
+                    offset += limit;
+                    skipRest = true;
+                }
+            }
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    /**
+     * Creates, updates and deletes subscriptions until they match the desired set.
+     *
+     * @param desired one Subscription per name
+     * @return Result with one Item per subscription created, updated, deleted or left unchanged
+     * @throws ApiException if the current subscriptions cannot be listed
+     */
+    public synchronized Result sync(Collection<Subscription> desired) throws ApiException {
+        Set<String> desiredNames = new HashSet<>();
+        for (Subscription subscription : desired) {
+            if (!desiredNames.add(subscription.getName())) {
+                throw new IllegalArgumentException("More than one desired subscription is named " + subscription.getName());
+            }
+        }
+        resolveTypeAdapters();
+        Result result = new Result();
+        Map<String, SubscriptionResponse> current = snapshot;
+        if (current == null) {
+            current = new HashMap<>();
+            for (SubscriptionResponse subscription : listAll()) {
+                current.put(subscription.getName(), subscription);
+            }
+            result.listed = true;
+        }
+
+        List<Future<Item>> changes = new ArrayList<>();
+        for (Subscription subscription : desired) {
+            SubscriptionResponse existing = current.get(subscription.getName());
+            if (existing == null) {
+                changes.add(executor.submit(() -> apply(Action.CREATE, subscription.getName(),
+                        () -> subscriptionApi.subscriptionsPost(subscription))));
+            } else if (!matches(subscription, existing)) {
+                changes.add(executor.submit(() -> apply(Action.UPDATE, subscription.getName(),
+                        () -> subscriptionApi.updateSubscription(existing.getId(), subscription))));
+            } else {
+                result.items.add(new Item(Action.UNCHANGED, subscription.getName(), existing, null));
+            }
+        }
+        if (prune) {
+            for (SubscriptionResponse existing : current.values()) {
+                if (!desiredNames.contains(existing.getName())) {
+                    changes.add(executor.submit(() -> apply(Action.DELETE, existing.getName(), () -> {
+                        subscriptionApi.subscriptionsIdDelete(existing.getId());
+                        return null;
+                    })));
+                }
+            }
+        }
+
+        Map<String, SubscriptionResponse> next = new HashMap<>(current);
+        boolean failed = false;
+        for (Future<Item> change : changes) {
+            Item item = await(change);
+            result.items.add(item);
+            if (item.error != null) {
+                failed = true;
+            } else if (item.action == Action.DELETE) {
+                next.remove(item.name);
+            } else {
+                next.put(item.name, item.subscription);
+            }
+        }
+        snapshot = failed ? null : next;
+        return result;
+    }
+
+    /**
+     * Specifications nest specifications, and Gson 2.8.1 hands threads that ask for such an adapter while another thread
+     * is still building it an unfinished one, which fails with IllegalStateException. Building them here first means the
+     * worker threads only ever get them from the cache.
+     */
+    private void resolveTypeAdapters() {
+        Gson gson = subscriptionApi.getApiClient().getJSON().getGson();
+        gson.getAdapter(Subscription.class);
+        gson.getAdapter(SubscriptionResponse.class);
+    }
+
+    private static Item apply(Action action, String name, Mutation mutation) {
+        try {
+            return new Item(action, name, mutation.call(), null);
+        } catch (ApiException e) {
+            return new Item(action, name, null, e);
+        } catch (RuntimeException e) {
+            return new Item(action, name, null, new ApiException(e));
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws ApiException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof ApiException ? (ApiException) e.getCause() : new ApiException(e.getCause());
+        }
+    }
+
+    /**
+     * Compares what a Subscription asks for with what the service holds. An unset active flag stands for true, as the
+     * service creates subscriptions active, and numbers in expected content compare by value.
+     */
+    static boolean matches(Subscription desired, SubscriptionResponse existing) {
+        if (desired.getSubjectType() == null || existing.getSubjectType() == null
+                || !desired.getSubjectType().getValue().equals(existing.getSubjectType().getValue())) {
+            return false;
+        }
+        if (!Objects.equals(desired.getActive() == null ? Boolean.TRUE : desired.getActive(), existing.getActive())) {
+            return false;
+        }
+        return matches(desired.getSpecifications(), existing.getSpecifications());
+    }
+
+    private static boolean matches(List<SpecificationRequest> desired, List<SpecificationResponse> existing) {
+        List<SpecificationRequest> requests = desired == null ? Collections.emptyList() : desired;
+        List<SpecificationResponse> responses = existing == null ? Collections.emptyList() : existing;
+        if (requests.size() != responses.size()) {
+            return false;
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            SpecificationRequest request = requests.get(i);
+            SpecificationResponse response = responses.get(i);
+            if (!Objects.equals(request.getType(), response.getType())
+                    || !Objects.equals(request.getOperator(), response.getOperator())
+                    || !Objects.equals(request.getFieldMappingName(), response.getFieldMapping() == null ? null : response.getFieldMapping().getName())
+                    || !Objects.equals(request.getFieldOperator(), response.getFieldOperator())
+                    || !matches(request.getExpectedContent(), response.getExpectedContent())
+                    || !matches(request.getChildren(), response.getChildren())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(FieldContent desired, FieldContent existing) {
+        if (desired == null || existing == null) {
+            return desired == existing;
+        }
+        return Objects.equals(desired.getContentType(), existing.getContentType())
+                && Objects.equals(normalize(desired.getValue()), normalize(existing.getValue()))
+                && Objects.equals(normalize(desired.getAnotherValue()), normalize(existing.getAnotherValue()));
+    }
+
+    /**
+     * Gson reads the untyped value and anotherValue as Double, so 1000 is sent and 1000.0 comes back.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Number) {
+            return new BigDecimal(value.toString()).stripTrailingZeros();
+        }
+        return value;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Mutation {
+        SubscriptionResponse call() throws ApiException;
+    }
+
+    public enum Action {
+        CREATE, UPDATE, DELETE, UNCHANGED
+    }
+
+    /**
+     * The outcome for one subscription: the subscription as the service returned it, or the error that stopped the change.
+     * Deletes and failed changes carry no subscription.
+     */
+    public static class Item {
+
+        private final Action action;
+        private final String name;
+        private final SubscriptionResponse subscription;
+        private final ApiException error;
+
+        private Item(Action action, String name, SubscriptionResponse subscription, ApiException error) {
+            this.action = action;
+            this.name = name;
+            this.subscription = subscription;
+            this.error = error;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public SubscriptionResponse getSubscription() {
+            return subscription;
+        }
+
+        public ApiException getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    /**
+     * The outcome of a sync, with one Item per subscription.
+     */
+    public static class Result {
+
+        private final List<Item> items = new ArrayList<>();
+        private boolean listed;
+
+        public List<Item> getItems() {
+            return items;
+        }
+
+        /**
+         * Returns true if the current subscriptions were listed, false if the snapshot of the previous sync was used.
+         */
+        public boolean isListed() {
+            return listed;
+        }
+
+        public long count(Action action) {
+            return items.stream().filter(item -> item.action == action && item.error == null).count();
+        }
+
+        public List<Item> getFailures() {
+            List<Item> failures = new ArrayList<>();
+            for (Item item : items) {
+                if (item.error != null) {
+                    failures.add(item);
+                }
+            }
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d created, %d updated, %d deleted, %d unchanged, %d failed%s",
+                    count(Action.CREATE), count(Action.UPDATE), count(Action.DELETE), count(Action.UNCHANGED),
+                    getFailures().size(), listed ? "" : ", from the snapshot of the previous sync");
+        }
+    }
+}